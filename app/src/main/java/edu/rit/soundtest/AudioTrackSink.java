@@ -0,0 +1,60 @@
+package edu.rit.soundtest;
+
+import android.media.AudioTrack;
+import android.os.Process;
+
+import edu.rit.audio.AudioSink;
+
+/**
+ * Writes rendered blocks to an AudioTrack in streaming mode
+ */
+public class AudioTrackSink implements AudioSink {
+    private final AudioTrack audioTrack;
+    private boolean prioritySet = false;
+
+    public AudioTrackSink(AudioTrack audioTrack) {
+        this.audioTrack = audioTrack;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return audioTrack.getSampleRate();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return audioTrack.getChannelCount();
+    }
+
+    @Override
+    public void play() {
+        // runs on the thread that writes to the track, the render thread or a BufferedSink's output
+        // thread, so this is where that gets audio priority
+        if (!prioritySet) {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            prioritySet = true;
+        }
+        audioTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        audioTrack.pause();
+    }
+
+    @Override
+    public int write(short[] data, int offset, int length) {
+        return audioTrack.write(data, offset, length);
+    }
+
+    @Override
+    public long getPlaybackPosition() {
+        // the head position is an unsigned 32 bit frame count
+        return audioTrack.getPlaybackHeadPosition() & 0xffffffffL;
+    }
+
+    @Override
+    public void release() {
+        audioTrack.release();
+    }
+}
@@ -0,0 +1,216 @@
+package edu.rit.soundtest;
+
+import java.util.Locale;
+
+import edu.rit.audio.LatencyHistogram;
+import edu.rit.audio.PcmRingBuffer;
+import edu.rit.audio.RenderLoop;
+
+/**
+ * Copy of the service's counters at one moment, for when playback stutters in the field. Taking
+ * one allocates; the counters it is copied from do not.
+ */
+public final class MetricsSnapshot {
+    private final long uptimeMillis;
+    private final int sampleRate;
+    private final int outputRate;
+    private final int blockFrames;
+    private final int sessions;
+
+    private final LatencyHistogram renderNanos = new LatencyHistogram();
+    private final long deadlineNanos;
+    private final long lateBlocks;
+    private final long starvedBlocks;
+    private final double latencyMillis;
+    private final long maxFramesAhead;
+    private final long firstBlockNanos;
+    private final long firstSampleNanos;
+    private final long warmupNanos;
+    private final boolean coldStart;
+    private final boolean warmedUp;
+    private final long outputStartNanos;
+    private final boolean buffered;
+    private final long ringUnderruns;
+    private final long ringProducerWaits;
+
+    private final long frequencyUpdates;
+    private final long delayUpdates;
+    private final long updateErrors;
+    private final String lastUpdateError;
+
+    private final long requestedFrames;
+    private final long drawnFrames;
+
+    /**
+     * @param sessions         client sessions mixed with the card's tone
+     * @param loop             the render loop, or null before the first play
+     * @param ring             the ring between rendering and output, or null if the loop writes to
+     *                         the track
+     * @param warmupNanos      time the background warm-up took, or -1 if it has not finished
+     * @param coldStart        whether the latest play had to create the track and render thread
+     * @param warmedUp         whether the warm-up had finished by the latest play
+     * @param outputStartNanos time creating the track and render thread took on the cold start
+     * @param render           the card renderer, or null before the card is shown
+     */
+    MetricsSnapshot(long uptimeMillis, int sampleRate, int outputRate, int blockFrames, int sessions,
+                    RenderLoop loop, PcmRingBuffer ring, long warmupNanos, boolean coldStart, boolean warmedUp,
+                    long outputStartNanos, long frequencyUpdates, long delayUpdates, long updateErrors,
+                    String lastUpdateError, SoundRender render) {
+        this.uptimeMillis = uptimeMillis;
+        this.sampleRate = sampleRate;
+        this.outputRate = outputRate;
+        this.blockFrames = blockFrames;
+        this.sessions = sessions;
+        if (loop != null) {
+            loop.getRenderNanos().copyInto(renderNanos);
+            deadlineNanos = loop.getDeadlineNanos();
+            lateBlocks = loop.getLateBlocks();
+            starvedBlocks = loop.getStarvedBlocks();
+            latencyMillis = loop.getLatencyMillis();
+            maxFramesAhead = loop.getMaxFramesAhead();
+            firstBlockNanos = loop.getFirstBlockNanos();
+            firstSampleNanos = loop.getFirstSampleNanos();
+        } else {
+            deadlineNanos = blockFrames * 1000000000L / outputRate;
+            lateBlocks = 0;
+            starvedBlocks = 0;
+            latencyMillis = 0;
+            maxFramesAhead = 0;
+            firstBlockNanos = -1;
+            firstSampleNanos = -1;
+        }
+        this.warmupNanos = warmupNanos;
+        this.coldStart = coldStart;
+        this.warmedUp = warmedUp;
+        this.outputStartNanos = outputStartNanos;
+        buffered = ring != null;
+        ringUnderruns = ring != null ? ring.getUnderruns() : 0;
+        ringProducerWaits = ring != null ? ring.getProducerWaits() : 0;
+        this.frequencyUpdates = frequencyUpdates;
+        this.delayUpdates = delayUpdates;
+        this.updateErrors = updateErrors;
+        this.lastUpdateError = lastUpdateError;
+        requestedFrames = render != null ? render.getRequestedFrames() : 0;
+        drawnFrames = render != null ? render.getDrawnFrames() : 0;
+    }
+
+    /**
+     * @return time render and conversion took per block, in nanoseconds
+     */
+    public LatencyHistogram getRenderNanos() {
+        return renderNanos;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    public long getBlocks() {
+        return renderNanos.getCount();
+    }
+
+    /**
+     * @return blocks that took longer to render than they last
+     */
+    public long getLateBlocks() {
+        return lateBlocks;
+    }
+
+    /**
+     * @return blocks that found the output had run dry; with a ring in between, gets that found it
+     * short count instead
+     */
+    public long getUnderruns() {
+        return buffered ? ringUnderruns : starvedBlocks;
+    }
+
+    /**
+     * @return times rendering had to wait for the ring to drain; 0 without a ring. Expected while
+     * playing, since rendering runs ahead until the ring is full; no samples are lost.
+     */
+    public long getProducerWaits() {
+        return ringProducerWaits;
+    }
+
+    /**
+     * @return time from pressing play to the first sample playing, including creating the track on
+     * a cold start; -1 before the first play or while waiting for it
+     */
+    public long getTimeToFirstSampleNanos() {
+        if (firstSampleNanos < 0) {
+            return -1;
+        }
+        return firstSampleNanos + (coldStart ? outputStartNanos : 0);
+    }
+
+    /**
+     * @return whether the latest play had to create the track and render thread
+     */
+    public boolean isColdStart() {
+        return coldStart;
+    }
+
+    /**
+     * @return client sessions mixed with the card's tone
+     */
+    public int getSessions() {
+        return sessions;
+    }
+
+    public long getFrequencyUpdates() {
+        return frequencyUpdates;
+    }
+
+    public long getDelayUpdates() {
+        return delayUpdates;
+    }
+
+    /**
+     * @return parameter updates that threw and were dropped
+     */
+    public long getUpdateErrors() {
+        return updateErrors;
+    }
+
+    public long getRequestedFrames() {
+        return requestedFrames;
+    }
+
+    public long getDrawnFrames() {
+        return drawnFrames;
+    }
+
+    /**
+     * @return the snapshot as lines of text, for logs and bug reports
+     */
+    @Override
+    public String toString() {
+        double seconds = Math.max(uptimeMillis, 1) / 1000.0;
+        StringBuilder out = new StringBuilder(512);
+        out.append(String.format(Locale.US,
+                "uptime %.1f s, render %d Hz, output %d Hz, %d frame blocks, %d client sessions%n",
+                seconds, sampleRate, outputRate, blockFrames, sessions));
+        out.append(String.format(Locale.US,
+                "render us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  deadline %.1f%n",
+                renderNanos.getValueAtPercentile(50) / 1e3, renderNanos.getValueAtPercentile(99) / 1e3,
+                renderNanos.getValueAtPercentile(99.9) / 1e3, renderNanos.getMax() / 1e3, deadlineNanos / 1e3));
+        out.append(String.format(Locale.US, "blocks %d, late %d, underruns %d, producer waits %d%s%n",
+                getBlocks(), lateBlocks, getUnderruns(), ringProducerWaits, buffered ? " (ring)" : ""));
+        out.append(String.format(Locale.US, "latency %.1f ms, max ahead %d frames%n",
+                latencyMillis, maxFramesAhead));
+        out.append(String.format(Locale.US,
+                "first sample %.1f ms (%s start%s, first block %.1f ms), warm-up %s%n",
+                getTimeToFirstSampleNanos() / 1e6, coldStart ? "cold" : "warm",
+                coldStart ? String.format(Locale.US, ", %.1f ms creating the track", outputStartNanos / 1e6) : "",
+                firstBlockNanos / 1e6, warmupNanos < 0 ? "not finished"
+                        : String.format(Locale.US, "%.1f ms%s", warmupNanos / 1e6, warmedUp ? "" : " (after play)")));
+        out.append(String.format(Locale.US, "updates: frequency %d (%.2f/s), delay %d (%.2f/s), errors %d%n",
+                frequencyUpdates, frequencyUpdates / seconds, delayUpdates, delayUpdates / seconds, updateErrors));
+        if (lastUpdateError != null) {
+            out.append("last error: ").append(lastUpdateError).append('\n');
+        }
+        out.append(String.format(Locale.US, "card frames: requested %d, drawn %d (%.2f/s)%n",
+                requestedFrames, drawnFrames, drawnFrames / seconds));
+        return out.toString();
+    }
+}
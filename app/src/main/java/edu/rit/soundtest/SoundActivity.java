@@ -70,7 +70,9 @@ public class SoundActivity extends Activity
     private static final int PLAY_PAUSE = 0;
     private static final int FREQUENCY = 1;
     private static final int DELAY = 2;
-    private static final int STOP = 3;
+    private static final int WAVEFORM = 3;
+    private static final int SEQUENCE = 4;
+    private static final int STOP = 5;
 
     private static final long ANIMATION_DURATION_MILLIS = 1;
 
@@ -187,6 +189,12 @@ public class SoundActivity extends Activity
                 enableDelayControl = true;
                 determinate = mSlider.startDeterminate(mService.MAX_DELAY_VALUE, mService.getCurrentDelay());
                 break;
+            case WAVEFORM:
+                mService.nextWaveform();
+                break;
+            case SEQUENCE:
+                mService.nextSequence();
+                break;
             case STOP:
                 //FIXME
                 stopService(new Intent(this, SoundService.class));
@@ -207,6 +215,10 @@ public class SoundActivity extends Activity
                 .setText(R.string.frequency));
         cards.add(DELAY, new CardBuilder(context, CardBuilder.Layout.TEXT)
                 .setText(R.string.delay));
+        cards.add(WAVEFORM, new CardBuilder(context, CardBuilder.Layout.TEXT)
+                .setText(R.string.waveform));
+        cards.add(SEQUENCE, new CardBuilder(context, CardBuilder.Layout.TEXT)
+                .setText(R.string.sequence));
         cards.add(STOP, new CardBuilder(context, CardBuilder.Layout.TEXT)
                 .setText(R.string.stop));
         return cards;
@@ -2,22 +2,155 @@ package edu.rit.soundtest;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.graphics.PorterDuff.Mode;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.SurfaceHolder;
 import android.view.View;
 import android.widget.TextView;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.rit.audio.CombResponse;
+import edu.rit.audio.SpectrumAnalyzer;
+
 public class SoundRender implements SurfaceHolder.Callback {
-    private SurfaceHolder surfaceHolder;
+    /**
+     * Passed to {@link #setMaxFramesPerSecond} to draw at most once per display vsync
+     */
+    public static final int VSYNC = 0;
+
+    /**
+     * Longest text shown per view, longer text is cut off
+     */
+    private static final int MAX_TEXT_LENGTH = 256;
+
+    /**
+     * How often the spectrum is redrawn while animating; the analysis runs once per frame
+     */
+    private static final int SPECTRUM_FPS = 15;
+
+    // share of the card above the text the spectrum may take, and its margin in pixels
+    private static final float SPECTRUM_HEIGHT = 0.5f;
+
+    private static final int SPECTRUM_MARGIN = 16;
+
+    // height of the level meter above the bars, in pixels
+    private static final int METER_HEIGHT = 6;
+
+    // range of the delay's response curve over the bars, in dB
+    private static final float RESPONSE_TOP_DB = 10;
+
+    private static final float RESPONSE_FLOOR_DB = -30;
+
+    // length of the notch ticks under the curve, in pixels
+    private static final int NOTCH_HEIGHT = 8;
+
+    private volatile SurfaceHolder surfaceHolder;
 
     private TextView title, artist, time;
 
     private View view;
 
-    private int surfaceWidth;
+    private volatile int surfaceWidth;
+
+    private volatile int surfaceHeight;
+
+    // size the view was last laid out for, render thread only
+    private int layoutWidth = -1;
+
+    private int layoutHeight = -1;
+
+    private final HandlerThread renderThread;
+
+    private final Handler renderHandler;
+
+    private Choreographer choreographer;
+
+    private volatile long frameIntervalMillis = 0;
+
+    private volatile long lastDrawMillis;
+
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+
+    private volatile SpectrumAnalyzer analyzer;
+
+    private volatile boolean animating;
+
+    // render thread only
+    private final Paint barPaint = new Paint();
+
+    private final Paint rmsPaint = new Paint();
+
+    private final Paint peakPaint = new Paint();
+
+    private final Paint responsePaint = new Paint();
+
+    // curve segments, grown to the table's size
+    private float[] responseLines = new float[0];
+
+    // text waiting for the next frame, copied in by setTextOfView under the lock; -1 when unchanged
+    private final Object pendingLock = new Object();
+
+    private final char[] pendingTitle = new char[MAX_TEXT_LENGTH];
 
-    private int surfaceHeight;
+    private final char[] pendingTime = new char[MAX_TEXT_LENGTH];
+
+    private int pendingTitleLength = -1;
+
+    private int pendingTimeLength = -1;
+
+    // the delay's response and the tone on it, also under the lock, so a frame never mixes two
+    // settings
+    private CombResponse.Table pendingResponse;
+
+    private float pendingToneHz;
+
+    // text handed to the views, render thread only; TextView keeps wrapping these arrays
+    private final char[] shownTitle = new char[MAX_TEXT_LENGTH];
+
+    private final char[] shownTime = new char[MAX_TEXT_LENGTH];
+
+    private volatile long requestedFrames;
+
+    private volatile long drawnFrames;
+
+    private final Runnable drawFrame = new Runnable() {
+        @Override
+        public void run() {
+            // clear first, so a request that arrives while drawing schedules another frame
+            frameScheduled.set(false);
+            lastDrawMillis = SystemClock.uptimeMillis();
+            applyPendingText();
+            draw();
+            if (animating && analyzer != null) {
+                scheduleFrame(Math.max(frameIntervalMillis, 1000 / SPECTRUM_FPS));
+            }
+        }
+    };
+
+    private final Choreographer.FrameCallback vsyncFrame = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            drawFrame.run();
+        }
+    };
+
+    private final Runnable waitForVsync = new Runnable() {
+        @Override
+        public void run() {
+            if (choreographer == null) {
+                // bound to the looper of the thread that asks for it
+                choreographer = Choreographer.getInstance();
+            }
+            choreographer.postFrameCallback(vsyncFrame);
+        }
+    };
 
     /**
      * Renders the current song title, album artwork, and artist of the current song
@@ -28,6 +161,16 @@ public class SoundRender implements SurfaceHolder.Callback {
         view = LayoutInflater.from(context).inflate(R.layout.card, null);
         title = (TextView) view.findViewById(R.id.title);
         time = (TextView) view.findViewById(R.id.time);
+
+        renderThread = new HandlerThread("SoundRender");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+
+        barPaint.setColor(Color.rgb(0x34, 0xa7, 0xff));
+        rmsPaint.setColor(Color.rgb(0x99, 0xcc, 0x33));
+        peakPaint.setColor(Color.WHITE);
+        responsePaint.setColor(Color.rgb(0xff, 0xbb, 0x33));
+        responsePaint.setStrokeWidth(2);
     }
 
     @Override
@@ -35,8 +178,7 @@ public class SoundRender implements SurfaceHolder.Callback {
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
         surfaceWidth = width;
         surfaceHeight = height;
-        doLayout();
-        draw();
+        requestFrame();
     }
 
     @Override
@@ -46,7 +188,75 @@ public class SoundRender implements SurfaceHolder.Callback {
 
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
-        surfaceHolder = null;
+        // waits for a frame in progress, the surface must not be touched after this returns
+        synchronized (this) {
+            surfaceHolder = null;
+        }
+    }
+
+    /**
+     * Limits how often the card is redrawn. Updates arriving faster are merged into one frame.
+     *
+     * @param fps maximum frames per second, or {@link #VSYNC} to follow the display
+     */
+    public void setMaxFramesPerSecond(int fps) {
+        frameIntervalMillis = fps > 0 ? 1000 / fps : 0;
+    }
+
+    /**
+     * Sets the analyzer whose spectrum and levels are drawn above the text, or null to draw text only
+     */
+    public void setAnalyzer(SpectrumAnalyzer analyzer) {
+        this.analyzer = analyzer;
+        requestFrame();
+    }
+
+    /**
+     * Sets the delay's response drawn over the spectrum, with a mark at the tone's frequency, or
+     * null to draw none. Main thread only; cheap enough to call for every scroll event, as frames
+     * are merged, and allocates nothing. The table is read when the frame is drawn, later, so it
+     * must not be rewritten before then; {@link CombResponse} only rewrites tables well behind its
+     * latest.
+     */
+    public void setResponse(CombResponse.Table table, double toneHz) {
+        synchronized (pendingLock) {
+            pendingResponse = table;
+            pendingToneHz = (float) toneHz;
+        }
+        requestFrame();
+    }
+
+    /**
+     * Starts or stops redrawing the spectrum at {@link #SPECTRUM_FPS}, or slower if
+     * {@link #setMaxFramesPerSecond} asks for less. Stopped, the card is only redrawn when the text
+     * changes.
+     */
+    public void setAnimating(boolean animating) {
+        this.animating = animating;
+        if (animating) {
+            requestFrame();
+        }
+    }
+
+    /**
+     * @return number of redraws asked for by {@link #setTextOfView} and surface changes
+     */
+    public long getRequestedFrames() {
+        return requestedFrames;
+    }
+
+    /**
+     * @return number of frames actually drawn
+     */
+    public long getDrawnFrames() {
+        return drawnFrames;
+    }
+
+    /**
+     * Stops the render thread. The card cannot be drawn afterwards.
+     */
+    public void release() {
+        renderThread.quit();
     }
 
     /**
@@ -57,12 +267,17 @@ public class SoundRender implements SurfaceHolder.Callback {
         int measuredHeight = View.MeasureSpec.makeMeasureSpec(surfaceHeight, View.MeasureSpec.EXACTLY);
         view.measure(measuredWidth, measuredHeight);
         view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+        layoutWidth = surfaceWidth;
+        layoutHeight = surfaceHeight;
     }
 
     /**
-     * Redraw the view to the surface
+     * Redraw the view to the surface. Runs on the render thread.
      */
     private synchronized void draw() {
+        if (surfaceHolder == null) {
+            return;
+        }
         Canvas canvas = null;
         try {
             canvas = surfaceHolder.lockCanvas();
@@ -70,30 +285,187 @@ public class SoundRender implements SurfaceHolder.Callback {
 
         }
         if (canvas != null) {
-            doLayout();
+            // the text views ask for a layout themselves when new text no longer fits
+            if (surfaceWidth != layoutWidth || surfaceHeight != layoutHeight || view.isLayoutRequested()) {
+                doLayout();
+            }
             canvas.drawColor(0, Mode.CLEAR);
+            SpectrumAnalyzer spectrum = analyzer;
+            if (spectrum != null) {
+                drawSpectrum(canvas, spectrum);
+            }
             view.draw(canvas);
             try {
                 surfaceHolder.unlockCanvasAndPost(canvas);
             } catch (RuntimeException e) {
 
             }
+            drawnFrames++;
+        }
+    }
+
+    /**
+     * Draws the bands as bars across the top of the card, with the RMS level and peak above them
+     */
+    private void drawSpectrum(Canvas canvas, SpectrumAnalyzer spectrum) {
+        spectrum.update();
+        float left = SPECTRUM_MARGIN;
+        float width = surfaceWidth - 2 * SPECTRUM_MARGIN;
+        float top = SPECTRUM_MARGIN;
+        float bottom = top + surfaceHeight * SPECTRUM_HEIGHT;
+
+        canvas.drawRect(left, top, left + width * level(spectrum.getRmsDb()), top + METER_HEIGHT, rmsPaint);
+        float peak = left + width * level(spectrum.getPeakDb());
+        canvas.drawRect(peak - 2, top, peak, top + METER_HEIGHT, peakPaint);
+
+        float barsTop = top + 2 * METER_HEIGHT;
+        float[] bands = spectrum.getBands();
+        float step = width / bands.length;
+        for (int b = 0; b < bands.length; b++) {
+            float x = left + b * step;
+            float height = (bottom - barsTop) * level(bands[b]);
+            canvas.drawRect(x + 1, bottom - height, x + step - 1, bottom, barPaint);
+        }
+
+        CombResponse.Table table;
+        float toneHz;
+        synchronized (pendingLock) {
+            table = pendingResponse;
+            toneHz = pendingToneHz;
+        }
+        if (table != null) {
+            drawResponse(canvas, table, toneHz, left, width, barsTop, bottom);
+        }
+    }
+
+    /**
+     * Draws the response as a curve on a log frequency axis, ticks under each notch and a line at
+     * the tone
+     */
+    private void drawResponse(Canvas canvas, CombResponse.Table table, float toneHz, float left, float width,
+                              float top, float bottom) {
+        int points = table.size();
+        if (responseLines.length < 4 * (points - 1)) {
+            responseLines = new float[4 * (points - 1)];
+        }
+        // the table's points are evenly spaced on the log axis
+        float step = width / (points - 1);
+        float height = bottom - top;
+        float lastY = top + height * (1 - responseLevel(table.getDb(0)));
+        for (int i = 1; i < points; i++) {
+            float y = top + height * (1 - responseLevel(table.getDb(i)));
+            int j = 4 * (i - 1);
+            responseLines[j] = left + (i - 1) * step;
+            responseLines[j + 1] = lastY;
+            responseLines[j + 2] = left + i * step;
+            responseLines[j + 3] = y;
+            lastY = y;
+        }
+        canvas.drawLines(responseLines, 0, 4 * (points - 1), responsePaint);
+
+        double minHz = table.getFrequency(0);
+        double span = Math.log(table.getFrequency(points - 1) / minHz);
+        for (int k = 0; k < table.getNotchCount(); k++) {
+            double hz = table.getNotch(k);
+            if (hz >= minHz) {
+                float x = left + width * (float) (Math.log(hz / minHz) / span);
+                canvas.drawLine(x, bottom - NOTCH_HEIGHT, x, bottom, responsePaint);
+            }
+        }
+        if (toneHz >= minHz) {
+            float x = left + width * (float) (Math.log(toneHz / minHz) / span);
+            canvas.drawLine(x, top, x, bottom, peakPaint);
         }
     }
 
     /**
-     * Set the text of the Title, Artist, and Time. Passing null as a value will result in the text not being changed
+     * @return response gain as a share of the curve's range, 0 at its floor and 1 at its top
+     */
+    private static float responseLevel(float db) {
+        float share = (db - RESPONSE_FLOOR_DB) / (RESPONSE_TOP_DB - RESPONSE_FLOOR_DB);
+        return share < 0 ? 0 : share > 1 ? 1 : share;
+    }
+
+    /**
+     * @return dB level as a share of the scale, 0 at the floor and 1 at full scale
+     */
+    private static float level(float db) {
+        float share = 1 - db / SpectrumAnalyzer.FLOOR_DB;
+        return share < 0 ? 0 : share > 1 ? 1 : share;
+    }
+
+    private void applyPendingText() {
+        int titleLength;
+        int timeLength;
+        synchronized (pendingLock) {
+            titleLength = pendingTitleLength;
+            timeLength = pendingTimeLength;
+            if (titleLength >= 0) {
+                System.arraycopy(pendingTitle, 0, shownTitle, 0, titleLength);
+            }
+            if (timeLength >= 0) {
+                System.arraycopy(pendingTime, 0, shownTime, 0, timeLength);
+            }
+            pendingTitleLength = -1;
+            pendingTimeLength = -1;
+        }
+        // the char[] overload reuses the view's wrapper instead of copying into a new String
+        if (titleLength >= 0) {
+            title.setText(shownTitle, 0, titleLength);
+        }
+        if (timeLength >= 0) {
+            time.setText(shownTime, 0, timeLength);
+        }
+    }
+
+    private static int copy(CharSequence text, char[] dest) {
+        int n = Math.min(text.length(), dest.length);
+        for (int i = 0; i < n; i++) {
+            dest[i] = text.charAt(i);
+        }
+        return n;
+    }
+
+    /**
+     * Marks the card dirty and schedules a frame, unless one is already waiting. Main thread only.
+     */
+    private void requestFrame() {
+        requestedFrames++;
+        scheduleFrame(frameIntervalMillis);
+    }
+
+    /**
+     * Schedules a frame at least {@code interval} after the last one, unless one is already waiting
+     *
+     * @param interval milliseconds, or 0 to wait for the next vsync
+     */
+    private void scheduleFrame(long interval) {
+        if (!frameScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (interval > 0) {
+            renderHandler.postAtTime(drawFrame, Math.max(SystemClock.uptimeMillis(), lastDrawMillis + interval));
+        } else {
+            renderHandler.post(waitForVsync);
+        }
+    }
+
+    /**
+     * Set the text of the Title, Artist, and Time. Passing null as a value will result in the text not being changed.
+     * The text is copied, so a reused buffer may be changed again as soon as this returns.
      *
      * @param title
      * @param time
      */
-    public void setTextOfView(String title, String time) {
-        if (title != null) {
-            this.title.setText(title);
-        }
-        if (time != null) {
-            this.time.setText(time);
+    public void setTextOfView(CharSequence title, CharSequence time) {
+        synchronized (pendingLock) {
+            if (title != null) {
+                pendingTitleLength = copy(title, pendingTitle);
+            }
+            if (time != null) {
+                pendingTimeLength = copy(time, pendingTime);
+            }
         }
-        draw();
+        requestFrame();
     }
 }
@@ -6,14 +6,52 @@ import android.content.Intent;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
-import android.os.AsyncTask;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.google.android.glass.timeline.LiveCard;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rit.audio.AudioSink;
+import edu.rit.audio.AudioSource;
+import edu.rit.audio.Biquad;
+import edu.rit.audio.BufferedSink;
+import edu.rit.audio.CombResponse;
+import edu.rit.audio.EffectChain;
+import edu.rit.audio.EffectSource;
+import edu.rit.audio.FloatSource;
+import edu.rit.audio.Gain;
+import edu.rit.audio.Limiter;
+import edu.rit.audio.PcmConverter;
+import edu.rit.audio.PcmFileSource;
+import edu.rit.audio.RenderLoop;
+import edu.rit.audio.Resampler;
+import edu.rit.audio.ScrolledSetting;
+import edu.rit.audio.SequencePlayer;
+import edu.rit.audio.SessionMixer;
+import edu.rit.audio.SpectrumAnalyzer;
+import edu.rit.audio.StatusFormatter;
+import edu.rit.audio.StreamConfig;
+import edu.rit.audio.ToneGenerator;
+import edu.rit.audio.ToneSequence;
+import edu.rit.audio.VoiceBank;
+import edu.rit.audio.Waveform;
+import edu.rit.audio.Warmup;
+import edu.rit.audio.WaveformCache;
+import edu.rit.audio.WorkerGroup;
+
 public class SoundService extends Service {
+    private static final String TAG = "SoundService";
     private final String CARD_ID = "my_music_card";
     private final IBinder binder = new LocalBinder();
     private LiveCard liveCard;
@@ -21,26 +59,125 @@ public class SoundService extends Service {
     private boolean paused = true;
     private SoundRender render;
 
-    private int duration = 1; // seconds
+    // rate the tone is rendered at; delays are counted in samples at this rate
     private int sampleRate = 8000;
-    private final int numSamples = duration * sampleRate;
-    private final double sample[] = new double[numSamples];
-    private final double sample2[] = new double[numSamples];
-    private final byte generatedSnd[] = new byte[2 * numSamples];
+    // rate and layout of the AudioTrack; the tone is resampled when the rates differ
+    private int outputRate = 8000;
+    private int channelCount = 1;
+    public static final int MIN_SAMPLE_RATE = 8000;
+    public static final int MAX_SAMPLE_RATE = 48000;
+    // small blocks sized for the target latency; false plays one second blocks as before
+    private static final boolean STREAMING = true;
+    private static final double TARGET_LATENCY_MILLIS = 40;
+    private StreamConfig streamConfig;
     private AudioTrack audioTrack;
+    // blocks rendered ahead of the AudioTrack into a ring drained by a thread of its own, so a slow
+    // block does not stall output; 0 writes to the track from the render thread. They are part of
+    // the latency target, not added to it
+    private static final int RENDER_AHEAD_BLOCKS = 4;
+    private AudioSink sink;
+    private PcmConverter converter;
+    private AudioSource source;
+
+    // the track and render thread wait for the first play; meanwhile a throwaway engine renders
+    // this much in the background so the first real blocks run compiled
+    private static final double WARMUP_SECONDS = 1;
+    private volatile long warmupNanos = -1;
+    // how the latest play started, for MetricsSnapshot; main thread only
+    private boolean lastPlayCold;
+    private boolean lastPlayWarmedUp;
+    private long outputStartNanos;
+    private RenderLoop renderLoop;
+    private ToneGenerator generator;
+    private SequencePlayer player;
+
+    // the card's tone and every client's, mixed on the render thread and its workers
+    private SessionMixer mixer;
+    private WorkerGroup mixerWorkers;
+    private final List<ToneSession> sessions = new ArrayList<ToneSession>();
+    private SessionMixer.Session<SequencePlayer> toneSession;
+
+    // volume, an equalizer band and a limiter on the whole mix, off until a client turns them on;
+    // settings carry over when the engine is rebuilt
+    private static final double EQ_FREQUENCY = 1000;
+    private static final double EQ_Q = 0.7071;
+    private static final double LIMITER_CEILING = 1;
+    private static final double LIMITER_RELEASE_MILLIS = 50;
+    private EffectSource effects;
+    private Gain volume;
+    private Biquad equalizer;
+    private Limiter limiter;
+
+    // a recording played in place of the card's tone, with the same delayed copy; the position
+    // carries over when the engine is rebuilt
+    private static final double FILE_DELAY_GAIN = 0.5;
+    private File file;
+    private long filePosition;
+    private PcmFileSource fileSource;
+    private SessionMixer.Session<FloatSource> fileSession;
+
+    // fixed settings play from cached PCM loops; 0 turns the cache off
+    private static final long CACHE_BUDGET_BYTES = 2 * 1024 * 1024;
+    private WaveformCache cache;
+
+    // spectrum and level of the output, drawn on the card while playing
+    private static final int ANALYZER_FFT_SIZE = 1024;
+    private static final int ANALYZER_BANDS = 32;
+    private SpectrumAnalyzer analyzer;
+
+    // the delay's response drawn over the spectrum and its predicted level in the status, for
+    // the card's tone, for a recording with its delayed copy, and for a recording played dry;
+    // main thread only, so scrolling never touches the render thread
+    private static final int RESPONSE_POINTS = 128;
+    private static final int RESPONSE_TABLES = 64;
+    private CombResponse toneResponse;
+    private CombResponse fileResponse;
+    private CombResponse dryResponse;
 
     private double freqOfTone = 500; // hz
-    private int delay = 0; // sample
+    private double delay = 0; // sample, may be fractional
+
+    // the two above as scrolled, held on the cache's grid while there is a cache
+    private final ScrolledSetting frequencySetting =
+            new ScrolledSetting(MIN_FREQUENCY_VALUE, MAX_FREQUENCY_VALUE, freqOfTone);
+    private final ScrolledSetting delaySetting = new ScrolledSetting(MIN_DELAY_VALUE, MAX_DELAY_VALUE, delay);
+    private Waveform waveform = Waveform.SINE;
+    // status line names, by Waveform ordinal
+    private static final String[] WAVEFORM_NAMES = {"sine", "square", "saw", "triangle"};
+
+    // scripted test runs, cycled through by nextSequence; 0 is none
+    private static final String[] SEQUENCE_NAMES = {null, "log sweep", "tone ladder", "delay scan"};
+    private static final double SWEEP_SECONDS = 20;
+    private static final int LADDER_STEPS = 13;
+    private static final double LADDER_STEP_SECONDS = 1;
+    private static final double SCAN_SECONDS = 20;
+    private int sequenceIndex;
+    private final Runnable sequenceEnded = new Runnable() {
+        @Override
+        public void run() {
+            if (player != null && player.getPlaying() == null) {
+                sequenceIndex = 0;
+                if (render != null) {
+                    showStatus();
+                }
+            }
+        }
+    };
 
     public static final int MIN_FREQUENCY_VALUE = 100;
     public static final int MAX_FREQUENCY_VALUE = 4000;
     public static final int MIN_DELAY_VALUE = 0;
     public static final int MAX_DELAY_VALUE = 441;
 
-    private String playStatus = "|| Paused";
+    // main thread only, read into MetricsSnapshot
+    private long createdMillis;
+    private long frequencyUpdates;
+    private long delayUpdates;
+    private long updateErrors;
+    private String lastUpdateError;
 
-    private AudioControlTask audioControlTask = null;
-    private AudioUpdateTask audioUpdateTask = null;
+    private String playStatus = "|| Paused";
+    private final StatusFormatter status = new StatusFormatter(128);
 
     @Override
     public IBinder onBind(Intent intent) {
@@ -50,11 +187,415 @@ public class SoundService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        createdMillis = SystemClock.uptimeMillis();
+        startEngine();
+    }
+
+    /**
+     * Builds the generator and the stages after it for the current format. The output track and
+     * render thread are left for {@link #startOutput}, which runs on the first play.
+     */
+    private void startEngine() {
+        int channelMask = channelMask();
+        if (STREAMING) {
+            int minBufferBytes = AudioTrack.getMinBufferSize(outputRate, channelMask,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            streamConfig = StreamConfig.forLatency(outputRate, TARGET_LATENCY_MILLIS,
+                    minBufferBytes / (2 * channelCount), RENDER_AHEAD_BLOCKS);
+        } else {
+            streamConfig = StreamConfig.wholeSecond(outputRate);
+        }
+        generator = new ToneGenerator(sampleRate, MAX_DELAY_VALUE, streamConfig.getBlockFrames(), freqOfTone);
+        generator.setDelay(delay);
+        generator.setWaveform(waveform);
+        player = new SequencePlayer(generator);
+        sequenceIndex = 0;
+
+        mixerWorkers = WorkerGroup.forAvailableCores("Mixer");
+        mixer = new SessionMixer(sampleRate, streamConfig.getBlockFrames(), mixerWorkers);
+        // the card's tone alone plays at full level, more sessions share it
+        mixer.setHeadroom(VoiceBank.Headroom.PEAK);
+        toneSession = mixer.open(player);
+        for (ToneSession session : sessions) {
+            session.attach(mixer, MAX_DELAY_VALUE, streamConfig.getBlockFrames());
+        }
+        if (file != null) {
+            try {
+                openFile();
+            } catch (IOException e) {
+                Log.w(TAG, "could not reopen " + file, e);
+                file = null;
+            }
+        }
 
+        // tone, harmonic and delayed copy add up past full scale, so round off the peaks
+        converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        buildEffects();
+        source = effects;
+        if (sampleRate != outputRate) {
+            source = new Resampler(effects, sampleRate, outputRate, streamConfig.getBlockFrames());
+        } else if (CACHE_BUDGET_BYTES > 0) {
+            // cached loops are PCM at the track's rate, so only usable without resampling, and they
+            // are only passed on while the card's tone plays alone with the effects off
+            cache = new WaveformCache(sampleRate, CACHE_BUDGET_BYTES, new ToneGenerator.LoopRenderer(sampleRate),
+                    new PcmConverter(converter.getClip(), converter.isDither()));
+            generator.setCache(cache);
+        }
+        // fine scrolls would otherwise leave the setting between loops, always rendered live
+        frequencySetting.setSteps(cache != null ? WaveformCache.FREQUENCY_STEPS : 0);
+        delaySetting.setSteps(cache != null ? WaveformCache.DELAY_STEPS : 0);
+        freqOfTone = frequencySetting.get();
+        delay = delaySetting.get();
+        generator.setFrequency(freqOfTone);
+        generator.setDelay(delay);
+        analyzer = new SpectrumAnalyzer(outputRate, ANALYZER_FFT_SIZE, ANALYZER_BANDS);
+        toneResponse = newResponse(0, 1, 1);
+        fileResponse = newResponse(1, FILE_DELAY_GAIN, 0);
+        dryResponse = newResponse(1, 0, 0);
+        if (render != null) {
+            render.setAnalyzer(analyzer);
+            showResponse();
+        }
+
+        if (paused) {
+            startWarmup();
+        } else {
+            // rebuilt while playing, which counts as a cold start without the warm-up
+            lastPlayCold = true;
+            lastPlayWarmedUp = false;
+            long start = System.nanoTime();
+            startOutput();
+            outputStartNanos = System.nanoTime() - start;
+            renderLoop.play();
+        }
+    }
+
+    /**
+     * Puts the effect chain after the mixer, with the settings of the last one if there was one
+     */
+    private void buildEffects() {
+        Gain nextVolume = new Gain(volume != null ? volume.getGain() : 1);
+        Biquad nextEqualizer = equalizer != null
+                ? new Biquad(sampleRate, equalizer.getType(), Math.min(equalizer.getFrequency(), sampleRate * 0.45),
+                        equalizer.getQ(), equalizer.getGainDb())
+                : new Biquad(sampleRate, Biquad.Type.PEAK, EQ_FREQUENCY, EQ_Q, 0);
+        Limiter nextLimiter = limiter != null
+                ? new Limiter(sampleRate, limiter.getCeiling(), limiter.getReleaseMillis())
+                : new Limiter(sampleRate, LIMITER_CEILING, LIMITER_RELEASE_MILLIS);
+        EffectChain chain = new EffectChain.Builder()
+                .add(nextVolume)
+                .add(nextEqualizer)
+                .add(nextLimiter)
+                .build();
+        boolean bypassed = effects == null || effects.isBypassed();
+        effects = new EffectSource(mixer, chain, streamConfig.getBlockFrames());
+        effects.setBypassed(bypassed);
+        volume = nextVolume;
+        equalizer = nextEqualizer;
+        limiter = nextLimiter;
+    }
+
+    /**
+     * @param enabled true to run the whole mix through the volume, equalizer and limiter
+     */
+    public void setEffectsEnabled(boolean enabled) {
+        effects.setBypassed(!enabled);
+    }
+
+    public boolean isEffectsEnabled() {
+        return !effects.isBypassed();
+    }
+
+    /**
+     * @return the mix's volume, which clients may change from the main thread
+     */
+    public Gain getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return the mix's equalizer band, a 0 dB peak at 1 kHz to start with
+     */
+    public Biquad getEqualizer() {
+        return equalizer;
+    }
+
+    public Limiter getLimiter() {
+        return limiter;
+    }
+
+    private int channelMask() {
+        return channelCount == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+    }
+
+    /**
+     * Renders a moment of audio on a background thread, nothing is played
+     */
+    private void startWarmup() {
+        final int engineRate = sampleRate;
+        final int trackRate = outputRate;
+        final int blockFrames = streamConfig.getBlockFrames();
+        final PcmConverter warmupConverter = new PcmConverter(converter.getClip(), converter.isDither());
+        Thread warmup = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmupNanos = Warmup.run(engineRate, trackRate, blockFrames, warmupConverter, WARMUP_SECONDS);
+            }
+        }, "Warmup");
+        warmup.setPriority(Thread.MIN_PRIORITY);
+        warmup.start();
+    }
+
+    /**
+     * Creates the output track and starts the render thread, paused
+     */
+    private void startOutput() {
+        int channelMask = channelMask();
         audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC,
-                8000, AudioFormat.CHANNEL_OUT_MONO,
-                AudioFormat.ENCODING_PCM_16BIT, numSamples,
+                outputRate, channelMask,
+                AudioFormat.ENCODING_PCM_16BIT, 2 * channelCount * streamConfig.getBufferFrames(),
                 AudioTrack.MODE_STREAM);
+
+        sink = new AudioTrackSink(audioTrack);
+        if (streamConfig.getAheadBlocks() > 0) {
+            sink = new BufferedSink(sink, streamConfig.getAheadFrames(), streamConfig.getBlockFrames());
+        }
+        renderLoop = new RenderLoop(source, sink, streamConfig.getBlockFrames());
+        // the track's sink raises the thread that writes to it, which with a BufferedSink is not
+        // this one
+        renderLoop.setOnStart(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            }
+        });
+        renderLoop.setPcmConverter(converter);
+        renderLoop.setTap(analyzer);
+        renderLoop.start();
+    }
+
+    private void stopEngine() {
+        if (renderLoop != null) {
+            renderLoop.quit();
+            renderLoop = null;
+        }
+
+        if (cache != null) {
+            cache.shutdown();
+            cache = null;
+        }
+
+        for (ToneSession session : sessions) {
+            session.detach();
+        }
+        closeFile();
+        if (mixerWorkers != null) {
+            mixerWorkers.shutdown();
+            mixerWorkers = null;
+        }
+
+        if (sink != null) {
+            // releases the track, after stopping the output thread if there is one
+            sink.release();
+            sink = null;
+            audioTrack = null;
+        }
+    }
+
+    /**
+     * Starts a tone of the caller's own, mixed with the card's tone and any other sessions. It
+     * plays and pauses with the card's tone and lasts until closed, across changes of output
+     * format.
+     *
+     * @param frequency starting frequency in Hz
+     */
+    public ToneSession openSession(double frequency) {
+        ToneSession session = new ToneSession(this, frequency);
+        sessions.add(session);
+        session.attach(mixer, MAX_DELAY_VALUE, streamConfig.getBlockFrames());
+        return session;
+    }
+
+    /**
+     * @param mixed the session's place in the mixer, null while there is no engine
+     */
+    void closeSession(ToneSession session, SessionMixer.Session<ToneGenerator> mixed) {
+        sessions.remove(session);
+        if (mixed != null) {
+            mixer.close(mixed);
+        }
+    }
+
+    /**
+     * @return client sessions open now, not counting the card's tone
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Plays a 16 bit WAV or raw PCM recording in a loop in place of the card's tone, with the
+     * delayed copy at the current delay. Raw files are taken to be mono at the rendering rate.
+     */
+    public void playFile(File file) throws IOException {
+        stopFile();
+        this.file = file;
+        filePosition = 0;
+        try {
+            openFile();
+        } catch (IOException e) {
+            this.file = null;
+            throw e;
+        }
+        showFileChange();
+    }
+
+    /**
+     * Stops the recording and brings back the card's tone
+     */
+    public void stopFile() {
+        closeFile();
+        file = null;
+        showFileChange();
+    }
+
+    /**
+     * Switches the card between the tone's response and level and the recording's
+     */
+    private void showFileChange() {
+        if (render != null) {
+            showResponse();
+            showStatus();
+        }
+    }
+
+    /**
+     * @return the recording playing, or null
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private void openFile() throws IOException {
+        int blockFrames = streamConfig.getBlockFrames();
+        fileSource = PcmFileSource.open(file, sampleRate, blockFrames);
+        if (filePosition > 0 && filePosition < fileSource.getLengthFrames()) {
+            fileSource.seek(filePosition);
+        }
+        applyFileDelay();
+        FloatSource source = fileSource;
+        if (fileSource.getSampleRate() != sampleRate) {
+            source = new Resampler(fileSource, fileSource.getSampleRate(), sampleRate, blockFrames);
+        }
+        fileSession = mixer.open(source);
+        toneSession.setMuted(true);
+    }
+
+    private void closeFile() {
+        if (fileSource == null) {
+            return;
+        }
+        filePosition = fileSource.getPosition();
+        mixer.close(fileSession);
+        toneSession.setMuted(false);
+        try {
+            fileSource.close();
+        } catch (IOException e) {
+            Log.w(TAG, "could not close " + file, e);
+        }
+        fileSource = null;
+        fileSession = null;
+    }
+
+    private CombResponse newResponse(double dry, double wet, double harmonic) {
+        return new CombResponse(sampleRate, dry, wet, harmonic, MIN_FREQUENCY_VALUE,
+                Math.min(MAX_FREQUENCY_VALUE, sampleRate / 2), RESPONSE_POINTS, RESPONSE_TABLES);
+    }
+
+    /**
+     * @return response of whatever is playing, at the current delay
+     */
+    private CombResponse currentResponse() {
+        if (fileSource == null) {
+            return toneResponse;
+        }
+        return delay > 0 ? fileResponse : dryResponse;
+    }
+
+    /**
+     * Hands the response for the current delay to the card; a table a step or two from the last
+     * is rotated from it rather than computed
+     */
+    private void showResponse() {
+        render.setResponse(currentResponse().getTable(delay), freqOfTone);
+    }
+
+    /**
+     * Gives the recording the card's delay, converted to its own rate; no delay plays it dry
+     */
+    private void applyFileDelay() {
+        if (fileSource != null) {
+            fileSource.setDelay(delay * fileSource.getSampleRate() / sampleRate);
+            fileSource.setDelayGain(delay > 0 ? FILE_DELAY_GAIN : 0);
+        }
+    }
+
+    /**
+     * Changes the rendering rate and output layout, rebuilding the engine. Playback carries on if
+     * it was playing.
+     *
+     * @param sampleRate      rate to render the tone at, {@link #MIN_SAMPLE_RATE} to
+     *                        {@link #MAX_SAMPLE_RATE}
+     * @param channels        1 for mono, 2 for stereo
+     * @param matchNativeRate true to resample to the device's native output rate, false to output
+     *                        at the rendering rate
+     */
+    public void setOutputFormat(int sampleRate, int channels, boolean matchNativeRate) {
+        if (sampleRate < MIN_SAMPLE_RATE || sampleRate > MAX_SAMPLE_RATE) {
+            throw new IllegalArgumentException("sample rate must be " + MIN_SAMPLE_RATE + " to "
+                    + MAX_SAMPLE_RATE + ": " + sampleRate);
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("channels must be 1 or 2: " + channels);
+        }
+        stopEngine();
+        this.sampleRate = sampleRate;
+        this.channelCount = channels;
+        this.outputRate = matchNativeRate
+                ? AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC) : sampleRate;
+        startEngine();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getOutputSampleRate() {
+        return outputRate;
+    }
+
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Copies the playback, update and drawing counters; render counts start again whenever the
+     * engine is rebuilt. Main thread only.
+     */
+    public MetricsSnapshot getMetrics() {
+        return new MetricsSnapshot(SystemClock.uptimeMillis() - createdMillis, sampleRate, outputRate,
+                streamConfig.getBlockFrames(), sessions.size(), renderLoop,
+                sink instanceof BufferedSink ? ((BufferedSink) sink).getRing() : null,
+                warmupNanos, lastPlayCold, lastPlayWarmedUp, outputStartNanos,
+                frequencyUpdates, delayUpdates, updateErrors, lastUpdateError, render);
+    }
+
+    /**
+     * Prints the metrics for {@code adb shell dumpsys activity service SoundService}
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.print(getMetrics());
     }
 
     @Override
@@ -67,12 +608,15 @@ public class SoundService extends Service {
             liveCard.setAction(PendingIntent.getActivity(this, 0, soundIntent, 0));
 
             render = new SoundRender(getApplicationContext());
+            render.setAnalyzer(analyzer);
+            render.setAnimating(!isPaused());
+            showResponse();
             if (isPaused())
                 playStatus = "|| Paused";
             else
                 playStatus = "|> Playing";
 
-            render.setTextOfView(playStatus + "\nfrequency: " + freqOfTone + " Hz\ndelay: " + delay + " sample(s)", null);
+            showStatus();
 
             liveCard.setDirectRenderingEnabled(true).getSurfaceHolder().addCallback(render);
 
@@ -92,18 +636,14 @@ public class SoundService extends Service {
             liveCard = null;
         }
 
-        if (audioControlTask != null) {
-            audioControlTask.cancel(true);
-            audioControlTask = null;
-        }
+        handler.removeCallbacks(sequenceEnded);
 
-        if (audioUpdateTask != null) {
-            audioUpdateTask.cancel(true);
-            audioUpdateTask = null;
+        if (render != null) {
+            render.release();
+            render = null;
         }
 
-        if (audioTrack != null)
-            audioTrack.release();
+        stopEngine();
 
         super.onDestroy();
     }
@@ -113,7 +653,7 @@ public class SoundService extends Service {
     }
 
     public int getCurrentDelay() {
-        return delay;
+        return (int) delay;
     }
 
     /**
@@ -129,22 +669,12 @@ public class SoundService extends Service {
     public void pauseMusic() {
         if (!paused) {
             paused = true;
-            audioTrack.pause();
-
-            if (audioControlTask != null) {
-                audioControlTask.cancel(true);
-                audioControlTask = null;
-            }
-
-            if (audioUpdateTask != null) {
-                audioUpdateTask.cancel(true);
-                audioUpdateTask = null;
-            }
+            renderLoop.pause();
+            render.setAnimating(false);
 
             playStatus = "|| Paused";
 
-            render.setTextOfView(playStatus +
-                            "\nfrequency: " + freqOfTone + " Hz\ndelay: " + delay + " sample(s)", null);
+            showStatus();
         }
     }
 
@@ -155,14 +685,86 @@ public class SoundService extends Service {
         if (paused) {
             playStatus = "|> Playing";
 
-            render.setTextOfView(playStatus +
-                            "\nfrequency: " + freqOfTone + " Hz\ndelay: " + delay + " sample(s)", null);
+            showStatus();
             paused = false;
-
-            if (audioUpdateTask == null) {
-                audioUpdateTask = new AudioUpdateTask();
-                audioUpdateTask.execute();
+            lastPlayCold = renderLoop == null;
+            lastPlayWarmedUp = warmupNanos >= 0;
+            if (lastPlayCold) {
+                long start = System.nanoTime();
+                startOutput();
+                outputStartNanos = System.nanoTime() - start;
             }
+            renderLoop.play();
+            render.setAnimating(true);
+        }
+    }
+
+    /**
+     * @return the scripted test run playing, or null
+     */
+    public String getSequenceName() {
+        return SEQUENCE_NAMES[sequenceIndex];
+    }
+
+    /**
+     * Starts the next scripted test run: a log sweep over the frequency range, a ladder of steady
+     * tones, a delay scan at the current frequency, then back to manual control. Changing any
+     * setting by hand also ends the run.
+     */
+    public void nextSequence() {
+        sequenceIndex = (sequenceIndex + 1) % SEQUENCE_NAMES.length;
+        ToneSequence sequence = null;
+        switch (sequenceIndex) {
+            case 1:
+                sequence = ToneSequence.logSweep(sampleRate, MIN_FREQUENCY_VALUE, MAX_FREQUENCY_VALUE, delay,
+                        SWEEP_SECONDS);
+                break;
+            case 2:
+                sequence = ToneSequence.ladder(sampleRate, MIN_FREQUENCY_VALUE, MAX_FREQUENCY_VALUE, LADDER_STEPS,
+                        delay, LADDER_STEP_SECONDS);
+                break;
+            case 3:
+                sequence = ToneSequence.delayScan(sampleRate, freqOfTone, MIN_DELAY_VALUE, MAX_DELAY_VALUE,
+                        SCAN_SECONDS);
+                break;
+        }
+        handler.removeCallbacks(sequenceEnded);
+        if (sequence != null) {
+            player.play(sequence);
+            handler.postDelayed(sequenceEnded, sequence.getLengthFrames() * 1000 / sampleRate + 100);
+        } else {
+            player.stop();
+        }
+        if (render != null) {
+            showStatus();
+        }
+    }
+
+    /**
+     * Hands control back from a scripted run to the user
+     */
+    private void stopSequence() {
+        if (sequenceIndex != 0) {
+            sequenceIndex = 0;
+            handler.removeCallbacks(sequenceEnded);
+            player.stop();
+        }
+    }
+
+    public Waveform getWaveform() {
+        return waveform;
+    }
+
+    /**
+     * Switches to the next test waveform: sine, square, saw, triangle, then sine again
+     */
+    public void nextWaveform() {
+        Waveform[] waveforms = Waveform.values();
+        waveform = waveforms[(waveform.ordinal() + 1) % waveforms.length];
+        stopSequence();
+        generator.setWaveform(waveform);
+        if (render != null) {
+            showStatus();
         }
     }
 
@@ -171,15 +773,15 @@ public class SoundService extends Service {
      */
     public void updateFrequency(double delta) {
         try {
-            freqOfTone += delta;
-            if (freqOfTone <= MIN_FREQUENCY_VALUE)
-                freqOfTone = MIN_FREQUENCY_VALUE;
-            else if (freqOfTone >= MAX_FREQUENCY_VALUE)
-                freqOfTone = MAX_FREQUENCY_VALUE;
-            render.setTextOfView(playStatus + "\nfrequency: " + freqOfTone + " Hz\ndelay: " + delay + " sample(s)",
-                    null);
+            freqOfTone = frequencySetting.scroll(delta);
+            stopSequence();
+            generator.setFrequency(freqOfTone);
+            prefetch(freqOfTone, delta, delay, 0);
+            showResponse();
+            showStatus();
+            frequencyUpdates++;
         } catch (Exception e) {
-
+            updateFailed(e);
         }
     }
 
@@ -188,38 +790,59 @@ public class SoundService extends Service {
      */
     public void updateDelay(double delta) {
         try {
-            delay += delta/10;
-            if (delay <= MIN_DELAY_VALUE)
-                delay = MIN_DELAY_VALUE;
-            else if (delay >= MAX_DELAY_VALUE)
-                delay = MAX_DELAY_VALUE;
-            render.setTextOfView(playStatus + "\nfrequency: " + freqOfTone + " Hz\ndelay: " + delay + " sample(s)",
-                    null);
+            delay = delaySetting.scroll(delta / 10);
+            stopSequence();
+            generator.setDelay(delay);
+            applyFileDelay();
+            prefetch(freqOfTone, 0, delay, delta / 10);
+            showResponse();
+            showStatus();
+            delayUpdates++;
         } catch (Exception e) {
-
+            updateFailed(e);
         }
     }
 
-    private void genTone() {
-        for (int i = 0; i < numSamples; ++i) {
-            //  float angular_frequency =
-            sample[i] = Math.sin(2 * Math.PI * i / (sampleRate / freqOfTone));
+    /**
+     * Keeps a failed update out of the user's way, but counted and logged
+     */
+    private void updateFailed(Exception e) {
+        updateErrors++;
+        lastUpdateError = e.toString();
+        Log.w(TAG, "parameter update failed", e);
+    }
 
-            if (i + delay + 1 > numSamples)
-                sample2[i] = Math.sin(2 * Math.PI * i/ (sampleRate / (freqOfTone*2)));
-            else
-                sample2[i] = Math.sin(2 * Math.PI * i/ (sampleRate / (freqOfTone*2)))+sample[i+delay];
+    /**
+     * Shows the play state, frequency, delay, predicted level, waveform and any scripted run on
+     * the live card without allocating
+     */
+    private void showStatus() {
+        CombResponse response = currentResponse();
+        status.clear()
+                .append(playStatus)
+                .append("\nfrequency: ").appendFixed(freqOfTone, 1)
+                .append(" Hz\ndelay: ").appendFixed(delay, 1)
+                .append(" sample(s)\nlevel: ").appendFixed(response.getLevelDb(freqOfTone, delay), 1)
+                .append(" dB, peak ").appendFixed(response.getPeakDb(freqOfTone, delay), 1)
+                .append(" dB\n").append(WAVEFORM_NAMES[waveform.ordinal()]);
+        if (sequenceIndex != 0) {
+            status.append(", ").append(SEQUENCE_NAMES[sequenceIndex]);
         }
-        int idx = 0;
+        render.setTextOfView(status, null);
+    }
 
-        // convert to 16 bit pcm sound array
-        // assumes the sample buffer is normalised.
-        for (double dVal : sample2) {
-            short val = (short) (dVal * 32767);
-            generatedSnd[idx++] = (byte) (val & 0x00ff);
-            generatedSnd[idx++] = (byte) ((val & 0xff00) >>> 8);
+    /**
+     * Asks the cache for the current setting and the next two the scroll is heading for
+     */
+    private void prefetch(double frequency, double frequencyStep, double delay, double delayStep) {
+        if (cache == null) {
+            return;
+        }
+        for (int i = 2; i >= 0; i--) {
+            double f = Math.max(MIN_FREQUENCY_VALUE, Math.min(MAX_FREQUENCY_VALUE, frequency + i * frequencyStep));
+            double d = Math.max(MIN_DELAY_VALUE, Math.min(MAX_DELAY_VALUE, delay + i * delayStep));
+            cache.prefetch(f, d);
         }
-        audioTrack.write(generatedSnd, 0, numSamples);
     }
 
     /**
@@ -246,53 +869,37 @@ public class SoundService extends Service {
         SoundService getService() {
             return SoundService.this;
         }
-    }
-
-
-    private class AudioUpdateTask extends AsyncTask<Integer, Void, Void> {
 
-        @Override
-        protected Void doInBackground(Integer... params) {
-            genTone();
-
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void v) {
-            audioControlTask = new AudioControlTask();
-            audioControlTask.execute();
+        /**
+         * @return the service's counters as of now, see {@link MetricsSnapshot#toString()} for a dump
+         */
+        public MetricsSnapshot getMetrics() {
+            return SoundService.this.getMetrics();
         }
 
-        @Override
-        protected void onCancelled() {
-            if (audioControlTask != null) {
-                audioControlTask.cancel(true);
-                audioControlTask = null;
-            }
+        /**
+         * Turns the volume, equalizer and limiter on the whole mix on or off
+         */
+        public void setEffectsEnabled(boolean enabled) {
+            SoundService.this.setEffectsEnabled(enabled);
         }
-    }
-
-    private class AudioControlTask extends AsyncTask<Integer, Void, Void> {
-        @Override
-        protected Void doInBackground(Integer... params) {
-            int playState = audioTrack.getPlayState();
-            if (playState == AudioTrack.PLAYSTATE_PAUSED ||
-                    playState == AudioTrack.PLAYSTATE_STOPPED)
-                audioTrack.play();
 
-            return null;
+        /**
+         * Plays a recording in place of the card's tone, see {@link SoundService#playFile}
+         */
+        public void playFile(File file) throws IOException {
+            SoundService.this.playFile(file);
         }
 
-        @Override
-        protected void onPostExecute(Void v) {
-            audioUpdateTask = new AudioUpdateTask();
-            audioUpdateTask.execute();
+        public void stopFile() {
+            SoundService.this.stopFile();
         }
 
-        @Override
-        protected void onCancelled() {
-            audioTrack.pause();
+        /**
+         * Starts a tone of the caller's own, see {@link SoundService#openSession}
+         */
+        public ToneSession openSession(double frequency) {
+            return SoundService.this.openSession(frequency);
         }
     }
 }
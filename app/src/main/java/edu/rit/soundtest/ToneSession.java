@@ -0,0 +1,134 @@
+package edu.rit.soundtest;
+
+import edu.rit.audio.SessionMixer;
+import edu.rit.audio.ToneGenerator;
+import edu.rit.audio.Waveform;
+
+/**
+ * A tone of a client's own, mixed with the card's tone and every other client's. Settings are
+ * kept here, so the session carries on when the service rebuilds its engine for a new output
+ * format. Main thread only, like the service.
+ */
+public final class ToneSession {
+    private final SoundService service;
+    private double frequency;
+    private double delay;
+    private Waveform waveform = Waveform.SINE;
+    private double gain = 1;
+    private boolean muted;
+    private boolean closed;
+
+    // null while the service has no engine
+    private SessionMixer.Session<ToneGenerator> session;
+
+    ToneSession(SoundService service, double frequency) {
+        this.service = service;
+        this.frequency = clampFrequency(frequency);
+    }
+
+    /**
+     * Starts a generator for the current settings in {@code mixer}
+     */
+    void attach(SessionMixer mixer, int maxDelay, int blockFrames) {
+        ToneGenerator generator = new ToneGenerator(mixer.getSampleRate(), maxDelay, blockFrames, frequency);
+        generator.setDelay(delay);
+        generator.setWaveform(waveform);
+        session = mixer.open(generator, gain);
+        session.setMuted(muted);
+    }
+
+    /**
+     * Forgets the generator, whose mixer is going away
+     */
+    void detach() {
+        session = null;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @param hz clamped to {@link SoundService#MIN_FREQUENCY_VALUE} to
+     *           {@link SoundService#MAX_FREQUENCY_VALUE}
+     */
+    public void setFrequency(double hz) {
+        frequency = clampFrequency(hz);
+        if (session != null) {
+            session.getSource().setFrequency(frequency);
+        }
+    }
+
+    public double getDelay() {
+        return delay;
+    }
+
+    /**
+     * @param samples clamped to {@link SoundService#MIN_DELAY_VALUE} to
+     *                {@link SoundService#MAX_DELAY_VALUE}
+     */
+    public void setDelay(double samples) {
+        delay = Math.max(SoundService.MIN_DELAY_VALUE, Math.min(SoundService.MAX_DELAY_VALUE, samples));
+        if (session != null) {
+            session.getSource().setDelay(delay);
+        }
+    }
+
+    public Waveform getWaveform() {
+        return waveform;
+    }
+
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+        if (session != null) {
+            session.getSource().setWaveform(waveform);
+        }
+    }
+
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * @param gain linear gain, 1 for unity; the mix as a whole is scaled down to leave headroom
+     */
+    public void setGain(double gain) {
+        if (!(gain >= 0)) {
+            throw new IllegalArgumentException("gain must not be negative: " + gain);
+        }
+        this.gain = gain;
+        if (session != null) {
+            session.setGain(gain);
+        }
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+        if (session != null) {
+            session.setMuted(muted);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Fades the tone out and ends the session. Closing it again does nothing.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            service.closeSession(this, session);
+            session = null;
+        }
+    }
+
+    private static double clampFrequency(double hz) {
+        return Math.max(SoundService.MIN_FREQUENCY_VALUE, Math.min(SoundService.MAX_FREQUENCY_VALUE, hz));
+    }
+}
@@ -0,0 +1,56 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One delay scroll event on the card: the response table and the status line's level and peak.
+ * scrolled steps a tenth of a sample at a time, so each table is rotated from the last; jumped
+ * moves further than that, so each is computed; cached comes back over the same few delays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CombResponseBenchmark {
+
+    private final CombResponse response = new CombResponse(8000, 1, 0.5, 0, 100, 4000, 128, 64);
+    private int step;
+
+    @Benchmark
+    public CombResponse.Table scrolled() {
+        return response.getTable(next(4410) * 0.1);
+    }
+
+    @Benchmark
+    public CombResponse.Table jumped() {
+        return response.getTable(next(4410 / 11) * 1.1);
+    }
+
+    @Benchmark
+    public CombResponse.Table cached() {
+        return response.getTable(next(16) * 0.1);
+    }
+
+    @Benchmark
+    public double level() {
+        double delay = next(4410) * 0.1;
+        return response.getLevelDb(500, delay) + response.getPeakDb(500, delay);
+    }
+
+    private int next(int limit) {
+        step = (step + 1) % limit;
+        return step;
+    }
+}
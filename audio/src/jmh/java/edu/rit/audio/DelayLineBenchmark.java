@@ -0,0 +1,68 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block through a delay line. The time per block should not change with maxDelay.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DelayLineBenchmark {
+
+    @Param({"LINEAR", "LAGRANGE", "ALLPASS"})
+    public DelayLine.Interpolation interpolation;
+
+    @Param({"441", "48000"})
+    public int maxDelay;
+
+    @Param({"256"})
+    public int blockFrames;
+
+    private DelayLine delayLine;
+    private double[] in;
+    private double[] out;
+    private double delay;
+
+    @Setup
+    public void setUp() {
+        delayLine = new DelayLine(maxDelay, interpolation);
+        delayLine.setRampLength(160);
+        in = new double[blockFrames];
+        out = new double[blockFrames];
+        for (int i = 0; i < blockFrames; i++) {
+            in[i] = Math.sin(0.39 * i);
+        }
+    }
+
+    @Benchmark
+    public double[] steady() {
+        delayLine.setDelay(maxDelay * 0.7 + 0.25);
+        delayLine.process(in, 0, out, 0, blockFrames);
+        return out;
+    }
+
+    @Benchmark
+    public double[] ramping() {
+        // a new target every block keeps the line ramping all the time
+        delay = delay > maxDelay / 2 ? 0.5 : delay + 3.7;
+        delayLine.setDelay(delay);
+        delayLine.process(in, 0, out, 0, blockFrames);
+        return out;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block through a high pass, gain, soft clip, gain and limiter: as a built chain, with the
+ * three sample stages fused into one pass, and stage by stage, one pass each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EffectChainBenchmark {
+
+    @Param({"256", "4096"})
+    public int blockFrames;
+
+    private Effect[] fusedStages;
+    private Effect[] separateStages;
+    private EffectChain chain;
+    private float[] block;
+
+    @Setup
+    public void setUp() {
+        fusedStages = stages();
+        separateStages = stages();
+        EffectChain.Builder builder = new EffectChain.Builder();
+        for (Effect stage : fusedStages) {
+            builder.add(stage);
+        }
+        chain = builder.build();
+        block = new float[blockFrames];
+        for (int i = 0; i < blockFrames; i++) {
+            block[i] = (float) (0.5 * Math.sin(2 * Math.PI * 500 * i / 8000.0));
+        }
+    }
+
+    private static Effect[] stages() {
+        return new Effect[]{
+                new Biquad(8000, Biquad.Type.HIGHPASS, 80, 0.7071, 0),
+                new Gain(1.5),
+                new SoftClip(1),
+                new Gain(0.7),
+                new Limiter(8000, 0.9, 50)
+        };
+    }
+
+    @Benchmark
+    public float[] fused() {
+        chain.process(block, 0, blockFrames);
+        return block;
+    }
+
+    @Benchmark
+    public float[] separate() {
+        for (Effect stage : separateStages) {
+            stage.process(block, 0, blockFrames);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,78 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to fill one SoundService buffer (tone, second harmonic and delayed mix). LEGACY is the
+ * original genTone loop with three Math.sin calls per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OscillatorBenchmark {
+
+    @Param({"LEGACY", "WAVETABLE_LINEAR", "WAVETABLE_CUBIC", "RECURSIVE", "REFERENCE"})
+    public String backend;
+
+    @Param({"8000"})
+    public int numSamples;
+
+    @Param({"20"})
+    public int delay;
+
+    private final int sampleRate = 8000;
+    private final double freqOfTone = 500;
+
+    private double[] sample;
+    private double[] sample2;
+    private Oscillator tone;
+    private Oscillator harmonic;
+
+    @Setup
+    public void setUp() {
+        sample = new double[numSamples];
+        sample2 = new double[numSamples];
+        if (!"LEGACY".equals(backend)) {
+            tone = Oscillator.create(Oscillator.Type.valueOf(backend), sampleRate);
+            harmonic = Oscillator.create(Oscillator.Type.valueOf(backend), sampleRate);
+        }
+    }
+
+    @Benchmark
+    public double[] genTone() {
+        if (tone == null) {
+            for (int i = 0; i < numSamples; ++i) {
+                sample[i] = Math.sin(2 * Math.PI * i / (sampleRate / freqOfTone));
+
+                if (i + delay + 1 > numSamples)
+                    sample2[i] = Math.sin(2 * Math.PI * i / (sampleRate / (freqOfTone * 2)));
+                else
+                    sample2[i] = Math.sin(2 * Math.PI * i / (sampleRate / (freqOfTone * 2))) + sample[i + delay];
+            }
+            return sample2;
+        }
+        tone.setFrequency(freqOfTone);
+        harmonic.setFrequency(freqOfTone * 2);
+        tone.render(sample, 0, numSamples);
+        harmonic.render(sample2, 0, numSamples);
+        for (int i = 0; i + delay < numSamples; ++i) {
+            sample2[i] += sample[i + delay];
+        }
+        return sample2;
+    }
+}
@@ -0,0 +1,112 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Double to 16 bit PCM conversion. legacy is the original genTone packing loop, which wraps
+ * instead of clipping.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmConverterBenchmark {
+
+    @Param({"256", "8000"})
+    public int length;
+
+    private double[] samples;
+    private float[] floats;
+    private short[] shorts;
+    private byte[] bytes;
+    private ByteBuffer direct;
+    private final PcmConverter saturate = new PcmConverter(PcmConverter.Clip.SATURATE, false);
+    private final PcmConverter soft = new PcmConverter(PcmConverter.Clip.SOFT, false);
+    private final PcmConverter dither = new PcmConverter(PcmConverter.Clip.SATURATE, true);
+
+    @Setup
+    public void setUp() {
+        samples = new double[length];
+        for (int i = 0; i < length; i++) {
+            // tone plus harmonic plus delayed copy, peaking past full scale like genTone
+            samples[i] = Math.sin(0.39 * i) + Math.sin(0.78 * i) + Math.sin(0.39 * (i + 20));
+        }
+        floats = new float[length];
+        for (int i = 0; i < length; i++) {
+            floats[i] = (float) samples[i];
+        }
+        shorts = new short[length];
+        bytes = new byte[2 * length];
+        direct = ByteBuffer.allocateDirect(2 * length).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public byte[] legacy() {
+        int idx = 0;
+        for (double dVal : samples) {
+            short val = (short) (dVal * 32767);
+            bytes[idx++] = (byte) (val & 0x00ff);
+            bytes[idx++] = (byte) ((val & 0xff00) >>> 8);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public short[] shortsSaturate() {
+        saturate.toShorts(samples, 0, shorts, 0, length);
+        return shorts;
+    }
+
+    @Benchmark
+    public short[] shortsSoft() {
+        soft.toShorts(samples, 0, shorts, 0, length);
+        return shorts;
+    }
+
+    @Benchmark
+    public short[] shortsDither() {
+        dither.toShorts(samples, 0, shorts, 0, length);
+        return shorts;
+    }
+
+    @Benchmark
+    public short[] floatShortsSaturate() {
+        saturate.toShorts(floats, 0, shorts, 0, length);
+        return shorts;
+    }
+
+    @Benchmark
+    public short[] floatShortsSoft() {
+        soft.toShorts(floats, 0, shorts, 0, length);
+        return shorts;
+    }
+
+    @Benchmark
+    public byte[] bytesSaturate() {
+        saturate.toBytes(samples, 0, bytes, 0, length);
+        return bytes;
+    }
+
+    @Benchmark
+    public ByteBuffer directSaturate() {
+        direct.clear();
+        saturate.toBuffer(samples, 0, direct, length);
+        return direct;
+    }
+}
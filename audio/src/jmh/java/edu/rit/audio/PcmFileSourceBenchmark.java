@@ -0,0 +1,82 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block from a file several windows long, looping, so window changes are part of the average.
+ * The PCM path is a bulk copy from the mapping; the float path converts, and adds the delayed copy
+ * when {@code delayGain} is set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmFileSourceBenchmark {
+
+    @Param({"256"})
+    public int blockFrames;
+
+    @Param({"0", "0.5"})
+    public double delayGain;
+
+    private File file;
+    private PcmFileSource source;
+    private short[] pcm;
+    private float[] out;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("bench", ".wav");
+        PcmFileWriter writer = new PcmFileWriter(file, 16000, true, 16384);
+        short[] block = new short[16000];
+        for (int second = 0; second < 60; second++) {
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (short) (8000 * Math.sin(2 * Math.PI * 441 * i / 16000.0) + second);
+            }
+            writer.write(block, 0, block.length);
+        }
+        writer.close();
+        source = PcmFileSource.openWav(file, blockFrames);
+        source.setDelay(300);
+        source.setDelayGain(delayGain);
+        pcm = new short[blockFrames];
+        out = new float[blockFrames];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        source.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public short[] pcm() {
+        if (!source.renderPcm(pcm, 0, blockFrames)) {
+            pcm[0] = 1;
+        }
+        return pcm;
+    }
+
+    @Benchmark
+    public float[] render() {
+        source.render(out, 0, blockFrames);
+        return out;
+    }
+}
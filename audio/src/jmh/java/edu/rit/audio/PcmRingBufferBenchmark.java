@@ -0,0 +1,64 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A block through the ring and out again, in ns per sample, against a plain copy of the block.
+ * One thread does both sides, so this is the cost of the copies and index bookkeeping without the
+ * cache traffic between cores that the padding is there to limit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmRingBufferBenchmark {
+
+    static final int SAMPLES = 8192;
+
+    @Param({"64", "256", "1024"})
+    public int blockFrames;
+
+    private final PcmRingBuffer ring = new PcmRingBuffer(4096);
+    private short[] in;
+    private short[] out;
+
+    @Setup
+    public void setUp() {
+        in = new short[blockFrames];
+        out = new short[blockFrames];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public short[] ring() {
+        for (int i = 0; i < SAMPLES; i += blockFrames) {
+            ring.put(in, 0, blockFrames);
+            ring.get(out, 0, blockFrames);
+        }
+        return out;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public short[] copy() {
+        for (int i = 0; i < SAMPLES; i += blockFrames) {
+            System.arraycopy(in, 0, out, 0, blockFrames);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,57 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The tone engine resampled to a typical native output rate, in ns per output sample. The engine's
+ * own cost at the input rate is included, as it is on the device.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResamplerBenchmark {
+
+    static final int SAMPLES = 8192;
+
+    @Param({"8000:48000", "8000:44100", "22050:48000", "48000:48000"})
+    public String rates;
+
+    private FloatSource source;
+    private final float[] block = new float[256];
+
+    @Setup
+    public void setUp() {
+        String[] pair = rates.split(":");
+        int inputRate = Integer.parseInt(pair[0]);
+        int outputRate = Integer.parseInt(pair[1]);
+        ToneGenerator generator = new ToneGenerator(inputRate, 441, block.length, 500);
+        generator.setDelay(20.5);
+        source = inputRate == outputRate ? generator
+                : new Resampler(generator, inputRate, outputRate, block.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] render() {
+        for (int done = 0; done < SAMPLES; done += block.length) {
+            source.render(block, 0, block.length);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,80 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One block of a mix of full tone sessions. A 256 frame block lasts 32 ms at 8 kHz, so the number
+ * of sessions that fit in real time is about 32 ms over the time per op times the session count.
+ * Every other session is gliding, as a client scrolling through frequencies would be.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionMixerBenchmark {
+
+    @Param({"1", "16", "64", "256"})
+    public int sessions;
+
+    @Param({"256"})
+    public int blockFrames;
+
+    /**
+     * Extra render threads, 0 renders on the calling thread only
+     */
+    @Param({"0", "3"})
+    public int workers;
+
+    private WorkerGroup group;
+    private SessionMixer mixer;
+    private ToneGenerator[] generators;
+    private float[] out;
+    private long blocks;
+
+    @Setup
+    public void setUp() {
+        group = workers > 0 ? new WorkerGroup("bench", workers) : null;
+        mixer = new SessionMixer(8000, blockFrames, group);
+        mixer.setHeadroom(VoiceBank.Headroom.PEAK);
+        generators = new ToneGenerator[sessions];
+        for (int s = 0; s < sessions; s++) {
+            generators[s] = new ToneGenerator(8000, 441, blockFrames, 100 + 37 * s % 3900);
+            generators[s].setDelay(s % 441);
+            mixer.open(generators[s], 1.0 / (1 + s % 4));
+        }
+        out = new float[blockFrames];
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (group != null) {
+            group.shutdown();
+        }
+    }
+
+    @Benchmark
+    public float[] mix() {
+        if (blocks++ % 8 == 0) {
+            for (int s = 0; s < sessions; s += 2) {
+                generators[s].setFrequency(100 + (blocks + 37 * s) % 3900);
+            }
+        }
+        mixer.render(out, 0, blockFrames);
+        return out;
+    }
+}
@@ -0,0 +1,60 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the analyzer on each side: the render thread's copy of one block, in ns, and one display
+ * frame of analysis, in us. Neither should allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectrumAnalyzerBenchmark {
+
+    static final int BLOCK_FRAMES = 256;
+
+    @Param({"512", "1024", "4096"})
+    public int fftSize;
+
+    private SpectrumAnalyzer analyzer;
+    private final short[] block = new short[BLOCK_FRAMES];
+
+    @Setup
+    public void setUp() {
+        analyzer = new SpectrumAnalyzer(8000, fftSize, 32);
+        for (int i = 0; i < BLOCK_FRAMES; i++) {
+            block[i] = (short) (16000 * Math.sin(2 * Math.PI * 440 * i / 8000));
+        }
+        for (int i = 0; i < fftSize; i += BLOCK_FRAMES) {
+            analyzer.onBlock(block, 0, BLOCK_FRAMES);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void tap() {
+        analyzer.onBlock(block, 0, BLOCK_FRAMES);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean frame() {
+        // one new block per frame, so every update analyses
+        analyzer.onBlock(block, 0, BLOCK_FRAMES);
+        return analyzer.update();
+    }
+}
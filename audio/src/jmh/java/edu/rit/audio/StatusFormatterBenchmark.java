@@ -0,0 +1,53 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One live card status line. legacy is the original String concatenation; run with -prof gc to
+ * compare bytes allocated per update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatusFormatterBenchmark {
+
+    private final StatusFormatter status = new StatusFormatter(64);
+    private double freqOfTone = 500;
+    private double delay = 20.5;
+
+    @Benchmark
+    public String legacy() {
+        step();
+        return "|> Playing" + "\nfrequency: " + freqOfTone + " Hz" + "\ndelay: " + delay + " sample(s)";
+    }
+
+    @Benchmark
+    public CharSequence formatter() {
+        step();
+        return status.clear()
+                .append("|> Playing")
+                .append("\nfrequency: ").appendFixed(freqOfTone, 1)
+                .append(" Hz\ndelay: ").appendFixed(delay, 1)
+                .append(" sample(s)");
+    }
+
+    private void step() {
+        freqOfTone += 0.1;
+        if (freqOfTone > 4000) {
+            freqOfTone = 100;
+        }
+    }
+}
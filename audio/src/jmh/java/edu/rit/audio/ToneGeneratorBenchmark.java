@@ -0,0 +1,143 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SoundService engine stages at several sample rates and block sizes. Every invocation
+ * processes {@link #SAMPLES} samples in blocks of blockFrames, so scores are in ns per sample;
+ * run with -prof gc for the bytes allocated per sample (gc.alloc.rate.norm), which should be 0.
+ * Each stage runs in the float pipeline and in the double reference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ToneGeneratorBenchmark {
+
+    static final int SAMPLES = 8192;
+
+    @Param({"8000", "22050", "48000"})
+    public int sampleRate;
+
+    @Param({"64", "256", "1024"})
+    public int blockFrames;
+
+    @Param({"FLOAT", "DOUBLE"})
+    public SampleType sampleType;
+
+    private ToneGenerator generator;
+    private DelayLine delayLine;
+    private final PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+    private double[] block;
+    private double[] tone;
+    private float[] floatBlock;
+    private float[] floatTone;
+    private short[] pcm;
+    private boolean up;
+
+    @Setup
+    public void setUp() {
+        generator = new ToneGenerator(sampleRate, 441, blockFrames, 500, sampleType);
+        generator.setDelay(20.5);
+        delayLine = new DelayLine(441, DelayLine.Interpolation.LAGRANGE);
+        delayLine.setDelay(20.5);
+        block = new double[blockFrames];
+        tone = new double[blockFrames];
+        floatBlock = new float[blockFrames];
+        floatTone = new float[blockFrames];
+        pcm = new short[blockFrames];
+        for (int i = 0; i < blockFrames; i++) {
+            tone[i] = Math.sin(2 * Math.PI * 500 * i / sampleRate);
+            block[i] = Math.sin(2 * Math.PI * 1000 * i / sampleRate) + tone[i];
+            floatTone[i] = (float) tone[i];
+            floatBlock[i] = (float) block[i];
+        }
+    }
+
+    /**
+     * Tone, harmonic and delayed copy at a fixed setting
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public Object steady() {
+        if (sampleType == SampleType.FLOAT) {
+            for (int done = 0; done < SAMPLES; done += blockFrames) {
+                generator.render(floatBlock, 0, blockFrames);
+            }
+            return floatBlock;
+        }
+        for (int done = 0; done < SAMPLES; done += blockFrames) {
+            generator.render(block, 0, blockFrames);
+        }
+        return block;
+    }
+
+    /**
+     * As steady, but the frequency and delay change every invocation, as while scrolling
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public Object gliding() {
+        up = !up;
+        generator.setFrequency(up ? 2000 : 500);
+        generator.setDelay(up ? 100.5 : 20.5);
+        return steady();
+    }
+
+    /**
+     * The delay stage alone: the tone through the delay line, added to the output
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public Object delayMix() {
+        if (sampleType == SampleType.FLOAT) {
+            for (int done = 0; done < SAMPLES; done += blockFrames) {
+                delayLine.process(floatTone, 0, floatBlock, 0, blockFrames);
+                for (int i = 0; i < blockFrames; i++) {
+                    floatBlock[i] += floatTone[i];
+                }
+            }
+            return floatBlock;
+        }
+        for (int done = 0; done < SAMPLES; done += blockFrames) {
+            delayLine.process(tone, 0, block, 0, blockFrames);
+            for (int i = 0; i < blockFrames; i++) {
+                block[i] += tone[i];
+            }
+        }
+        return block;
+    }
+
+    /**
+     * The soft clipping float to 16 bit PCM conversion SoundService uses
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public short[] toPcm() {
+        if (sampleType == SampleType.FLOAT) {
+            for (int done = 0; done < SAMPLES; done += blockFrames) {
+                converter.toShorts(floatBlock, 0, pcm, 0, blockFrames);
+            }
+            return pcm;
+        }
+        for (int done = 0; done < SAMPLES; done += blockFrames) {
+            converter.toShorts(block, 0, pcm, 0, blockFrames);
+        }
+        return pcm;
+    }
+}
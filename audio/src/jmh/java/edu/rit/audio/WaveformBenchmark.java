@@ -0,0 +1,53 @@
+package edu.rit.audio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each test waveform in ns per sample, against the cubic wavetable sine. Higher frequencies put
+ * more samples next to a discontinuity, where PolyBLEP does its extra work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WaveformBenchmark {
+
+    static final int SAMPLES = 8192;
+
+    @Param({"SINE", "SQUARE", "SAW", "TRIANGLE"})
+    public Waveform waveform;
+
+    @Param({"440", "3000"})
+    public double frequency;
+
+    private Oscillator oscillator;
+    private final float[] block = new float[SAMPLES];
+
+    @Setup
+    public void setUp() {
+        oscillator = Oscillator.create(waveform, 8000);
+        oscillator.setFrequency(frequency);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public float[] render() {
+        oscillator.render(block, 0, SAMPLES);
+        return block;
+    }
+}
@@ -0,0 +1,33 @@
+package edu.rit.audio;
+
+/**
+ * Where rendered 16 bit PCM goes, normally an AudioTrack. All methods are called from the render
+ * thread only.
+ */
+public interface AudioSink {
+
+    int getSampleRate();
+
+    /**
+     * @return interleaved channels per frame, 1 for mono, 2 for stereo
+     */
+    int getChannelCount();
+
+    void play();
+
+    void pause();
+
+    /**
+     * Queues interleaved samples for output, blocking while the sink's buffer is full
+     *
+     * @return number of samples accepted, a whole number of frames
+     */
+    int write(short[] data, int offset, int length);
+
+    /**
+     * @return number of frames played since the sink was created
+     */
+    long getPlaybackPosition();
+
+    void release();
+}
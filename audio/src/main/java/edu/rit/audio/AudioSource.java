@@ -0,0 +1,12 @@
+package edu.rit.audio;
+
+/**
+ * Produces audio one block at a time. Called only from the render thread.
+ */
+public interface AudioSource {
+
+    /**
+     * Writes the next {@code frames} samples to {@code out}, nominally in [-1, 1]
+     */
+    void render(double[] out, int offset, int frames);
+}
@@ -0,0 +1,131 @@
+package edu.rit.audio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Parameter changes at fixed times, for rendering a scripted run of the tone. Times are converted
+ * to sample frames once, so events land on the same sample however the run is split into blocks.
+ * <p>
+ * The script is one event per line, {@code <seconds> <parameter> <value>}, e.g.
+ * <pre>
+ * # glide up with a growing delay
+ * 0    frequency 500
+ * 0    delay     0
+ * 1.5  frequency 2000
+ * 2.25 delay     20.5
+ * 4    end
+ * </pre>
+ * Blank lines and text after {@code #} are ignored. {@code end} takes no value and sets the length
+ * of the run; without it the run ends one second after the last event.
+ */
+public final class Automation {
+
+    public enum Parameter {
+        FREQUENCY, DELAY
+    }
+
+    private final long[] frames;
+    private final Parameter[] parameters;
+    private final double[] values;
+    private final long lengthFrames;
+
+    private Automation(long[] frames, Parameter[] parameters, double[] values, long lengthFrames) {
+        this.frames = frames;
+        this.parameters = parameters;
+        this.values = values;
+        this.lengthFrames = lengthFrames;
+    }
+
+    /**
+     * Reads a script
+     *
+     * @throws IllegalArgumentException naming the line, if a line cannot be parsed
+     */
+    public static Automation parse(Reader script, int sampleRate) throws IOException {
+        final List<double[]> events = new ArrayList<double[]>();
+        double end = -1;
+        BufferedReader in = new BufferedReader(script);
+        String line;
+        for (int number = 1; (line = in.readLine()) != null; number++) {
+            int comment = line.indexOf('#');
+            String[] words = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (words.length == 1 && words[0].isEmpty()) {
+                continue;
+            }
+            try {
+                double seconds = Double.parseDouble(words[0]);
+                if (seconds < 0 || words.length < 2) {
+                    throw new IllegalArgumentException();
+                }
+                String name = words[1].toUpperCase(Locale.US);
+                if (name.equals("END") && words.length == 2) {
+                    end = seconds;
+                } else if (words.length == 3) {
+                    double value = Double.parseDouble(words[2]);
+                    events.add(new double[]{seconds, Parameter.valueOf(name).ordinal(), value});
+                } else {
+                    throw new IllegalArgumentException();
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("automation line " + number + ": " + line);
+            }
+        }
+
+        // by time; the sort is stable, so events at the same time keep their script order
+        Collections.sort(events, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                return Double.compare(a[0], b[0]);
+            }
+        });
+        long[] frames = new long[events.size()];
+        Parameter[] parameters = new Parameter[events.size()];
+        double[] values = new double[events.size()];
+        for (int i = 0; i < frames.length; i++) {
+            double[] event = events.get(i);
+            frames[i] = Math.round(event[0] * sampleRate);
+            parameters[i] = Parameter.values()[(int) event[1]];
+            values[i] = event[2];
+        }
+        if (end < 0) {
+            end = (events.isEmpty() ? 0 : events.get(events.size() - 1)[0]) + 1;
+        }
+        return new Automation(frames, parameters, values, Math.round(end * sampleRate));
+    }
+
+    /**
+     * @return number of events
+     */
+    public int size() {
+        return frames.length;
+    }
+
+    /**
+     * @return frame the event takes effect on
+     */
+    public long getFrame(int event) {
+        return frames[event];
+    }
+
+    public Parameter getParameter(int event) {
+        return parameters[event];
+    }
+
+    public double getValue(int event) {
+        return values[event];
+    }
+
+    /**
+     * @return length of the whole run in frames
+     */
+    public long getLengthFrames() {
+        return lengthFrames;
+    }
+}
@@ -0,0 +1,241 @@
+package edu.rit.audio;
+
+/**
+ * Second order IIR filter with the usual equalizer responses, from the coefficient formulas in
+ * Robert Bristow-Johnson's Audio EQ Cookbook. Runs in direct form I with double state, which
+ * stays accurate for low frequencies at high sample rates and takes a change of coefficients
+ * without a jump. Everything but the last feedback term is summed off the critical path, so a
+ * sample waits on the one before it for a single multiply and add.
+ * <p>
+ * The coefficients are worked out on the thread that changes the response and handed over as one
+ * set; the render thread takes them up at the next block. Settings may be changed from one thread
+ * at a time.
+ */
+public final class Biquad implements Effect {
+
+    public enum Type {
+        LOWPASS,
+        HIGHPASS,
+        /** Constant 0 dB peak gain */
+        BANDPASS,
+        NOTCH,
+        /** Boost or cut around the frequency */
+        PEAK,
+        LOW_SHELF,
+        HIGH_SHELF
+    }
+
+    // slots in the control surface
+    private static final int B0 = 0;
+    private static final int B1 = 1;
+    private static final int B2 = 2;
+    private static final int A1 = 3;
+    private static final int A2 = 4;
+
+    private final int sampleRate;
+    private final ControlSurface controls = new ControlSurface(5);
+    // writer thread only
+    private final double[] next = new double[5];
+    private Type type;
+    private double frequency;
+    private double q;
+    private double gainDb;
+
+    // render thread only
+    private final double[] coefficients = new double[5];
+    private long renderVersion = -1;
+    private double x1;
+    private double x2;
+    private double y1;
+    private double y2;
+
+    /**
+     * @param frequency corner or centre frequency in Hz, below half the sample rate
+     * @param q         quality factor; 0.7071 gives a Butterworth low or high pass
+     * @param gainDb    boost or cut for {@link Type#PEAK} and the shelves, ignored otherwise
+     */
+    public Biquad(int sampleRate, Type type, double frequency, double q, double gainDb) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        set(type, frequency, q, gainDb);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    public double getQ() {
+        return q;
+    }
+
+    public double getGainDb() {
+        return gainDb;
+    }
+
+    /**
+     * Changes the whole response at once
+     */
+    public void set(Type type, double frequency, double q, double gainDb) {
+        if (!(frequency > 0 && frequency < sampleRate / 2.0)) {
+            throw new IllegalArgumentException("frequency must be between 0 and " + sampleRate / 2 + " Hz: "
+                    + frequency);
+        }
+        if (!(q > 0)) {
+            throw new IllegalArgumentException("q must be positive: " + q);
+        }
+        this.type = type;
+        this.frequency = frequency;
+        this.q = q;
+        this.gainDb = gainDb;
+        design(next, type, 2 * Math.PI * frequency / sampleRate, q, gainDb);
+        controls.setAll(next);
+    }
+
+    public void setFrequency(double frequency) {
+        set(type, frequency, q, gainDb);
+    }
+
+    public void setGainDb(double gainDb) {
+        set(type, frequency, q, gainDb);
+    }
+
+    /**
+     * @return gain of the current response at {@code hz}, in dB; writer thread only
+     */
+    public double getResponseDb(double hz) {
+        double[] c = new double[5];
+        design(c, type, 2 * Math.PI * frequency / sampleRate, q, gainDb);
+        double w = 2 * Math.PI * hz / sampleRate;
+        double cos1 = Math.cos(w);
+        double sin1 = Math.sin(w);
+        double cos2 = Math.cos(2 * w);
+        double sin2 = Math.sin(2 * w);
+        double numRe = c[B0] + c[B1] * cos1 + c[B2] * cos2;
+        double numIm = -c[B1] * sin1 - c[B2] * sin2;
+        double denRe = 1 + c[A1] * cos1 + c[A2] * cos2;
+        double denIm = -c[A1] * sin1 - c[A2] * sin2;
+        return 10 * Math.log10((numRe * numRe + numIm * numIm) / (denRe * denRe + denIm * denIm));
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        long version = controls.getVersion();
+        if (version != renderVersion) {
+            renderVersion = controls.snapshot(coefficients);
+        }
+        final double b0 = coefficients[B0], b1 = coefficients[B1], b2 = coefficients[B2];
+        final double a1 = coefficients[A1], a2 = coefficients[A2];
+        double xa = x1;
+        double xb = x2;
+        double ya = y1;
+        double yb = y2;
+        for (int i = offset; i < offset + frames; i++) {
+            double x = buffer[i];
+            double partial = b0 * x + b1 * xa + b2 * xb - a2 * yb;
+            double y = partial - a1 * ya;
+            xb = xa;
+            xa = x;
+            yb = ya;
+            ya = y;
+            buffer[i] = (float) y;
+        }
+        x1 = xa;
+        x2 = xb;
+        // let a decaying tail reach zero rather than crawl through denormals
+        y1 = Math.abs(ya) < 1e-30 ? 0 : ya;
+        y2 = Math.abs(yb) < 1e-30 ? 0 : yb;
+    }
+
+    @Override
+    public void reset() {
+        x1 = 0;
+        x2 = 0;
+        y1 = 0;
+        y2 = 0;
+    }
+
+    /**
+     * Cookbook coefficients, normalised so a0 is 1
+     */
+    private static void design(double[] c, Type type, double w0, double q, double gainDb) {
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double a = Math.pow(10, gainDb / 40);
+        double b0, b1, b2, a0, a1, a2;
+        switch (type) {
+            case LOWPASS:
+                b0 = (1 - cos) / 2;
+                b1 = 1 - cos;
+                b2 = (1 - cos) / 2;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case HIGHPASS:
+                b0 = (1 + cos) / 2;
+                b1 = -(1 + cos);
+                b2 = (1 + cos) / 2;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case BANDPASS:
+                b0 = alpha;
+                b1 = 0;
+                b2 = -alpha;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case NOTCH:
+                b0 = 1;
+                b1 = -2 * cos;
+                b2 = 1;
+                a0 = 1 + alpha;
+                a1 = -2 * cos;
+                a2 = 1 - alpha;
+                break;
+            case PEAK:
+                b0 = 1 + alpha * a;
+                b1 = -2 * cos;
+                b2 = 1 - alpha * a;
+                a0 = 1 + alpha / a;
+                a1 = -2 * cos;
+                a2 = 1 - alpha / a;
+                break;
+            case LOW_SHELF: {
+                double root = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) - (a - 1) * cos + root);
+                b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                b2 = a * ((a + 1) - (a - 1) * cos - root);
+                a0 = (a + 1) + (a - 1) * cos + root;
+                a1 = -2 * ((a - 1) + (a + 1) * cos);
+                a2 = (a + 1) + (a - 1) * cos - root;
+                break;
+            }
+            case HIGH_SHELF: {
+                double root = 2 * Math.sqrt(a) * alpha;
+                b0 = a * ((a + 1) + (a - 1) * cos + root);
+                b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                b2 = a * ((a + 1) + (a - 1) * cos - root);
+                a0 = (a + 1) - (a - 1) * cos + root;
+                a1 = 2 * ((a - 1) - (a + 1) * cos);
+                a2 = (a + 1) - (a - 1) * cos - root;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown type " + type);
+        }
+        c[B0] = b0 / a0;
+        c[B1] = b1 / a0;
+        c[B2] = b2 / a0;
+        c[A1] = a1 / a0;
+        c[A2] = a2 / a0;
+    }
+}
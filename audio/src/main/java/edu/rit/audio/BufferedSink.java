@@ -0,0 +1,212 @@
+package edu.rit.audio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts a {@link PcmRingBuffer} and a thread of its own between the render loop and another sink,
+ * so rendering and output no longer wait on each other block by block. Writes go into the ring and
+ * only block once the render thread is a whole ring ahead; the output thread moves blocks from the
+ * ring to the real sink and is the only thread that touches it.
+ * <p>
+ * The ring's watermarks do the waking: when the output thread drains it to a quarter, a parked
+ * render thread carries on, and after an underrun the output thread waits for the ring to refill
+ * to half before it starts again, rather than trickling out a sample at a time.
+ * <p>
+ * Like any sink, all methods are called from the render thread only. The real sink's play is
+ * called on the output thread, which is where a sink that raises its thread's priority does so;
+ * the render thread needs raising separately, e.g. through {@link RenderLoop#setOnStart}.
+ */
+public class BufferedSink implements AudioSink, PcmRingBuffer.Listener {
+    private final AudioSink out;
+    private final int channels;
+    private final PcmRingBuffer ring;
+    private final short[] block;
+    private final long blockNanos;
+
+    private volatile Thread producer;
+    private volatile Thread consumer;
+    private volatile boolean playing;
+    private volatile boolean running = true;
+    private volatile long position;
+    // written by the output thread, read by the render thread as the ring fills
+    private volatile boolean priming = true;
+
+    // output thread only
+    private boolean outPlaying;
+
+    /**
+     * @param out         sink the output thread writes to
+     * @param aheadFrames frames the render thread may run ahead of the output thread, rounded up so
+     *                    the ring is a power of two
+     * @param blockFrames frames the output thread moves per write
+     */
+    public BufferedSink(AudioSink out, int aheadFrames, int blockFrames) {
+        if (aheadFrames < 2 * blockFrames || blockFrames <= 0) {
+            throw new IllegalArgumentException("aheadFrames must be at least two blocks: " + aheadFrames
+                    + " < 2 * " + blockFrames);
+        }
+        this.out = out;
+        channels = out.getChannelCount();
+        ring = new PcmRingBuffer(aheadFrames * channels);
+        if (ring.getCapacity() % channels != 0) {
+            throw new IllegalArgumentException("channel count must divide a power of two: " + channels);
+        }
+        ring.setWatermarks(ring.getCapacity() / 4, ring.getCapacity() / 2, this);
+        block = new short[blockFrames * channels];
+        blockNanos = blockFrames * 1000000000L / out.getSampleRate();
+    }
+
+    /**
+     * @return the ring between the threads, for its fill level and counters
+     */
+    public PcmRingBuffer getRing() {
+        return ring;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return out.getSampleRate();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    @Override
+    public void play() {
+        if (consumer == null) {
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "BufferedSink");
+            t.setPriority(Thread.MAX_PRIORITY);
+            consumer = t;
+            t.start();
+        }
+        playing = true;
+        LockSupport.unpark(consumer);
+    }
+
+    @Override
+    public void pause() {
+        // what is already in the ring plays first when playback resumes
+        playing = false;
+    }
+
+    /**
+     * Queues samples in the ring, parking while it is full and the output thread is playing
+     */
+    @Override
+    public int write(short[] data, int offset, int length) {
+        int accepted = 0;
+        while (accepted < length) {
+            int n = ring.put(data, offset + accepted, length - accepted);
+            accepted += n;
+            if (n == 0) {
+                if (!playing) {
+                    break;
+                }
+                producer = Thread.currentThread();
+                // the output thread may have drained the ring before it saw producer set
+                if (ring.size() > ring.getLowWatermark()) {
+                    LockSupport.parkNanos(this, 4 * blockNanos);
+                }
+                producer = null;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * @return frames played by the real sink, as of its last write
+     */
+    @Override
+    public long getPlaybackPosition() {
+        return position;
+    }
+
+    /**
+     * Stops the output thread and releases the real sink
+     */
+    @Override
+    public void release() {
+        running = false;
+        Thread t = consumer;
+        if (t != null) {
+            LockSupport.unpark(t);
+            boolean interrupted = false;
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        out.release();
+    }
+
+    @Override
+    public void onHighWatermark(PcmRingBuffer ring) {
+        // enough buffered to start again after an underrun
+        Thread t = consumer;
+        if (priming && t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void onLowWatermark(PcmRingBuffer ring) {
+        Thread t = producer;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            if (playing != outPlaying) {
+                outPlaying = playing;
+                if (outPlaying) {
+                    out.play();
+                } else {
+                    out.pause();
+                }
+            }
+            if (!outPlaying) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (priming) {
+                if (ring.size() < ring.getHighWatermark()) {
+                    LockSupport.parkNanos(this, blockNanos);
+                    continue;
+                }
+                priming = false;
+            }
+            int n = ring.get(block, 0, block.length);
+            if (n < block.length) {
+                priming = true;
+            }
+            int offset = 0;
+            while (offset < n) {
+                int written = out.write(block, offset, n - offset);
+                if (written <= 0) {
+                    break;
+                }
+                offset += written;
+            }
+            position = out.getPlaybackPosition();
+        }
+        if (outPlaying) {
+            out.pause();
+            outPlaying = false;
+        }
+    }
+}
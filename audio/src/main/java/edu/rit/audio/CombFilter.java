@@ -0,0 +1,152 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * Comb filter with both a feedforward and a feedback path through the same delay:
+ * {@code y[n] = x[n] + feedforward * x[n - d] + feedback * y[n - d]}. Feedforward alone is the
+ * tone's delayed copy, notching every odd multiple of half the delay's frequency; feedback alone
+ * rings at multiples of it, like an echo.
+ * <p>
+ * The delay may be fractional and is read with linear interpolation. A new delay is ramped across
+ * the next block, and the histories are powers of two indexed by mask, as in {@link DelayLine}.
+ * Settings may be changed from any thread.
+ */
+public final class CombFilter implements Effect {
+    // slots in the control surface
+    private static final int DELAY = 0;
+    private static final int FEEDFORWARD = 1;
+    private static final int FEEDBACK = 2;
+
+    private final int maxDelay;
+    private final float[] input;
+    private final float[] output;
+    private final int mask;
+    private final ControlSurface controls = new ControlSurface(3);
+
+    // render thread only
+    private final double[] renderParams = new double[3];
+    private long renderVersion = -1;
+    private double delay;
+    private int write;
+
+    /**
+     * @param maxDelay    longest delay in samples
+     * @param delay       delay in samples, at least 1
+     * @param feedforward gain of the delayed input
+     * @param feedback    gain of the delayed output, less than 1 either way
+     */
+    public CombFilter(int maxDelay, double delay, double feedforward, double feedback) {
+        if (maxDelay < 1) {
+            throw new IllegalArgumentException("maxDelay must be at least 1: " + maxDelay);
+        }
+        this.maxDelay = maxDelay;
+        int size = Integer.highestOneBit(maxDelay + 1) << 1;
+        input = new float[size];
+        output = new float[size];
+        mask = size - 1;
+        setDelay(delay);
+        setFeedforward(feedforward);
+        setFeedback(feedback);
+        this.delay = delay;
+    }
+
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getDelay() {
+        return controls.get(DELAY);
+    }
+
+    /**
+     * @param samples 1 to the maximum delay
+     */
+    public void setDelay(double samples) {
+        if (!(samples >= 1 && samples <= maxDelay)) {
+            throw new IllegalArgumentException("delay must be 1 to " + maxDelay + ": " + samples);
+        }
+        controls.set(DELAY, samples);
+    }
+
+    public double getFeedforward() {
+        return controls.get(FEEDFORWARD);
+    }
+
+    public void setFeedforward(double gain) {
+        if (Double.isNaN(gain) || Double.isInfinite(gain)) {
+            throw new IllegalArgumentException("feedforward must be finite: " + gain);
+        }
+        controls.set(FEEDFORWARD, gain);
+    }
+
+    public double getFeedback() {
+        return controls.get(FEEDBACK);
+    }
+
+    /**
+     * @param gain less than 1 either way, or the filter would ring forever
+     */
+    public void setFeedback(double gain) {
+        if (!(Math.abs(gain) < 1)) {
+            throw new IllegalArgumentException("feedback must be between -1 and 1: " + gain);
+        }
+        controls.set(FEEDBACK, gain);
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        long version = controls.getVersion();
+        if (version != renderVersion) {
+            renderVersion = controls.snapshot(renderParams);
+        }
+        final float ff = (float) renderParams[FEEDFORWARD];
+        final float fb = (float) renderParams[FEEDBACK];
+        final double target = renderParams[DELAY];
+        final float[] in = input;
+        final float[] out = output;
+        final int m = mask;
+        int w = write;
+        if (target == delay) {
+            int whole = (int) delay;
+            float frac = (float) (delay - whole);
+            for (int i = offset; i < offset + frames; i++) {
+                int r = w - whole;
+                float x = buffer[i];
+                float a = in[r & m] + frac * (in[(r - 1) & m] - in[r & m]);
+                float b = out[r & m] + frac * (out[(r - 1) & m] - out[r & m]);
+                float y = x + ff * a + fb * b;
+                in[w & m] = x;
+                out[w & m] = y;
+                buffer[i] = y;
+                w++;
+            }
+        } else {
+            double d = delay;
+            double step = (target - delay) / frames;
+            for (int i = offset; i < offset + frames; i++) {
+                d += step;
+                int whole = (int) d;
+                float frac = (float) (d - whole);
+                int r = w - whole;
+                float x = buffer[i];
+                float a = in[r & m] + frac * (in[(r - 1) & m] - in[r & m]);
+                float b = out[r & m] + frac * (out[(r - 1) & m] - out[r & m]);
+                float y = x + ff * a + fb * b;
+                in[w & m] = x;
+                out[w & m] = y;
+                buffer[i] = y;
+                w++;
+            }
+            delay = target;
+        }
+        write = w & m;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(input, 0);
+        Arrays.fill(output, 0);
+        delay = controls.get(DELAY);
+    }
+}
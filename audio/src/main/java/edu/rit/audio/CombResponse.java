@@ -0,0 +1,371 @@
+package edu.rit.audio;
+
+/**
+ * Analytic response of a tone mixed with a copy of itself delayed by {@code d} samples, for
+ * showing while the delay is scrolled. The fundamental passes through
+ * {@code H(f) = dry + wet * e^(-j 2 pi f d / sampleRate)}, which dips at every odd multiple of
+ * {@code sampleRate / 2d} when both gains are set; a second harmonic may be added undelayed, as
+ * {@link ToneGenerator} does. The generator itself has no dry fundamental, so for it the delay
+ * only moves the peak, while {@link PcmFileSource} mixes its delayed copy over the dry signal.
+ * <p>
+ * Magnitudes across a log-spaced grid are kept as {@link Table}s, one per
+ * {@link WaveformCache#quantizeDelay tenth of a sample}, with the most recently used cached. A
+ * table a few steps from a cached one is stepped from it by rotating each point's phasor instead
+ * of calling cos and sin again, which is what scrolling mostly asks for. The tables are all
+ * allocated up front and a miss rewrites the least recently used, so scrolling makes no garbage.
+ * <p>
+ * Not thread safe; use it from one thread, such as the main thread. Tables may be handed to any
+ * thread, but a table is only valid until it is rewritten: while it is among the
+ * {@code maxTables} most recently returned.
+ */
+public final class CombResponse {
+
+    /**
+     * Magnitudes below this are shown as this, in dB
+     */
+    public static final double FLOOR_DB = -120;
+
+    // quantum of the table grid, as WaveformCache.quantizeDelay
+    private static final double DELAY_STEP = 0.1;
+
+    // a table further than this from every cached one is computed afresh
+    private static final int MAX_ROTATIONS = 8;
+
+    // points the peak of one period is searched over before refining
+    private static final int PEAK_POINTS = 64;
+
+    private static final float[] NO_NOTCHES = new float[0];
+
+    /**
+     * Response across the grid for one delay
+     */
+    public static final class Table {
+        private final double[] frequencies;
+        private final float[] db;
+        // e^(-j w d) per point, for stepping to the next table
+        private final double[] re;
+        private final double[] im;
+        // grown to the most dips any delay written here has had
+        private float[] notches = NO_NOTCHES;
+        private int notchCount;
+        private double delay;
+        // -1 until first written
+        private int key = -1;
+        private long lastUsed;
+
+        private Table(double[] frequencies) {
+            int points = frequencies.length;
+            this.frequencies = frequencies;
+            db = new float[points];
+            re = new double[points];
+            im = new double[points];
+        }
+
+        /**
+         * @return delay in samples, on the tenth of a sample grid
+         */
+        public double getDelay() {
+            return delay;
+        }
+
+        public int size() {
+            return db.length;
+        }
+
+        /**
+         * @return frequency of a point in Hz; the points are spaced evenly on a log scale
+         */
+        public double getFrequency(int point) {
+            return frequencies[point];
+        }
+
+        /**
+         * @return gain of the fundamental at a point, in dB, not below {@link CombResponse#FLOOR_DB}
+         */
+        public float getDb(int point) {
+            return db[point];
+        }
+
+        /**
+         * @return number of dips up to the top of the grid
+         */
+        public int getNotchCount() {
+            return notchCount;
+        }
+
+        /**
+         * @return frequency of a dip in Hz, lowest first
+         */
+        public float getNotch(int notch) {
+            return notches[notch];
+        }
+    }
+
+    private final int sampleRate;
+    private final double dry;
+    private final double wet;
+    private final double harmonic;
+    private final double[] frequencies;
+    // e^(-j w DELAY_STEP) per point
+    private final double[] stepRe;
+    private final double[] stepIm;
+    private final Table[] tables;
+
+    // getTable calls so far, stamped on each table returned
+    private long uses;
+    private long hits;
+    private long stepped;
+    private long computed;
+
+    /**
+     * @param sampleRate rate the delay is counted at
+     * @param dry        gain of the undelayed fundamental, 0 for the generator's tone
+     * @param wet        gain of the delayed fundamental
+     * @param harmonic   gain of the undelayed second harmonic, 0 for none
+     * @param minHz      lowest point of the grid
+     * @param maxHz      highest point of the grid, at most half the sample rate
+     * @param points     points in the grid, at least 2
+     * @param maxTables  tables kept cached
+     */
+    public CombResponse(int sampleRate, double dry, double wet, double harmonic,
+                        double minHz, double maxHz, int points, final int maxTables) {
+        if (!(dry >= 0) || !(wet >= 0) || !(harmonic >= 0)) {
+            throw new IllegalArgumentException("gains must not be negative: " + dry + ", " + wet + ", " + harmonic);
+        }
+        if (!(minHz > 0) || !(maxHz > minHz) || maxHz > sampleRate / 2.0) {
+            throw new IllegalArgumentException("grid must lie within 0 to " + sampleRate / 2.0 + " Hz: "
+                    + minHz + " to " + maxHz);
+        }
+        if (points < 2) {
+            throw new IllegalArgumentException("points must be at least 2: " + points);
+        }
+        if (maxTables < 1) {
+            throw new IllegalArgumentException("maxTables must be at least 1: " + maxTables);
+        }
+        this.sampleRate = sampleRate;
+        this.dry = dry;
+        this.wet = wet;
+        this.harmonic = harmonic;
+        frequencies = new double[points];
+        stepRe = new double[points];
+        stepIm = new double[points];
+        double ratio = Math.log(maxHz / minHz) / (points - 1);
+        for (int i = 0; i < points; i++) {
+            frequencies[i] = i == points - 1 ? maxHz : minHz * Math.exp(i * ratio);
+            double w = 2 * Math.PI * frequencies[i] / sampleRate;
+            stepRe[i] = Math.cos(w * DELAY_STEP);
+            stepIm[i] = -Math.sin(w * DELAY_STEP);
+        }
+        tables = new Table[maxTables];
+        for (int t = 0; t < maxTables; t++) {
+            tables[t] = new Table(frequencies);
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param delay in samples, rounded to the nearest tenth
+     * @return response for the delay, from the cache if it is there
+     */
+    public Table getTable(double delay) {
+        if (!(delay >= 0)) {
+            throw new IllegalArgumentException("delay must not be negative: " + delay);
+        }
+        int key = (int) Math.round(delay / DELAY_STEP);
+        uses++;
+        // one pass for the table itself, the nearest neighbour, the shorter delay on a tie, and
+        // the least recently used to rewrite if it is missing
+        Table eldest = tables[0];
+        Table nearest = null;
+        int nearestSteps = 0;
+        for (Table table : tables) {
+            if (table.key == key) {
+                hits++;
+                table.lastUsed = uses;
+                return table;
+            }
+            if (table.lastUsed < eldest.lastUsed) {
+                eldest = table;
+            }
+            int steps = key - table.key;
+            if (table.key >= 0 && Math.abs(steps) <= MAX_ROTATIONS
+                    && (nearest == null || Math.abs(steps) < Math.abs(nearestSteps)
+                    || steps == -nearestSteps && steps > 0)) {
+                nearest = table;
+                nearestSteps = steps;
+            }
+        }
+        // the neighbour may be the eldest itself; stepping works in place
+        if (nearest != null) {
+            step(nearest, eldest, nearestSteps);
+        } else {
+            compute(eldest, key);
+        }
+        finish(eldest, key);
+        eldest.lastUsed = uses;
+        return eldest;
+    }
+
+    /**
+     * @return gain of the fundamental at {@code hz} for an exact delay, in dB
+     */
+    public double getGainDb(double hz, double delay) {
+        double w = 2 * Math.PI * hz / sampleRate;
+        return toDb(magnitude(Math.cos(w * delay), -Math.sin(w * delay)));
+    }
+
+    /**
+     * @return RMS level of the tone at {@code hz}, fundamental and harmonic, in dB relative to full
+     * scale; a full scale sine alone reads -3 dB, as on {@link SpectrumAnalyzer}
+     */
+    public double getLevelDb(double hz, double delay) {
+        double w = 2 * Math.PI * hz / sampleRate;
+        double a = magnitude(Math.cos(w * delay), -Math.sin(w * delay));
+        return toDb(Math.sqrt((a * a + harmonic * harmonic) / 2));
+    }
+
+    /**
+     * @return largest magnitude the tone at {@code hz} reaches, in dB relative to full scale; above
+     * 0 dB the output clips
+     */
+    public double getPeakDb(double hz, double delay) {
+        double w = 2 * Math.PI * hz / sampleRate;
+        double re = dry + wet * Math.cos(w * delay);
+        double im = -wet * Math.sin(w * delay);
+        double a = Math.sqrt(re * re + im * im);
+        double phase = Math.atan2(im, re);
+        // one period of a sin(t + phase) + harmonic sin(2t); search a grid, then refine the best
+        // point with a parabola through it and its neighbours
+        double best = 0;
+        int bestPoint = 0;
+        for (int i = 0; i < PEAK_POINTS; i++) {
+            double v = Math.abs(wave(a, phase, 2 * Math.PI * i / PEAK_POINTS));
+            if (v > best) {
+                best = v;
+                bestPoint = i;
+            }
+        }
+        double t = 2 * Math.PI * bestPoint / PEAK_POINTS;
+        double dt = 2 * Math.PI / PEAK_POINTS;
+        double before = Math.abs(wave(a, phase, t - dt));
+        double after = Math.abs(wave(a, phase, t + dt));
+        double curve = before - 2 * best + after;
+        if (curve < 0) {
+            double offset = 0.5 * (before - after) / curve;
+            best = Math.max(best, Math.abs(wave(a, phase, t + offset * dt)));
+        }
+        return toDb(best);
+    }
+
+    /**
+     * @return tables served from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return tables stepped from a cached neighbour
+     */
+    public long getStepped() {
+        return stepped;
+    }
+
+    /**
+     * @return tables computed from scratch
+     */
+    public long getComputed() {
+        return computed;
+    }
+
+    private double wave(double a, double phase, double t) {
+        return a * Math.sin(t + phase) + harmonic * Math.sin(2 * t);
+    }
+
+    private void compute(Table to, int key) {
+        computed++;
+        int points = frequencies.length;
+        double[] re = to.re;
+        double[] im = to.im;
+        double delay = key * DELAY_STEP;
+        for (int i = 0; i < points; i++) {
+            double angle = 2 * Math.PI * frequencies[i] / sampleRate * delay;
+            re[i] = Math.cos(angle);
+            im[i] = -Math.sin(angle);
+        }
+    }
+
+    /**
+     * Writes {@code from}'s phasors rotated by {@code steps} quanta into {@code to}, negative for a
+     * shorter delay; {@code to} may be {@code from}
+     */
+    private void step(Table from, Table to, int steps) {
+        stepped++;
+        int points = frequencies.length;
+        double[] re = to.re;
+        double[] im = to.im;
+        int n = Math.abs(steps);
+        // a shorter delay turns the other way
+        double sign = steps > 0 ? 1 : -1;
+        for (int i = 0; i < points; i++) {
+            double sr = stepRe[i];
+            double si = sign * stepIm[i];
+            double r = from.re[i];
+            double m = from.im[i];
+            for (int s = 0; s < n; s++) {
+                double nr = r * sr - m * si;
+                m = r * si + m * sr;
+                r = nr;
+            }
+            re[i] = r;
+            im[i] = m;
+        }
+    }
+
+    /**
+     * Fills in the magnitudes and dips from the phasors just written
+     */
+    private void finish(Table table, int key) {
+        int points = frequencies.length;
+        for (int i = 0; i < points; i++) {
+            table.db[i] = (float) toDb(magnitude(table.re[i], table.im[i]));
+        }
+        table.key = key;
+        table.delay = key * DELAY_STEP;
+        notches(table);
+    }
+
+    /**
+     * Dips of the fundamental's response, where the delayed copy arrives in antiphase
+     */
+    private void notches(Table table) {
+        double delay = table.delay;
+        if (dry == 0 || wet == 0 || delay == 0) {
+            table.notchCount = 0;
+            return;
+        }
+        double spacing = sampleRate / delay;
+        double top = frequencies[frequencies.length - 1];
+        int count = (int) Math.max(0, Math.floor(top / spacing + 0.5));
+        if (table.notches.length < count) {
+            table.notches = new float[Math.max(count, 2 * table.notches.length)];
+        }
+        for (int k = 0; k < count; k++) {
+            table.notches[k] = (float) ((k + 0.5) * spacing);
+        }
+        table.notchCount = count;
+    }
+
+    private double magnitude(double re, double im) {
+        double r = dry + wet * re;
+        double m = wet * im;
+        return Math.sqrt(r * r + m * m);
+    }
+
+    private static double toDb(double magnitude) {
+        return Math.max(FLOOR_DB, 20 * Math.log10(magnitude));
+    }
+}
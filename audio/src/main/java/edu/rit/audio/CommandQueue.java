@@ -0,0 +1,76 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single producer, single consumer queue of (code, value) pairs. Neither side locks or
+ * allocates; entries are published by an ordered write of the tail index.
+ */
+public class CommandQueue {
+
+    /**
+     * Receives commands as the consumer drains the queue
+     */
+    public interface Handler {
+        void onCommand(int code, double value);
+    }
+
+    private final int mask;
+    private final int[] codes;
+    private final double[] values;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of pending commands, rounded up to a power of two
+     */
+    public CommandQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        codes = new int[size];
+        values = new double[size];
+    }
+
+    /**
+     * Adds a command. Producer thread only.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(int code, double value) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            return false;
+        }
+        int index = (int) t & mask;
+        codes[index] = code;
+        values[index] = value;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Hands every pending command to {@code handler} in order. Consumer thread only.
+     *
+     * @return number of commands handled
+     */
+    public int drain(Handler handler) {
+        long h = head.get();
+        long t = tail.get();
+        for (long i = h; i < t; i++) {
+            int index = (int) i & mask;
+            handler.onCommand(codes[index], values[index]);
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
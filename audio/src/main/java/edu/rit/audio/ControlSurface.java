@@ -0,0 +1,97 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed set of double parameters shared between writers (the UI thread, or any other) and one
+ * reader (the render thread). Only the latest value of each parameter counts, so a writer can set
+ * values as fast as touch events arrive without locking, allocating or ever waiting for the reader.
+ * <p>
+ * Writes are bracketed by a sequence counter (a seqlock): the reader copies every slot and retries
+ * if a write overlapped, so a {@link #snapshot} never mixes old and new values. A writer claims the
+ * counter by moving it from even to odd with a compare-and-set, so concurrent writers take turns
+ * instead of corrupting the sequence; they only ever wait for each other, never for the reader.
+ */
+public final class ControlSurface {
+    private final AtomicLongArray slots;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ControlSurface(int size) {
+        slots = new AtomicLongArray(size);
+    }
+
+    public int size() {
+        return slots.length();
+    }
+
+    /**
+     * Sets one parameter. Any thread but the reader's.
+     */
+    public void set(int index, double value) {
+        long s = beginWrite();
+        slots.set(index, Double.doubleToRawLongBits(value));
+        sequence.set(s + 2);
+    }
+
+    /**
+     * Sets the first {@code values.length} parameters in one write, so a reader sees all of them
+     * change together or none. Any thread but the reader's.
+     */
+    public void setAll(double[] values) {
+        long s = beginWrite();
+        for (int i = 0; i < values.length; i++) {
+            slots.set(i, Double.doubleToRawLongBits(values[i]));
+        }
+        sequence.set(s + 2);
+    }
+
+    /**
+     * Makes the sequence odd for this writer, waiting while another writer has it odd
+     *
+     * @return the even sequence the write started from
+     */
+    private long beginWrite() {
+        while (true) {
+            long s = sequence.get();
+            if ((s & 1) == 0 && sequence.compareAndSet(s, s + 1)) {
+                return s;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the last value set, as seen by the calling thread
+     */
+    public double get(int index) {
+        return Double.longBitsToDouble(slots.get(index));
+    }
+
+    /**
+     * @return a counter that changes with every {@link #set}, so a reader can skip unchanged blocks
+     */
+    public long getVersion() {
+        return sequence.get();
+    }
+
+    /**
+     * Copies every parameter into {@code values} as one consistent set. Reader thread only.
+     *
+     * @return the version the copy belongs to
+     */
+    public long snapshot(double[] values) {
+        while (true) {
+            long before = sequence.get();
+            if ((before & 1) == 0) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Double.longBitsToDouble(slots.get(i));
+                }
+                if (sequence.get() == before) {
+                    return before;
+                }
+            }
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * Circular delay line with fractional delays. The history persists across calls, and a delay
+ * change is ramped over a short time instead of jumping, so it does not zipper. The buffer length
+ * is a power of two and indexed by mask, so the cost per sample does not depend on the maximum
+ * delay.
+ * <p>
+ * Lines process either double or float samples. The float history is allocated on the first float
+ * call; a line should stick to one sample type, since each keeps its own history.
+ */
+public final class DelayLine {
+
+    public enum Interpolation {
+        /** Two taps. Cheap, but dulls high frequencies at fractional delays. */
+        LINEAR,
+        /** Four tap third order Lagrange, flat to well above half Nyquist */
+        LAGRANGE,
+        /**
+         * First order Thiran allpass. Flat magnitude at every frequency, but it has state, so
+         * fast delay sweeps can leave short transients.
+         */
+        ALLPASS
+    }
+
+    private final Interpolation interpolation;
+    private final int maxDelay;
+    private final double[] buffer;
+    private float[] floatBuffer;
+    private final int mask;
+    private int write;
+
+    private double delay;
+    private double target;
+    private double step;
+    private int rampRemaining;
+    private int rampLength = 1;
+
+    // allpass state
+    private double allpassOut;
+
+    /**
+     * @param maxDelay      largest delay in samples
+     * @param interpolation how fractional delays are read
+     */
+    public DelayLine(int maxDelay, Interpolation interpolation) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay must not be negative: " + maxDelay);
+        }
+        this.maxDelay = maxDelay;
+        this.interpolation = interpolation;
+        // three extra taps for Lagrange and allpass reads past the maximum
+        int size = Integer.highestOneBit(maxDelay + 3) << 1;
+        buffer = new double[size];
+        mask = size - 1;
+    }
+
+    public int getMaxDelay() {
+        return maxDelay;
+    }
+
+    public Interpolation getInterpolation() {
+        return interpolation;
+    }
+
+    /**
+     * Sets how many samples a delay change is spread over. 1 makes changes immediate.
+     */
+    public void setRampLength(int samples) {
+        rampLength = Math.max(1, samples);
+    }
+
+    /**
+     * @return the delay the line is ramping towards
+     */
+    public double getDelay() {
+        return target;
+    }
+
+    /**
+     * Ramps to a new delay in samples, clamped to [0, maxDelay]
+     */
+    public void setDelay(double samples) {
+        double clamped = Math.max(0, Math.min(maxDelay, samples));
+        if (clamped == target) {
+            return;
+        }
+        target = clamped;
+        rampRemaining = rampLength;
+        step = (target - delay) / rampLength;
+    }
+
+    /**
+     * @return true once a delay change has finished ramping
+     */
+    public boolean isSettled() {
+        return rampRemaining == 0;
+    }
+
+    /**
+     * Clears the history and jumps straight to the target delay
+     */
+    public void reset() {
+        Arrays.fill(buffer, 0);
+        if (floatBuffer != null) {
+            Arrays.fill(floatBuffer, 0);
+        }
+        allpassOut = 0;
+        delay = target;
+        rampRemaining = 0;
+    }
+
+    /**
+     * Writes {@code length} samples from {@code in} into the line and the delayed signal to
+     * {@code out}. {@code in} and {@code out} may be the same range.
+     */
+    public void process(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        switch (interpolation) {
+            case LINEAR:
+                processLinear(in, inOffset, out, outOffset, length);
+                break;
+            case LAGRANGE:
+                processLagrange(in, inOffset, out, outOffset, length);
+                break;
+            case ALLPASS:
+                processAllpass(in, inOffset, out, outOffset, length);
+                break;
+        }
+    }
+
+    /**
+     * Float version of {@link #process(double[], int, double[], int, int)}
+     */
+    public void process(float[] in, int inOffset, float[] out, int outOffset, int length) {
+        if (floatBuffer == null) {
+            floatBuffer = new float[buffer.length];
+        }
+        switch (interpolation) {
+            case LINEAR:
+                processLinear(in, inOffset, out, outOffset, length);
+                break;
+            case LAGRANGE:
+                processLagrange(in, inOffset, out, outOffset, length);
+                break;
+            case ALLPASS:
+                processAllpass(in, inOffset, out, outOffset, length);
+                break;
+        }
+    }
+
+    private void advanceRamp() {
+        if (--rampRemaining == 0) {
+            delay = target;
+        } else {
+            delay += step;
+        }
+    }
+
+    private void processLinear(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        final double[] buf = buffer;
+        final int m = mask;
+        int w = write;
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+            }
+            int whole = (int) delay;
+            double frac = delay - whole;
+            int r = w - whole;
+            double x0 = buf[r & m];
+            out[outOffset + i] = x0 + frac * (buf[(r - 1) & m] - x0);
+            w++;
+        }
+        write = w & m;
+    }
+
+    private void processLagrange(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        final double[] buf = buffer;
+        final int m = mask;
+        int w = write;
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+            }
+            // taps at whole - 1 .. whole + 2; below one sample the same polynomial is used off
+            // centre, which is still exact at whole delays
+            int whole = Math.max(1, (int) delay);
+            double f = delay - whole;
+            int r = w - whole;
+            double xm1 = buf[(r + 1) & m];
+            double x0 = buf[r & m];
+            double x1 = buf[(r - 1) & m];
+            double x2 = buf[(r - 2) & m];
+            double fp1 = f + 1;
+            double fm1 = f - 1;
+            double fm2 = f - 2;
+            out[outOffset + i] = -f * fm1 * fm2 / 6 * xm1
+                    + fp1 * fm1 * fm2 / 2 * x0
+                    - fp1 * f * fm2 / 2 * x1
+                    + fp1 * f * fm1 / 6 * x2;
+            w++;
+        }
+        write = w & m;
+    }
+
+    private void processAllpass(double[] in, int inOffset, double[] out, int outOffset, int length) {
+        final double[] buf = buffer;
+        final int m = mask;
+        int w = write;
+        double y = allpassOut;
+        double coefficient = allpassCoefficient();
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+                coefficient = allpassCoefficient();
+            }
+            int whole = allpassWhole();
+            int r = w - whole;
+            y = coefficient * buf[r & m] + buf[(r - 1) & m] - coefficient * y;
+            out[outOffset + i] = y;
+            w++;
+        }
+        allpassOut = y;
+        write = w & m;
+    }
+
+    /**
+     * Integer part of the delay for the allpass, chosen so the fractional part stays in [0.5, 1.5)
+     * where the filter's phase delay is flattest
+     */
+    private int allpassWhole() {
+        return Math.max(0, (int) (delay - 0.5));
+    }
+
+    private double allpassCoefficient() {
+        double frac = Math.max(0.01, delay - allpassWhole());
+        return (1 - frac) / (1 + frac);
+    }
+
+    private void processLinear(float[] in, int inOffset, float[] out, int outOffset, int length) {
+        final float[] buf = floatBuffer;
+        final int m = mask;
+        int w = write;
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+            }
+            int whole = (int) delay;
+            float frac = (float) (delay - whole);
+            int r = w - whole;
+            float x0 = buf[r & m];
+            out[outOffset + i] = x0 + frac * (buf[(r - 1) & m] - x0);
+            w++;
+        }
+        write = w & m;
+    }
+
+    private void processLagrange(float[] in, int inOffset, float[] out, int outOffset, int length) {
+        final float[] buf = floatBuffer;
+        final int m = mask;
+        int w = write;
+        // the weights only change while ramping, so a steady delay costs four multiply-adds
+        float c0 = 0;
+        float c1 = 0;
+        float c2 = 0;
+        float c3 = 0;
+        int whole = 0;
+        boolean stale = true;
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+                stale = true;
+            }
+            if (stale) {
+                whole = Math.max(1, (int) delay);
+                double f = delay - whole;
+                double fp1 = f + 1;
+                double fm1 = f - 1;
+                double fm2 = f - 2;
+                c0 = (float) (-f * fm1 * fm2 / 6);
+                c1 = (float) (fp1 * fm1 * fm2 / 2);
+                c2 = (float) (-fp1 * f * fm2 / 2);
+                c3 = (float) (fp1 * f * fm1 / 6);
+                stale = false;
+            }
+            int r = w - whole;
+            out[outOffset + i] = c0 * buf[(r + 1) & m]
+                    + c1 * buf[r & m]
+                    + c2 * buf[(r - 1) & m]
+                    + c3 * buf[(r - 2) & m];
+            w++;
+        }
+        write = w & m;
+    }
+
+    private void processAllpass(float[] in, int inOffset, float[] out, int outOffset, int length) {
+        final float[] buf = floatBuffer;
+        final int m = mask;
+        int w = write;
+        float y = (float) allpassOut;
+        float coefficient = (float) allpassCoefficient();
+        for (int i = 0; i < length; i++) {
+            buf[w & m] = in[inOffset + i];
+            if (rampRemaining > 0) {
+                advanceRamp();
+                coefficient = (float) allpassCoefficient();
+            }
+            int whole = allpassWhole();
+            int r = w - whole;
+            y = coefficient * buf[r & m] + buf[(r - 1) & m] - coefficient * y;
+            out[outOffset + i] = y;
+            w++;
+        }
+        allpassOut = y;
+        write = w & m;
+    }
+}
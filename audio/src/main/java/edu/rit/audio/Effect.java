@@ -0,0 +1,21 @@
+package edu.rit.audio;
+
+/**
+ * One stage of an {@link EffectChain}: processes a block of float samples in place. Stages keep
+ * whatever state they need between blocks and allocate nothing while processing. Settings are
+ * picked up at the next block and, unless a stage says it takes them from one thread at a time,
+ * may be changed from any thread; processing happens on the render thread only.
+ */
+public interface Effect {
+
+    /**
+     * Replaces {@code frames} samples of {@code buffer} from {@code offset} with their processed
+     * values
+     */
+    void process(float[] buffer, int offset, int frames);
+
+    /**
+     * Forgets the signal so far, as if the stage had just been made. Render thread only.
+     */
+    void reset();
+}
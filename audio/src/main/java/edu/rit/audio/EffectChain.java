@@ -0,0 +1,244 @@
+package edu.rit.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stages run one after another over a block, in place. The chain is laid out once when it is
+ * built: each run of adjacent {@link SampleEffect}s becomes a single pass that takes every sample
+ * through all of them while it is in a register, so a gain, a clipper and another gain cost one
+ * pass over the block rather than three. Processing allocates nothing.
+ * <p>
+ * Build one stage after another:
+ * <pre>
+ * EffectChain chain = new EffectChain.Builder()
+ *         .add(new Biquad(8000, Biquad.Type.HIGHPASS, 80, 0.7071, 0))
+ *         .add(new Gain(0.5))
+ *         .add(new SoftClip(1))
+ *         .add(new Limiter(8000, 0.9, 50))
+ *         .build();
+ * </pre>
+ * A chain is an {@link Effect} itself, so chains may be nested.
+ */
+public final class EffectChain implements Effect {
+
+    /**
+     * A run of sample effects done in one pass. Runs of only gains and soft clips, the usual case,
+     * are folded first: the gains between two clips multiply into one scale, the clip's drive
+     * joins the scale before it, and the pass is straight code with no calls per sample. Anything
+     * else goes through each stage's {@link SampleEffect#apply} in turn.
+     */
+    static final class Fused implements Effect {
+        private final SampleEffect[] stages;
+        // null unless the run is only gains and soft clips
+        private final SoftClip[] clips;
+        // for each stage, the scale it multiplies into: the one before clip k is k, the last is
+        // clips.length
+        private final int[] scaleOf;
+        private final double[] scaleStart;
+        private final double[] scaleEnd;
+
+        Fused(SampleEffect[] stages) {
+            this.stages = stages;
+            int clipCount = 0;
+            boolean foldable = true;
+            for (SampleEffect stage : stages) {
+                if (stage instanceof SoftClip) {
+                    clipCount++;
+                } else if (!(stage instanceof Gain)) {
+                    foldable = false;
+                }
+            }
+            if (foldable) {
+                clips = new SoftClip[clipCount];
+                scaleOf = new int[stages.length];
+                int k = 0;
+                for (int i = 0; i < stages.length; i++) {
+                    scaleOf[i] = k;
+                    if (stages[i] instanceof SoftClip) {
+                        clips[k++] = (SoftClip) stages[i];
+                    }
+                }
+                scaleStart = new double[clipCount + 1];
+                scaleEnd = new double[clipCount + 1];
+            } else {
+                clips = null;
+                scaleOf = null;
+                scaleStart = null;
+                scaleEnd = null;
+            }
+        }
+
+        @Override
+        public void process(float[] buffer, int offset, int frames) {
+            final SampleEffect[] s = stages;
+            for (SampleEffect stage : s) {
+                stage.prepare(frames);
+            }
+            if (clips == null) {
+                for (int i = offset; i < offset + frames; i++) {
+                    float x = buffer[i];
+                    for (SampleEffect stage : s) {
+                        x = stage.apply(x);
+                    }
+                    buffer[i] = x;
+                }
+                return;
+            }
+
+            for (int k = 0; k <= clips.length; k++) {
+                scaleStart[k] = 1;
+                scaleEnd[k] = 1;
+            }
+            for (int i = 0; i < s.length; i++) {
+                int k = scaleOf[i];
+                if (s[i] instanceof Gain) {
+                    Gain gain = (Gain) s[i];
+                    scaleStart[k] *= gain.getBlockStart();
+                    scaleEnd[k] *= gain.getBlockEnd();
+                } else {
+                    float drive = ((SoftClip) s[i]).getBlockDrive();
+                    scaleStart[k] *= drive;
+                    scaleEnd[k] *= drive;
+                }
+            }
+            if (clips.length == 1) {
+                processOneClip(buffer, offset, frames);
+            } else {
+                processClips(buffer, offset, frames);
+            }
+        }
+
+        /**
+         * Scale, clip, scale: the run most chains have
+         */
+        private void processOneClip(float[] buffer, int offset, int frames) {
+            double pre = scaleStart[0];
+            double post = scaleStart[1];
+            double preStep = (scaleEnd[0] - pre) / frames;
+            double postStep = (scaleEnd[1] - post) / frames;
+            if (preStep == 0 && postStep == 0) {
+                final float a = (float) pre;
+                final float b = (float) post;
+                for (int i = offset; i < offset + frames; i++) {
+                    buffer[i] = b * PcmConverter.softClip(a * buffer[i]);
+                }
+                return;
+            }
+            for (int i = offset; i < offset + frames; i++) {
+                pre += preStep;
+                post += postStep;
+                buffer[i] = (float) post * PcmConverter.softClip((float) pre * buffer[i]);
+            }
+        }
+
+        private void processClips(float[] buffer, int offset, int frames) {
+            final int n = clips.length;
+            final double[] scale = scaleStart;
+            final double[] end = scaleEnd;
+            // the steps go in end, which is not needed again this block
+            for (int k = 0; k <= n; k++) {
+                end[k] = (end[k] - scale[k]) / frames;
+            }
+            for (int i = offset; i < offset + frames; i++) {
+                float x = buffer[i];
+                for (int k = 0; k < n; k++) {
+                    scale[k] += end[k];
+                    x = PcmConverter.softClip((float) scale[k] * x);
+                }
+                scale[n] += end[n];
+                buffer[i] = (float) scale[n] * x;
+            }
+        }
+
+        @Override
+        public void reset() {
+            for (SampleEffect stage : stages) {
+                stage.reset();
+            }
+        }
+    }
+
+    private final Effect[] stages;
+    // what actually runs, with sample effects fused
+    private final Effect[] passes;
+
+    private EffectChain(Builder builder) {
+        stages = builder.stages.toArray(new Effect[builder.stages.size()]);
+        List<Effect> plan = new ArrayList<Effect>();
+        List<SampleEffect> run = new ArrayList<SampleEffect>();
+        for (Effect stage : stages) {
+            if (stage instanceof SampleEffect) {
+                run.add((SampleEffect) stage);
+                continue;
+            }
+            flush(run, plan);
+            plan.add(stage);
+        }
+        flush(run, plan);
+        passes = plan.toArray(new Effect[plan.size()]);
+    }
+
+    private static void flush(List<SampleEffect> run, List<Effect> plan) {
+        if (run.size() == 1) {
+            plan.add(run.get(0));
+        } else if (run.size() > 1) {
+            plan.add(new Fused(run.toArray(new SampleEffect[run.size()])));
+        }
+        run.clear();
+    }
+
+    /**
+     * @return number of stages as added
+     */
+    public int size() {
+        return stages.length;
+    }
+
+    public Effect getStage(int index) {
+        return stages[index];
+    }
+
+    /**
+     * @return passes over the block each call makes, after fusing
+     */
+    public int getPassCount() {
+        return passes.length;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        for (Effect pass : passes) {
+            pass.process(buffer, offset, frames);
+        }
+    }
+
+    @Override
+    public void reset() {
+        for (Effect stage : stages) {
+            stage.reset();
+        }
+    }
+
+    /**
+     * Lays out a chain. Each stage may only be added once, to one chain.
+     */
+    public static final class Builder {
+        private final List<Effect> stages = new ArrayList<Effect>();
+
+        public Builder add(Effect stage) {
+            if (stage == null) {
+                throw new IllegalArgumentException("stage must not be null");
+            }
+            if (stages.contains(stage)) {
+                throw new IllegalArgumentException("stage added twice: " + stage);
+            }
+            stages.add(stage);
+            return this;
+        }
+
+        public EffectChain build() {
+            return new EffectChain(this);
+        }
+    }
+}
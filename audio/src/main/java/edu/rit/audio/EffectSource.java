@@ -0,0 +1,82 @@
+package edu.rit.audio;
+
+/**
+ * Runs a source's output through an {@link Effect}, usually an {@link EffectChain}. While
+ * bypassed the source plays untouched, and ready made PCM from it is passed straight on.
+ */
+public final class EffectSource implements PcmSource, FloatSource {
+    private final FloatSource source;
+    private final Effect effect;
+    private final int blockFrames;
+    private volatile boolean bypassed;
+
+    // render thread only
+    private boolean wasBypassed;
+    private float[] narrowOut;
+
+    /**
+     * @param blockFrames largest block usually asked for; larger double blocks are done in pieces
+     */
+    public EffectSource(FloatSource source, Effect effect, int blockFrames) {
+        if (blockFrames <= 0) {
+            throw new IllegalArgumentException("blockFrames must be positive: " + blockFrames);
+        }
+        this.source = source;
+        this.effect = effect;
+        this.blockFrames = blockFrames;
+    }
+
+    public Effect getEffect() {
+        return effect;
+    }
+
+    public boolean isBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * @param bypassed true to play the source untouched from the next block; when the effect
+     *                 comes back it starts from silence, not from where it left off
+     */
+    public void setBypassed(boolean bypassed) {
+        this.bypassed = bypassed;
+    }
+
+    @Override
+    public boolean renderPcm(short[] out, int offset, int frames) {
+        if (!bypassed) {
+            return false;
+        }
+        wasBypassed = true;
+        return source instanceof PcmSource && ((PcmSource) source).renderPcm(out, offset, frames);
+    }
+
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        source.render(out, offset, frames);
+        if (bypassed) {
+            wasBypassed = true;
+            return;
+        }
+        if (wasBypassed) {
+            // its state is from before the bypass, long out of date
+            effect.reset();
+            wasBypassed = false;
+        }
+        effect.process(out, offset, frames);
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        if (narrowOut == null) {
+            narrowOut = new float[blockFrames];
+        }
+        for (int done = 0; done < frames; done += blockFrames) {
+            int n = Math.min(blockFrames, frames - done);
+            render(narrowOut, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] = narrowOut[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.rit.audio;
+
+/**
+ * In-place iterative radix-2 FFT of a fixed size. Twiddle factors and the bit reversal
+ * permutation are computed once in the constructor, so a transform allocates nothing and calls
+ * no trigonometry.
+ */
+public final class Fft {
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    // pairs of indices to swap, each pair once
+    private final int[] swaps;
+
+    /**
+     * @param size points per transform, a power of two
+     */
+    public Fft(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("size must be a power of two: " + size);
+        }
+        this.size = size;
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            cos[k] = (float) Math.cos(2 * Math.PI * k / size);
+            sin[k] = (float) -Math.sin(2 * Math.PI * k / size);
+        }
+
+        int bits = Integer.numberOfTrailingZeros(size);
+        int count = 0;
+        int[] pairs = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = Integer.reverse(i) >>> (32 - bits);
+            if (i < j) {
+                pairs[count++] = i;
+                pairs[count++] = j;
+            }
+        }
+        swaps = new int[count];
+        System.arraycopy(pairs, 0, swaps, 0, count);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Forward transform of {@code re + i im}, in place. No scaling is applied.
+     */
+    public void transform(float[] re, float[] im) {
+        final int[] s = swaps;
+        for (int p = 0; p < s.length; p += 2) {
+            int a = s[p];
+            int b = s[p + 1];
+            float t = re[a];
+            re[a] = re[b];
+            re[b] = t;
+            t = im[a];
+            im[a] = im[b];
+            im[b] = t;
+        }
+
+        final float[] c = cos;
+        final float[] sn = sin;
+        for (int half = 1, stride = size / 2; half < size; half <<= 1, stride >>= 1) {
+            for (int start = 0; start < size; start += half << 1) {
+                for (int k = 0, tw = 0; k < half; k++, tw += stride) {
+                    int a = start + k;
+                    int b = a + half;
+                    float wr = c[tw];
+                    float wi = sn[tw];
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package edu.rit.audio;
+
+/**
+ * A source that can render float samples directly. The render loop uses this in preference to
+ * {@link #render(double[], int, int)}.
+ */
+public interface FloatSource extends AudioSource {
+
+    /**
+     * Writes the next {@code frames} samples to {@code out}, nominally in [-1, 1]
+     */
+    void render(float[] out, int offset, int frames);
+}
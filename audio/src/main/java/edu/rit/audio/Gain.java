@@ -0,0 +1,94 @@
+package edu.rit.audio;
+
+/**
+ * Scales the signal. A new gain is ramped across the next block, so changes do not click.
+ */
+public final class Gain implements SampleEffect {
+    private volatile double gain;
+
+    // render thread only
+    private double current;
+    private double step;
+    private double value;
+
+    /**
+     * @param gain linear gain, 1 for unity
+     */
+    public Gain(double gain) {
+        this.gain = check(gain);
+        current = gain;
+    }
+
+    public double getGain() {
+        return gain;
+    }
+
+    /**
+     * @param gain linear gain, 1 for unity; may be negative to flip the polarity
+     */
+    public void setGain(double gain) {
+        this.gain = check(gain);
+    }
+
+    /**
+     * @param db gain in decibels, 0 for unity
+     */
+    public void setGainDb(double db) {
+        setGain(Math.pow(10, db / 20));
+    }
+
+    @Override
+    public void prepare(int frames) {
+        double target = gain;
+        value = current;
+        step = (target - current) / Math.max(1, frames);
+        current = target;
+    }
+
+    /**
+     * @return gain at the start of the block, once prepared
+     */
+    double getBlockStart() {
+        return value;
+    }
+
+    /**
+     * @return gain the block ramps to, once prepared
+     */
+    double getBlockEnd() {
+        return current;
+    }
+
+    @Override
+    public float apply(float x) {
+        value += step;
+        return (float) value * x;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        prepare(frames);
+        if (step == 0) {
+            float g = (float) current;
+            for (int i = offset; i < offset + frames; i++) {
+                buffer[i] *= g;
+            }
+            return;
+        }
+        for (int i = offset; i < offset + frames; i++) {
+            buffer[i] = apply(buffer[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+        current = gain;
+    }
+
+    private static double check(double gain) {
+        if (Double.isNaN(gain) || Double.isInfinite(gain)) {
+            throw new IllegalArgumentException("gain must be finite: " + gain);
+        }
+        return gain;
+    }
+}
@@ -0,0 +1,124 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of durations in log-linear buckets, in the manner of HdrHistogram: every power of two is
+ * split into the same number of linear sub-buckets, so any value is held to within about 3% from
+ * nanoseconds up to minutes, in a fixed array. Recording is a few shifts and ordered writes and never
+ * allocates.
+ * <p>
+ * One thread records; any thread may read, and sees each count as of some recent moment.
+ */
+public final class LatencyHistogram {
+    // 2^5 sub-buckets per power of two
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // values from 2^40 ns, about 18 minutes, share the last bucket
+    private static final int MAX_BITS = 40;
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT;
+
+    // slots in totals
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MAX = 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(3);
+
+    /**
+     * Adds one value. Recording thread only.
+     *
+     * @param value a duration, normally in nanoseconds; negative counts as 0
+     */
+    public void record(long value) {
+        long v = value < 0 ? 0 : value > MAX_VALUE ? MAX_VALUE : value;
+        int index = indexOf(v);
+        counts.lazySet(index, counts.get(index) + 1);
+        totals.lazySet(COUNT, totals.get(COUNT) + 1);
+        totals.lazySet(SUM, totals.get(SUM) + v);
+        if (v > totals.get(MAX)) {
+            totals.lazySet(MAX, v);
+        }
+    }
+
+    public long getCount() {
+        return totals.get(COUNT);
+    }
+
+    public long getMax() {
+        return totals.get(MAX);
+    }
+
+    public double getMean() {
+        long count = totals.get(COUNT);
+        return count == 0 ? 0 : (double) totals.get(SUM) / count;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return the highest value in the bucket holding that share of the values, so never below the
+     * true percentile; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * @return number of values above {@code value}, to within the bucket holding it
+     */
+    public long getCountAbove(long value) {
+        long above = 0;
+        for (int i = indexOf(Math.min(Math.max(value, 0), MAX_VALUE)) + 1; i < BUCKETS; i++) {
+            above += counts.get(i);
+        }
+        return above;
+    }
+
+    /**
+     * Copies the counts into {@code target}, e.g. to report them while recording carries on here.
+     * Reading thread only; {@code target} must not be recorded into meanwhile.
+     */
+    public void copyInto(LatencyHistogram target) {
+        for (int i = 0; i < BUCKETS; i++) {
+            target.counts.lazySet(i, counts.get(i));
+        }
+        for (int i = 0; i < 3; i++) {
+            target.totals.lazySet(i, totals.get(i));
+        }
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        // the top SUB_BITS + 1 bits pick the bucket, the top bit's position picks its width
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((v >>> shift) & (SUB_COUNT - 1));
+    }
+
+    static long highestValueIn(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long sub = index % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
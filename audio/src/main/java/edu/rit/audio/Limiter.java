@@ -0,0 +1,99 @@
+package edu.rit.audio;
+
+/**
+ * Peak limiter: follows the signal's peak level, jumping up with every louder sample and falling
+ * back exponentially, and turns the gain down whenever that level is above the ceiling. With no
+ * attack time and no look-ahead the output never exceeds the ceiling; the release keeps the gain
+ * from pumping on every cycle of a low tone.
+ */
+public final class Limiter implements Effect {
+    private final int sampleRate;
+    private volatile double ceiling;
+    private volatile double releaseMillis;
+    // lowest gain since the meter last looked; a lost update only misses one reading
+    private volatile double minGain = 1;
+
+    // render thread only
+    private double envelope;
+    private double blockRelease = -1;
+    private double releaseCoefficient;
+
+    /**
+     * @param ceiling       highest output level, linear, above 0
+     * @param releaseMillis time for the level to fall by about 63% once peaks stop
+     */
+    public Limiter(int sampleRate, double ceiling, double releaseMillis) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        setCeiling(ceiling);
+        setReleaseMillis(releaseMillis);
+    }
+
+    public double getCeiling() {
+        return ceiling;
+    }
+
+    public void setCeiling(double ceiling) {
+        if (!(ceiling > 0)) {
+            throw new IllegalArgumentException("ceiling must be positive: " + ceiling);
+        }
+        this.ceiling = ceiling;
+    }
+
+    public double getReleaseMillis() {
+        return releaseMillis;
+    }
+
+    public void setReleaseMillis(double millis) {
+        if (!(millis > 0)) {
+            throw new IllegalArgumentException("release must be positive: " + millis);
+        }
+        releaseMillis = millis;
+    }
+
+    /**
+     * @return lowest gain applied since the last call, 1 if the limiter has not acted; for a
+     * gain reduction meter
+     */
+    public double takeMinGain() {
+        double gain = minGain;
+        minGain = 1;
+        return gain;
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        double release = releaseMillis;
+        if (release != blockRelease) {
+            blockRelease = release;
+            releaseCoefficient = Math.exp(-1000 / (release * sampleRate));
+        }
+        final double c = ceiling;
+        final double r = releaseCoefficient;
+        double env = envelope;
+        double lowest = 1;
+        for (int i = offset; i < offset + frames; i++) {
+            double x = buffer[i];
+            double peak = Math.abs(x);
+            env = peak > env ? peak : env * r;
+            if (env > c) {
+                double gain = c / env;
+                buffer[i] = (float) (x * gain);
+                if (gain < lowest) {
+                    lowest = gain;
+                }
+            }
+        }
+        envelope = env < 1e-30 ? 0 : env;
+        if (lowest < minGain) {
+            minGain = lowest;
+        }
+    }
+
+    @Override
+    public void reset() {
+        envelope = 0;
+    }
+}
@@ -0,0 +1,109 @@
+package edu.rit.audio;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Runs a {@link ToneGenerator} through an {@link Automation} script as fast as it will go and
+ * writes the result to a file. Each block is split at the events that fall inside it, so a change
+ * takes effect on exactly the frame the script gives whatever the block size; the same script
+ * always produces the same file.
+ * <p>
+ * From the command line:
+ * {@code OfflineRenderer <script> <out.wav|out.raw> [sampleRate [float|double]]}
+ */
+public final class OfflineRenderer {
+    public static final int DEFAULT_SAMPLE_RATE = 8000;
+
+    // the ranges SoundService allows
+    public static final int MAX_DELAY = 441;
+    public static final double START_FREQUENCY = 500;
+
+    private static final int BLOCK_FRAMES = 1024;
+    // 1 MB direct buffer between the converter and the file
+    private static final int FILE_BUFFER_FRAMES = 512 * 1024;
+
+    private final ToneGenerator generator;
+    private final PcmConverter converter;
+    private final float[] block;
+
+    public OfflineRenderer(ToneGenerator generator, PcmConverter converter, int blockFrames) {
+        this.generator = generator;
+        this.converter = converter;
+        this.block = new float[blockFrames];
+    }
+
+    /**
+     * Renders the whole script into {@code out}
+     */
+    public void render(Automation script, PcmFileWriter out) throws IOException {
+        long length = script.getLengthFrames();
+        int next = 0;
+        long frame = 0;
+        while (frame < length) {
+            int frames = (int) Math.min(block.length, length - frame);
+            int done = 0;
+            while (done < frames) {
+                // apply everything due now, then render up to the next event
+                while (next < script.size() && script.getFrame(next) <= frame + done) {
+                    apply(script, next++);
+                }
+                int n = frames - done;
+                if (next < script.size()) {
+                    n = (int) Math.min(n, script.getFrame(next) - (frame + done));
+                }
+                generator.render(block, done, n);
+                done += n;
+            }
+            out.write(converter, block, 0, frames);
+            frame += frames;
+        }
+    }
+
+    private void apply(Automation script, int event) {
+        switch (script.getParameter(event)) {
+            case FREQUENCY:
+                generator.setFrequency(script.getValue(event));
+                break;
+            case DELAY:
+                generator.setDelay(script.getValue(event));
+                break;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("usage: OfflineRenderer <script> <out.wav|out.raw> [sampleRate [float|double]]");
+            System.exit(2);
+        }
+        int sampleRate = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SAMPLE_RATE;
+        SampleType sampleType = args.length > 3
+                ? SampleType.valueOf(args[3].toUpperCase(Locale.US)) : SampleType.FLOAT;
+        Automation script;
+        Reader in = new FileReader(args[0]);
+        try {
+            script = Automation.parse(in, sampleRate);
+        } finally {
+            in.close();
+        }
+
+        ToneGenerator generator = new ToneGenerator(sampleRate, MAX_DELAY, BLOCK_FRAMES, START_FREQUENCY,
+                sampleType);
+        OfflineRenderer renderer = new OfflineRenderer(generator,
+                new PcmConverter(PcmConverter.Clip.SOFT, false), BLOCK_FRAMES);
+        long start = System.nanoTime();
+        PcmFileWriter out = PcmFileWriter.open(new File(args[1]), sampleRate, FILE_BUFFER_FRAMES);
+        try {
+            renderer.render(script, out);
+        } finally {
+            out.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double audioSeconds = (double) out.getFramesWritten() / sampleRate;
+        System.out.printf("%s: %.1f s of audio in %.3f s, %.0fx real time%n",
+                args[1], audioSeconds, seconds, audioSeconds / seconds);
+    }
+}
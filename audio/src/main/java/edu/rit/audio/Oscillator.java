@@ -0,0 +1,154 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * An oscillator, a sine unless made for another {@link Waveform}, whose phase carries over from
+ * one call to {@link #render} to the next, so consecutive buffers join without a click. Changing
+ * the frequency keeps the current phase.
+ */
+public abstract class Oscillator {
+
+    /**
+     * Available backends, from cheapest to most accurate
+     */
+    public enum Type {
+        /** Table lookup with linear interpolation, about -130 dB error */
+        WAVETABLE_LINEAR,
+        /** Table lookup with 4 point cubic interpolation */
+        WAVETABLE_CUBIC,
+        /** Rotating phasor, four multiplies and two adds per sample */
+        RECURSIVE,
+        /** Math.sin for every sample */
+        REFERENCE
+    }
+
+    protected static final double TWO_PI = 2 * Math.PI;
+
+    protected final int sampleRate;
+    protected double frequency;
+
+    // lets backends without a float loop fill float buffers, allocated on first use
+    private double[] scratch;
+
+    protected Oscillator(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Creates an oscillator of the given type at 0 Hz and phase 0
+     *
+     * @param type       backend to use
+     * @param sampleRate sample rate in Hz
+     * @return new oscillator
+     */
+    public static Oscillator create(Type type, int sampleRate) {
+        switch (type) {
+            case WAVETABLE_LINEAR:
+                return new WavetableOscillator(sampleRate, false);
+            case WAVETABLE_CUBIC:
+                return new WavetableOscillator(sampleRate, true);
+            case RECURSIVE:
+                return new RecursiveOscillator(sampleRate);
+            case REFERENCE:
+                return new ReferenceOscillator(sampleRate);
+            default:
+                throw new IllegalArgumentException("Unknown oscillator type: " + type);
+        }
+    }
+
+    /**
+     * Creates an oscillator for any test waveform at 0 Hz and phase 0: sines use
+     * {@link Type#WAVETABLE_CUBIC}, the other shapes are band-limited with PolyBLEP
+     */
+    public static Oscillator create(Waveform waveform, int sampleRate) {
+        if (waveform == Waveform.SINE) {
+            return create(Type.WAVETABLE_CUBIC, sampleRate);
+        }
+        return new PolyBlepOscillator(sampleRate, waveform);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Sets the frequency in Hz, effective from the next rendered sample
+     */
+    public void setFrequency(double hz) {
+        frequency = hz;
+        onFrequencyChanged();
+    }
+
+    /**
+     * @return current phase in cycles, in the range [0, 1)
+     */
+    public abstract double getPhase();
+
+    /**
+     * Sets the phase in cycles. Values outside [0, 1) are wrapped.
+     */
+    public abstract void setPhase(double phase);
+
+    /**
+     * Resets the phase to 0, keeping the frequency
+     */
+    public void reset() {
+        setPhase(0);
+    }
+
+    /**
+     * Writes {@code length} samples of a unit amplitude sine to {@code out}
+     */
+    public void render(double[] out, int offset, int length) {
+        Arrays.fill(out, offset, offset + length, 0);
+        mix(out, offset, length, 1);
+    }
+
+    /**
+     * Adds {@code length} samples of a sine scaled by {@code gain} to what is already in {@code out}
+     */
+    public abstract void mix(double[] out, int offset, int length, double gain);
+
+    /**
+     * Writes {@code length} samples of a unit amplitude sine to {@code out}
+     */
+    public void render(float[] out, int offset, int length) {
+        Arrays.fill(out, offset, offset + length, 0);
+        mix(out, offset, length, 1);
+    }
+
+    /**
+     * Adds {@code length} samples of a sine scaled by {@code gain} to {@code out}. Backends without
+     * a float loop of their own render in double and narrow.
+     */
+    public void mix(float[] out, int offset, int length, float gain) {
+        if (scratch == null) {
+            scratch = new double[256];
+        }
+        for (int done = 0; done < length; done += scratch.length) {
+            int n = Math.min(scratch.length, length - done);
+            Arrays.fill(scratch, 0, n, 0);
+            mix(scratch, 0, n, gain);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] += (float) scratch[i];
+            }
+        }
+    }
+
+    protected abstract void onFrequencyChanged();
+
+    /**
+     * @return the fractional part of {@code phase}, in [0, 1)
+     */
+    protected static double wrap(double phase) {
+        return phase - Math.floor(phase);
+    }
+}
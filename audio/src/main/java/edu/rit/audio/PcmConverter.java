@@ -0,0 +1,208 @@
+package edu.rit.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts samples in [-1, 1] to 16 bit PCM. Out of range input is clipped rather than wrapped,
+ * either hard at full scale or through a cubic soft knee. Optional TPDF dither adds triangular
+ * noise of +-1 LSB before quantising.
+ * <p>
+ * Nothing is allocated per call. The mode is picked outside the loops, so each loop body is
+ * straight-line code whose clamps compile to conditional moves, which the JIT can unroll and
+ * vectorise. Math.max/min on doubles are avoided on purpose: their NaN and -0.0 handling makes them
+ * several times slower here. An instance keeps dither state and must not be shared between threads.
+ */
+public final class PcmConverter {
+
+    public enum Clip {
+        /** Clamp at full scale */
+        SATURATE,
+        /** Unity gain for small signals, bending smoothly into full scale at 1.5 */
+        SOFT
+    }
+
+    private static final double SCALE = 32767.0;
+    private static final double SOFT_LIMIT = 1.5;
+    private static final double SOFT_CUBE = 4.0 / 27.0;
+    private static final double RANDOM_SCALE = 1.0 / 4294967296.0; // 2^-32
+
+    private static final float SOFT_LIMIT_FLOAT = (float) SOFT_LIMIT;
+    private static final float SOFT_CUBE_FLOAT = (float) SOFT_CUBE;
+
+    // float input is widened through a block this long
+    private static final int WIDE_FRAMES = 256;
+
+    private final boolean soft;
+    private final boolean dither;
+    private int seed = 0x9e3779b9;
+    private final double[] wide = new double[WIDE_FRAMES];
+
+    public PcmConverter(Clip clip, boolean dither) {
+        this.soft = clip == Clip.SOFT;
+        this.dither = dither;
+    }
+
+    /**
+     * Saturating, no dither
+     */
+    public PcmConverter() {
+        this(Clip.SATURATE, false);
+    }
+
+    public Clip getClip() {
+        return soft ? Clip.SOFT : Clip.SATURATE;
+    }
+
+    public boolean isDither() {
+        return dither;
+    }
+
+    /**
+     * Converts {@code length} samples into {@code out}
+     */
+    public void toShorts(double[] in, int inOffset, short[] out, int outOffset, int length) {
+        if (dither) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = (short) quantize(shape(in[inOffset + i]) * SCALE + triangular());
+            }
+        } else if (soft) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = (short) quantize(softClip(in[inOffset + i]) * SCALE);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = (short) quantize(in[inOffset + i] * SCALE);
+            }
+        }
+    }
+
+    /**
+     * Converts {@code length} samples into {@code 2 * length} little endian bytes of {@code out}
+     */
+    public void toBytes(double[] in, int inOffset, byte[] out, int outOffset, int length) {
+        if (dither) {
+            for (int i = 0; i < length; i++) {
+                int v = quantize(shape(in[inOffset + i]) * SCALE + triangular());
+                out[outOffset + 2 * i] = (byte) v;
+                out[outOffset + 2 * i + 1] = (byte) (v >> 8);
+            }
+        } else if (soft) {
+            for (int i = 0; i < length; i++) {
+                int v = quantize(softClip(in[inOffset + i]) * SCALE);
+                out[outOffset + 2 * i] = (byte) v;
+                out[outOffset + 2 * i + 1] = (byte) (v >> 8);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                int v = quantize(in[inOffset + i] * SCALE);
+                out[outOffset + 2 * i] = (byte) v;
+                out[outOffset + 2 * i + 1] = (byte) (v >> 8);
+            }
+        }
+    }
+
+    /**
+     * Converts {@code length} samples into {@code out} at its position, in the buffer's byte order
+     * (AudioTrack expects {@code ByteOrder.nativeOrder()}), and advances the position past them
+     */
+    public void toBuffer(double[] in, int inOffset, ByteBuffer out, int length) {
+        int position = out.position();
+        if (out.remaining() < 2 * length) {
+            throw new IllegalArgumentException("buffer has room for " + out.remaining() / 2
+                    + " samples, need " + length);
+        }
+        if (dither) {
+            for (int i = 0; i < length; i++) {
+                out.putShort(position + 2 * i,
+                        (short) quantize(shape(in[inOffset + i]) * SCALE + triangular()));
+            }
+        } else if (soft) {
+            for (int i = 0; i < length; i++) {
+                out.putShort(position + 2 * i, (short) quantize(softClip(in[inOffset + i]) * SCALE));
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                out.putShort(position + 2 * i, (short) quantize(in[inOffset + i] * SCALE));
+            }
+        }
+        out.position(position + 2 * length);
+    }
+
+    /**
+     * Float version of {@link #toShorts(double[], int, short[], int, int)}. Samples are widened a
+     * chunk at a time and converted by the double loop, which gives the same result for the same
+     * values; clamping and rounding in float measured twice as slow as in double.
+     */
+    public void toShorts(float[] in, int inOffset, short[] out, int outOffset, int length) {
+        for (int done = 0; done < length; done += WIDE_FRAMES) {
+            int n = Math.min(WIDE_FRAMES, length - done);
+            widen(in, inOffset + done, n);
+            toShorts(wide, 0, out, outOffset + done, n);
+        }
+    }
+
+    /**
+     * Float version of {@link #toBuffer(double[], int, ByteBuffer, int)}, widened as
+     * {@link #toShorts(float[], int, short[], int, int)} is
+     */
+    public void toBuffer(float[] in, int inOffset, ByteBuffer out, int length) {
+        if (out.remaining() < 2 * length) {
+            throw new IllegalArgumentException("buffer has room for " + out.remaining() / 2
+                    + " samples, need " + length);
+        }
+        for (int done = 0; done < length; done += WIDE_FRAMES) {
+            int n = Math.min(WIDE_FRAMES, length - done);
+            widen(in, inOffset + done, n);
+            toBuffer(wide, 0, out, n);
+        }
+    }
+
+    private void widen(float[] in, int offset, int length) {
+        final double[] w = wide;
+        for (int i = 0; i < length; i++) {
+            w[i] = in[offset + i];
+        }
+    }
+
+    private double shape(double x) {
+        return soft ? softClip(x) : x;
+    }
+
+    /**
+     * Sum of two uniform variables in [-0.5, 0.5), from a xorshift generator
+     */
+    private double triangular() {
+        int s = seed;
+        s ^= s << 13;
+        s ^= s >>> 17;
+        s ^= s << 5;
+        int a = s;
+        s ^= s << 13;
+        s ^= s >>> 17;
+        s ^= s << 5;
+        seed = s;
+        return ((double) a + (double) s) * RANDOM_SCALE;
+    }
+
+    /**
+     * x - 4/27 x^3 over [-1.5, 1.5]: slope 1 at the origin, reaching full scale with slope 0
+     */
+    static double softClip(double x) {
+        double c = x < -SOFT_LIMIT ? -SOFT_LIMIT : x > SOFT_LIMIT ? SOFT_LIMIT : x;
+        return c - SOFT_CUBE * c * c * c;
+    }
+
+    static float softClip(float x) {
+        float c = x < -SOFT_LIMIT_FLOAT ? -SOFT_LIMIT_FLOAT : x > SOFT_LIMIT_FLOAT ? SOFT_LIMIT_FLOAT : x;
+        return c - SOFT_CUBE_FLOAT * c * c * c;
+    }
+
+    /**
+     * Rounds to the nearest 16 bit value and clamps. The offset keeps the operand positive so the
+     * truncating cast rounds; it also saturates out of range doubles, and the integer clamp that
+     * follows compiles to conditional moves.
+     */
+    static int quantize(double x) {
+        return Math.min(65535, Math.max(0, (int) (x + 32768.5))) - 32768;
+    }
+}
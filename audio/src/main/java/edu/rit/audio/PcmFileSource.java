@@ -0,0 +1,532 @@
+package edu.rit.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays 16 bit PCM from a WAV or raw file, read through a memory mapped {@link FileChannel} one
+ * window at a time, so memory use does not grow with the file. A reader thread of its own maps the
+ * window after the one playing and touches its pages, so the render thread reads samples straight
+ * from the page cache and never waits on the disk. Stereo files are mixed down to mono.
+ * <p>
+ * Like the tone generator it may add a delayed copy of the signal, at a delay and level that may
+ * be changed from any thread and are ramped on the render thread. With no delayed copy, mono files
+ * hand their samples over as PCM in one bulk copy, skipping conversion altogether.
+ * <p>
+ * Render methods are called from the render thread only; {@link #seek} and the settings may be
+ * called from any thread.
+ */
+public final class PcmFileSource implements PcmSource, FloatSource, Closeable {
+    // a quarter megabyte, about 8 s of mono at 16 kHz
+    static final int DEFAULT_WINDOW_BYTES = 256 * 1024;
+
+    // the delayed copy's level ramps over 1/50 s, as delay changes do
+    private static final int RAMP_PER_SECOND = 50;
+
+    // slots in the control surface
+    private static final int DELAY = 0;
+    private static final int DELAY_GAIN = 1;
+
+    /**
+     * A mapped stretch of the file
+     */
+    private static final class Window {
+        final ShortBuffer samples;
+        final long start;
+        final int frames;
+
+        Window(ShortBuffer samples, long start, int frames) {
+            this.samples = samples;
+            this.start = start;
+            this.frames = frames;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long dataStart;
+    private final int sampleRate;
+    private final int channels;
+    private final long lengthFrames;
+    private final int windowFrames;
+    private final int blockFrames;
+
+    private final Thread reader;
+    private volatile boolean running = true;
+    // first frame of the window the reader should map next, -1 for none
+    private volatile long wanted = -1;
+    private volatile Window ahead;
+    private volatile IOException failure;
+
+    private volatile boolean looping = true;
+    private final AtomicLong seekRequest = new AtomicLong(-1);
+    private final ControlSurface controls = new ControlSurface(2);
+    private volatile long position;
+    private volatile boolean finished;
+    private volatile long lateWindows;
+
+    // render thread only
+    private Window window;
+    private int windowPosition;
+    private final DelayLine delayLine;
+    private final float[] delayed;
+    private float[] narrowOut;
+    private final double[] renderParams = new double[2];
+    private long renderVersion = -1;
+    private double delayGain;
+    private double targetDelayGain;
+    private final int rampFrames;
+
+    private PcmFileSource(FileChannel channel, long dataStart, long dataBytes, int sampleRate, int channels,
+                          int blockFrames, int windowBytes) throws IOException {
+        if (sampleRate <= 0 || blockFrames <= 0) {
+            throw new IllegalArgumentException("sampleRate and blockFrames must be positive");
+        }
+        if (channels != 1 && channels != 2) {
+            throw new IllegalArgumentException("channels must be 1 or 2: " + channels);
+        }
+        this.channel = channel;
+        this.dataStart = dataStart;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.blockFrames = blockFrames;
+        lengthFrames = dataBytes / (2 * channels);
+        windowFrames = Math.max(blockFrames, windowBytes / (2 * channels));
+        delayLine = new DelayLine(sampleRate / 10, DelayLine.Interpolation.LAGRANGE);
+        delayLine.setRampLength(sampleRate / RAMP_PER_SECOND);
+        delayed = new float[blockFrames];
+        rampFrames = Math.max(1, sampleRate / RAMP_PER_SECOND);
+
+        window = map(0);
+        if (window.frames < lengthFrames) {
+            wanted = window.frames;
+        }
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readAhead();
+            }
+        }, "PcmFileSource");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Opens a 16 bit PCM WAV file, mono or stereo
+     *
+     * @param blockFrames largest block usually asked for; larger ones are rendered in pieces
+     */
+    public static PcmFileSource openWav(File file, int blockFrames) throws IOException {
+        return openWav(file, blockFrames, DEFAULT_WINDOW_BYTES);
+    }
+
+    static PcmFileSource openWav(File file, int blockFrames, int windowBytes) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0, 12);
+            if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+                throw new IOException(file + " is not a WAV file");
+            }
+            int format = -1;
+            int channels = 0;
+            int sampleRate = 0;
+            int bits = 0;
+            long position = 12;
+            long size = channel.size();
+            while (position + 8 <= size) {
+                readFully(channel, header, position, 8);
+                int id = header.getInt(0);
+                long length = header.getInt(4) & 0xffffffffL;
+                if (id == 0x20746d66) {            // "fmt "
+                    readFully(channel, header, position + 8, 16);
+                    format = header.getShort(0) & 0xffff;
+                    channels = header.getShort(2);
+                    sampleRate = header.getInt(4);
+                    bits = header.getShort(14);
+                } else if (id == 0x61746164) {     // "data"
+                    if (format != 1 && format != 0xfffe || bits != 16) {
+                        throw new IOException(file + ": only 16 bit PCM is supported, format " + format
+                                + ", " + bits + " bits");
+                    }
+                    long dataStart = position + 8;
+                    // a writer that never finished, or past 4 GB, leaves the size wrong; go by the file
+                    if (length == 0 || length > size - dataStart) {
+                        length = size - dataStart;
+                    }
+                    return new PcmFileSource(channel, dataStart, length, sampleRate, channels, blockFrames,
+                            windowBytes);
+                }
+                // chunks are padded to an even length
+                position += 8 + length + (length & 1);
+            }
+            throw new IOException(file + " has no data chunk");
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a file of raw little endian 16 bit samples
+     */
+    public static PcmFileSource openRaw(File file, int sampleRate, int channels, int blockFrames)
+            throws IOException {
+        return openRaw(file, sampleRate, channels, blockFrames, DEFAULT_WINDOW_BYTES);
+    }
+
+    static PcmFileSource openRaw(File file, int sampleRate, int channels, int blockFrames, int windowBytes)
+            throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try {
+            return new PcmFileSource(channel, 0, channel.size(), sampleRate, channels, blockFrames, windowBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * WAV for names ending in .wav, raw mono samples at {@code rawSampleRate} otherwise, as
+     * {@link PcmFileWriter#open} writes them
+     */
+    public static PcmFileSource open(File file, int rawSampleRate, int blockFrames) throws IOException {
+        if (file.getName().toLowerCase(Locale.US).endsWith(".wav")) {
+            return openWav(file, blockFrames);
+        }
+        return openRaw(file, rawSampleRate, 1, blockFrames);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannelCount() {
+        return channels;
+    }
+
+    public long getLengthFrames() {
+        return lengthFrames;
+    }
+
+    /**
+     * @return frame of the file playing at the end of the last block
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Carries on from {@code frame} at the next block
+     */
+    public void seek(long frame) {
+        if (frame < 0 || frame > lengthFrames) {
+            throw new IllegalArgumentException("frame " + frame + " outside 0 to " + lengthFrames);
+        }
+        seekRequest.set(frame);
+        finished = false;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    /**
+     * @param looping true to start again at the end, false to play silence after it
+     */
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    /**
+     * @return whether playback reached the end without looping, or stopped on a read error
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the read error that stopped playback, or null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return windows the reader had not mapped in time, so the render thread mapped them itself
+     */
+    public long getLateWindows() {
+        return lateWindows;
+    }
+
+    /**
+     * @param samples delay of the copy, up to a tenth of a second
+     */
+    public void setDelay(double samples) {
+        if (!(samples >= 0) || samples > delayLine.getMaxDelay()) {
+            throw new IllegalArgumentException("delay must be 0 to " + delayLine.getMaxDelay() + ": " + samples);
+        }
+        controls.set(DELAY, samples);
+    }
+
+    /**
+     * @param gain level of the delayed copy mixed in, 0 for none
+     */
+    public void setDelayGain(double gain) {
+        if (!(gain >= 0)) {
+            throw new IllegalArgumentException("gain must not be negative: " + gain);
+        }
+        controls.set(DELAY_GAIN, gain);
+    }
+
+    /**
+     * Stops the reader thread and closes the file. Windows already mapped stay readable.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(reader);
+        channel.close();
+    }
+
+    /**
+     * Copies the file's samples when there is nothing to add to them. Render thread only.
+     *
+     * @return false to have the block rendered as float instead
+     */
+    @Override
+    public boolean renderPcm(short[] out, int offset, int frames) {
+        poll();
+        if (channels != 1 || delayGain != 0 || targetDelayGain != 0) {
+            return false;
+        }
+        int done = 0;
+        while (done < frames) {
+            if (!ensureWindow()) {
+                Arrays.fill(out, offset + done, offset + frames, (short) 0);
+                break;
+            }
+            int n = Math.min(frames - done, window.frames - windowPosition);
+            ShortBuffer samples = window.samples;
+            samples.position(windowPosition);
+            samples.get(out, offset + done, n);
+            windowPosition += n;
+            done += n;
+        }
+        updatePosition();
+        return true;
+    }
+
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        poll();
+        for (int done = 0; done < frames; done += blockFrames) {
+            renderPiece(out, offset + done, Math.min(blockFrames, frames - done));
+        }
+        updatePosition();
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        if (narrowOut == null) {
+            narrowOut = new float[blockFrames];
+        }
+        for (int done = 0; done < frames; done += blockFrames) {
+            int n = Math.min(blockFrames, frames - done);
+            render(narrowOut, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] = narrowOut[i];
+            }
+        }
+    }
+
+    private void renderPiece(float[] out, int offset, int frames) {
+        int done = 0;
+        while (done < frames) {
+            if (!ensureWindow()) {
+                Arrays.fill(out, offset + done, offset + frames, 0f);
+                break;
+            }
+            int n = Math.min(frames - done, window.frames - windowPosition);
+            ShortBuffer samples = window.samples;
+            if (channels == 1) {
+                for (int i = 0; i < n; i++) {
+                    out[offset + done + i] = samples.get(windowPosition + i) * (1f / 32768);
+                }
+            } else {
+                int base = 2 * windowPosition;
+                for (int i = 0; i < n; i++) {
+                    out[offset + done + i] = (samples.get(base + 2 * i) + samples.get(base + 2 * i + 1))
+                            * (0.5f / 32768);
+                }
+            }
+            windowPosition += n;
+            done += n;
+        }
+
+        if (delayGain == 0 && targetDelayGain == 0) {
+            return;
+        }
+        delayLine.process(out, offset, delayed, 0, frames);
+        // ramp the level towards the target, a block's worth of the ramp at a time
+        double g = delayGain;
+        double end = targetDelayGain;
+        double most = (double) frames / rampFrames;
+        if (Math.abs(end - g) > most) {
+            end = g + Math.signum(end - g) * most;
+        }
+        double step = (end - g) / frames;
+        for (int i = 0; i < frames; i++) {
+            g += step;
+            out[offset + i] += (float) g * delayed[i];
+        }
+        delayGain = end;
+    }
+
+    /**
+     * Picks up settings and a seek since the last block
+     */
+    private void poll() {
+        long version = controls.getVersion();
+        if (version != renderVersion) {
+            renderVersion = controls.snapshot(renderParams);
+            delayLine.setDelay(renderParams[DELAY]);
+            if (targetDelayGain == 0 && delayGain == 0 && renderParams[DELAY_GAIN] != 0) {
+                // the line was not fed while the copy was off, so start it from silence
+                delayLine.reset();
+            }
+            targetDelayGain = renderParams[DELAY_GAIN];
+        }
+        long seek = seekRequest.getAndSet(-1);
+        if (seek >= 0) {
+            moveTo(seek);
+        }
+    }
+
+    /**
+     * Moves on to the next window at the end of this one
+     *
+     * @return false once there is nothing left to play
+     */
+    private boolean ensureWindow() {
+        if (window != null && windowPosition < window.frames) {
+            return true;
+        }
+        if (window == null) {
+            return false;
+        }
+        long next = window.start + window.frames;
+        if (next >= lengthFrames) {
+            if (!looping || lengthFrames == 0) {
+                window = null;
+                finished = true;
+                return false;
+            }
+            next = 0;
+        }
+        if (next == window.start) {
+            // the whole file is in this window, so loop within it; the reader has nothing to map
+            windowPosition = 0;
+            return true;
+        }
+        Window ready = ahead;
+        if (ready != null && ready.start == next) {
+            window = ready;
+            windowPosition = 0;
+            requestAfter(ready);
+            return true;
+        }
+        lateWindows++;
+        moveTo(next);
+        return window != null;
+    }
+
+    /**
+     * Maps the window holding {@code frame} on the render thread, for seeks and a late reader
+     */
+    private void moveTo(long frame) {
+        if (frame >= lengthFrames) {
+            window = null;
+            finished = !looping || lengthFrames == 0;
+            if (!finished) {
+                moveTo(0);
+            }
+            return;
+        }
+        try {
+            window = map(frame);
+            windowPosition = 0;
+            requestAfter(window);
+        } catch (IOException e) {
+            failure = e;
+            window = null;
+            finished = true;
+        }
+    }
+
+    /**
+     * Asks the reader for the window after {@code current}
+     */
+    private void requestAfter(Window current) {
+        long next = current.start + current.frames;
+        if (next >= lengthFrames) {
+            next = looping ? 0 : -1;
+        }
+        if (next >= 0 && next != current.start) {
+            wanted = next;
+            LockSupport.unpark(reader);
+        }
+    }
+
+    private void updatePosition() {
+        position = window != null ? window.start + windowPosition : lengthFrames;
+    }
+
+    private void readAhead() {
+        while (running) {
+            long frame = wanted;
+            Window ready = ahead;
+            if (frame < 0 || ready != null && ready.start == frame) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                ahead = map(frame);
+            } catch (IOException e) {
+                if (running) {
+                    failure = e;
+                }
+                return;
+            }
+        }
+    }
+
+    private Window map(long frame) throws IOException {
+        int frames = (int) Math.min(windowFrames, lengthFrames - frame);
+        MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + frame * 2 * channels,
+                (long) frames * 2 * channels);
+        // fault the pages in here rather than on the render thread
+        bytes.load();
+        return new Window(bytes.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer(), frame, frames);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("file ends inside a header");
+            }
+        }
+    }
+}
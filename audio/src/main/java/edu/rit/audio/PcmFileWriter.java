@@ -0,0 +1,155 @@
+package edu.rit.audio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Writes 16 bit mono PCM to a file through a large direct buffer, either as a WAV file or as raw
+ * little endian samples. The WAV header is written with zero sizes and patched on {@link #close}.
+ * Samples are converted straight into the direct buffer, which the channel writes without
+ * another copy.
+ */
+public final class PcmFileWriter implements Closeable {
+    private static final int HEADER_BYTES = 44;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int sampleRate;
+    private final boolean wav;
+    private long frames;
+
+    /**
+     * @param file         created or truncated
+     * @param sampleRate   samples per second
+     * @param wav          true for a WAV file, false for raw samples
+     * @param bufferFrames samples collected before each write
+     */
+    public PcmFileWriter(File file, int sampleRate, boolean wav, int bufferFrames) throws IOException {
+        if (sampleRate <= 0 || bufferFrames <= 0) {
+            throw new IllegalArgumentException("sampleRate and bufferFrames must be positive");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.channel = raf.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(Math.max(2 * bufferFrames, HEADER_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.sampleRate = sampleRate;
+        this.wav = wav;
+        if (wav) {
+            putHeader(0);
+            flush();
+        }
+    }
+
+    /**
+     * WAV for names ending in .wav, raw samples otherwise
+     */
+    public static PcmFileWriter open(File file, int sampleRate, int bufferFrames) throws IOException {
+        boolean wav = file.getName().toLowerCase(Locale.US).endsWith(".wav");
+        return new PcmFileWriter(file, sampleRate, wav, bufferFrames);
+    }
+
+    /**
+     * Converts and writes {@code length} samples
+     */
+    public void write(PcmConverter converter, double[] in, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, buffer.remaining() / 2);
+            if (n == 0) {
+                flush();
+                continue;
+            }
+            converter.toBuffer(in, offset, buffer, n);
+            offset += n;
+            length -= n;
+            frames += n;
+        }
+    }
+
+    /**
+     * Float version of {@link #write(PcmConverter, double[], int, int)}
+     */
+    public void write(PcmConverter converter, float[] in, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = Math.min(length, buffer.remaining() / 2);
+            if (n == 0) {
+                flush();
+                continue;
+            }
+            converter.toBuffer(in, offset, buffer, n);
+            offset += n;
+            length -= n;
+            frames += n;
+        }
+    }
+
+    /**
+     * Writes {@code length} samples that are already PCM
+     */
+    public void write(short[] in, int offset, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 2) {
+                flush();
+            }
+            buffer.putShort(in[offset + i]);
+        }
+        frames += length;
+    }
+
+    public long getFramesWritten() {
+        return frames;
+    }
+
+    /**
+     * Writes what is buffered, fills in the WAV sizes and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            if (wav) {
+                putHeader(2 * frames);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, buffer.position());
+                }
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putHeader(long dataBytes) {
+        // RIFF sizes are 32 bit; past 4 GB the header is capped and readers go by the file length
+        int data = (int) Math.min(dataBytes, 0xffffffffL - 36);
+        buffer.clear();
+        buffer.putInt(0x46464952)          // "RIFF"
+                .putInt(36 + data)
+                .putInt(0x45564157)        // "WAVE"
+                .putInt(0x20746d66)        // "fmt "
+                .putInt(16)
+                .putShort((short) 1)       // PCM
+                .putShort((short) 1)       // mono
+                .putInt(sampleRate)
+                .putInt(2 * sampleRate)    // bytes per second
+                .putShort((short) 2)       // bytes per frame
+                .putShort((short) 16)      // bits per sample
+                .putInt(0x61746164)        // "data"
+                .putInt(data);
+    }
+}
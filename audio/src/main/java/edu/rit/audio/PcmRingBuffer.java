@@ -0,0 +1,187 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded single producer, single consumer ring of 16 bit samples, moved in batches. Neither side
+ * locks or allocates. Each side publishes its index with an ordered write and keeps its own copy
+ * of the other side's index, so it only reads the shared one when its copy says the ring looks
+ * full or empty.
+ * <p>
+ * The indices, the counters and each side's copies live in arrays with a cache line or two
+ * between them, so the producer and consumer do not keep stealing one line from each other.
+ * <p>
+ * The watermarks let the producer run ahead of the consumer by a bounded amount without polling:
+ * the producer is told when it has filled the ring to the high mark and can stop, and the consumer
+ * is told when it has drained it to the low mark and the producer should carry on.
+ */
+public final class PcmRingBuffer {
+
+    /**
+     * Hears the fill level crossing a watermark
+     */
+    public interface Listener {
+        /**
+         * The fill reached the high watermark. Called on the producer thread from {@link #put}.
+         */
+        void onHighWatermark(PcmRingBuffer ring);
+
+        /**
+         * The fill dropped to the low watermark. Called on the consumer thread from {@link #get}.
+         */
+        void onLowWatermark(PcmRingBuffer ring);
+    }
+
+    // longs per padded slot: 128 bytes, so adjacent line prefetch does not pair two slots either
+    private static final int PAD = 16;
+    // first slot of each side's padded region, in both arrays
+    private static final int PRODUCER = PAD;
+    private static final int CONSUMER = 2 * PAD;
+    private static final int TAIL = PRODUCER;
+    private static final int PRODUCER_WAITS = PRODUCER + 1;
+    private static final int HEAD = CONSUMER;
+    private static final int UNDERRUNS = CONSUMER + 1;
+
+    private final short[] data;
+    private final int mask;
+    // published by the side that owns each slot, read by both
+    private final AtomicLongArray shared = new AtomicLongArray(3 * PAD);
+    // each side's copy of the other side's index, never touched by the other side
+    private final long[] cached = new long[3 * PAD];
+
+    private int lowWatermark = -1;
+    private int highWatermark = Integer.MAX_VALUE;
+    private Listener listener;
+
+    /**
+     * @param capacity samples the ring holds, rounded up to a power of two
+     */
+    public PcmRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        data = new short[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Sets the fill levels reported to {@code listener}. Call before either side starts.
+     *
+     * @param low  fill at or below which {@link Listener#onLowWatermark} is called
+     * @param high fill at or above which {@link Listener#onHighWatermark} is called
+     */
+    public void setWatermarks(int low, int high, Listener listener) {
+        if (low < 0 || high <= low || high > data.length) {
+            throw new IllegalArgumentException("watermarks must satisfy 0 <= low < high <= capacity: "
+                    + low + ", " + high);
+        }
+        lowWatermark = low;
+        highWatermark = high;
+        this.listener = listener;
+    }
+
+    public int getCapacity() {
+        return data.length;
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Copies in as many samples as fit. Producer thread only.
+     *
+     * @return number of samples taken; fewer than {@code length} counts as a producer wait
+     */
+    public int put(short[] src, int offset, int length) {
+        final short[] d = data;
+        long t = shared.get(TAIL);
+        long h = cached[PRODUCER];
+        // the watermarks need the true fill, a stale copy could miss or invent a crossing
+        if (listener != null || d.length - (t - h) < length) {
+            h = shared.get(HEAD);
+            cached[PRODUCER] = h;
+        }
+        int fill = (int) (t - h);
+        int n = Math.min(length, d.length - fill);
+        if (n < length) {
+            shared.lazySet(PRODUCER_WAITS, shared.get(PRODUCER_WAITS) + 1);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        int at = (int) t & mask;
+        int first = Math.min(n, d.length - at);
+        System.arraycopy(src, offset, d, at, first);
+        System.arraycopy(src, offset + first, d, 0, n - first);
+        shared.lazySet(TAIL, t + n);
+        if (fill < highWatermark && fill + n >= highWatermark && listener != null) {
+            listener.onHighWatermark(this);
+        }
+        return n;
+    }
+
+    /**
+     * Copies out as many samples as are waiting, up to {@code length}. Consumer thread only.
+     *
+     * @return number of samples copied; fewer than {@code length} counts as an underrun
+     */
+    public int get(short[] dst, int offset, int length) {
+        final short[] d = data;
+        long h = shared.get(HEAD);
+        long t = cached[CONSUMER];
+        if (listener != null || t - h < length) {
+            t = shared.get(TAIL);
+            cached[CONSUMER] = t;
+        }
+        int fill = (int) (t - h);
+        int n = Math.min(length, fill);
+        if (n < length) {
+            shared.lazySet(UNDERRUNS, shared.get(UNDERRUNS) + 1);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        int at = (int) h & mask;
+        int first = Math.min(n, d.length - at);
+        System.arraycopy(d, at, dst, offset, first);
+        System.arraycopy(d, 0, dst, offset + first, n - first);
+        shared.lazySet(HEAD, h + n);
+        if (fill > lowWatermark && fill - n <= lowWatermark && listener != null) {
+            listener.onLowWatermark(this);
+        }
+        return n;
+    }
+
+    /**
+     * @return samples waiting, as of some moment during the call; any thread
+     */
+    public int size() {
+        long h = shared.get(HEAD);
+        return (int) (shared.get(TAIL) - h);
+    }
+
+    /**
+     * @return puts that could not take all their samples because the ring was full. This is
+     * backpressure, not loss: the producer keeps the rest and puts it again once the consumer has
+     * drained some, as {@link BufferedSink} does whenever the render thread runs ahead.
+     */
+    public long getProducerWaits() {
+        return shared.get(PRODUCER_WAITS);
+    }
+
+    /**
+     * @return gets that could not fill their request because the ring was empty
+     */
+    public long getUnderruns() {
+        return shared.get(UNDERRUNS);
+    }
+}
@@ -0,0 +1,15 @@
+package edu.rit.audio;
+
+/**
+ * A source that can sometimes hand over ready converted 16 bit PCM, e.g. from a cache. When it
+ * can, the render loop skips rendering and conversion for that block.
+ */
+public interface PcmSource extends AudioSource {
+
+    /**
+     * Writes the next {@code frames} samples as PCM, if available
+     *
+     * @return false to have the block rendered through {@link #render} instead
+     */
+    boolean renderPcm(short[] out, int offset, int frames);
+}
@@ -0,0 +1,113 @@
+package edu.rit.audio;
+
+/**
+ * Saw, square and triangle with PolyBLEP anti-aliasing. The naive shapes are computed from the
+ * phase, and the samples on either side of each discontinuity get a two-sample polynomial
+ * residual: a band-limited step (BLEP) for the jumps in the saw and square, and its integral
+ * (BLAMP) for the corners of the triangle. Most samples are nowhere near a discontinuity and cost
+ * no more than the naive shape.
+ * <p>
+ * All shapes have peaks of +-1 and start at phase 0 at the beginning of the rising edge of the
+ * square, the wrap of the saw and the bottom of the triangle.
+ */
+final class PolyBlepOscillator extends Oscillator {
+    private final Waveform waveform;
+    private double phase;
+    private double increment;
+
+    PolyBlepOscillator(int sampleRate, Waveform waveform) {
+        super(sampleRate);
+        if (waveform == Waveform.SINE) {
+            throw new IllegalArgumentException("sines have no discontinuities, use a sine backend");
+        }
+        this.waveform = waveform;
+    }
+
+    @Override
+    protected void onFrequencyChanged() {
+        // past Nyquist the residuals would overlap; nothing meaningful is left to render there
+        increment = Math.min(0.5, Math.abs(frequency) / sampleRate);
+    }
+
+    @Override
+    public double getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void setPhase(double phase) {
+        this.phase = wrap(phase);
+    }
+
+    @Override
+    public void mix(double[] out, int offset, int length, double gain) {
+        final double dt = increment;
+        double t = phase;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] += gain * shape(t, dt);
+            t += dt;
+            if (t >= 1) {
+                t -= 1;
+            }
+        }
+        phase = t;
+    }
+
+    @Override
+    public void mix(float[] out, int offset, int length, float gain) {
+        final double dt = increment;
+        double t = phase;
+        for (int i = offset; i < offset + length; i++) {
+            out[i] += gain * (float) shape(t, dt);
+            t += dt;
+            if (t >= 1) {
+                t -= 1;
+            }
+        }
+        phase = t;
+    }
+
+    private double shape(double t, double dt) {
+        switch (waveform) {
+            case SAW:
+                return 2 * t - 1 - blep(t, dt);
+            case SQUARE:
+                return (t < 0.5 ? 1 : -1) + blep(t, dt) - blep(half(t), dt);
+            default:
+                // slope +-4 per cycle, so the corners change the slope by 8 dt per sample
+                return (t < 0.5 ? 4 * t - 1 : 3 - 4 * t) + 8 * dt * (blamp(t, dt) - blamp(half(t), dt));
+        }
+    }
+
+    private static double half(double t) {
+        return t < 0.5 ? t + 0.5 : t - 0.5;
+    }
+
+    /**
+     * Residual of a band-limited step of height 2 at phase 0, for the sample at phase t
+     */
+    static double blep(double t, double dt) {
+        if (t < dt) {
+            double x = t / dt;
+            return x + x - x * x - 1;
+        } else if (t > 1 - dt) {
+            double x = (t - 1) / dt;
+            return x * x + x + x + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Residual of a band-limited corner at phase 0 whose slope rises by one per sample
+     */
+    static double blamp(double t, double dt) {
+        if (t < dt) {
+            double x = 1 - t / dt;
+            return x * x * x / 6;
+        } else if (t > 1 - dt) {
+            double x = (t - 1) / dt + 1;
+            return x * x * x / 6;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,53 @@
+package edu.rit.audio;
+
+/**
+ * Rotates a unit phasor by a fixed angle every sample. Rounding makes the phasor length drift
+ * slowly, so it is pulled back to 1 once per block.
+ */
+final class RecursiveOscillator extends Oscillator {
+    private double cos = 1;
+    private double sin = 0;
+    private double stepCos = 1;
+    private double stepSin = 0;
+
+    RecursiveOscillator(int sampleRate) {
+        super(sampleRate);
+    }
+
+    @Override
+    protected void onFrequencyChanged() {
+        double omega = TWO_PI * frequency / sampleRate;
+        stepCos = Math.cos(omega);
+        stepSin = Math.sin(omega);
+    }
+
+    @Override
+    public double getPhase() {
+        return wrap(Math.atan2(sin, cos) / TWO_PI);
+    }
+
+    @Override
+    public void setPhase(double phase) {
+        double angle = TWO_PI * wrap(phase);
+        cos = Math.cos(angle);
+        sin = Math.sin(angle);
+    }
+
+    @Override
+    public void mix(double[] out, int offset, int length, double gain) {
+        final double kc = stepCos;
+        final double ks = stepSin;
+        double c = cos;
+        double s = sin;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            out[i] += gain * s;
+            double next = c * kc - s * ks;
+            s = s * kc + c * ks;
+            c = next;
+        }
+        // one Newton step towards 1 / |phasor|, plenty since the drift per block is tiny
+        double k = 1.5 - 0.5 * (c * c + s * s);
+        cos = c * k;
+        sin = s * k;
+    }
+}
@@ -0,0 +1,38 @@
+package edu.rit.audio;
+
+/**
+ * Calls Math.sin for every sample. Slow, but exact, so the other backends can be checked against it.
+ */
+final class ReferenceOscillator extends Oscillator {
+    private double phase;
+    private double increment;
+
+    ReferenceOscillator(int sampleRate) {
+        super(sampleRate);
+    }
+
+    @Override
+    protected void onFrequencyChanged() {
+        increment = frequency / sampleRate;
+    }
+
+    @Override
+    public double getPhase() {
+        return phase;
+    }
+
+    @Override
+    public void setPhase(double phase) {
+        this.phase = wrap(phase);
+    }
+
+    @Override
+    public void mix(double[] out, int offset, int length, double gain) {
+        double p = phase;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            out[i] += gain * Math.sin(TWO_PI * p);
+            p += increment;
+        }
+        phase = wrap(p);
+    }
+}
@@ -0,0 +1,385 @@
+package edu.rit.audio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single long-lived thread that renders fixed-size blocks from an {@link AudioSource} and writes
+ * them to an {@link AudioSink}. Its pace comes from the blocking sink write. Play, pause and
+ * parameter changes are posted through a {@link CommandQueue} and run on the render thread between
+ * blocks.
+ * <p>
+ * Sources are mono; for a sink with more channels every sample is copied to each channel.
+ * <p>
+ * All control methods must be called from one thread (normally the main thread).
+ */
+public class RenderLoop implements Runnable {
+    /**
+     * Sees every block on its way to the sink, e.g. for metering. Runs on the render thread, so it
+     * must not block or allocate.
+     */
+    public interface Tap {
+        /**
+         * @param pcm    mono samples of the block, only valid during the call
+         * @param offset index of the first sample
+         * @param frames samples in the block
+         */
+        void onBlock(short[] pcm, int offset, int frames);
+    }
+
+    private static final int CMD_PLAY = -1;
+    private static final int CMD_PAUSE = -2;
+    private static final int CMD_QUIT = -3;
+
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final AudioSource source;
+    private final PcmSource pcmSource;
+    private final FloatSource floatSource;
+    private final AudioSink sink;
+    private final int blockFrames;
+    private final int channels;
+    private final double[] block;
+    private final float[] floatBlock;
+    private final short[] pcm;
+    private final CommandQueue commands = new CommandQueue(QUEUE_CAPACITY);
+    private final CommandQueue.Handler dispatcher = new CommandQueue.Handler() {
+        @Override
+        public void onCommand(int code, double value) {
+            dispatch(code, value);
+        }
+    };
+
+    private CommandQueue.Handler handler;
+    private PcmConverter converter = new PcmConverter();
+    private Tap tap;
+    private Runnable onStart;
+    private Thread thread;
+
+    // render thread only
+    private boolean playing;
+    private boolean running;
+    private long framesWritten;
+    // set once a block has been written since play, so an empty sink means it ran dry
+    private boolean primed;
+
+    // time from starting a block to having its PCM, against the time the block lasts
+    private final LatencyHistogram renderNanos = new LatencyHistogram();
+    private final long deadlineNanos;
+    private volatile long lateBlocks;
+    private volatile long starvedBlocks;
+
+    // from play() to the first block written and to the sink starting to play it, for the latest
+    // play; -1 until known
+    private volatile long playRequestNanos;
+    private volatile long firstBlockNanos = -1;
+    private volatile long firstSampleNanos = -1;
+    // render thread only; position the sink has to pass for the first new sample to be playing
+    private long firstSamplePosition = -1;
+
+    private volatile long framesAhead;
+    private volatile long maxFramesAhead;
+
+    /**
+     * @param source      generator to pull blocks from
+     * @param sink        output to push blocks to
+     * @param blockFrames frames per block, e.g. 64 to 1024
+     */
+    public RenderLoop(AudioSource source, AudioSink sink, int blockFrames) {
+        if (blockFrames <= 0) {
+            throw new IllegalArgumentException("blockFrames must be positive: " + blockFrames);
+        }
+        this.source = source;
+        pcmSource = source instanceof PcmSource ? (PcmSource) source : null;
+        floatSource = source instanceof FloatSource ? (FloatSource) source : null;
+        this.sink = sink;
+        this.blockFrames = blockFrames;
+        // only the block for the sample type the source renders is used
+        block = floatSource == null ? new double[blockFrames] : null;
+        floatBlock = floatSource != null ? new float[blockFrames] : null;
+        channels = sink.getChannelCount();
+        pcm = new short[blockFrames * channels];
+        deadlineNanos = blockFrames * 1000000000L / sink.getSampleRate();
+    }
+
+    /**
+     * Sets who receives the codes passed to {@link #post}. Call before {@link #start()}.
+     */
+    public void setCommandHandler(CommandQueue.Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sets how blocks are clipped and dithered on the way to the sink. Call before {@link #start()}.
+     */
+    public void setPcmConverter(PcmConverter converter) {
+        this.converter = converter;
+    }
+
+    /**
+     * Sets who sees each block before it is written. Call before {@link #start()}.
+     */
+    public void setTap(Tap tap) {
+        this.tap = tap;
+    }
+
+    /**
+     * Sets what runs on the render thread before anything else, e.g. raising its priority beyond
+     * what Java offers. Call before {@link #start()}.
+     */
+    public void setOnStart(Runnable onStart) {
+        this.onStart = onStart;
+    }
+
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    /**
+     * Starts the render thread, paused
+     */
+    public void start() {
+        if (thread != null) {
+            throw new IllegalStateException("already started");
+        }
+        running = true;
+        thread = new Thread(this, "RenderLoop");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public void play() {
+        playRequestNanos = System.nanoTime();
+        firstBlockNanos = -1;
+        firstSampleNanos = -1;
+        send(CMD_PLAY, 0);
+    }
+
+    public void pause() {
+        send(CMD_PAUSE, 0);
+    }
+
+    /**
+     * Stops the render thread and waits for it to finish. The sink is left for the caller to release.
+     */
+    public void quit() {
+        if (thread == null) {
+            return;
+        }
+        send(CMD_QUIT, 0);
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        thread = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a command for the {@link #setCommandHandler handler}, run on the render thread before
+     * the next block
+     *
+     * @param code non-negative command code
+     */
+    public void post(int code, double value) {
+        if (code < 0) {
+            throw new IllegalArgumentException("command codes must be non-negative: " + code);
+        }
+        send(code, value);
+    }
+
+    /**
+     * @return frames written to the sink but not played yet, as of the last block
+     */
+    public long getFramesAhead() {
+        return framesAhead;
+    }
+
+    public long getMaxFramesAhead() {
+        return maxFramesAhead;
+    }
+
+    /**
+     * @return time from the latest {@link #play()} to its first block being written to the sink,
+     * or -1 if that has not happened yet
+     */
+    public long getFirstBlockNanos() {
+        return firstBlockNanos;
+    }
+
+    /**
+     * @return time from the latest {@link #play()} to the sink playing its first sample, as seen by
+     * the playback position moving and checked once per block; -1 if that has not happened yet
+     */
+    public long getFirstSampleNanos() {
+        return firstSampleNanos;
+    }
+
+    /**
+     * @return time taken to render and convert each block, in nanoseconds
+     */
+    public LatencyHistogram getRenderNanos() {
+        return renderNanos;
+    }
+
+    /**
+     * @return how long a block lasts at the sink's rate, the most rendering it may take
+     */
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * @return blocks that took longer to render than they last
+     */
+    public long getLateBlocks() {
+        return lateBlocks;
+    }
+
+    /**
+     * @return blocks that found the sink had played everything written to it, so output had gone
+     * silent; counted while playing, after the first block
+     */
+    public long getStarvedBlocks() {
+        return starvedBlocks;
+    }
+
+    /**
+     * @return time from rendering a block to hearing it, as of the last block
+     */
+    public double getLatencyMillis() {
+        return framesAhead * 1000.0 / sink.getSampleRate();
+    }
+
+    private void send(int code, double value) {
+        while (!commands.offer(code, value)) {
+            Thread.yield();
+        }
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (onStart != null) {
+            onStart.run();
+        }
+        while (running) {
+            commands.drain(dispatcher);
+            if (!running) {
+                break;
+            }
+            if (!playing) {
+                LockSupport.park(this);
+                continue;
+            }
+            renderBlock();
+        }
+        if (playing) {
+            sink.pause();
+            playing = false;
+        }
+    }
+
+    private void renderBlock() {
+        long start = System.nanoTime();
+        if (pcmSource == null || !pcmSource.renderPcm(pcm, 0, blockFrames)) {
+            if (floatSource != null) {
+                floatSource.render(floatBlock, 0, blockFrames);
+                converter.toShorts(floatBlock, 0, pcm, 0, blockFrames);
+            } else {
+                source.render(block, 0, blockFrames);
+                converter.toShorts(block, 0, pcm, 0, blockFrames);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        renderNanos.record(elapsed);
+        if (elapsed > deadlineNanos) {
+            lateBlocks++;
+        }
+        if (primed && framesWritten - sink.getPlaybackPosition() <= 0) {
+            starvedBlocks++;
+        }
+        if (tap != null) {
+            tap.onBlock(pcm, 0, blockFrames);
+        }
+        if (channels > 1) {
+            spread(pcm, blockFrames, channels);
+        }
+        int samples = blockFrames * channels;
+        int offset = 0;
+        while (offset < samples) {
+            int written = sink.write(pcm, offset, samples - offset);
+            if (written <= 0) {
+                break;
+            }
+            offset += written;
+        }
+        framesWritten += offset / channels;
+        primed = true;
+
+        long position = sink.getPlaybackPosition();
+        if (firstSamplePosition >= 0) {
+            if (firstBlockNanos < 0) {
+                firstBlockNanos = System.nanoTime() - playRequestNanos;
+            }
+            if (position > firstSamplePosition) {
+                firstSampleNanos = System.nanoTime() - playRequestNanos;
+                firstSamplePosition = -1;
+            }
+        }
+        long ahead = framesWritten - position;
+        framesAhead = ahead;
+        if (ahead > maxFramesAhead) {
+            maxFramesAhead = ahead;
+        }
+    }
+
+    /**
+     * Copies each of the first {@code frames} mono samples to every channel of its frame, in place.
+     * Runs backwards so no sample is overwritten before it is copied.
+     */
+    static void spread(short[] pcm, int frames, int channels) {
+        for (int i = frames - 1; i >= 0; i--) {
+            short v = pcm[i];
+            for (int c = channels - 1; c >= 0; c--) {
+                pcm[i * channels + c] = v;
+            }
+        }
+    }
+
+    private void dispatch(int code, double value) {
+        switch (code) {
+            case CMD_PLAY:
+                if (!playing) {
+                    playing = true;
+                    primed = false;
+                    // anything already queued plays first, the new audio starts after it
+                    firstSamplePosition = framesWritten;
+                    sink.play();
+                }
+                break;
+            case CMD_PAUSE:
+                if (playing) {
+                    playing = false;
+                    sink.pause();
+                }
+                break;
+            case CMD_QUIT:
+                running = false;
+                break;
+            default:
+                if (handler != null) {
+                    handler.onCommand(code, value);
+                }
+                break;
+        }
+    }
+}
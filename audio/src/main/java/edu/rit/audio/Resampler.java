@@ -0,0 +1,215 @@
+package edu.rit.audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Polyphase windowed-sinc sample rate converter, streaming from a {@link FloatSource} at one rate
+ * to output at another. The rate ratio is reduced to up / down; each output sample sits on one of
+ * {@code up} phases between two input samples and is a short dot product of the input history with
+ * that phase's taps.
+ * <p>
+ * The low-pass prototype is a Kaiser windowed sinc cut off just below the lower of the two Nyquist
+ * frequencies. Tables depend only on the reduced ratio, so they are computed once per ratio and
+ * shared by every resampler using it.
+ * <p>
+ * Rendering is on the render thread only, like any source.
+ */
+public final class Resampler implements FloatSource {
+
+    /**
+     * Zero crossings of the sinc on each side of the centre, at the lower of the two rates
+     */
+    static final int HALF_WIDTH = 16;
+
+    /**
+     * Cut-off as a fraction of the lower Nyquist frequency, leaving room for the transition band
+     */
+    private static final double ROLLOFF = 0.9;
+
+    private static final double KAISER_BETA = 8.6;
+
+    /**
+     * Largest reduced interpolation factor, which bounds a table to a few hundred kB
+     */
+    private static final int MAX_PHASES = 4096;
+
+    private static final Map<Long, float[]> TABLES = new HashMap<Long, float[]>();
+
+    private final FloatSource source;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[] coefficients;
+
+    // input history followed by the block last pulled from the source; render thread only
+    private final float[] input;
+    private final int blockFrames;
+    private int filled;
+    private int position;
+    private int phase;
+
+    private float[] narrowOut;
+
+    /**
+     * @param source      renders at {@code inputRate}
+     * @param inputRate   rate of the source
+     * @param outputRate  rate to produce
+     * @param blockFrames frames pulled from the source at a time
+     */
+    public Resampler(FloatSource source, int inputRate, int outputRate, int blockFrames) {
+        if (inputRate <= 0 || outputRate <= 0 || blockFrames <= 0) {
+            throw new IllegalArgumentException("rates and blockFrames must be positive");
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.source = source;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        if (up > MAX_PHASES) {
+            throw new IllegalArgumentException("ratio " + outputRate + "/" + inputRate
+                    + " needs " + up + " phases, max " + MAX_PHASES);
+        }
+        this.taps = tapsFor(up, down);
+        this.coefficients = table(up, down);
+        this.blockFrames = blockFrames;
+        input = new float[taps - 1 + blockFrames];
+        filled = taps - 1;
+        position = taps - 1;
+    }
+
+    /**
+     * @return taps per output sample; the cost per sample
+     */
+    public int getTaps() {
+        return taps;
+    }
+
+    /**
+     * @return delay through the filter, in input samples
+     */
+    public double getLatencyFrames() {
+        return (taps * up - 1) / 2.0 / up;
+    }
+
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        final float[] in = input;
+        final float[] h = coefficients;
+        final int n = taps;
+        for (int i = 0; i < frames; i++) {
+            while (position >= filled) {
+                pull();
+            }
+            int base = phase * n;
+            int p = position;
+            float sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += h[base + k] * in[p - k];
+            }
+            out[offset + i] = sum;
+            phase += down;
+            position += phase / up;
+            phase %= up;
+        }
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        if (narrowOut == null) {
+            narrowOut = new float[blockFrames];
+        }
+        for (int done = 0; done < frames; done += narrowOut.length) {
+            int n = Math.min(narrowOut.length, frames - done);
+            render(narrowOut, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] = narrowOut[i];
+            }
+        }
+    }
+
+    /**
+     * Keeps the last taps - 1 samples as history and appends the next block from the source
+     */
+    private void pull() {
+        int keep = taps - 1;
+        System.arraycopy(input, filled - keep, input, 0, keep);
+        position -= filled - keep;
+        source.render(input, keep, blockFrames);
+        filled = keep + blockFrames;
+    }
+
+    static int tapsFor(int up, int down) {
+        // downsampling stretches the filter, since the cut-off falls with the output rate
+        return 2 * (int) Math.ceil(HALF_WIDTH * Math.max(1.0, (double) down / up));
+    }
+
+    /**
+     * @return the number of ratios with a cached table
+     */
+    static int cachedTables() {
+        synchronized (TABLES) {
+            return TABLES.size();
+        }
+    }
+
+    /**
+     * Taps for every phase of the ratio, phase by phase, each phase's taps in the order they meet
+     * the input history from newest to oldest
+     */
+    static float[] table(int up, int down) {
+        Long key = ((long) up << 32) | down;
+        synchronized (TABLES) {
+            float[] table = TABLES.get(key);
+            if (table == null) {
+                table = design(up, down);
+                TABLES.put(key, table);
+            }
+            return table;
+        }
+    }
+
+    private static float[] design(int up, int down) {
+        int taps = tapsFor(up, down);
+        int length = taps * up;
+        double centre = (length - 1) / 2.0;
+        // cut-off in cycles per sample at the upsampled rate
+        double cutoff = 0.5 * ROLLOFF / Math.max(up, down);
+        double norm = besselI0(KAISER_BETA);
+        float[] table = new float[length];
+        for (int p = 0; p < up; p++) {
+            for (int k = 0; k < taps; k++) {
+                int j = p + k * up;
+                double t = j - centre;
+                double x = 2 * cutoff * t;
+                double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+                double r = t / (centre + 1);
+                double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - r * r))) / norm;
+                // gain of up makes up for the zeros the upsampling stuffs in
+                table[p * taps + k] = (float) (up * 2 * cutoff * sinc * window);
+            }
+        }
+        return table;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-17) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
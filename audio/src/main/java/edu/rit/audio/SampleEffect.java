@@ -0,0 +1,20 @@
+package edu.rit.audio;
+
+/**
+ * A stage whose output sample depends only on the input sample and on settings fixed for the
+ * block, such as a gain or a clipper. Runs of these in an {@link EffectChain} are fused into a
+ * single pass over the block, each sample going through every stage in turn.
+ */
+public interface SampleEffect extends Effect {
+
+    /**
+     * Takes up the settings for the next block of {@code frames} samples, before the first
+     * {@link #apply}
+     */
+    void prepare(int frames);
+
+    /**
+     * @return the next sample of the block processed; called once per sample, in order
+     */
+    float apply(float x);
+}
@@ -0,0 +1,10 @@
+package edu.rit.audio;
+
+/**
+ * Sample format a stage computes in. Output is 16 bit, so float's 24 bit mantissa is plenty and
+ * halves memory traffic; double is kept as the reference for accuracy checks.
+ */
+public enum SampleType {
+    FLOAT,
+    DOUBLE
+}
@@ -0,0 +1,83 @@
+package edu.rit.audio;
+
+/**
+ * A setting moved by scroll deltas of any size but held on a grid, with the part of the scroll
+ * too small for a whole step carried over to the next delta. {@link WaveformCache} only has loops
+ * for settings on its grid, so the card keeps its frequency and delay on that grid while a cache
+ * is in use; fine scrolls then still add up, instead of each being rounded away.
+ * <p>
+ * Not thread safe; use it from one thread, such as the main thread.
+ */
+public final class ScrolledSetting {
+    private final double min;
+    private final double max;
+
+    // 0 for no grid
+    private int steps;
+    private double value;
+    // scroll not yet a whole step, within half a step either way
+    private double remainder;
+
+    /**
+     * @param min   lowest value, on every grid it will be given
+     * @param max   highest value, on every grid it will be given
+     * @param value starting value
+     */
+    public ScrolledSetting(double min, double max, double value) {
+        if (!(max >= min)) {
+            throw new IllegalArgumentException("range is empty: " + min + " to " + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.value = clamp(value);
+    }
+
+    public double get() {
+        return value;
+    }
+
+    /**
+     * Jumps to {@code value}, snapped to the grid, dropping any scroll carried over
+     */
+    public void set(double value) {
+        remainder = 0;
+        this.value = snap(clamp(value));
+    }
+
+    /**
+     * @param steps grid steps per unit, such as {@link WaveformCache#DELAY_STEPS}; 0 leaves the
+     *              setting continuous. The value snaps to the new grid at once, and what that
+     *              rounds off is carried like a scroll.
+     */
+    public void setSteps(int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps must not be negative: " + steps);
+        }
+        this.steps = steps;
+        scroll(0);
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * Moves the setting by {@code delta}, plus whatever earlier scrolls left over
+     *
+     * @return the new value, on the grid
+     */
+    public double scroll(double delta) {
+        double target = clamp(value + remainder + delta);
+        value = snap(target);
+        remainder = target - value;
+        return value;
+    }
+
+    private double snap(double v) {
+        return steps == 0 ? v : Math.round(v * steps) / (double) steps;
+    }
+
+    private double clamp(double v) {
+        return v < min ? min : v > max ? max : v;
+    }
+}
@@ -0,0 +1,234 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Plays {@link ToneSequence}s through a {@link ToneGenerator}, changing its settings on the exact
+ * frame each event is due. Blocks are split at events, and sweeps are rendered in short slices
+ * with the frequency set for the middle of each, so the output does not depend on the block size
+ * and a long automated run costs little more than a steady tone.
+ * <p>
+ * With no sequence playing this is the generator and nothing more, cached blocks included. When a
+ * sequence ends or is stopped the generator glides back to its own settings.
+ * <p>
+ * {@link #play} and {@link #stop} may be called from any one thread; rendering happens on the
+ * render thread.
+ */
+public final class SequencePlayer implements PcmSource, FloatSource {
+    // frames per frequency step while sweeping, as for the generator's own glides
+    private static final int SWEEP_FRAMES = 32;
+
+    // values() copies the array on every call
+    private static final Waveform[] WAVEFORMS = Waveform.values();
+
+    // asks the render thread to stop
+    private static final ToneSequence STOP = new ToneSequence.Builder(1).build();
+
+    private final ToneGenerator generator;
+    private final AtomicReference<ToneSequence> requested = new AtomicReference<ToneSequence>();
+
+    // cleared by the render thread only if it still holds the sequence that ended
+    private final AtomicReference<ToneSequence> playing = new AtomicReference<ToneSequence>();
+    private volatile long position;
+
+    // render thread only
+    private ToneSequence sequence;
+    private int next;
+    private long frame;
+    private long sweepStart;
+    private long sweepEnd;
+    private double sweepFrom;
+    private double sweepTo;
+    private double sweepLogRatio;
+    private boolean sweeping;
+
+    public SequencePlayer(ToneGenerator generator) {
+        this.generator = generator;
+    }
+
+    public ToneGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Starts {@code sequence} from its beginning at the next block, in place of any sequence
+     * playing now
+     */
+    public void play(ToneSequence sequence) {
+        if (sequence.getSampleRate() != generator.getSampleRate()) {
+            throw new IllegalArgumentException("sequence is timed for " + sequence.getSampleRate()
+                    + " Hz, the generator runs at " + generator.getSampleRate() + " Hz");
+        }
+        requested.set(sequence);
+        playing.set(sequence);
+    }
+
+    /**
+     * Stops the sequence at the next block
+     */
+    public void stop() {
+        requested.set(STOP);
+        playing.set(null);
+    }
+
+    /**
+     * @return the sequence playing or about to, null once it has ended or been stopped
+     */
+    public ToneSequence getPlaying() {
+        return playing.get();
+    }
+
+    /**
+     * @return frames of the current sequence played so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean renderPcm(short[] out, int offset, int frames) {
+        poll();
+        return sequence == null && generator.renderPcm(out, offset, frames);
+    }
+
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        poll();
+        if (sequence == null) {
+            generator.render(out, offset, frames);
+            return;
+        }
+        int done = 0;
+        while (done < frames) {
+            int n = advance(frames - done);
+            if (sequence == null) {
+                generator.render(out, offset + done, frames - done);
+                return;
+            }
+            generator.render(out, offset + done, n);
+            done += n;
+            frame += n;
+        }
+        position = frame;
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        poll();
+        if (sequence == null) {
+            generator.render(out, offset, frames);
+            return;
+        }
+        int done = 0;
+        while (done < frames) {
+            int n = advance(frames - done);
+            if (sequence == null) {
+                generator.render(out, offset + done, frames - done);
+                return;
+            }
+            generator.render(out, offset + done, n);
+            done += n;
+            frame += n;
+        }
+        position = frame;
+    }
+
+    /**
+     * Picks up a sequence started or stopped since the last block
+     */
+    private void poll() {
+        ToneSequence request = requested.getAndSet(null);
+        if (request == null) {
+            return;
+        }
+        if (request == STOP) {
+            if (sequence != null) {
+                finish();
+            }
+            return;
+        }
+        sequence = request;
+        playing.set(request);
+        next = 0;
+        frame = 0;
+        position = 0;
+        sweeping = false;
+    }
+
+    /**
+     * Applies every event due at the current frame
+     *
+     * @return frames that may be rendered before the next change, at most {@code frames}
+     */
+    private int advance(int frames) {
+        final ToneSequence s = sequence;
+        while (next < s.size() && s.getFrame(next) <= frame) {
+            apply(s, next++);
+        }
+        if (sweeping && frame >= sweepEnd) {
+            generator.overrideFrequency(sweepTo);
+            sweeping = false;
+        }
+        if (frame >= s.getLengthFrames()) {
+            finish();
+            return frames;
+        }
+        long n = Math.min(frames, s.getLengthFrames() - frame);
+        if (next < s.size()) {
+            n = Math.min(n, s.getFrame(next) - frame);
+        }
+        if (sweeping) {
+            // slices on a grid from the sweep's start, so each gets the same frequency however the
+            // blocks fall
+            long sliceStart = frame - (frame - sweepStart) % SWEEP_FRAMES;
+            long sliceEnd = Math.min(sliceStart + SWEEP_FRAMES, sweepEnd);
+            n = Math.min(n, sliceEnd - frame);
+            double middle = (sliceStart + sliceEnd) / 2.0 - sweepStart;
+            generator.overrideFrequency(sweepFrom * Math.exp(sweepLogRatio * middle));
+        }
+        return (int) n;
+    }
+
+    private void apply(ToneSequence s, int event) {
+        switch (s.getKind(event)) {
+            case FREQUENCY:
+                sweeping = false;
+                generator.overrideFrequency(s.getValue(event));
+                break;
+            case SWEEP:
+                sweepStart = s.getFrame(event);
+                sweepEnd = sweepStart + s.getLength(event);
+                sweepFrom = s.getValue(event);
+                sweepTo = s.getTarget(event);
+                sweepLogRatio = Math.log(sweepTo / sweepFrom) / Math.max(1, s.getLength(event));
+                sweeping = true;
+                generator.overrideFrequency(sweepFrom);
+                break;
+            case DELAY:
+                generator.overrideDelay(s.getValue(event), 0);
+                break;
+            case DELAY_RAMP:
+                generator.overrideDelay(s.getTarget(event), (int) Math.min(Integer.MAX_VALUE, s.getLength(event)));
+                break;
+            case WAVEFORM:
+                generator.overrideWaveform(WAVEFORMS[(int) s.getValue(event)]);
+                break;
+        }
+    }
+
+    private void finish() {
+        ToneSequence finished = sequence;
+        position = frame;
+        sequence = null;
+        sweeping = false;
+        generator.releaseOverrides();
+        // a later play() may already have replaced it; and one that replays the same sequence may
+        // land just before the clear, so put back whatever is still waiting for the next block
+        if (playing.compareAndSet(finished, null)) {
+            ToneSequence pending = requested.get();
+            if (pending != null && pending != STOP) {
+                playing.compareAndSet(null, pending);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * Mixes any number of independent sessions, each a {@link FloatSource} such as a
+ * {@link ToneGenerator} with its own settings, into one output. Every session has a gain and a
+ * mute, both ramped across a block when they change, and the sum is scaled by the
+ * {@link VoiceBank.Headroom} policy.
+ * <p>
+ * With enough sessions they are split into ranges rendered in parallel on a {@link WorkerGroup},
+ * each range summed into its own buffer, and the buffers added up at the end. A session is only
+ * ever rendered by one part at a time.
+ * <p>
+ * Sessions may be opened and closed from any thread; the render thread picks the change up at the
+ * next block. A closed session fades out over one block before it is dropped. Muted sessions are
+ * still rendered, so a sequence or glide in them stays on time.
+ * <p>
+ * With a single session at unity gain whose source is a {@link PcmSource}, its ready made PCM is
+ * passed straight through.
+ */
+public final class SessionMixer implements PcmSource, FloatSource {
+
+    /**
+     * Fewer sessions than this per part are not worth handing to another thread
+     */
+    private static final int MIN_SESSIONS_PER_PART = 4;
+
+    private static final Session<?>[] NONE = new Session<?>[0];
+
+    /**
+     * One source in the mix. Gain and mute may be set from any thread.
+     */
+    public static final class Session<S extends FloatSource> {
+        private final S source;
+        private final int id;
+        private volatile double gain = 1;
+        private volatile boolean muted;
+        private volatile boolean closed;
+        // set by the render thread once a closed session has faded out
+        private volatile boolean finished;
+        // gain at the end of the last block; whichever part renders the session
+        private double renderGain;
+
+        private Session(S source, int id, double gain) {
+            this.source = source;
+            this.id = id;
+            this.gain = gain;
+            renderGain = gain;
+        }
+
+        public S getSource() {
+            return source;
+        }
+
+        /**
+         * @return number unique within the mixer, in the order sessions were opened
+         */
+        public int getId() {
+            return id;
+        }
+
+        public double getGain() {
+            return gain;
+        }
+
+        /**
+         * @param gain linear gain, 1 for unity
+         */
+        public void setGain(double gain) {
+            if (!(gain >= 0)) {
+                throw new IllegalArgumentException("gain must not be negative: " + gain);
+            }
+            this.gain = gain;
+        }
+
+        public boolean isMuted() {
+            return muted;
+        }
+
+        public void setMuted(boolean muted) {
+            this.muted = muted;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        private double targetGain() {
+            return muted || closed ? 0 : gain;
+        }
+    }
+
+    private final int sampleRate;
+    private final int maxBlockFrames;
+    private final WorkerGroup workers;
+
+    // copy on write, guarded by this; the render thread reads the latest per block
+    private volatile Session<?>[] sessions = NONE;
+    private int nextId;
+    private volatile VoiceBank.Headroom headroom = VoiceBank.Headroom.NONE;
+
+    // render thread only
+    private final float[][] partBuffers;
+    private final float[][] sessionBuffers;
+    private float[] mix;
+    private double masterGain = 1;
+    // block being rendered, for the parts
+    private Session<?>[] rendering = NONE;
+    private int blockFrames;
+
+    private final WorkerGroup.Task renderPart = new WorkerGroup.Task() {
+        @Override
+        public void run(int part, int parts) {
+            Session<?>[] s = rendering;
+            renderSessions(s, part * s.length / parts, (part + 1) * s.length / parts,
+                    partBuffers[part], sessionBuffers[part]);
+        }
+    };
+
+    /**
+     * @param sampleRate     rate every session renders at
+     * @param maxBlockFrames largest block passed to a render method
+     * @param workers        threads to render on, or null to render on the caller only
+     */
+    public SessionMixer(int sampleRate, int maxBlockFrames, WorkerGroup workers) {
+        this.sampleRate = sampleRate;
+        this.maxBlockFrames = maxBlockFrames;
+        this.workers = workers;
+        int parts = workers == null ? 1 : workers.getParallelism();
+        partBuffers = new float[parts][maxBlockFrames];
+        sessionBuffers = new float[parts][maxBlockFrames];
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Adds {@code source} to the mix at unity gain from the next block
+     *
+     * @param source renders at {@link #getSampleRate()}; from now on only the render thread may
+     *               call its render methods
+     */
+    public <S extends FloatSource> Session<S> open(S source) {
+        return open(source, 1);
+    }
+
+    /**
+     * Adds {@code source} to the mix at {@code gain} from the next block
+     */
+    public synchronized <S extends FloatSource> Session<S> open(S source, double gain) {
+        if (!(gain >= 0)) {
+            throw new IllegalArgumentException("gain must not be negative: " + gain);
+        }
+        Session<S> session = new Session<S>(source, nextId++, gain);
+        Session<?>[] live = prune();
+        Session<?>[] next = Arrays.copyOf(live, live.length + 1);
+        next[live.length] = session;
+        sessions = next;
+        return session;
+    }
+
+    /**
+     * Fades the session out at the next block and then drops it. Closing it again does nothing.
+     */
+    public synchronized void close(Session<?> session) {
+        session.closed = true;
+        sessions = prune();
+    }
+
+    /**
+     * @return sessions open now, closed ones excluded; a new array each call
+     */
+    public synchronized Session<?>[] getSessions() {
+        Session<?>[] all = sessions;
+        int open = 0;
+        for (Session<?> s : all) {
+            if (!s.closed) {
+                open++;
+            }
+        }
+        Session<?>[] result = new Session<?>[open];
+        int i = 0;
+        for (Session<?> s : all) {
+            if (!s.closed) {
+                result[i++] = s;
+            }
+        }
+        return result;
+    }
+
+    public int getSessionCount() {
+        return getSessions().length;
+    }
+
+    public void setHeadroom(VoiceBank.Headroom headroom) {
+        this.headroom = headroom;
+    }
+
+    public VoiceBank.Headroom getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Drops sessions that have faded out; caller holds the lock
+     */
+    private Session<?>[] prune() {
+        Session<?>[] all = sessions;
+        // one pass, as the render thread may finish a session meanwhile
+        Session<?>[] kept = new Session<?>[all.length];
+        int n = 0;
+        for (Session<?> s : all) {
+            if (!s.finished) {
+                kept[n++] = s;
+            }
+        }
+        return n == all.length ? all : Arrays.copyOf(kept, n);
+    }
+
+    /**
+     * Hands over the single session's cached PCM, when it is the whole mix unchanged
+     */
+    @Override
+    public boolean renderPcm(short[] out, int offset, int frames) {
+        Session<?>[] s = sessions;
+        Session<?> only = null;
+        for (Session<?> session : s) {
+            if (session.finished) {
+                continue;
+            }
+            if (only != null) {
+                return false;
+            }
+            only = session;
+        }
+        if (only == null || !(only.source instanceof PcmSource) || masterGain != 1
+                || only.renderGain != 1 || only.targetGain() != 1 || computeGain(s) != 1) {
+            return false;
+        }
+        return ((PcmSource) only.source).renderPcm(out, offset, frames);
+    }
+
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        if (frames > maxBlockFrames) {
+            throw new IllegalArgumentException("block of " + frames + " frames, max " + maxBlockFrames);
+        }
+        Session<?>[] s = sessions;
+        rendering = s;
+        blockFrames = frames;
+        int parts = 1;
+        if (workers != null) {
+            parts = Math.max(1, Math.min(partBuffers.length, s.length / MIN_SESSIONS_PER_PART));
+        }
+        if (parts > 1) {
+            workers.invoke(renderPart, parts);
+        } else {
+            renderPart.run(0, 1);
+        }
+        mixParts(out, offset, frames, parts, computeGain(s));
+        rendering = NONE;
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        if (mix == null) {
+            mix = new float[maxBlockFrames];
+        }
+        render(mix, 0, frames);
+        for (int i = 0; i < frames; i++) {
+            out[offset + i] = mix[i];
+        }
+    }
+
+    private void renderSessions(Session<?>[] s, int from, int to, float[] sum, float[] scratch) {
+        final int frames = blockFrames;
+        Arrays.fill(sum, 0, frames, 0f);
+        for (int i = from; i < to; i++) {
+            Session<?> session = s[i];
+            if (session.finished) {
+                continue;
+            }
+            double g = session.renderGain;
+            double target = session.targetGain();
+            session.source.render(scratch, 0, frames);
+            if (g == target) {
+                float gain = (float) g;
+                for (int j = 0; j < frames; j++) {
+                    sum[j] += gain * scratch[j];
+                }
+            } else {
+                // ramp to the new gain across the block, so changes do not click
+                double step = (target - g) / frames;
+                for (int j = 0; j < frames; j++) {
+                    g += step;
+                    sum[j] += (float) g * scratch[j];
+                }
+                session.renderGain = target;
+            }
+            if (session.closed && target == 0) {
+                session.finished = true;
+            }
+        }
+    }
+
+    private void mixParts(float[] out, int offset, int frames, int parts, double targetGain) {
+        double g = masterGain;
+        double step = (targetGain - masterGain) / frames;
+        float[] first = partBuffers[0];
+        if (parts == 1 && step == 0) {
+            float gain = (float) g;
+            for (int i = 0; i < frames; i++) {
+                out[offset + i] = gain * first[i];
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                float sum = first[i];
+                for (int p = 1; p < parts; p++) {
+                    sum += partBuffers[p][i];
+                }
+                g += step;
+                out[offset + i] = (float) g * sum;
+            }
+        }
+        masterGain = targetGain;
+    }
+
+    /**
+     * Master gain for the sessions' gains under the headroom policy, as {@link VoiceBank} does for
+     * its voice amplitudes
+     */
+    private double computeGain(Session<?>[] s) {
+        VoiceBank.Headroom policy = headroom;
+        if (policy == VoiceBank.Headroom.NONE) {
+            return 1;
+        }
+        double sum = 0;
+        double squares = 0;
+        for (Session<?> session : s) {
+            double a = session.targetGain();
+            sum += a;
+            squares += a * a;
+        }
+        if (sum == 0) {
+            return 1;
+        }
+        double level = policy == VoiceBank.Headroom.PEAK ? sum : 2 * Math.sqrt(squares / 2);
+        return Math.min(1, 1 / level);
+    }
+}
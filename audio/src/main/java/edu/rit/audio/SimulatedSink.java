@@ -0,0 +1,128 @@
+package edu.rit.audio;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for AudioTrack off the device. It plays back at the sample rate against
+ * System.nanoTime, holds at most {@code bufferFrames} frames, and blocks writes while full, the
+ * way AudioTrack does in streaming mode. If the buffer runs dry the playback position stops until
+ * more data arrives. Samples are interleaved when there is more than one channel.
+ */
+public class SimulatedSink implements AudioSink {
+    private final int sampleRate;
+    private final int bufferFrames;
+    private final int channels;
+
+    private boolean playing;
+    private long written;
+    private long played;
+    private long lastNanos;
+    private double pendingFrames;
+
+    public SimulatedSink(int sampleRate, int bufferFrames, int channels) {
+        if (sampleRate <= 0 || bufferFrames <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("sampleRate, bufferFrames and channels must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.bufferFrames = bufferFrames;
+        this.channels = channels;
+    }
+
+    /**
+     * Mono
+     */
+    public SimulatedSink(int sampleRate, int bufferFrames) {
+        this(sampleRate, bufferFrames, 1);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channels;
+    }
+
+    public int getBufferFrames() {
+        return bufferFrames;
+    }
+
+    @Override
+    public void play() {
+        if (!playing) {
+            playing = true;
+            lastNanos = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void pause() {
+        advance();
+        playing = false;
+    }
+
+    @Override
+    public int write(short[] data, int offset, int length) {
+        int accepted = 0;
+        while (accepted < length) {
+            advance();
+            int room = (int) (bufferFrames - (written - played));
+            if (room > 0) {
+                int n = Math.min(room * channels, length - accepted);
+                n -= n % channels;
+                if (n == 0) {
+                    // less than a frame left over
+                    break;
+                }
+                onWrite(data, offset + accepted, n);
+                written += n / channels;
+                accepted += n;
+            } else if (playing) {
+                // sleep until about a tenth of the buffer has drained
+                LockSupport.parkNanos(Math.max(1, bufferFrames / 10) * 1000000000L / sampleRate);
+            } else {
+                break;
+            }
+        }
+        return accepted;
+    }
+
+    @Override
+    public long getPlaybackPosition() {
+        advance();
+        return played;
+    }
+
+    /**
+     * @return frames accepted so far
+     */
+    public long getFramesWritten() {
+        return written;
+    }
+
+    @Override
+    public void release() {
+        playing = false;
+    }
+
+    /**
+     * Called with every chunk of samples the sink accepts, before it is queued
+     */
+    protected void onWrite(short[] data, int offset, int length) {
+    }
+
+    private void advance() {
+        if (!playing) {
+            return;
+        }
+        long now = System.nanoTime();
+        pendingFrames += (now - lastNanos) * (double) sampleRate / 1e9;
+        lastNanos = now;
+        long whole = (long) pendingFrames;
+        pendingFrames -= whole;
+        // an empty buffer holds the playback position where it is
+        played = Math.min(written, played + whole);
+    }
+}
@@ -0,0 +1,90 @@
+package edu.rit.audio;
+
+/**
+ * A parameter that glides towards its target instead of jumping. The render thread advances it
+ * once per block, or per slice of a block, and uses the value it returns for those samples.
+ */
+public final class SmoothedValue {
+
+    public enum Mode {
+        /** Reaches the target in a fixed time at constant speed */
+        LINEAR,
+        /** Closes a fixed fraction of the remaining distance per sample, like a one pole filter */
+        EXPONENTIAL
+    }
+
+    private final Mode mode;
+    private final int rampSamples;
+    private final double decayPerSample;
+
+    private double current;
+    private double target;
+    private double step;
+
+    /**
+     * @param mode        how to approach the target
+     * @param rampSamples for LINEAR the time to reach the target, for EXPONENTIAL the time constant
+     * @param initial     starting value
+     */
+    public SmoothedValue(Mode mode, int rampSamples, double initial) {
+        this.mode = mode;
+        this.rampSamples = Math.max(1, rampSamples);
+        decayPerSample = Math.exp(-1.0 / this.rampSamples);
+        current = initial;
+        target = initial;
+    }
+
+    public double getTarget() {
+        return target;
+    }
+
+    public double getCurrent() {
+        return current;
+    }
+
+    public void setTarget(double value) {
+        if (value == target) {
+            return;
+        }
+        target = value;
+        step = (target - current) / rampSamples;
+    }
+
+    /**
+     * Jumps straight to {@code value}
+     */
+    public void reset(double value) {
+        current = value;
+        target = value;
+    }
+
+    public boolean isSettled() {
+        return current == target;
+    }
+
+    /**
+     * Moves {@code samples} further towards the target
+     *
+     * @return the value reached
+     */
+    public double advance(int samples) {
+        if (current == target) {
+            return current;
+        }
+        double next;
+        if (mode == Mode.LINEAR) {
+            next = current + step * samples;
+            if ((step > 0 && next >= target) || (step < 0 && next <= target)) {
+                next = target;
+            }
+        } else {
+            next = target + (current - target) * Math.pow(decayPerSample, samples);
+            // snap once the rest is below what anyone could hear
+            if (Math.abs(next - target) <= 1e-6 * Math.abs(target) + 1e-9) {
+                next = target;
+            }
+        }
+        current = next;
+        return next;
+    }
+}
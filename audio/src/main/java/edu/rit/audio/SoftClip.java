@@ -0,0 +1,58 @@
+package edu.rit.audio;
+
+/**
+ * Rounds off peaks with the same cubic knee as {@link PcmConverter.Clip#SOFT}: nearly linear at
+ * low levels, reaching full scale at 1.5 and flat beyond. Drive scales the signal into the knee
+ * first.
+ */
+public final class SoftClip implements SampleEffect {
+    private volatile float drive;
+
+    // render thread only
+    private float blockDrive;
+
+    public SoftClip(double drive) {
+        setDrive(drive);
+        blockDrive = this.drive;
+    }
+
+    public double getDrive() {
+        return drive;
+    }
+
+    /**
+     * @param drive gain ahead of the knee, 1 for none
+     */
+    public void setDrive(double drive) {
+        if (!(drive > 0)) {
+            throw new IllegalArgumentException("drive must be positive: " + drive);
+        }
+        this.drive = (float) drive;
+    }
+
+    @Override
+    public void prepare(int frames) {
+        blockDrive = drive;
+    }
+
+    float getBlockDrive() {
+        return blockDrive;
+    }
+
+    @Override
+    public float apply(float x) {
+        return PcmConverter.softClip(blockDrive * x);
+    }
+
+    @Override
+    public void process(float[] buffer, int offset, int frames) {
+        prepare(frames);
+        for (int i = offset; i < offset + frames; i++) {
+            buffer[i] = apply(buffer[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+    }
+}
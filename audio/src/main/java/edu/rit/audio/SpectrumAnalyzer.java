@@ -0,0 +1,243 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Level meters and a band spectrum of what the render loop outputs, for display.
+ * <p>
+ * The render thread hands every block to {@link #onBlock}, which claims the slots it is about to
+ * overwrite, copies the block into a ring and then publishes the new write count; it never waits
+ * and never allocates. The display thread calls {@link #update} at whatever rate it draws, which
+ * analyses the latest {@code fftSize} samples: Hann window, FFT, power per log-spaced band, plus
+ * RMS and a falling peak. If the writer has claimed any of the slots the reader copied, finished
+ * or not, the frame is skipped rather than analysed torn.
+ * <p>
+ * Everything apart from {@link #onBlock} belongs to the display thread.
+ */
+public final class SpectrumAnalyzer implements RenderLoop.Tap {
+    /**
+     * Bottom of the scale; silence and anything quieter reads as this
+     */
+    public static final float FLOOR_DB = -90;
+
+    private static final float PCM_SCALE = 1f / 32768;
+
+    // lowest band edge, the bands spread log-evenly from here to Nyquist
+    private static final double LOWEST_HZ = 50;
+
+    // peak meter fall rate
+    private static final float PEAK_FALL_DB_PER_SECOND = 20;
+
+    private final int sampleRate;
+    private final int fftSize;
+
+    // written by the render thread only
+    private final float[] ring;
+    private final int mask;
+    // samples published, and samples claimed: ahead of written while a block is being copied in
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong claimed = new AtomicLong();
+
+    // display thread only
+    private final Fft fft;
+    private final float[] window;
+    private final float[] re;
+    private final float[] im;
+    private final int[] bandStart;
+    private final float[] bands;
+    private final float powerScale;
+    private long analysed = -1;
+    private long skipped;
+    private float rmsDb = FLOOR_DB;
+    private float peakDb = FLOOR_DB;
+    private long peakNanos;
+
+    /**
+     * @param sampleRate rate of the tapped output
+     * @param fftSize    samples per analysis, a power of two; sets the frequency resolution
+     * @param bandCount  bands the spectrum is reduced to for display
+     */
+    public SpectrumAnalyzer(int sampleRate, int fftSize, int bandCount) {
+        if (bandCount <= 0 || bandCount > fftSize / 2) {
+            throw new IllegalArgumentException("bandCount must be 1 to fftSize / 2: " + bandCount);
+        }
+        this.sampleRate = sampleRate;
+        this.fftSize = fftSize;
+        fft = new Fft(fftSize);
+        // room for four analysis windows, so a slow display thread is rarely lapped
+        ring = new float[fftSize * 4];
+        mask = ring.length - 1;
+        re = new float[fftSize];
+        im = new float[fftSize];
+
+        window = new float[fftSize];
+        double sum = 0;
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / fftSize));
+            sum += window[i];
+        }
+        // a full scale sine reads 0 dB in its bin
+        powerScale = (float) (4 / (sum * sum));
+
+        bands = new float[bandCount];
+        bandStart = new int[bandCount + 1];
+        double nyquist = sampleRate / 2.0;
+        double binHz = (double) sampleRate / fftSize;
+        int previous = 1;
+        for (int b = 0; b <= bandCount; b++) {
+            double edge = LOWEST_HZ * Math.pow(nyquist / LOWEST_HZ, (double) b / bandCount);
+            // every band gets at least one bin, so the low bands may be wider than their share
+            int bin = Math.max(previous, (int) Math.round(edge / binHz));
+            bandStart[b] = Math.min(fftSize / 2, bin);
+            previous = bandStart[b] + 1;
+        }
+        bandStart[0] = 1;
+        java.util.Arrays.fill(bands, FLOOR_DB);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * Copies a block of output into the ring. Render thread only.
+     */
+    @Override
+    public void onBlock(short[] pcm, int offset, int frames) {
+        final float[] r = ring;
+        long w = written.get();
+        if (frames > r.length) {
+            // only the end of a block longer than the ring can be kept
+            w += frames - r.length;
+            offset += frames - r.length;
+            frames = r.length;
+        }
+        // claimed before the slots are overwritten; an atomic read-modify-write, so the stores
+        // below cannot be seen ahead of it
+        claimed.getAndSet(w + frames);
+        // in at most two runs, up to the end of the ring and on from its start
+        int at = (int) w & mask;
+        int first = Math.min(frames, r.length - at);
+        for (int i = 0; i < first; i++) {
+            r[at + i] = pcm[offset + i] * PCM_SCALE;
+        }
+        for (int i = first; i < frames; i++) {
+            r[i - first] = pcm[offset + i] * PCM_SCALE;
+        }
+        written.lazySet(w + frames);
+    }
+
+    /**
+     * Analyses the latest samples, if any arrived since the last call
+     *
+     * @return true if the results changed
+     */
+    public boolean update() {
+        long w = written.get();
+        if (w == analysed || w < fftSize) {
+            decayPeak();
+            return false;
+        }
+        final float[] r = ring;
+        final int m = mask;
+        long from = w - fftSize;
+        for (int i = 0; i < fftSize; i++) {
+            re[i] = r[(int) (from + i) & m];
+        }
+        // an atomic read-modify-write rather than a plain read, so the loads above cannot pass
+        // it: any slot they saw overwritten was claimed by then
+        if (claimed.getAndAdd(0) - from > ring.length) {
+            // the writer came round again while we copied
+            skipped++;
+            return false;
+        }
+        analysed = w;
+
+        float peak = 0;
+        float sumSquares = 0;
+        for (int i = 0; i < fftSize; i++) {
+            float x = re[i];
+            sumSquares += x * x;
+            float a = x < 0 ? -x : x;
+            peak = a > peak ? a : peak;
+            re[i] = x * window[i];
+            im[i] = 0;
+        }
+        rmsDb = toDb(sumSquares / fftSize);
+        float windowPeakDb = toDb(peak * peak);
+        decayPeak();
+        if (windowPeakDb >= peakDb) {
+            peakDb = windowPeakDb;
+            peakNanos = System.nanoTime();
+        }
+
+        fft.transform(re, im);
+        for (int b = 0; b < bands.length; b++) {
+            float max = 0;
+            for (int k = bandStart[b]; k < bandStart[b + 1]; k++) {
+                float power = re[k] * re[k] + im[k] * im[k];
+                max = power > max ? power : max;
+            }
+            bands[b] = toDb(max * powerScale);
+        }
+        return true;
+    }
+
+    /**
+     * @return level per band in dB relative to a full scale sine, lowest band first; owned by the
+     * analyzer and overwritten by {@link #update}
+     */
+    public float[] getBands() {
+        return bands;
+    }
+
+    /**
+     * @return lower edge of the band in Hz
+     */
+    public float getBandFrequency(int band) {
+        return (float) bandStart[band] * sampleRate / fftSize;
+    }
+
+    /**
+     * @return RMS level of the latest window in dB relative to full scale (a full scale sine
+     * reads -3 dB)
+     */
+    public float getRmsDb() {
+        return rmsDb;
+    }
+
+    /**
+     * @return highest sample level seen, falling at a fixed rate, in dB relative to full scale
+     */
+    public float getPeakDb() {
+        return peakDb;
+    }
+
+    /**
+     * @return analyses dropped because the render thread overwrote the window being copied
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    private void decayPeak() {
+        long now = System.nanoTime();
+        float fallen = peakDb - PEAK_FALL_DB_PER_SECOND * (now - peakNanos) / 1e9f;
+        if (fallen < peakDb) {
+            peakDb = fallen < FLOOR_DB ? FLOOR_DB : fallen;
+            peakNanos = now;
+        }
+    }
+
+    private static float toDb(float power) {
+        if (power <= 1e-9f) {
+            return FLOOR_DB;
+        }
+        float db = (float) (10 * Math.log10(power));
+        return db < FLOOR_DB ? FLOOR_DB : db;
+    }
+}
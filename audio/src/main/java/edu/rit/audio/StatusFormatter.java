@@ -0,0 +1,143 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * Builds short status lines in a reusable char buffer, with integer and fixed point number
+ * formatting that, unlike string concatenation and Double.toString, allocates nothing. Reading it
+ * as a CharSequence allocates nothing either, as long as toString and subSequence are not called.
+ * <p>
+ * Not thread safe; whoever displays the text should copy it out.
+ */
+public final class StatusFormatter implements CharSequence {
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+    private char[] chars;
+    private int length;
+
+    public StatusFormatter(int capacity) {
+        chars = new char[Math.max(16, capacity)];
+    }
+
+    /**
+     * Empties the buffer, keeping its storage
+     */
+    public StatusFormatter clear() {
+        length = 0;
+        return this;
+    }
+
+    public StatusFormatter append(char c) {
+        ensureCapacity(length + 1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public StatusFormatter append(String s) {
+        int n = s.length();
+        ensureCapacity(length + n);
+        s.getChars(0, n, chars, length);
+        length += n;
+        return this;
+    }
+
+    public StatusFormatter append(long value) {
+        if (value >= 0) {
+            // work in negatives so Long.MIN_VALUE needs no special case
+            value = -value;
+        } else {
+            append('-');
+        }
+        int start = length;
+        do {
+            append((char) ('0' - value % 10));
+            value /= 10;
+        } while (value != 0);
+        reverse(start, length - 1);
+        return this;
+    }
+
+    /**
+     * Appends {@code value} rounded to {@code decimals} places, e.g. 440.25 with 1 decimal as
+     * "440.3". Values beyond what a long can hold after scaling print as "inf".
+     *
+     * @param decimals 0 to 9
+     */
+    public StatusFormatter appendFixed(double value, int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("decimals must be 0 to 9: " + decimals);
+        }
+        if (value != value) {
+            return append("NaN");
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        double scaled = Math.abs(value) * scale;
+        if (value < 0 && Math.round(scaled) != 0) {
+            append('-');
+        }
+        if (scaled >= Long.MAX_VALUE) {
+            return append("inf");
+        }
+        long rounded = Math.round(scaled);
+        append(rounded / scale);
+        if (decimals > 0) {
+            append('.');
+            long fraction = rounded % scale;
+            int start = length;
+            for (int i = 0; i < decimals; i++) {
+                append((char) ('0' + fraction % 10));
+                fraction /= 10;
+            }
+            reverse(start, length - 1);
+        }
+        return this;
+    }
+
+    /**
+     * Copies the text into {@code dest}
+     */
+    public void getChars(char[] dest, int destOffset) {
+        System.arraycopy(chars, 0, dest, destOffset, length);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(needed, 2 * chars.length));
+        }
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            char c = chars[from];
+            chars[from++] = chars[to];
+            chars[to--] = c;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package edu.rit.audio;
+
+/**
+ * Block size and output buffering for a {@link RenderLoop}. The sink buffer holds
+ * {@code bufferBlocks} blocks, and a {@link BufferedSink} in front of it may hold another
+ * {@code aheadBlocks} rendered ahead, so a parameter change is heard after at most about
+ * {@link #getLatencyMillis()} plus one block.
+ */
+public final class StreamConfig {
+    public static final int MIN_BLOCK_FRAMES = 64;
+    public static final int MAX_BLOCK_FRAMES = 1024;
+
+    private final int sampleRate;
+    private final int blockFrames;
+    private final int bufferBlocks;
+    private final int aheadBlocks;
+
+    /**
+     * Without rendering ahead
+     */
+    public StreamConfig(int sampleRate, int blockFrames, int bufferBlocks) {
+        this(sampleRate, blockFrames, bufferBlocks, 0);
+    }
+
+    /**
+     * @param aheadBlocks blocks a {@link BufferedSink} holds in front of the sink: 0 for none, else
+     *                    at least 2; its ring is rounded up to a power of two, so with blocks that
+     *                    are powers of two 2 or 4 is exact
+     */
+    public StreamConfig(int sampleRate, int blockFrames, int bufferBlocks, int aheadBlocks) {
+        if (sampleRate <= 0 || blockFrames <= 0 || bufferBlocks <= 0) {
+            throw new IllegalArgumentException("sampleRate, blockFrames and bufferBlocks must be positive");
+        }
+        if (aheadBlocks < 0 || aheadBlocks == 1) {
+            throw new IllegalArgumentException("aheadBlocks must be 0 or at least 2: " + aheadBlocks);
+        }
+        this.sampleRate = sampleRate;
+        this.blockFrames = blockFrames;
+        this.bufferBlocks = bufferBlocks;
+        this.aheadBlocks = aheadBlocks;
+    }
+
+    /**
+     * Streams small blocks sized for a target latency. The block is the largest power of two in
+     * [{@value #MIN_BLOCK_FRAMES}, {@value #MAX_BLOCK_FRAMES}] that still leaves at least two blocks
+     * queued.
+     *
+     * @param sampleRate      sample rate in Hz
+     * @param latencyMillis   target time from parameter change to output
+     * @param minBufferFrames smallest buffer the sink accepts, e.g. from AudioTrack.getMinBufferSize
+     */
+    public static StreamConfig forLatency(int sampleRate, double latencyMillis, int minBufferFrames) {
+        return forLatency(sampleRate, latencyMillis, minBufferFrames, 0);
+    }
+
+    /**
+     * As {@link #forLatency(int, double, int)}, with {@code aheadBlocks} of the target spent on
+     * rendering ahead of the sink. The block then leaves room for those as well as two queued in
+     * the sink, and the sink buffer gets what remains of the target.
+     */
+    public static StreamConfig forLatency(int sampleRate, double latencyMillis, int minBufferFrames,
+                                          int aheadBlocks) {
+        int target = Math.max((int) Math.round(latencyMillis * sampleRate / 1000), minBufferFrames);
+        int block = Integer.highestOneBit(Math.max(1, target / (2 + aheadBlocks)));
+        block = Math.max(MIN_BLOCK_FRAMES, Math.min(MAX_BLOCK_FRAMES, block));
+        // nearest whole number of blocks, but never below what the sink needs
+        int blocks = Math.max((int) Math.round((double) target / block) - aheadBlocks,
+                (minBufferFrames + block - 1) / block);
+        blocks = Math.max(2, blocks);
+        return new StreamConfig(sampleRate, block, blocks, aheadBlocks);
+    }
+
+    /**
+     * The original behaviour: one second per block and a one block buffer
+     */
+    public static StreamConfig wholeSecond(int sampleRate) {
+        return new StreamConfig(sampleRate, sampleRate, 1);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBlockFrames() {
+        return blockFrames;
+    }
+
+    public int getBufferBlocks() {
+        return bufferBlocks;
+    }
+
+    public int getBufferFrames() {
+        return blockFrames * bufferBlocks;
+    }
+
+    public int getAheadBlocks() {
+        return aheadBlocks;
+    }
+
+    /**
+     * @return frames a {@link BufferedSink} may hold in front of the sink, 0 to write to it directly
+     */
+    public int getAheadFrames() {
+        return blockFrames * aheadBlocks;
+    }
+
+    /**
+     * @return time it takes to play everything queued: the blocks rendered ahead and the full sink
+     * buffer
+     */
+    public double getLatencyMillis() {
+        return (getAheadFrames() + getBufferFrames()) * 1000.0 / sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        String ahead = aheadBlocks > 0 ? " + " + aheadBlocks + " ahead" : "";
+        return blockFrames + " x " + bufferBlocks + ahead + " frames @ " + sampleRate + " Hz";
+    }
+}
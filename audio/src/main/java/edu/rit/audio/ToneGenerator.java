@@ -0,0 +1,469 @@
+package edu.rit.audio;
+
+/**
+ * The SoundService test tone: a sine, its second harmonic and a delayed copy of the sine, mixed
+ * at unity gain. Frequency, delay and {@link Waveform} may be changed from any thread; the render
+ * thread picks up the latest settings once per block. Frequency changes glide, delay changes ramp,
+ * and a new waveform carries on from the old one's phase. With another waveform the harmonic has
+ * that shape too.
+ * <p>
+ * With a {@link WaveformCache} attached, blocks at a setting that has stopped moving are copied
+ * from a cached PCM loop instead of being rendered. Only sines are cached, and only settings
+ * already on the cache's grid, so the loop plays exactly what the oscillators would. The cache
+ * must be built with a {@link LoopRenderer} for the same sample rate.
+ * <p>
+ * A sequencer on the render thread may also move the settings itself, on an exact sample, through
+ * the {@code override} methods; the next change from another thread takes over again.
+ * <p>
+ * The stages run in the {@link SampleType} chosen at construction. Either render method may be
+ * called; asking for the other type renders in the chosen one and converts.
+ */
+public final class ToneGenerator implements PcmSource, FloatSource {
+
+    // delay changes glide over 1/50 s instead of jumping
+    private static final int DELAY_RAMP_PER_SECOND = 50;
+
+    // frequency glides with a 1/100 s time constant, rendered in slices of CONTROL_FRAMES
+    private static final int FREQUENCY_SMOOTHING_PER_SECOND = 100;
+    private static final int CONTROL_FRAMES = 32;
+
+    // before switching to a cached loop, the phase glides onto one of its positions over 1/50 s
+    private static final int ALIGN_PER_SECOND = 50;
+    // a setting this close to the cache grid plays from it, covering rounding in the caller's steps
+    private static final double ON_GRID = 1e-9;
+    // a phase this close to a loop position, in cycles, switches without a step: 0.2 LSB at most
+    private static final double ON_PHASE_GRID = 1e-6;
+    // samples the Lagrange delay line reads beyond the delay itself
+    private static final int DELAY_REACH = 4;
+
+    // slots in the control surface
+    private static final int FREQUENCY = 0;
+    private static final int DELAY = 1;
+    private static final int WAVEFORM = 2;
+
+    // values() copies the array on every call
+    private static final Waveform[] WAVEFORMS = Waveform.values();
+
+    private final int sampleRate;
+    private final SampleType sampleType;
+
+    // one pair per waveform, made up front so switching allocates nothing
+    private final Oscillator[] tones;
+    private final Oscillator[] harmonics;
+    // keep their phase between blocks, so consecutive blocks join without a click; render thread only
+    private Oscillator tone;
+    private Oscillator harmonic;
+    private Waveform waveform = Waveform.SINE;
+    private final DelayLine delayLine;
+    // delayed copy of the tone, in the chosen sample type
+    private final double[] sample;
+    private final float[] floatSample;
+    // output in the chosen type, for callers asking for the other one; allocated on first use
+    private double[] wideOut;
+    private float[] narrowOut;
+
+    // written by any thread, read once per block by the render thread
+    private final ControlSurface controls = new ControlSurface(3);
+
+    // render thread only
+    private final double[] renderParams = new double[3];
+    private long renderVersion = -1;
+    private final SmoothedValue renderFrequency;
+
+    private WaveformCache cache;
+    // loop being played and the position in it, null while rendering live; render thread only
+    private WaveformCache.Entry cachedLoop;
+    private int cachedPosition;
+    // extra frequency while gliding the phase onto a loop's grid, and for how much longer
+    private final int alignFrames;
+    private double alignToneHz;
+    private double alignHarmonicHz;
+    private int alignRemaining;
+    // samples rendered live at a fixed frequency and delay since the last change or alignment
+    private long steadyFrames;
+    private double[] history;
+    private float[] floatHistory;
+
+    /**
+     * @param sampleRate  samples per second
+     * @param maxDelay    longest delay in samples
+     * @param blockFrames usual block size; larger blocks are rendered in pieces of this size
+     * @param frequency   starting frequency in Hz
+     * @param sampleType  what the stages compute in
+     */
+    public ToneGenerator(int sampleRate, int maxDelay, int blockFrames, double frequency,
+                         SampleType sampleType) {
+        this.sampleRate = sampleRate;
+        this.sampleType = sampleType;
+        alignFrames = sampleRate / ALIGN_PER_SECOND;
+        tones = new Oscillator[WAVEFORMS.length];
+        harmonics = new Oscillator[WAVEFORMS.length];
+        for (Waveform w : WAVEFORMS) {
+            tones[w.ordinal()] = Oscillator.create(w, sampleRate);
+            harmonics[w.ordinal()] = Oscillator.create(w, sampleRate);
+        }
+        tone = tones[Waveform.SINE.ordinal()];
+        harmonic = harmonics[Waveform.SINE.ordinal()];
+        delayLine = new DelayLine(maxDelay, DelayLine.Interpolation.LAGRANGE);
+        delayLine.setRampLength(sampleRate / DELAY_RAMP_PER_SECOND);
+        sample = sampleType == SampleType.DOUBLE ? new double[blockFrames] : null;
+        floatSample = sampleType == SampleType.FLOAT ? new float[blockFrames] : null;
+        renderFrequency = new SmoothedValue(SmoothedValue.Mode.EXPONENTIAL,
+                sampleRate / FREQUENCY_SMOOTHING_PER_SECOND, frequency);
+        controls.set(FREQUENCY, frequency);
+        controls.set(DELAY, 0);
+        controls.set(WAVEFORM, Waveform.SINE.ordinal());
+    }
+
+    /**
+     * Float pipeline
+     */
+    public ToneGenerator(int sampleRate, int maxDelay, int blockFrames, double frequency) {
+        this(sampleRate, maxDelay, blockFrames, frequency, SampleType.FLOAT);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public SampleType getSampleType() {
+        return sampleType;
+    }
+
+    /**
+     * Plays fixed settings from the cache from now on. Call before rendering starts.
+     *
+     * @param cache loops rendered by a {@link LoopRenderer}, or null to always render live
+     */
+    public void setCache(WaveformCache cache) {
+        this.cache = cache;
+        int historyLength = delayLine.getMaxDelay() + 4;
+        history = cache != null && sampleType == SampleType.DOUBLE ? new double[historyLength] : null;
+        floatHistory = cache != null && sampleType == SampleType.FLOAT ? new float[historyLength] : null;
+    }
+
+    /**
+     * @param hz new tone frequency, reached with a short glide
+     */
+    public void setFrequency(double hz) {
+        controls.set(FREQUENCY, hz);
+    }
+
+    /**
+     * @param samples new delay of the copy, may be fractional
+     */
+    public void setDelay(double samples) {
+        controls.set(DELAY, samples);
+    }
+
+    /**
+     * @param waveform shape of the tone and its harmonic from the next block on
+     */
+    public void setWaveform(Waveform waveform) {
+        controls.set(WAVEFORM, waveform.ordinal());
+    }
+
+    /**
+     * Jumps to a frequency from the next sample rendered, without the glide. The oscillators keep
+     * their phase, so this does not click. Render thread only, between render calls.
+     */
+    public void overrideFrequency(double hz) {
+        pollControls();
+        renderFrequency.reset(hz);
+        // the delay line still holds the old frequency
+        alignRemaining = 0;
+        steadyFrames = 0;
+    }
+
+    /**
+     * Ramps the delay linearly to {@code samples} over the next {@code rampFrames} samples, or over
+     * the usual short ramp for 0. Render thread only, between render calls.
+     */
+    public void overrideDelay(double samples, int rampFrames) {
+        pollControls();
+        if (rampFrames > 0) {
+            delayLine.setRampLength(rampFrames);
+        }
+        delayLine.setDelay(samples);
+        delayLine.setRampLength(sampleRate / DELAY_RAMP_PER_SECOND);
+    }
+
+    /**
+     * Switches waveform from the next sample rendered. Render thread only, between render calls.
+     */
+    public void overrideWaveform(Waveform next) {
+        pollControls();
+        if (next != waveform) {
+            switchWaveform(next);
+        }
+    }
+
+    /**
+     * Glides back to the settings last set from other threads. Render thread only.
+     */
+    public void releaseOverrides() {
+        renderVersion = -1;
+    }
+
+    /**
+     * Renders the tone, its second harmonic and the delayed copy of the tone. Render thread only.
+     */
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        pollControls();
+        if (sampleType == SampleType.DOUBLE) {
+            for (int done = 0; done < frames; done += sample.length) {
+                renderPiece(out, offset + done, Math.min(sample.length, frames - done));
+            }
+            return;
+        }
+        if (narrowOut == null) {
+            narrowOut = new float[floatSample.length];
+        }
+        for (int done = 0; done < frames; done += narrowOut.length) {
+            int n = Math.min(narrowOut.length, frames - done);
+            renderPiece(narrowOut, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] = narrowOut[i];
+            }
+        }
+    }
+
+    /**
+     * Float version of {@link #render(double[], int, int)}
+     */
+    @Override
+    public void render(float[] out, int offset, int frames) {
+        pollControls();
+        if (sampleType == SampleType.FLOAT) {
+            for (int done = 0; done < frames; done += floatSample.length) {
+                renderPiece(out, offset + done, Math.min(floatSample.length, frames - done));
+            }
+            return;
+        }
+        if (wideOut == null) {
+            wideOut = new double[sample.length];
+        }
+        for (int done = 0; done < frames; done += wideOut.length) {
+            int n = Math.min(wideOut.length, frames - done);
+            renderPiece(wideOut, 0, n);
+            for (int i = 0; i < n; i++) {
+                out[offset + done + i] = (float) wideOut[i];
+            }
+        }
+    }
+
+    private void pollControls() {
+        if (cachedLoop != null) {
+            // rendering live straight after cached blocks, e.g. for a sequencer; carry on from the loop
+            leaveCache();
+        }
+        long version = controls.getVersion();
+        if (version != renderVersion) {
+            renderVersion = controls.snapshot(renderParams);
+            alignRemaining = 0;
+            renderFrequency.setTarget(renderParams[FREQUENCY]);
+            delayLine.setDelay(renderParams[DELAY]);
+            Waveform next = WAVEFORMS[(int) renderParams[WAVEFORM]];
+            if (next != waveform) {
+                switchWaveform(next);
+            }
+        }
+    }
+
+    private void switchWaveform(Waveform next) {
+        Oscillator nextTone = tones[next.ordinal()];
+        Oscillator nextHarmonic = harmonics[next.ordinal()];
+        nextTone.setPhase(tone.getPhase());
+        nextHarmonic.setPhase(harmonic.getPhase());
+        tone = nextTone;
+        harmonic = nextHarmonic;
+        waveform = next;
+        // the delay line still holds the old shape
+        steadyFrames = 0;
+    }
+
+    private void renderPiece(double[] out, int offset, int frames) {
+        boolean delaySteady = delayLine.isSettled();
+        for (int done = 0; done < frames; ) {
+            int n = nextSlice(frames - done);
+            tone.render(sample, done, n);
+            harmonic.render(out, offset + done, n);
+            done += n;
+        }
+
+        delayLine.process(sample, 0, sample, 0, frames);
+        for (int i = 0; i < frames; ++i) {
+            out[offset + i] += sample[i];
+        }
+        if (!delaySteady) {
+            steadyFrames = 0;
+        }
+    }
+
+    private void renderPiece(float[] out, int offset, int frames) {
+        boolean delaySteady = delayLine.isSettled();
+        for (int done = 0; done < frames; ) {
+            int n = nextSlice(frames - done);
+            tone.render(floatSample, done, n);
+            harmonic.render(out, offset + done, n);
+            done += n;
+        }
+
+        delayLine.process(floatSample, 0, floatSample, 0, frames);
+        for (int i = 0; i < frames; ++i) {
+            out[offset + i] += floatSample[i];
+        }
+        if (!delaySteady) {
+            steadyFrames = 0;
+        }
+    }
+
+    /**
+     * Sets the oscillators for the next slice of at most {@code frames} samples. While the
+     * frequency glides it is stepped every CONTROL_FRAMES samples; while the phase is aligned the
+     * slice ends with the alignment.
+     *
+     * @return samples in the slice
+     */
+    private int nextSlice(int frames) {
+        boolean steady = renderFrequency.isSettled() && alignRemaining == 0;
+        int n = steady ? frames : Math.min(CONTROL_FRAMES, frames);
+        if (alignRemaining > 0) {
+            n = Math.min(n, alignRemaining);
+        }
+        double frequency = renderFrequency.advance(n);
+        if (alignRemaining > 0) {
+            alignRemaining -= n;
+            tone.setFrequency(frequency + alignToneHz);
+            harmonic.setFrequency(frequency * 2 + alignHarmonicHz);
+        } else {
+            tone.setFrequency(frequency);
+            harmonic.setFrequency(frequency * 2);
+        }
+        steadyFrames = steady ? steadyFrames + n : 0;
+        return n;
+    }
+
+    /**
+     * Plays the block from the cached loop for the current setting, once the setting has stopped
+     * moving on a point of the cache grid and the loop is ready. The live phase is first glided onto
+     * the nearest loop position, and the delayed copy given time to catch up, so the loop carries
+     * on exactly where the oscillators leave off. Render thread only.
+     *
+     * @return false to render the block live instead
+     */
+    @Override
+    public boolean renderPcm(short[] out, int offset, int frames) {
+        if (cache == null) {
+            return false;
+        }
+        if (controls.getVersion() != renderVersion) {
+            // the setting is changing, go back to the live path which glides to it
+            if (cachedLoop != null) {
+                leaveCache();
+            }
+            return false;
+        }
+        if (cachedLoop == null) {
+            if (waveform != Waveform.SINE || !renderFrequency.isSettled() || !delayLine.isSettled()
+                    || alignRemaining > 0) {
+                return false;
+            }
+            double frequency = renderFrequency.getCurrent();
+            double delay = delayLine.getDelay();
+            if (Math.abs(frequency - WaveformCache.quantizeFrequency(frequency)) > ON_GRID
+                    || Math.abs(delay - WaveformCache.quantizeDelay(delay)) > ON_GRID) {
+                // a loop would play a slightly different setting
+                return false;
+            }
+            WaveformCache.Entry loop = cache.get(frequency, delay);
+            if (loop == null) {
+                return false;
+            }
+            double toneOffset = loop.phaseToGrid(tone.getPhase());
+            double harmonicOffset = 2 * (tone.getPhase() + toneOffset) - harmonic.getPhase();
+            harmonicOffset -= Math.floor(harmonicOffset + 0.5);
+            if (Math.abs(toneOffset) > ON_PHASE_GRID || Math.abs(harmonicOffset) > ON_PHASE_GRID) {
+                alignToneHz = toneOffset * sampleRate / alignFrames;
+                alignHarmonicHz = harmonicOffset * sampleRate / alignFrames;
+                alignRemaining = alignFrames;
+                return false;
+            }
+            if (steadyFrames < Math.ceil(delay) + DELAY_REACH) {
+                // the delayed copy still carries the phase from before the alignment
+                return false;
+            }
+            cachedLoop = loop;
+            cachedPosition = loop.positionForPhase(tone.getPhase());
+        }
+        cachedPosition = cachedLoop.copy(cachedPosition, out, offset, frames);
+        return true;
+    }
+
+    /**
+     * Hands playback back to the oscillators where the loop left off. The delay line missed the
+     * tone while the loop played, so its history is rendered again first.
+     */
+    private void leaveCache() {
+        double phase = cachedLoop.phaseAt(cachedPosition);
+        double frequency = renderFrequency.getCurrent();
+        tone.setFrequency(frequency);
+        if (sampleType == SampleType.DOUBLE) {
+            tone.setPhase(phase - history.length * frequency / sampleRate);
+            tone.render(history, 0, history.length);
+            delayLine.process(history, 0, history, 0, history.length);
+        } else {
+            tone.setPhase(phase - floatHistory.length * frequency / sampleRate);
+            tone.render(floatHistory, 0, floatHistory.length);
+            delayLine.process(floatHistory, 0, floatHistory, 0, floatHistory.length);
+        }
+        tone.setPhase(phase);
+        harmonic.setPhase(2 * phase);
+        cachedLoop = null;
+        // the history was rendered at the loop's setting and phase
+        steadyFrames = history != null ? history.length : floatHistory.length;
+    }
+
+    /**
+     * Renders one loop for the cache: the same harmonic and delayed copy of the tone as
+     * {@link ToneGenerator#render}, from phase 0. The copy goes through the same kind of delay line,
+     * so a fractional delay is interpolated as it is live. Runs on the cache's thread.
+     */
+    public static final class LoopRenderer implements WaveformCache.Renderer {
+        private final int sampleRate;
+        private final Oscillator loopTone;
+        private final Oscillator loopHarmonic;
+        // grown to the longest delay asked for
+        private DelayLine loopDelay;
+        private double[] lead;
+
+        public LoopRenderer(int sampleRate) {
+            this.sampleRate = sampleRate;
+            loopTone = Oscillator.create(Oscillator.Type.REFERENCE, sampleRate);
+            loopHarmonic = Oscillator.create(Oscillator.Type.REFERENCE, sampleRate);
+        }
+
+        @Override
+        public void render(int frequency, double delay, double[] out, int length) {
+            int leadLength = (int) Math.ceil(delay) + DELAY_REACH;
+            if (loopDelay == null || loopDelay.getMaxDelay() < leadLength) {
+                loopDelay = new DelayLine(leadLength, DelayLine.Interpolation.LAGRANGE);
+                lead = new double[leadLength];
+            }
+            loopDelay.setDelay(delay);
+            loopDelay.reset();
+            // the generator has no undelayed fundamental, only the copy through the delay line; fill
+            // the line with the tone leading up to phase 0 first
+            loopTone.setFrequency(frequency);
+            loopTone.setPhase(-(double) leadLength * frequency / sampleRate);
+            loopTone.render(lead, 0, leadLength);
+            loopDelay.process(lead, 0, lead, 0, leadLength);
+            loopTone.render(out, 0, length);
+            loopDelay.process(out, 0, out, 0, length);
+            loopHarmonic.setFrequency(2 * frequency);
+            loopHarmonic.setPhase(0);
+            loopHarmonic.mix(out, 0, length, 1);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * A scripted test run for a {@link SequencePlayer}: frequency and delay settings, sweeps and scans
+ * laid out on a timeline of sample frames. The timeline is worked out once when the sequence is
+ * built, so playing it only walks arrays.
+ * <p>
+ * Build one step after another; each step starts where the previous one ended:
+ * <pre>
+ * ToneSequence ladder = new ToneSequence.Builder(8000)
+ *         .delay(0)
+ *         .frequency(250).hold(0.5)
+ *         .frequency(500).hold(0.5)
+ *         .sweep(500, 4000, 10)
+ *         .build();
+ * </pre>
+ */
+public final class ToneSequence {
+
+    enum Kind {
+        /** Jump to a frequency */
+        FREQUENCY,
+        /** Sweep the frequency exponentially from value to target over length frames */
+        SWEEP,
+        /** Glide to a delay over the generator's usual short ramp */
+        DELAY,
+        /** Ramp the delay linearly to target over length frames */
+        DELAY_RAMP,
+        /** Switch to the waveform whose ordinal is value */
+        WAVEFORM
+    }
+
+    // kinds by ordinal, values() copies the array
+    private static final Kind[] KINDS = Kind.values();
+
+    private final long[] frames;
+    private final byte[] kinds;
+    private final double[] values;
+    private final double[] targets;
+    private final long[] lengths;
+    private final long lengthFrames;
+    private final int sampleRate;
+
+    private ToneSequence(Builder builder) {
+        int n = builder.size;
+        frames = Arrays.copyOf(builder.frames, n);
+        kinds = Arrays.copyOf(builder.kinds, n);
+        values = Arrays.copyOf(builder.values, n);
+        targets = Arrays.copyOf(builder.targets, n);
+        lengths = Arrays.copyOf(builder.lengths, n);
+        lengthFrames = builder.frameAt(builder.seconds);
+        sampleRate = builder.sampleRate;
+    }
+
+    /**
+     * A logarithmic sine sweep, the same time per octave all the way, at a fixed delay
+     */
+    public static ToneSequence logSweep(int sampleRate, double fromHz, double toHz, double delay, double seconds) {
+        return new Builder(sampleRate).waveform(Waveform.SINE).delay(delay)
+                .sweep(fromHz, toHz, seconds).build();
+    }
+
+    /**
+     * Steady tones on {@code steps} logarithmically spaced frequencies from {@code fromHz} to
+     * {@code toHz}, each held for {@code secondsEach}
+     */
+    public static ToneSequence ladder(int sampleRate, double fromHz, double toHz, int steps, double delay,
+                                      double secondsEach) {
+        if (steps < 2) {
+            throw new IllegalArgumentException("a ladder needs at least two steps: " + steps);
+        }
+        Builder builder = new Builder(sampleRate).waveform(Waveform.SINE).delay(delay);
+        for (int i = 0; i < steps; i++) {
+            builder.frequency(fromHz * Math.pow(toHz / fromHz, (double) i / (steps - 1))).hold(secondsEach);
+        }
+        return builder.build();
+    }
+
+    /**
+     * A fixed tone with the delay ramped from {@code fromDelay} to {@code toDelay}, after a short
+     * settle at the start value
+     */
+    public static ToneSequence delayScan(int sampleRate, double hz, double fromDelay, double toDelay,
+                                         double seconds) {
+        return new Builder(sampleRate).waveform(Waveform.SINE).frequency(hz).delay(fromDelay).hold(0.1)
+                .delayRamp(toDelay, seconds).build();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return number of events on the timeline
+     */
+    public int size() {
+        return frames.length;
+    }
+
+    /**
+     * @return frame the event starts on
+     */
+    public long getFrame(int event) {
+        return frames[event];
+    }
+
+    Kind getKind(int event) {
+        return KINDS[kinds[event]];
+    }
+
+    /**
+     * @return the setting for a jump, or the start of a sweep
+     */
+    double getValue(int event) {
+        return values[event];
+    }
+
+    /**
+     * @return where a sweep or ramp ends up
+     */
+    double getTarget(int event) {
+        return targets[event];
+    }
+
+    /**
+     * @return frames a sweep or ramp takes
+     */
+    long getLength(int event) {
+        return lengths[event];
+    }
+
+    /**
+     * @return length of the whole sequence in frames
+     */
+    public long getLengthFrames() {
+        return lengthFrames;
+    }
+
+    /**
+     * Lays out a sequence. Times are kept in seconds and converted to frames per event, so long
+     * sequences do not drift by rounding.
+     */
+    public static final class Builder {
+        private final int sampleRate;
+        private double seconds;
+        private int size;
+        private long[] frames = new long[16];
+        private byte[] kinds = new byte[16];
+        private double[] values = new double[16];
+        private double[] targets = new double[16];
+        private long[] lengths = new long[16];
+
+        public Builder(int sampleRate) {
+            if (sampleRate <= 0) {
+                throw new IllegalArgumentException("sampleRate must be positive: " + sampleRate);
+            }
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * Jumps to {@code hz} now
+         */
+        public Builder frequency(double hz) {
+            checkFrequency(hz);
+            add(Kind.FREQUENCY, hz, hz, 0);
+            return this;
+        }
+
+        /**
+         * Sweeps from {@code fromHz} to {@code toHz}, the same time per octave all the way
+         */
+        public Builder sweep(double fromHz, double toHz, double seconds) {
+            checkFrequency(fromHz);
+            checkFrequency(toHz);
+            checkSeconds(seconds);
+            add(Kind.SWEEP, fromHz, toHz, seconds);
+            this.seconds += seconds;
+            return this;
+        }
+
+        /**
+         * Glides to a new delay in samples now, over the generator's usual short ramp
+         */
+        public Builder delay(double samples) {
+            checkDelay(samples);
+            add(Kind.DELAY, samples, samples, 0);
+            return this;
+        }
+
+        /**
+         * Ramps the delay linearly from wherever it is to {@code samples}
+         */
+        public Builder delayRamp(double samples, double seconds) {
+            checkDelay(samples);
+            checkSeconds(seconds);
+            add(Kind.DELAY_RAMP, samples, samples, seconds);
+            this.seconds += seconds;
+            return this;
+        }
+
+        public Builder waveform(Waveform waveform) {
+            add(Kind.WAVEFORM, waveform.ordinal(), waveform.ordinal(), 0);
+            return this;
+        }
+
+        /**
+         * Keeps the current settings for a while
+         */
+        public Builder hold(double seconds) {
+            checkSeconds(seconds);
+            this.seconds += seconds;
+            return this;
+        }
+
+        public ToneSequence build() {
+            return new ToneSequence(this);
+        }
+
+        private void add(Kind kind, double value, double target, double seconds) {
+            if (size == frames.length) {
+                int capacity = size * 2;
+                frames = Arrays.copyOf(frames, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                values = Arrays.copyOf(values, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            long start = frameAt(this.seconds);
+            frames[size] = start;
+            kinds[size] = (byte) kind.ordinal();
+            values[size] = value;
+            targets[size] = target;
+            lengths[size] = frameAt(this.seconds + seconds) - start;
+            size++;
+        }
+
+        private long frameAt(double seconds) {
+            return Math.round(seconds * sampleRate);
+        }
+
+        private static void checkFrequency(double hz) {
+            if (!(hz > 0)) {
+                throw new IllegalArgumentException("frequency must be positive: " + hz);
+            }
+        }
+
+        private static void checkDelay(double samples) {
+            if (!(samples >= 0)) {
+                throw new IllegalArgumentException("delay must not be negative: " + samples);
+            }
+        }
+
+        private static void checkSeconds(double seconds) {
+            if (!(seconds >= 0)) {
+                throw new IllegalArgumentException("time must not be negative: " + seconds);
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package edu.rit.audio;
+
+import java.util.Arrays;
+
+/**
+ * Additive synthesis over any number of sine voices (partials, detuned unisons, chords), each
+ * with its own frequency, amplitude, phase and delay. Voice state lives in parallel primitive
+ * arrays, and every voice is rendered for a whole block before moving to the next.
+ * <p>
+ * A delay on a steady sine is just a phase lag of {@code delay * frequency / sampleRate} cycles, so
+ * it is folded into the voice's phase and costs nothing per sample. Changing a voice's frequency or
+ * delay moves its lag; the move is spread over a short ramp, as {@link DelayLine} ramps a new
+ * delay, instead of jumping and clicking. It takes the shorter way round, at most half a cycle.
+ * <p>
+ * With enough voices the block is split into voice ranges rendered in parallel on a
+ * {@link WorkerGroup}, each into its own buffer. The buffers are then summed under a master gain
+ * chosen by the {@link Headroom} policy, ramped across the block whenever it changes.
+ * <p>
+ * Voices may only be changed from the thread that calls {@link #render}.
+ */
+public final class VoiceBank implements AudioSource {
+
+    /**
+     * How the sum of all voices is scaled
+     */
+    public enum Headroom {
+        /** Unity gain, the caller takes care of clipping */
+        NONE,
+        /** 1 / sum of amplitudes: can never exceed full scale */
+        PEAK,
+        /** 1 / (2 * rms amplitude): typical peaks of unrelated phases, occasionally over */
+        RMS
+    }
+
+    /**
+     * Fewer voices than this per part are not worth handing to another thread
+     */
+    private static final int MIN_VOICES_PER_PART = 32;
+
+    // lag changes are spread over 1/50 s, as ToneGenerator ramps its delay line
+    private static final int RAMP_PER_SECOND = 50;
+
+    private static final double[] SINE = WavetableOscillator.SINE;
+    private static final int FRACTION_BITS = WavetableOscillator.FRACTION_BITS;
+    private static final int FRACTION_MASK = WavetableOscillator.FRACTION_MASK;
+    private static final double FRACTION_SCALE = WavetableOscillator.FRACTION_SCALE;
+    private static final double PHASE_SCALE = WavetableOscillator.PHASE_SCALE;
+
+    private final int sampleRate;
+    private final int maxBlockFrames;
+    private final WorkerGroup workers;
+
+    private final double[] frequency;
+    private final double[] amplitude;
+    private final double[] delay;
+    private final int[] phase;
+    private final int[] increment;
+    // lag change still to be spread over the next rampRemaining samples, in phase units
+    private final long[] pendingPhase;
+    private final int[] rampRemaining;
+    private int rampLength;
+    private int count;
+
+    private final double[][] partBuffers;
+    private Headroom headroom = Headroom.PEAK;
+    private boolean gainDirty = true;
+    private double gain;
+    private double targetGain;
+
+    // block being rendered, for the parts
+    private int blockFrames;
+
+    private final WorkerGroup.Task renderPart = new WorkerGroup.Task() {
+        @Override
+        public void run(int part, int parts) {
+            renderVoices(part * count / parts, (part + 1) * count / parts, partBuffers[part]);
+        }
+    };
+
+    /**
+     * @param capacity       maximum number of voices
+     * @param sampleRate     sample rate in Hz
+     * @param maxBlockFrames largest block passed to {@link #render}
+     * @param workers        threads to render on, or null to render on the caller only
+     */
+    public VoiceBank(int capacity, int sampleRate, int maxBlockFrames, WorkerGroup workers) {
+        this.sampleRate = sampleRate;
+        this.maxBlockFrames = maxBlockFrames;
+        this.workers = workers;
+        frequency = new double[capacity];
+        amplitude = new double[capacity];
+        delay = new double[capacity];
+        phase = new int[capacity];
+        increment = new int[capacity];
+        pendingPhase = new long[capacity];
+        rampRemaining = new int[capacity];
+        rampLength = Math.max(1, sampleRate / RAMP_PER_SECOND);
+        int parts = workers == null ? 1 : workers.getParallelism();
+        partBuffers = new double[parts][maxBlockFrames];
+    }
+
+    public int getCapacity() {
+        return frequency.length;
+    }
+
+    public int getVoiceCount() {
+        return count;
+    }
+
+    /**
+     * Sets how many samples a frequency or delay change moves the phase over. 1 makes changes
+     * immediate.
+     */
+    public void setRampLength(int samples) {
+        rampLength = Math.max(1, samples);
+    }
+
+    public void setHeadroom(Headroom headroom) {
+        this.headroom = headroom;
+        gainDirty = true;
+    }
+
+    /**
+     * Adds a voice
+     *
+     * @param hz        frequency
+     * @param amplitude linear peak amplitude
+     * @param phase     starting phase in cycles
+     * @param delay     delay in samples
+     * @return the new voice's index
+     */
+    public int addVoice(double hz, double amplitude, double phase, double delay) {
+        if (count == frequency.length) {
+            throw new IllegalStateException("all " + count + " voices in use");
+        }
+        int v = count++;
+        frequency[v] = hz;
+        increment[v] = toFixed(hz / sampleRate);
+        this.amplitude[v] = amplitude;
+        this.delay[v] = delay;
+        this.phase[v] = toFixed(phase - delay * hz / sampleRate);
+        pendingPhase[v] = 0;
+        rampRemaining[v] = 0;
+        gainDirty = true;
+        return v;
+    }
+
+    /**
+     * Removes every voice
+     */
+    public void clear() {
+        count = 0;
+        gainDirty = true;
+    }
+
+    public double getFrequency(int voice) {
+        return frequency[check(voice)];
+    }
+
+    /**
+     * Changes a voice's frequency from the next block. The phase lag its delay causes changes with
+     * the frequency, and is ramped to the new lag.
+     */
+    public void setFrequency(int voice, double hz) {
+        check(voice);
+        rampPhase(voice, -delay[voice] * (hz - frequency[voice]) / sampleRate);
+        frequency[voice] = hz;
+        increment[voice] = toFixed(hz / sampleRate);
+    }
+
+    public double getAmplitude(int voice) {
+        return amplitude[check(voice)];
+    }
+
+    public void setAmplitude(int voice, double amplitude) {
+        this.amplitude[check(voice)] = amplitude;
+        gainDirty = true;
+    }
+
+    public double getDelay(int voice) {
+        return delay[check(voice)];
+    }
+
+    /**
+     * Changes a voice's delay, ramping its phase lag to the new one
+     */
+    public void setDelay(int voice, double samples) {
+        check(voice);
+        rampPhase(voice, -(samples - delay[voice]) * frequency[voice] / sampleRate);
+        delay[voice] = samples;
+    }
+
+    /**
+     * Adds {@code cycles} to what is left of the voice's ramp and starts the ramp again
+     */
+    private void rampPhase(int voice, double cycles) {
+        // as a signed int the change is the shorter way round, within half a cycle
+        pendingPhase[voice] += toFixed(cycles);
+        rampRemaining[voice] = rampLength;
+    }
+
+    @Override
+    public void render(double[] out, int offset, int frames) {
+        if (frames > maxBlockFrames) {
+            throw new IllegalArgumentException("block of " + frames + " frames, max " + maxBlockFrames);
+        }
+        if (gainDirty) {
+            targetGain = computeGain();
+            gainDirty = false;
+        }
+        blockFrames = frames;
+        int parts = 1;
+        if (workers != null) {
+            parts = Math.max(1, Math.min(partBuffers.length, count / MIN_VOICES_PER_PART));
+        }
+        if (parts > 1) {
+            workers.invoke(renderPart, parts);
+        } else {
+            renderPart.run(0, 1);
+        }
+        mixParts(out, offset, frames, parts);
+    }
+
+    private void renderVoices(int from, int to, double[] buffer) {
+        final int frames = blockFrames;
+        final double[] table = SINE;
+        Arrays.fill(buffer, 0, frames, 0);
+        for (int v = from; v < to; v++) {
+            final double a = amplitude[v];
+            final int inc = increment[v];
+            int p = phase[v];
+            int remaining = rampRemaining[v];
+            int start = 0;
+            if (remaining > 0) {
+                // this block's share of the ramp, as a little extra increment per sample
+                int n = Math.min(frames, remaining);
+                long share = pendingPhase[v] * n / remaining;
+                int extra = (int) (share / n);
+                p = renderVoice(table, buffer, 0, n, a, inc + extra, p);
+                // the rounding left over, so the ramp ends exactly on the new lag
+                p += (int) (share - (long) extra * n);
+                pendingPhase[v] -= share;
+                rampRemaining[v] = remaining - n;
+                start = n;
+            }
+            phase[v] = renderVoice(table, buffer, start, frames, a, inc, p);
+        }
+    }
+
+    /**
+     * Adds the voice's samples {@code from} to {@code to} into {@code buffer}
+     *
+     * @return the phase after them
+     */
+    private static int renderVoice(double[] table, double[] buffer, int from, int to, double a, int inc, int p) {
+        for (int i = from; i < to; i++) {
+            int index = (p >>> FRACTION_BITS) + 1;
+            double frac = (p & FRACTION_MASK) * FRACTION_SCALE;
+            double y0 = table[index];
+            buffer[i] += a * (y0 + frac * (table[index + 1] - y0));
+            p += inc;
+        }
+        return p;
+    }
+
+    private void mixParts(double[] out, int offset, int frames, int parts) {
+        // ramp from the last gain to the new one, so voice changes do not click
+        double g = gain;
+        double step = (targetGain - gain) / frames;
+        double[] first = partBuffers[0];
+        if (parts == 1) {
+            for (int i = 0; i < frames; i++) {
+                g += step;
+                out[offset + i] = g * first[i];
+            }
+        } else {
+            for (int i = 0; i < frames; i++) {
+                double sum = first[i];
+                for (int p = 1; p < parts; p++) {
+                    sum += partBuffers[p][i];
+                }
+                g += step;
+                out[offset + i] = g * sum;
+            }
+        }
+        gain = targetGain;
+    }
+
+    private double computeGain() {
+        if (headroom == Headroom.NONE) {
+            return 1;
+        }
+        double sum = 0;
+        double squares = 0;
+        for (int v = 0; v < count; v++) {
+            double a = Math.abs(amplitude[v]);
+            sum += a;
+            squares += a * a;
+        }
+        if (sum == 0) {
+            return 1;
+        }
+        double level = headroom == Headroom.PEAK ? sum : 2 * Math.sqrt(squares / 2);
+        return Math.min(1, 1 / level);
+    }
+
+    private int check(int voice) {
+        if (voice < 0 || voice >= count) {
+            throw new IndexOutOfBoundsException("voice " + voice + " of " + count);
+        }
+        return voice;
+    }
+
+    private static int toFixed(double cycles) {
+        return (int) Math.round((cycles - Math.floor(cycles)) * PHASE_SCALE);
+    }
+}
@@ -0,0 +1,64 @@
+package edu.rit.audio;
+
+/**
+ * Runs the render path on throwaway objects for a moment, so the hot loops have been through the
+ * JIT before the first block anyone hears. Without it the first blocks after start-up run
+ * interpreted and can miss their deadline. Every waveform, a sweep, a delay ramp, a glide, the
+ * resampler, the PCM conversion and the analyzer get a turn.
+ * <p>
+ * Meant for a background thread while the app waits for the user to press play.
+ */
+public final class Warmup {
+    private static final Waveform[] WAVEFORMS = Waveform.values();
+
+    private Warmup() {
+    }
+
+    /**
+     * @param sampleRate  rate the tone is rendered at
+     * @param outputRate  rate of the output; the resampler is warmed up too if it differs
+     * @param blockFrames frames per block at the output rate
+     * @param converter   conversion with the clip and dither settings used for playback
+     * @param seconds     audio to render; a second or so is plenty
+     * @return nanoseconds it took
+     */
+    public static long run(int sampleRate, int outputRate, int blockFrames, PcmConverter converter,
+                           double seconds) {
+        long start = System.nanoTime();
+        ToneGenerator generator = new ToneGenerator(sampleRate, OfflineRenderer.MAX_DELAY, blockFrames,
+                OfflineRenderer.START_FREQUENCY);
+        SequencePlayer player = new SequencePlayer(generator);
+        FloatSource source = sampleRate == outputRate
+                ? player : new Resampler(player, sampleRate, outputRate, blockFrames);
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(outputRate, 1024, 32);
+        PcmRingBuffer ring = new PcmRingBuffer(4 * blockFrames);
+
+        // a quarter of the time through a sequence, the rest on the generator's own glides
+        double part = seconds / 4 / WAVEFORMS.length;
+        ToneSequence.Builder sequence = new ToneSequence.Builder(sampleRate);
+        for (Waveform waveform : WAVEFORMS) {
+            sequence.waveform(waveform).sweep(200, 3000, part / 2).delayRamp(OfflineRenderer.MAX_DELAY / 2.0, part / 2);
+        }
+        player.play(sequence.waveform(Waveform.SINE).build());
+
+        float[] block = new float[blockFrames];
+        short[] pcm = new short[blockFrames];
+        long frames = (long) (seconds * outputRate);
+        for (long done = 0, n = 0; done < frames; done += blockFrames, n++) {
+            if (player.getPlaying() == null && n % 16 == 0) {
+                generator.setFrequency(200 + (n * 37) % 3000);
+                generator.setDelay((n * 13) % OfflineRenderer.MAX_DELAY);
+                generator.setWaveform(WAVEFORMS[(int) (n / 16 % WAVEFORMS.length)]);
+            }
+            source.render(block, 0, blockFrames);
+            converter.toShorts(block, 0, pcm, 0, blockFrames);
+            analyzer.onBlock(pcm, 0, blockFrames);
+            ring.put(pcm, 0, blockFrames);
+            ring.get(pcm, 0, blockFrames);
+            if (n % 8 == 0) {
+                analyzer.update();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
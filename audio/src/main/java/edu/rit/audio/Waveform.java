@@ -0,0 +1,12 @@
+package edu.rit.audio;
+
+/**
+ * Test tone shapes. All but the sine have harmonics up to and past Nyquist, so they are generated
+ * band-limited (see {@link PolyBlepOscillator}).
+ */
+public enum Waveform {
+    SINE,
+    SQUARE,
+    SAW,
+    TRIANGLE
+}
@@ -0,0 +1,419 @@
+package edu.rit.audio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Least recently used cache of ready converted PCM loops, keyed by frequency rounded to whole Hz
+ * and delay rounded to a tenth of a sample.
+ * <p>
+ * At a whole frequency f and sample rate r the signal repeats exactly after r / gcd(f, r) samples,
+ * so that is all an entry stores: 16 samples for 500 Hz at 8 kHz, at most one second of audio.
+ * Playing a fixed setting is then a copy out of the loop.
+ * <p>
+ * Entries are rendered on a background thread, never on the caller. A miss in {@link #get} queues
+ * the key ahead of everything else, and {@link #prefetch} queues keys the user is likely to reach
+ * next. Only the newest requests are kept, so a fast scroll does not leave a backlog. Entries
+ * beyond the memory budget are evicted least recently used first.
+ * <p>
+ * Lookups and requests neither lock nor allocate: the background thread publishes a new lookup
+ * table after each change, and requests are handed over through rings it drains.
+ */
+public final class WaveformCache {
+
+    /**
+     * Grid steps per Hz and per sample of delay; only settings on both grids have loops. Loops
+     * need whole frequencies, so the first stays 1.
+     */
+    public static final int FREQUENCY_STEPS = 1;
+
+    public static final int DELAY_STEPS = 10;
+
+    /**
+     * Renders one loop of the signal, starting at tone phase 0, with samples nominally in [-1, 1]
+     */
+    public interface Renderer {
+        void render(int frequency, double delay, double[] out, int length);
+    }
+
+    /**
+     * One cached loop
+     */
+    public static final class Entry {
+        private final long key;
+        private final int frequency;
+        private final double delay;
+        private final short[] pcm;
+        private final int cycles;
+        private final int cyclesInverse;
+        // System.nanoTime() of the last get, for eviction
+        private volatile long lastUsed;
+
+        Entry(int frequency, double delay, short[] pcm, int cycles) {
+            key = key(frequency, Math.round(delay * 10));
+            this.frequency = frequency;
+            this.delay = delay;
+            this.pcm = pcm;
+            this.cycles = cycles;
+            cyclesInverse = inverse(cycles, pcm.length);
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        public double getDelay() {
+            return delay;
+        }
+
+        public int getLength() {
+            return pcm.length;
+        }
+
+        /**
+         * Copies {@code frames} samples starting at loop {@code position}, wrapping around
+         *
+         * @return the position after the last sample copied
+         */
+        public int copy(int position, short[] out, int offset, int frames) {
+            int length = pcm.length;
+            while (frames > 0) {
+                int n = Math.min(frames, length - position);
+                System.arraycopy(pcm, position, out, offset, n);
+                offset += n;
+                frames -= n;
+                position += n;
+                if (position == length) {
+                    position = 0;
+                }
+            }
+            return position;
+        }
+
+        /**
+         * @return tone phase in cycles at a loop position
+         */
+        public double phaseAt(int position) {
+            return (double) ((long) position * cycles % pcm.length) / pcm.length;
+        }
+
+        /**
+         * @return the loop position whose tone phase is nearest to {@code phase}
+         */
+        public int positionForPhase(double phase) {
+            int length = pcm.length;
+            long step = Math.round((phase - Math.floor(phase)) * length) % length;
+            // position * cycles = step (mod length), and cycles is invertible as gcd(cycles, length) = 1
+            return (int) (step * cyclesInverse % length);
+        }
+
+        /**
+         * @return cycles to add to {@code phase} to reach the phase of the nearest loop position,
+         * at most half a position either way
+         */
+        public double phaseToGrid(double phase) {
+            int length = pcm.length;
+            double wrapped = phase - Math.floor(phase);
+            return Math.round(wrapped * length) / (double) length - wrapped;
+        }
+
+        private int getBytes() {
+            return 2 * pcm.length + 64;
+        }
+    }
+
+    /**
+     * Requests beyond this many are dropped, oldest first
+     */
+    private static final int MAX_PENDING = 16;
+
+    private final int sampleRate;
+    private final long budgetBytes;
+    private final Renderer renderer;
+    private final PcmConverter converter;
+    private final double[] scratch;
+
+    // open addressed by key, replaced whole by the cache's thread so lookups need no lock
+    private volatile Entry[] slots = new Entry[16];
+    private volatile int count;
+    private volatile long bytes;
+
+    // misses from get and prefetches each have their own producer, so neither side locks
+    private final Requests misses = new Requests();
+    private final Requests prefetches = new Requests();
+    private final Thread thread;
+
+    // cache's thread only
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final ArrayDeque<Long> urgent = new ArrayDeque<Long>();
+    private final ArrayDeque<Long> queued = new ArrayDeque<Long>();
+
+    private volatile long hits;
+    private volatile long missCount;
+    private volatile long evictions;
+    private volatile long renders;
+
+    /**
+     * @param sampleRate  sample rate in Hz
+     * @param budgetBytes memory the PCM loops may use
+     * @param renderer    renders loops on the cache's thread
+     * @param converter   how loops are converted to PCM, used on the cache's thread only
+     */
+    public WaveformCache(int sampleRate, long budgetBytes, Renderer renderer, PcmConverter converter) {
+        this.sampleRate = sampleRate;
+        this.budgetBytes = budgetBytes;
+        this.renderer = renderer;
+        this.converter = converter;
+        scratch = new double[sampleRate];
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "WaveformCache");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    public static int quantizeFrequency(double hz) {
+        return (int) Math.round(hz);
+    }
+
+    public static double quantizeDelay(double samples) {
+        return Math.round(samples * DELAY_STEPS) / (double) DELAY_STEPS;
+    }
+
+    /**
+     * Looks up the loop for a setting. On a miss the loop is queued for rendering before any
+     * prefetches. Neither locks nor allocates, so it may be called on the render thread; one
+     * thread at a time.
+     *
+     * @return the loop, or null if it is not ready yet
+     */
+    public Entry get(double frequency, double delay) {
+        long key = key(frequency, delay);
+        Entry entry = find(slots, key);
+        if (entry != null) {
+            entry.lastUsed = System.nanoTime();
+            hits++;
+        } else {
+            missCount++;
+            misses.offer(key);
+            LockSupport.unpark(thread);
+        }
+        return entry;
+    }
+
+    /**
+     * Queues a setting to be rendered in the background, if it is not cached yet. One thread at a
+     * time, such as the main thread.
+     */
+    public void prefetch(double frequency, double delay) {
+        long key = key(frequency, delay);
+        if (find(slots, key) == null) {
+            prefetches.offer(key);
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops the background thread. Cached entries stay readable.
+     */
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return missCount;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return number of loops rendered so far
+     */
+    public long getRenders() {
+        return renders;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    private static long key(double frequency, double delay) {
+        return key(quantizeFrequency(frequency), Math.round(delay * 10));
+    }
+
+    private static long key(long hz, long tenths) {
+        return hz << 32 | (tenths & 0xffffffffL);
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static Entry find(Entry[] slots, long key) {
+        int mask = slots.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Entry entry = slots[i];
+            if (entry == null || entry.key == key) {
+                return entry;
+            }
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            misses.drainTo(urgent);
+            prefetches.drainTo(queued);
+            Long key = urgent.isEmpty() ? queued.pollFirst() : urgent.pollFirst();
+            if (key == null) {
+                // woken by the next request; a request landing before this leaves a permit
+                LockSupport.park(this);
+                continue;
+            }
+            if (find(slots, key) != null) {
+                continue;
+            }
+            add(build((int) (key >> 32), (int) (long) key / 10.0));
+        }
+    }
+
+    /**
+     * Adds an entry, evicts the least recently used beyond the budget, and publishes the result
+     */
+    private void add(Entry entry) {
+        entry.lastUsed = System.nanoTime();
+        entries.add(entry);
+        long total = bytes + entry.getBytes();
+        while (total > budgetBytes && entries.size() > 1) {
+            int eldest = 0;
+            for (int i = 1; i < entries.size(); i++) {
+                if (entries.get(i).lastUsed < entries.get(eldest).lastUsed) {
+                    eldest = i;
+                }
+            }
+            total -= entries.remove(eldest).getBytes();
+            evictions++;
+        }
+        int size = 16;
+        while (size < 2 * entries.size()) {
+            size <<= 1;
+        }
+        Entry[] next = new Entry[size];
+        for (Entry e : entries) {
+            int i = slot(e.key, size - 1);
+            while (next[i] != null) {
+                i = (i + 1) & (size - 1);
+            }
+            next[i] = e;
+        }
+        bytes = total;
+        count = entries.size();
+        slots = next;
+    }
+
+    private Entry build(int frequency, double delay) {
+        int g = gcd(Math.abs(frequency), sampleRate);
+        int length = sampleRate / g;
+        renderer.render(frequency, delay, scratch, length);
+        short[] pcm = new short[length];
+        converter.toShorts(scratch, 0, pcm, 0, length);
+        renders++;
+        return new Entry(frequency, delay, pcm, Math.abs(frequency) / g);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * @return x with a * x = 1 (mod m), or 0 if there is none
+     */
+    private static int inverse(int a, int m) {
+        if (m == 1) {
+            return 0;
+        }
+        long t = 0;
+        long newT = 1;
+        long r = m;
+        long newR = a % m;
+        while (newR != 0) {
+            long q = r / newR;
+            long tmp = t - q * newT;
+            t = newT;
+            newT = tmp;
+            tmp = r - q * newR;
+            r = newR;
+            newR = tmp;
+        }
+        if (r != 1) {
+            return 0;
+        }
+        return (int) ((t % m + m) % m);
+    }
+
+    /**
+     * The newest {@link #MAX_PENDING} keys from one producer thread. The producer never waits: when
+     * the cache's thread falls behind, the oldest keys are overwritten. Keys are published by an
+     * ordered write of the tail index, as in {@link CommandQueue}.
+     */
+    private static final class Requests {
+        private static final int MASK = MAX_PENDING - 1;
+
+        private final AtomicLongArray keys = new AtomicLongArray(MAX_PENDING);
+        private final AtomicLong tail = new AtomicLong();
+        // cache's thread only
+        private long head;
+
+        /**
+         * Producer thread only
+         */
+        void offer(long key) {
+            long t = tail.get();
+            keys.lazySet((int) t & MASK, key);
+            tail.lazySet(t + 1);
+        }
+
+        /**
+         * Moves the keys offered since the last call to the front of {@code into}, newest first,
+         * and drops the oldest beyond {@link #MAX_PENDING}. Cache's thread only.
+         */
+        void drainTo(ArrayDeque<Long> into) {
+            long t = tail.get();
+            // anything older has been overwritten; a key overwritten while being read is just a
+            // newer request, so it is never torn
+            for (long i = Math.max(head, t - MAX_PENDING); i < t; i++) {
+                into.offerFirst(keys.get((int) i & MASK));
+            }
+            head = t;
+            while (into.size() > MAX_PENDING) {
+                into.pollLast();
+            }
+        }
+    }
+}
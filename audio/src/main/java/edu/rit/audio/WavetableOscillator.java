@@ -0,0 +1,148 @@
+package edu.rit.audio;
+
+/**
+ * Sine lookup in a shared table, driven by a 32 bit fixed point phase accumulator. The accumulator
+ * wraps on integer overflow, so there is no branch per sample; the top bits index the table and the
+ * rest is the interpolation fraction.
+ */
+final class WavetableOscillator extends Oscillator {
+    static final int TABLE_BITS = 12;
+    static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+    static final int FRACTION_BITS = 32 - TABLE_BITS;
+    static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+    static final double FRACTION_SCALE = 1.0 / (1 << FRACTION_BITS);
+    static final double PHASE_SCALE = 4294967296.0; // 2^32
+
+    /**
+     * One period with a guard point before and two after, so that SINE[i + 1] = sin(2 pi i / N) for
+     * i in [-1, N + 1] and the cubic interpolation never has to wrap.
+     */
+    static final double[] SINE = new double[TABLE_SIZE + 3];
+
+    /**
+     * {@link #SINE} rounded to float, for the float loops; half the cache footprint
+     */
+    static final float[] SINE_FLOAT = new float[SINE.length];
+
+    static final float FRACTION_SCALE_FLOAT = (float) FRACTION_SCALE;
+
+    static {
+        for (int i = 0; i < SINE.length; i++) {
+            SINE[i] = Math.sin(TWO_PI * (i - 1) / TABLE_SIZE);
+            SINE_FLOAT[i] = (float) SINE[i];
+        }
+    }
+
+    private final boolean cubic;
+    private int phase;
+    private int increment;
+
+    WavetableOscillator(int sampleRate, boolean cubic) {
+        super(sampleRate);
+        this.cubic = cubic;
+    }
+
+    @Override
+    protected void onFrequencyChanged() {
+        // the long to int cast keeps the low 32 bits, which is the increment modulo one cycle
+        increment = (int) Math.round(frequency / sampleRate * PHASE_SCALE);
+    }
+
+    @Override
+    public double getPhase() {
+        return (phase & 0xffffffffL) / PHASE_SCALE;
+    }
+
+    @Override
+    public void setPhase(double phase) {
+        this.phase = (int) (long) (wrap(phase) * PHASE_SCALE);
+    }
+
+    @Override
+    public void mix(double[] out, int offset, int length, double gain) {
+        if (cubic) {
+            mixCubic(out, offset, offset + length, gain);
+        } else {
+            mixLinear(out, offset, offset + length, gain);
+        }
+    }
+
+    private void mixLinear(double[] out, int from, int to, double gain) {
+        final double[] table = SINE;
+        final int inc = increment;
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            int index = (p >>> FRACTION_BITS) + 1;
+            double frac = (p & FRACTION_MASK) * FRACTION_SCALE;
+            double y0 = table[index];
+            out[i] += gain * (y0 + frac * (table[index + 1] - y0));
+            p += inc;
+        }
+        phase = p;
+    }
+
+    private void mixCubic(double[] out, int from, int to, double gain) {
+        final double[] table = SINE;
+        final int inc = increment;
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            int index = (p >>> FRACTION_BITS) + 1;
+            double frac = (p & FRACTION_MASK) * FRACTION_SCALE;
+            double ym1 = table[index - 1];
+            double y0 = table[index];
+            double y1 = table[index + 1];
+            double y2 = table[index + 2];
+            // Catmull-Rom spline through the four neighbours
+            double c1 = 0.5 * (y1 - ym1);
+            double c2 = ym1 - 2.5 * y0 + 2 * y1 - 0.5 * y2;
+            double c3 = 0.5 * (y2 - ym1) + 1.5 * (y0 - y1);
+            out[i] += gain * (((c3 * frac + c2) * frac + c1) * frac + y0);
+            p += inc;
+        }
+        phase = p;
+    }
+
+    @Override
+    public void mix(float[] out, int offset, int length, float gain) {
+        if (cubic) {
+            mixCubic(out, offset, offset + length, gain);
+        } else {
+            mixLinear(out, offset, offset + length, gain);
+        }
+    }
+
+    private void mixLinear(float[] out, int from, int to, float gain) {
+        final float[] table = SINE_FLOAT;
+        final int inc = increment;
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            int index = (p >>> FRACTION_BITS) + 1;
+            float frac = (p & FRACTION_MASK) * FRACTION_SCALE_FLOAT;
+            float y0 = table[index];
+            out[i] += gain * (y0 + frac * (table[index + 1] - y0));
+            p += inc;
+        }
+        phase = p;
+    }
+
+    private void mixCubic(float[] out, int from, int to, float gain) {
+        final float[] table = SINE_FLOAT;
+        final int inc = increment;
+        int p = phase;
+        for (int i = from; i < to; i++) {
+            int index = (p >>> FRACTION_BITS) + 1;
+            float frac = (p & FRACTION_MASK) * FRACTION_SCALE_FLOAT;
+            float ym1 = table[index - 1];
+            float y0 = table[index];
+            float y1 = table[index + 1];
+            float y2 = table[index + 2];
+            float c1 = 0.5f * (y1 - ym1);
+            float c2 = ym1 - 2.5f * y0 + 2 * y1 - 0.5f * y2;
+            float c3 = 0.5f * (y2 - ym1) + 1.5f * (y0 - y1);
+            out[i] += gain * (((c3 * frac + c2) * frac + c1) * frac + y0);
+            p += inc;
+        }
+        phase = p;
+    }
+}
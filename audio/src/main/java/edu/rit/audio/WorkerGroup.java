@@ -0,0 +1,133 @@
+package edu.rit.audio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed set of worker threads that split one piece of work per block into parts and run them in
+ * parallel, fork/join style: the calling thread runs part 0 itself and returns once every part is
+ * done. Nothing is allocated per call.
+ * <p>
+ * ForkJoinPool would do the same, but it only exists from Android API 21 and Glass runs API 19.
+ * Only one thread may call {@link #invoke} at a time.
+ */
+public final class WorkerGroup {
+
+    /**
+     * One part of the work. Parts must not write to shared state.
+     */
+    public interface Task {
+        void run(int part, int parts);
+    }
+
+    private final Thread[] threads;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile Task task;
+    // generation << 16 | parts, published in one write so a worker never pairs the part count of
+    // one call with another
+    private volatile long job;
+    private volatile Thread caller;
+    private volatile Throwable failure;
+    private volatile boolean running = true;
+
+    /**
+     * @param name    prefix for the thread names
+     * @param workers number of threads besides the caller, may be 0
+     */
+    public WorkerGroup(String name, int workers) {
+        threads = new Thread[Math.max(0, workers)];
+        for (int i = 0; i < threads.length; i++) {
+            final int part = i + 1;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(part);
+                }
+            }, name + "-" + part);
+            threads[i].setDaemon(true);
+            threads[i].setPriority(Thread.MAX_PRIORITY);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * One worker per available core besides the caller
+     */
+    public static WorkerGroup forAvailableCores(String name) {
+        return new WorkerGroup(name, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * @return how many parts can run at once, workers plus the caller
+     */
+    public int getParallelism() {
+        return threads.length + 1;
+    }
+
+    /**
+     * Runs {@code task} for parts 0 to {@code parts - 1} and waits for all of them. Parts beyond
+     * {@link #getParallelism()} are not run, so callers should size their split from it.
+     */
+    public void invoke(Task task, int parts) {
+        parts = Math.min(Math.min(parts, getParallelism()), 0xffff);
+        if (parts <= 1) {
+            task.run(0, 1);
+            return;
+        }
+        this.task = task;
+        caller = Thread.currentThread();
+        failure = null;
+        pending.set(parts - 1);
+        job = (((job >>> 16) + 1) << 16) | parts;
+        for (int i = 0; i < parts - 1; i++) {
+            LockSupport.unpark(threads[i]);
+        }
+
+        task.run(0, parts);
+
+        while (pending.get() != 0) {
+            LockSupport.park(this);
+        }
+        this.task = null;
+        Throwable t = failure;
+        if (t != null) {
+            throw new RuntimeException("worker part failed", t);
+        }
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    public void shutdown() {
+        running = false;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void work(int part) {
+        long seen = 0;
+        while (running) {
+            long j = job;
+            if (j == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = j;
+            int n = (int) (j & 0xffff);
+            if (part >= n) {
+                continue;
+            }
+            // the call cannot finish without this part, so task still belongs to it
+            try {
+                task.run(part, n);
+            } catch (Throwable t) {
+                failure = t;
+            }
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+}
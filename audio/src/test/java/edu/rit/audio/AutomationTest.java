@@ -0,0 +1,99 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Scripts in and events out: times to frames, order, the length of the run, and errors that name
+ * the line
+ */
+public class AutomationTest {
+    private static final int SAMPLE_RATE = 8000;
+
+    @Test
+    public void readsTheDocumentedExample() throws IOException {
+        Automation automation = parse(
+                "# glide up with a growing delay\n"
+                        + "0    frequency 500\n"
+                        + "0    delay     0\n"
+                        + "1.5  frequency 2000\n"
+                        + "2.25 delay     20.5\n"
+                        + "4    end\n");
+        assertEquals(4, automation.size());
+        assertEvent(automation, 0, 0, Automation.Parameter.FREQUENCY, 500);
+        assertEvent(automation, 1, 0, Automation.Parameter.DELAY, 0);
+        assertEvent(automation, 2, 12000, Automation.Parameter.FREQUENCY, 2000);
+        assertEvent(automation, 3, 18000, Automation.Parameter.DELAY, 20.5);
+        assertEquals(32000, automation.getLengthFrames());
+    }
+
+    @Test
+    public void sortsByTimeKeepingScriptOrderOnTies() throws IOException {
+        Automation automation = parse(
+                "\n"
+                        + "  2 DELAY 3   # trailing comment\n"
+                        + "1 Frequency 300\n"
+                        + "\t\n"
+                        + "1 frequency 400\n"
+                        + "0.0001 delay 1e1\n");
+        assertEquals(4, automation.size());
+        // 0.0001 s is 0.8 frames, rounded to the nearest
+        assertEvent(automation, 0, 1, Automation.Parameter.DELAY, 10);
+        assertEvent(automation, 1, 8000, Automation.Parameter.FREQUENCY, 300);
+        assertEvent(automation, 2, 8000, Automation.Parameter.FREQUENCY, 400);
+        assertEvent(automation, 3, 16000, Automation.Parameter.DELAY, 3);
+        // no end, so one second past the last event
+        assertEquals(24000, automation.getLengthFrames());
+    }
+
+    @Test
+    public void endMayComeAnywhere() throws IOException {
+        Automation automation = parse("0.5 end\n3 frequency 100\n");
+        assertEquals(1, automation.size());
+        assertEquals(4000, automation.getLengthFrames());
+
+        Automation empty = parse("# nothing\n\n");
+        assertEquals(0, empty.size());
+        assertEquals(SAMPLE_RATE, empty.getLengthFrames());
+    }
+
+    @Test
+    public void rejectsBadLinesByNumber() throws IOException {
+        String[] bad = {
+                "1 volume 3",
+                "-1 frequency 500",
+                "1 frequency",
+                "1 frequency 500 600",
+                "1 end 4",
+                "soon frequency 500",
+                "1 delay lots",
+                "1",
+        };
+        for (String line : bad) {
+            try {
+                parse("0 frequency 500\n# fine so far\n" + line + "\n2 end\n");
+                fail("accepted " + line);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().startsWith("automation line 3: "));
+                assertTrue(expected.getMessage(), expected.getMessage().endsWith(line));
+            }
+        }
+    }
+
+    private static Automation parse(String script) throws IOException {
+        return Automation.parse(new StringReader(script), SAMPLE_RATE);
+    }
+
+    private static void assertEvent(Automation automation, int event, long frame, Automation.Parameter parameter,
+                                    double value) {
+        assertEquals("frame of " + event, frame, automation.getFrame(event));
+        assertEquals("parameter of " + event, parameter, automation.getParameter(event));
+        assertEquals("value of " + event, value, automation.getValue(event), 0);
+    }
+}
@@ -0,0 +1,152 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The tables against the formula, stepped tables against computed ones, and the predicted tone
+ * levels against what the generator actually renders
+ */
+public class CombResponseTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+
+    @Test
+    public void tableFollowsTheFormula() {
+        CombResponse response = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 64, 16);
+        CombResponse.Table table = response.getTable(20.04);
+        assertEquals(20, table.getDelay(), 1e-12);
+        assertEquals(100, table.getFrequency(0), 1e-9);
+        assertEquals(4000, table.getFrequency(table.size() - 1), 1e-9);
+        for (int i = 0; i < table.size(); i++) {
+            double w = 2 * Math.PI * table.getFrequency(i) / SAMPLE_RATE * 20;
+            double re = 1 + 0.5 * Math.cos(w);
+            double im = -0.5 * Math.sin(w);
+            assertEquals("point " + i, 10 * Math.log10(re * re + im * im), table.getDb(i), 1e-4);
+        }
+
+        // every odd multiple of 200 Hz up to 4 kHz, each as deep as 1 - 0.5 allows
+        assertEquals(10, table.getNotchCount());
+        for (int k = 0; k < table.getNotchCount(); k++) {
+            assertEquals(200 + 400 * k, table.getNotch(k), 1e-3);
+            assertEquals(20 * Math.log10(0.5), response.getGainDb(table.getNotch(k), 20), 1e-9);
+        }
+    }
+
+    @Test
+    public void equalGainsNotchCompletely() {
+        CombResponse response = new CombResponse(SAMPLE_RATE, 1, 1, 0, 100, 4000, 64, 16);
+        assertTrue(response.getGainDb(1000, 4) < -100);
+        assertEquals(20 * Math.log10(2), response.getGainDb(2000, 4), 1e-9);
+
+        // without a dry path there is nothing to notch
+        CombResponse tone = new CombResponse(SAMPLE_RATE, 0, 1, 1, 100, 4000, 64, 16);
+        CombResponse.Table table = tone.getTable(4);
+        assertEquals(0, table.getNotchCount());
+        for (int i = 0; i < table.size(); i++) {
+            assertEquals(0, table.getDb(i), 1e-6);
+        }
+    }
+
+    @Test
+    public void steppedTablesMatchComputedOnes() {
+        CombResponse scrolled = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 128, 8);
+        // up slowly, back down faster, then a jump too far to step
+        double[] delays = new double[600];
+        for (int i = 0; i < 500; i++) {
+            delays[i] = i * 0.1;
+        }
+        for (int i = 500; i < 600; i++) {
+            delays[i] = 50 - (i - 500) * 0.3;
+        }
+        for (double delay : delays) {
+            CombResponse.Table stepped = scrolled.getTable(delay);
+            CombResponse.Table computed = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 128, 8)
+                    .getTable(delay);
+            for (int i = 0; i < stepped.size(); i++) {
+                assertEquals("delay " + delay + " point " + i, computed.getDb(i), stepped.getDb(i), 1e-4);
+            }
+        }
+        assertEquals(1, scrolled.getComputed());
+        // the way down passes a few tables still cached from the way up
+        assertEquals(599, scrolled.getStepped() + scrolled.getHits());
+        assertTrue(scrolled.getHits() > 0);
+        scrolled.getTable(400);
+        assertEquals(2, scrolled.getComputed());
+    }
+
+    @Test
+    public void recentTablesAreCached() {
+        CombResponse response = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 64, 2);
+        CombResponse.Table first = response.getTable(10);
+        assertSame(first, response.getTable(10.01));
+        assertEquals(1, response.getHits());
+        response.getTable(100);
+        response.getTable(200);
+        // the least recently used went to make room
+        response.getTable(10);
+        assertEquals(4, response.getComputed());
+        response.getTable(200);
+        assertEquals(2, response.getHits());
+    }
+
+    @Test
+    public void missesRewriteTheEldestTable() {
+        CombResponse response = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 64, 2);
+        CombResponse.Table first = response.getTable(40);
+        CombResponse.Table second = response.getTable(100);
+        assertNotSame(first, second);
+        assertEquals(20, first.getNotchCount());
+        // no new table: the first, rewritten, with fewer dips than it had
+        assertSame(first, response.getTable(20));
+        assertEquals(20, first.getDelay(), 1e-12);
+        assertEquals(10, first.getNotchCount());
+        assertEquals(200, first.getNotch(0), 1e-3);
+        // stepped from the first into the eldest
+        assertSame(second, response.getTable(20.3));
+        assertEquals(1, response.getStepped());
+
+        // with one table the neighbour is the eldest, so it is stepped in place
+        CombResponse single = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 64, 1);
+        CombResponse.Table only = single.getTable(20);
+        assertSame(only, single.getTable(20.3));
+        assertEquals(1, single.getStepped());
+        CombResponse.Table computed = new CombResponse(SAMPLE_RATE, 1, 0.5, 0, 100, 4000, 64, 1).getTable(20.3);
+        for (int i = 0; i < computed.size(); i++) {
+            assertEquals("point " + i, computed.getDb(i), only.getDb(i), 1e-4);
+            assertEquals("point " + i, computed.getDb(i), second.getDb(i), 1e-4);
+        }
+    }
+
+    @Test
+    public void predictsTheGeneratorsLevelAndPeak() {
+        CombResponse response = new CombResponse(SAMPLE_RATE, 0, 1, 1, 100, 4000, 64, 16);
+        double[] delays = {0, 3, 7, 10};
+        for (double delay : delays) {
+            ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, 441);
+            generator.setDelay(delay);
+            float[] block = new float[BLOCK];
+            double squares = 0;
+            double peak = 0;
+            int counted = 0;
+            for (int n = 0; n < 40; n++) {
+                generator.render(block, 0, BLOCK);
+                // past the delay ramp
+                if (n >= 4) {
+                    for (float v : block) {
+                        squares += v * v;
+                        peak = Math.max(peak, Math.abs(v));
+                        counted++;
+                    }
+                }
+            }
+            double rmsDb = 10 * Math.log10(squares / counted);
+            assertEquals("delay " + delay, response.getLevelDb(441, delay), rmsDb, 0.05);
+            assertEquals("delay " + delay, response.getPeakDb(441, delay), 20 * Math.log10(peak), 0.05);
+        }
+    }
+}
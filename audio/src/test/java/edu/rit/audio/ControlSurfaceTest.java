@@ -0,0 +1,65 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Several writers at once must neither lose a write nor let the reader see a half-written set
+ */
+public class ControlSurfaceTest {
+    private static final int WRITERS = 3;
+    private static final int WRITES = 20000;
+
+    // a sequence left odd by racing writers would keep the reader retrying for ever
+    @Test(timeout = 30000)
+    public void concurrentWritersKeepSetsWhole() throws InterruptedException {
+        final ControlSurface controls = new ControlSurface(2);
+        final AtomicReference<String> torn = new AtomicReference<String>();
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    double[] pair = new double[2];
+                    for (int i = 1; i <= WRITES; i++) {
+                        // each set pairs a value with its negation
+                        pair[0] = writer * WRITES + i;
+                        pair[1] = -pair[0];
+                        controls.setAll(pair);
+                        // a single slot write between them keeps the pair whole
+                        controls.set(1, -pair[0]);
+                    }
+                }
+            });
+        }
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                double[] values = new double[2];
+                while (!Thread.currentThread().isInterrupted()) {
+                    long version = controls.snapshot(values);
+                    if ((version & 1) != 0 || values[1] != -values[0]) {
+                        torn.compareAndSet(null, "version " + version + ": " + values[0] + ", " + values[1]);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        reader.interrupt();
+        reader.join();
+        assertNull(torn.get());
+        // two steps per write, none lost
+        assertEquals(2L * 2 * WRITERS * WRITES, controls.getVersion());
+    }
+}
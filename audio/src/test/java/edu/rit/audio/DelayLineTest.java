@@ -0,0 +1,220 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Each interpolation against an exactly delayed sine, ramped delay changes against the signal's
+ * own slope, ragged blocks against one long one, and the top of the delay range, where the reads
+ * wrap around the buffer
+ */
+public class DelayLineTest {
+    // 128 samples of buffer, so long runs wrap it many times
+    private static final int MAX_DELAY = 100;
+    private static final int LENGTH = 4000;
+    // ignored at the start, while the line fills
+    private static final int SETTLED = 1000;
+
+    @Test
+    public void wholeDelaysAreExact() {
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            for (int delay = 1; delay <= MAX_DELAY; delay += 33) {
+                assertEquals(interpolation + " at " + delay, 0, error(interpolation, delay, 0.2), 0);
+            }
+        }
+    }
+
+    @Test
+    public void fractionalDelaysFollowEachInterpolation() {
+        // 0.05 cycles per sample; linear loses about w^2 / 8 at half a sample, the cubic far less,
+        // and the allpass keeps the level but smears the phase a little
+        double w = 2 * Math.PI * 0.05;
+        double[] delays = {0.5, 2.5, 10.25, 57.75};
+        for (double delay : delays) {
+            double linear = error(DelayLine.Interpolation.LINEAR, delay, 0.05);
+            double lagrange = error(DelayLine.Interpolation.LAGRANGE, delay, 0.05);
+            double allpass = error(DelayLine.Interpolation.ALLPASS, delay, 0.05);
+            assertTrue("linear at " + delay + ": " + linear, linear <= w * w / 8 * 1.01);
+            assertTrue("lagrange at " + delay + ": " + lagrange, lagrange <= 4e-4);
+            assertTrue("allpass at " + delay + ": " + allpass, allpass <= 2e-3);
+        }
+        // at a low frequency all three are close
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            double error = error(interpolation, 10.25, 0.01);
+            assertTrue(interpolation + ": " + error, error <= 5e-4);
+        }
+    }
+
+    @Test
+    public void allpassKeepsTheLevelWhereLinearDulls() {
+        // a fifth of the sample rate, half a sample off the grid
+        double linear = rmsRatio(DelayLine.Interpolation.LINEAR, 10.5, 0.2);
+        double allpass = rmsRatio(DelayLine.Interpolation.ALLPASS, 10.5, 0.2);
+        assertEquals(Math.cos(Math.PI * 0.2), linear, 1e-3);
+        assertEquals(1, allpass, 1e-3);
+    }
+
+    @Test
+    public void rampedChangesStayWithinTheSignalsSlope() {
+        double cycles = 0.02;
+        double w = 2 * Math.PI * cycles;
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            // 40 samples over a ramp of 160, a quarter of a sample per sample either way, which
+            // stretches or squeezes the tone by as much
+            double[][] moves = {{10, 50}, {50, 10}};
+            // the allpass's state lags a sweep, as its doc warns, by 3% at this speed
+            double margin = interpolation == DelayLine.Interpolation.ALLPASS ? 1.05 : 1.01;
+            for (double[] move : moves) {
+                double step = maxStep(interpolation, cycles, move[0], move[1], 160);
+                assertTrue(interpolation + " " + move[0] + " to " + move[1] + ": step " + step,
+                        step <= w * 1.25 * margin);
+            }
+            // an immediate jump is what the ramp avoids
+            assertTrue(interpolation + " jump", maxStep(interpolation, cycles, 10, 50, 1) > 3 * w);
+        }
+    }
+
+    @Test
+    public void raggedBlocksGiveTheSameOutput() {
+        int[] ragged = {1, 37, 256, 3, 100, 129};
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            double[] in = new double[LENGTH];
+            float[] floatIn = new float[LENGTH];
+            for (int n = 0; n < LENGTH; n++) {
+                in[n] = Math.sin(0.0123 * n) + 0.3 * Math.sin(1.7 * n);
+                floatIn[n] = (float) in[n];
+            }
+            double[] whole = new double[LENGTH];
+            double[] pieces = new double[LENGTH];
+            float[] floatWhole = new float[LENGTH];
+            float[] floatPieces = new float[LENGTH];
+            processWithChanges(new DelayLine(MAX_DELAY, interpolation), in, whole, floatIn, floatWhole,
+                    new int[]{LENGTH});
+            processWithChanges(new DelayLine(MAX_DELAY, interpolation), in, pieces, floatIn, floatPieces, ragged);
+            assertArrayEquals(interpolation.toString(), whole, pieces, 0);
+            assertArrayEquals(interpolation.toString(), floatWhole, floatPieces, 0);
+        }
+    }
+
+    @Test
+    public void topOfTheRangeWrapsTheBuffer() {
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            DelayLine line = new DelayLine(MAX_DELAY, interpolation);
+            assertEquals(MAX_DELAY, line.getMaxDelay());
+            line.setDelay(MAX_DELAY + 50);
+            assertEquals(MAX_DELAY, line.getDelay(), 0);
+            line.reset();
+            double[] in = new double[LENGTH];
+            double[] out = new double[LENGTH];
+            for (int n = 0; n < LENGTH; n++) {
+                in[n] = n % 97 - 48;
+            }
+            for (int done = 0; done < LENGTH; done += 300) {
+                line.process(in, done, out, done, Math.min(300, LENGTH - done));
+            }
+            for (int n = MAX_DELAY; n < LENGTH; n++) {
+                assertEquals(interpolation + " frame " + n, in[n - MAX_DELAY], out[n], 0);
+            }
+            // the cubic reads two samples past the delay, which must not reach the newest ones
+            double error = error(interpolation, MAX_DELAY - 0.5, 0.05);
+            assertTrue(interpolation + ": " + error, error <= 1.3e-2);
+        }
+    }
+
+    /**
+     * @return largest difference from sin(w (n - delay)) once the line has filled
+     */
+    private static double error(DelayLine.Interpolation interpolation, double delay, double cycles) {
+        double w = 2 * Math.PI * cycles;
+        double[] out = delayedSine(interpolation, delay, w);
+        double error = 0;
+        for (int n = SETTLED; n < LENGTH; n++) {
+            error = Math.max(error, Math.abs(out[n] - Math.sin(w * (n - delay))));
+        }
+        return error;
+    }
+
+    /**
+     * @return RMS level of the delayed sine over that of the sine
+     */
+    private static double rmsRatio(DelayLine.Interpolation interpolation, double delay, double cycles) {
+        double w = 2 * Math.PI * cycles;
+        double[] out = delayedSine(interpolation, delay, w);
+        double squares = 0;
+        for (int n = SETTLED; n < LENGTH; n++) {
+            squares += out[n] * out[n];
+        }
+        return Math.sqrt(squares / (LENGTH - SETTLED) * 2);
+    }
+
+    private static double[] delayedSine(DelayLine.Interpolation interpolation, double delay, double w) {
+        DelayLine line = new DelayLine(MAX_DELAY, interpolation);
+        line.setDelay(delay);
+        line.reset();
+        double[] in = new double[LENGTH];
+        for (int n = 0; n < LENGTH; n++) {
+            in[n] = Math.sin(w * n);
+        }
+        double[] out = new double[LENGTH];
+        line.process(in, 0, out, 0, LENGTH);
+        return out;
+    }
+
+    /**
+     * @return largest step between output samples of a sine, once the line has filled, across a
+     * delay change from {@code from} to {@code to} ramped over {@code ramp} samples
+     */
+    private static double maxStep(DelayLine.Interpolation interpolation, double cycles, double from, double to,
+                                  int ramp) {
+        DelayLine line = new DelayLine(MAX_DELAY, interpolation);
+        line.setRampLength(ramp);
+        line.setDelay(from);
+        line.reset();
+        double[] in = new double[LENGTH];
+        for (int n = 0; n < LENGTH; n++) {
+            in[n] = Math.sin(2 * Math.PI * cycles * n);
+        }
+        double[] out = new double[LENGTH];
+        line.process(in, 0, out, 0, LENGTH / 2);
+        line.setDelay(to);
+        line.process(in, LENGTH / 2, out, LENGTH / 2, LENGTH / 2);
+        double step = 0;
+        for (int n = SETTLED; n < LENGTH; n++) {
+            step = Math.max(step, Math.abs(out[n] - out[n - 1]));
+        }
+        return step;
+    }
+
+    /**
+     * Runs both sample types through a line in blocks of the given sizes, repeated as needed,
+     * changing the delay at fixed frames so each lands inside some block
+     */
+    private static void processWithChanges(DelayLine line, double[] in, double[] out, float[] floatIn,
+                                           float[] floatOut, int[] blocks) {
+        DelayLine floatLine = new DelayLine(line.getMaxDelay(), line.getInterpolation());
+        line.setRampLength(160);
+        floatLine.setRampLength(160);
+        int[] changes = {0, 700, 1500, 1600, 3000};
+        double[] delays = {3.3, 47.8, 12.25, 99.9, 0.4};
+        int b = 0;
+        int c = 0;
+        for (int done = 0; done < LENGTH; b = (b + 1) % blocks.length) {
+            while (c < changes.length && changes[c] == done) {
+                line.setDelay(delays[c]);
+                floatLine.setDelay(delays[c]);
+                c++;
+            }
+            int frames = Math.min(blocks[b], LENGTH - done);
+            // stop at the next change, as a block split at an event would
+            if (c < changes.length) {
+                frames = Math.min(frames, changes[c] - done);
+            }
+            line.process(in, done, out, done, frames);
+            floatLine.process(floatIn, done, floatOut, done, frames);
+            done += frames;
+        }
+    }
+}
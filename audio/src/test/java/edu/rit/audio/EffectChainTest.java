@@ -0,0 +1,194 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fusing must not change the output, and each stage must do what its response says it does
+ */
+public class EffectChainTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+
+    @Test
+    public void fusedPassesMatchStagesRunOneByOne() {
+        Effect[] stages = stages();
+        EffectChain chain = new EffectChain.Builder()
+                .add(stages[0]).add(stages[1]).add(stages[2]).add(stages[3]).add(stages[4]).build();
+        assertEquals(5, chain.size());
+        // biquad, gain + clip + gain, limiter
+        assertEquals(3, chain.getPassCount());
+
+        Effect[] separate = stages();
+        float[] a = new float[BLOCK];
+        float[] b = new float[BLOCK];
+        for (int block = 0; block < 20; block++) {
+            if (block == 7) {
+                ((Gain) stages[1]).setGain(1.5);
+                ((Gain) separate[1]).setGain(1.5);
+            }
+            fill(a, 700, block);
+            fill(b, 700, block);
+            chain.process(a, 0, BLOCK);
+            for (Effect stage : separate) {
+                stage.process(b, 0, BLOCK);
+            }
+            // folding the gains rounds differently, by no more than a float's last bit or so
+            assertArrayEquals("block " + block, b, a, 1e-6f);
+        }
+    }
+
+    @Test
+    public void biquadFollowsItsResponse() {
+        Biquad lowpass = new Biquad(SAMPLE_RATE, Biquad.Type.LOWPASS, 500, 0.7071, 0);
+        assertEquals(-3.01, lowpass.getResponseDb(500), 0.05);
+        assertEquals(0, lowpass.getResponseDb(20), 0.05);
+        assertEquals(lowpass.getResponseDb(2000), measureDb(lowpass, 2000), 0.2);
+
+        Biquad peak = new Biquad(SAMPLE_RATE, Biquad.Type.PEAK, 1000, 2, 6);
+        assertEquals(6, peak.getResponseDb(1000), 0.01);
+        assertEquals(6, measureDb(peak, 1000), 0.2);
+        peak.setGainDb(-12);
+        assertEquals(-12, measureDb(peak, 1000), 0.2);
+
+        Biquad notch = new Biquad(SAMPLE_RATE, Biquad.Type.NOTCH, 1000, 4, 0);
+        assertTrue(measureDb(notch, 1000) < -40);
+    }
+
+    @Test
+    public void combImpulseResponses() {
+        CombFilter feedforward = new CombFilter(64, 10, 0.5, 0);
+        float[] impulse = impulse(64);
+        feedforward.process(impulse, 0, impulse.length);
+        for (int i = 0; i < impulse.length; i++) {
+            assertEquals("sample " + i, i == 0 ? 1 : i == 10 ? 0.5f : 0, impulse[i], 0);
+        }
+
+        CombFilter feedback = new CombFilter(64, 10, 0, -0.5);
+        impulse = impulse(64);
+        feedback.process(impulse, 0, impulse.length);
+        for (int i = 0; i < impulse.length; i++) {
+            float expected = i % 10 == 0 ? (float) Math.pow(-0.5, i / 10) : 0;
+            assertEquals("sample " + i, expected, impulse[i], 1e-7);
+        }
+
+        // half a sample later, spread over the two neighbours
+        CombFilter fractional = new CombFilter(64, 10.5, 1, 0);
+        fractional.process(impulse(1), 0, 1);
+        float[] silence = new float[20];
+        fractional.process(silence, 0, silence.length);
+        assertEquals(0.5f, silence[9], 1e-7);
+        assertEquals(0.5f, silence[10], 1e-7);
+    }
+
+    @Test
+    public void limiterHoldsTheCeiling() {
+        Limiter limiter = new Limiter(SAMPLE_RATE, 0.8, 50);
+        float[] block = new float[BLOCK];
+        for (int n = 0; n < 20; n++) {
+            fill(block, 300, n);
+            for (int i = 0; i < BLOCK; i++) {
+                block[i] *= 2;
+            }
+            limiter.process(block, 0, BLOCK);
+            for (float v : block) {
+                assertTrue(v + " over the ceiling", Math.abs(v) <= 0.8f + 1e-6f);
+            }
+        }
+        // peaks of 1 held to 0.8
+        assertEquals(0.8, limiter.takeMinGain(), 0.01);
+        assertEquals(1, limiter.takeMinGain(), 0);
+
+        // quiet material passes untouched once the level has fallen back
+        Limiter fresh = new Limiter(SAMPLE_RATE, 0.8, 50);
+        float[] quiet = new float[BLOCK];
+        fill(quiet, 300, 0);
+        float[] expected = quiet.clone();
+        fresh.process(quiet, 0, BLOCK);
+        assertArrayEquals(expected, quiet, 0);
+    }
+
+    @Test
+    public void gainChangesRampAcrossOneBlock() {
+        Gain gain = new Gain(1);
+        float[] ones = new float[BLOCK];
+        Arrays.fill(ones, 1);
+        gain.setGainDb(-6.0206);
+        gain.process(ones, 0, BLOCK);
+        for (int i = 0; i < BLOCK; i++) {
+            assertEquals(1 - 0.5 * (i + 1) / BLOCK, ones[i], 1e-4);
+        }
+        Arrays.fill(ones, 1);
+        gain.process(ones, 0, BLOCK);
+        assertEquals(0.5f, ones[0], 1e-4);
+    }
+
+    @Test
+    public void bypassedSourcePassesPcmThrough() {
+        ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, 500);
+        EffectSource source = new EffectSource(generator, new Gain(0.5), BLOCK);
+        assertTrue(!source.renderPcm(new short[BLOCK], 0, BLOCK));
+        ToneGenerator reference = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, 500);
+        float[] out = new float[BLOCK];
+        float[] expected = new float[BLOCK];
+        source.render(out, 0, BLOCK);
+        reference.render(expected, 0, BLOCK);
+        for (int i = 0; i < BLOCK; i++) {
+            assertEquals(0.5f * expected[i], out[i], 1e-6);
+        }
+        source.setBypassed(true);
+        source.render(out, 0, BLOCK);
+        reference.render(expected, 0, BLOCK);
+        assertArrayEquals(expected, out, 0);
+    }
+
+    private static Effect[] stages() {
+        return new Effect[]{
+                new Biquad(SAMPLE_RATE, Biquad.Type.HIGHPASS, 80, 0.7071, 0),
+                new Gain(2),
+                new SoftClip(1.2),
+                new Gain(0.7),
+                new Limiter(SAMPLE_RATE, 0.9, 50)
+        };
+    }
+
+    /**
+     * Level of a steady sine after the effect, against the sine's own, in dB
+     */
+    private static double measureDb(Effect effect, double hz) {
+        effect.reset();
+        float[] block = new float[BLOCK];
+        double squares = 0;
+        int counted = 0;
+        for (int n = 0; n < 40; n++) {
+            fill(block, hz, n);
+            effect.process(block, 0, BLOCK);
+            // past the filter's settling
+            if (n >= 20) {
+                for (float v : block) {
+                    squares += v * v;
+                    counted++;
+                }
+            }
+        }
+        double rms = Math.sqrt(squares / counted);
+        return 20 * Math.log10(rms / Math.sqrt(0.5) / 0.5);
+    }
+
+    private static void fill(float[] block, double hz, int n) {
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (float) (0.5 * Math.sin(2 * Math.PI * hz * (n * block.length + i) / SAMPLE_RATE));
+        }
+    }
+
+    private static float[] impulse(int length) {
+        float[] impulse = new float[length];
+        impulse[0] = 1;
+        return impulse;
+    }
+}
@@ -0,0 +1,468 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renders the card's tone for fixed settings across SoundService's frequency and delay range, the
+ * way the service does, and checks the result four ways:
+ * <ul>
+ * <li>against stored reference PCM, to an SNR that rounding in a faster render path stays well
+ * above but a changed phase, level or delay does not;</li>
+ * <li>against the tone it is meant to be, sin(w (n - d)) + sin(2 w n), fitted by least squares,
+ * so the distortion left over and the delay are checked without trusting the references;</li>
+ * <li>for continuity: ragged block sizes render the same as even ones, and no step between
+ * samples is steeper than the tone allows, which catches a phase reset at a block boundary or a
+ * wrapped overflow;</li>
+ * <li>end to end through {@link RenderLoop}, whose sink must receive every frame rendered.</li>
+ * </ul>
+ * The sines are also rendered through a {@link WaveformCache}, as the service plays fixed
+ * settings, and must pass the same references, fits and continuity.
+ * The references are in src/test/resources/edu/rit/audio/golden. After a change that is meant to
+ * alter the output, listen to the new output and rewrite them with
+ * {@code gradlew :audio:test -PupdateGolden}.
+ */
+public class GoldenOutputTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+    private static final int FRAMES = 16 * BLOCK;
+
+    // SoundService's range
+    private static final int MIN_FREQUENCY = 100;
+    private static final int MAX_FREQUENCY = 4000;
+    private static final int MAX_DELAY = 441;
+
+    // the delay ramps in over 1/50 s, so the fits start after it
+    private static final int SETTLED = 4 * BLOCK;
+
+    private static final double MIN_SNR_DB = 80;
+    private static final double MAX_THD_DB = -80;
+    // ragged blocks may round differently, by no more than a float's last bit or so
+    private static final double MIN_BLOCK_SNR_DB = 100;
+
+    // cached loops are soft clipped PCM, so they are fitted only where the clip can be undone
+    // without the rounding swamping the fit
+    private static final double MAX_UNCLIPPED = 0.9;
+
+    private static final long CACHE_TIMEOUT_MS = 10000;
+
+    /**
+     * Directory to rewrite the references in instead of checking them, or null
+     */
+    private static final String UPDATE = System.getProperty("golden.update");
+
+    private static final Case[] CASES = {
+            new Case(Waveform.SINE, MIN_FREQUENCY, 0),
+            new Case(Waveform.SINE, MIN_FREQUENCY, MAX_DELAY),
+            new Case(Waveform.SINE, 441, 0),
+            new Case(Waveform.SINE, 441, 12.5),
+            new Case(Waveform.SINE, 441, 100),
+            new Case(Waveform.SINE, 1000, 1),
+            new Case(Waveform.SINE, 1000, 220.5),
+            new Case(Waveform.SINE, 2500, 37),
+            new Case(Waveform.SINE, MAX_FREQUENCY, 0),
+            new Case(Waveform.SINE, MAX_FREQUENCY, MAX_DELAY),
+            new Case(Waveform.SQUARE, 441, 12.5),
+            new Case(Waveform.TRIANGLE, 1000, 0),
+    };
+
+    private static final class Case {
+        final Waveform waveform;
+        final double frequency;
+        final double delay;
+
+        Case(Waveform waveform, double frequency, double delay) {
+            this.waveform = waveform;
+            this.frequency = frequency;
+            this.delay = delay;
+        }
+
+        String fileName() {
+            return waveform.name().toLowerCase() + "-" + (int) frequency + "hz-" + delay + ".wav";
+        }
+
+        @Override
+        public String toString() {
+            return waveform + " " + frequency + " Hz, delay " + delay;
+        }
+    }
+
+    @Test
+    public void matchesTheReferences() throws IOException {
+        for (Case c : CASES) {
+            short[] pcm = toPcm(render(c, evenBlocks()));
+            if (UPDATE != null) {
+                writeReference(new File(UPDATE, c.fileName()), pcm);
+                continue;
+            }
+            short[] reference = readReference(c.fileName());
+            assertEquals(c + " length", reference.length, pcm.length);
+            double snr = snrDb(reference, pcm);
+            assertTrue(c + " SNR " + snr + " dB against the reference", snr >= MIN_SNR_DB);
+        }
+    }
+
+    @Test
+    public void sinesAreTheToneAndNothingElse() {
+        for (Case c : CASES) {
+            if (c.waveform != Waveform.SINE) {
+                continue;
+            }
+            float[] out = render(c, evenBlocks());
+            int[] frames = new int[FRAMES - SETTLED];
+            double[] signal = new double[FRAMES - SETTLED];
+            for (int i = 0; i < signal.length; i++) {
+                frames[i] = SETTLED + i;
+                signal[i] = out[SETTLED + i];
+            }
+            assertIsTheTone(c.toString(), c, frames, signal);
+        }
+    }
+
+    @Test
+    public void raggedBlocksRenderTheSame() {
+        int[] ragged = {1, 37, 256, 100, 2, 255, 129};
+        for (Case c : CASES) {
+            float[] even = render(c, evenBlocks());
+            float[] other = render(c, ragged);
+            double snr = snrDb(even, other);
+            assertTrue(c + " SNR " + snr + " dB against even blocks", snr >= MIN_BLOCK_SNR_DB);
+        }
+    }
+
+    @Test
+    public void noStepIsSteeperThanTheTone() {
+        for (Case c : CASES) {
+            if (c.waveform != Waveform.SINE) {
+                continue;
+            }
+            assertNoSteepStep(c.toString(), c, toPcm(render(c, evenBlocks())));
+        }
+    }
+
+    @Test
+    public void renderLoopWritesEveryFrame() throws InterruptedException {
+        Case c = CASES[3];
+        final short[] written = new short[FRAMES];
+        final int[] count = new int[1];
+        // far faster than real time, so the test does not wait for playback
+        SimulatedSink sink = new SimulatedSink(100 * SAMPLE_RATE, 4 * BLOCK) {
+            @Override
+            protected void onWrite(short[] data, int offset, int length) {
+                synchronized (written) {
+                    int n = Math.min(length, FRAMES - count[0]);
+                    System.arraycopy(data, offset, written, count[0], n);
+                    count[0] += n;
+                }
+            }
+        };
+        ToneGenerator generator = generator(c);
+        RenderLoop loop = new RenderLoop(generator, sink, BLOCK);
+        loop.setPcmConverter(new PcmConverter(PcmConverter.Clip.SOFT, false));
+        loop.start();
+        loop.play();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (written) {
+                if (count[0] == FRAMES) {
+                    break;
+                }
+            }
+            Thread.sleep(5);
+        }
+        loop.quit();
+        synchronized (written) {
+            assertEquals(FRAMES, count[0]);
+            assertArrayEquals(toPcm(render(c, evenBlocks())), written);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void cachedLoopsPassTheSameChecks() throws IOException, InterruptedException {
+        WaveformCache cache = new WaveformCache(SAMPLE_RATE, 1 << 20, new ToneGenerator.LoopRenderer(SAMPLE_RATE),
+                new PcmConverter(PcmConverter.Clip.SOFT, false));
+        try {
+            for (Case c : CASES) {
+                // the cache only plays sines
+                if (c.waveform != Waveform.SINE) {
+                    continue;
+                }
+                short[] pcm = renderCached(c, cache);
+                String name = c + " from the cache";
+                if (UPDATE == null) {
+                    double snr = snrDb(readReference(c.fileName()), pcm);
+                    assertTrue(name + " SNR " + snr + " dB against the reference", snr >= MIN_SNR_DB);
+                }
+                assertNoSteepStep(name, c, pcm);
+
+                int[] frames = new int[FRAMES - SETTLED];
+                double[] signal = new double[FRAMES - SETTLED];
+                int count = 0;
+                for (int n = SETTLED; n < FRAMES; n++) {
+                    double y = pcm[n] / 32767.0;
+                    if (Math.abs(y) <= MAX_UNCLIPPED) {
+                        frames[count] = n;
+                        signal[count++] = unclip(y);
+                    }
+                }
+                assertTrue(name + " only " + count + " samples to fit", count > signal.length / 4);
+                assertIsTheTone(name, c, Arrays.copyOf(frames, count), Arrays.copyOf(signal, count));
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static ToneGenerator generator(Case c) {
+        ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK, c.frequency);
+        generator.setWaveform(c.waveform);
+        generator.setDelay(c.delay);
+        return generator;
+    }
+
+    /**
+     * Renders {@link #FRAMES} frames in blocks of the given sizes, repeated as needed
+     */
+    private static float[] render(Case c, int[] blocks) {
+        ToneGenerator generator = generator(c);
+        float[] out = new float[FRAMES];
+        int b = 0;
+        for (int done = 0; done < FRAMES; b = (b + 1) % blocks.length) {
+            int frames = Math.min(blocks[b], FRAMES - done);
+            generator.render(out, done, frames);
+            done += frames;
+        }
+        return out;
+    }
+
+    /**
+     * Renders {@link #FRAMES} frames as the service's render loop does with a cache: from the
+     * cached loop once the generator takes it, and live then converted until it does
+     */
+    private static short[] renderCached(Case c, WaveformCache cache) throws InterruptedException {
+        // waits for the loop, so the switch comes as soon as the generator allows
+        long deadline = System.currentTimeMillis() + CACHE_TIMEOUT_MS;
+        cache.prefetch(c.frequency, c.delay);
+        while (cache.get(c.frequency, c.delay) == null) {
+            assertTrue(c + " never cached", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        ToneGenerator generator = generator(c);
+        generator.setCache(cache);
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        short[] pcm = new short[FRAMES];
+        float[] block = new float[BLOCK];
+        int cached = 0;
+        for (int done = 0; done < FRAMES; done += BLOCK) {
+            if (generator.renderPcm(pcm, done, BLOCK)) {
+                cached++;
+                continue;
+            }
+            assertEquals(c + " back to live at frame " + done, 0, cached);
+            generator.render(block, 0, BLOCK);
+            converter.toShorts(block, 0, pcm, done, BLOCK);
+        }
+        assertTrue(c + " only " + cached + " blocks from the cache", cached >= FRAMES / BLOCK / 2);
+        return pcm;
+    }
+
+    /**
+     * The soft clip's input for an output inside its knee, by bisection
+     */
+    private static double unclip(double y) {
+        double low = -1.5;
+        double high = 1.5;
+        for (int i = 0; i < 60; i++) {
+            double middle = (low + high) / 2;
+            if (PcmConverter.softClip(middle) < y) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Fits sin(w (n - d)) + sin(2 w n) to {@code signal}, sampled at {@code frames}, and checks
+     * what is left over and the delay
+     */
+    private static void assertIsTheTone(String name, Case c, int[] frames, double[] signal) {
+        double w = 2 * Math.PI * c.frequency / SAMPLE_RATE;
+        double[][] basis = new double[4][signal.length];
+        for (int i = 0; i < signal.length; i++) {
+            int n = frames[i];
+            basis[0][i] = Math.sin(w * n);
+            basis[1][i] = Math.cos(w * n);
+            basis[2][i] = Math.sin(2 * w * n);
+            basis[3][i] = Math.cos(2 * w * n);
+        }
+        double[] fit = fit(basis, signal);
+        double residual = 0;
+        double power = 0;
+        for (int i = 0; i < signal.length; i++) {
+            double model = 0;
+            for (int k = 0; k < basis.length; k++) {
+                model += fit[k] * basis[k][i];
+            }
+            residual += (signal[i] - model) * (signal[i] - model);
+            power += signal[i] * signal[i];
+        }
+        double thd = 10 * Math.log10(residual / power);
+        assertTrue(name + " THD+N " + thd + " dB", thd <= MAX_THD_DB);
+
+        // at half the sample rate the samples alone cannot tell the phase, nor the harmonic
+        if (c.frequency < SAMPLE_RATE / 2) {
+            // sin(w (n - d)) = cos(w d) sin(w n) - sin(w d) cos(w n); fractional delays are
+            // interpolated, which costs a little at the top
+            double tolerance = c.delay == Math.rint(c.delay) ? 1e-3 : 2e-2;
+            assertEquals(name + " fundamental", Math.cos(w * c.delay), fit[0], tolerance);
+            assertEquals(name + " fundamental", -Math.sin(w * c.delay), fit[1], tolerance);
+            assertEquals(name + " harmonic", 1, fit[2], 1e-3);
+            assertEquals(name + " harmonic", 0, fit[3], 1e-3);
+        }
+    }
+
+    /**
+     * The fundamental and the harmonic turn at most w and 2w per sample, and the soft clip only
+     * flattens; a reset phase or a wrapped sample jumps further
+     */
+    private static void assertNoSteepStep(String name, Case c, short[] pcm) {
+        double w = 2 * Math.PI * c.frequency / SAMPLE_RATE;
+        double limit = 32767 * Math.min(2, 3 * w) * 1.01 + 2;
+        for (int n = 1; n < pcm.length; n++) {
+            int step = Math.abs(pcm[n] - pcm[n - 1]);
+            assertTrue(name + " step of " + step + " at frame " + n + (n % BLOCK == 0 ? ", a block boundary" : ""),
+                    step <= limit);
+        }
+    }
+
+    private static int[] evenBlocks() {
+        return new int[]{BLOCK};
+    }
+
+    /**
+     * Converts the way the service does: soft clip, no dither
+     */
+    private static short[] toPcm(float[] out) {
+        short[] pcm = new short[out.length];
+        new PcmConverter(PcmConverter.Clip.SOFT, false).toShorts(out, 0, pcm, 0, out.length);
+        return pcm;
+    }
+
+    private static double snrDb(short[] reference, short[] actual) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < reference.length; i++) {
+            double d = actual[i] - reference[i];
+            signal += (double) reference[i] * reference[i];
+            noise += d * d;
+        }
+        return noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / noise);
+    }
+
+    private static double snrDb(float[] reference, float[] actual) {
+        double signal = 0;
+        double noise = 0;
+        for (int i = 0; i < reference.length; i++) {
+            double d = actual[i] - reference[i];
+            signal += (double) reference[i] * reference[i];
+            noise += d * d;
+        }
+        return noise == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(signal / noise);
+    }
+
+    /**
+     * Least squares weights of the basis rows for {@code signal}, through the normal equations.
+     * A row that is all but zero, like a sine at half the sample rate, gets a weight of about 0
+     * instead of a singular matrix.
+     */
+    private static double[] fit(double[][] basis, double[] signal) {
+        int k = basis.length;
+        double[][] a = new double[k][k + 1];
+        for (int i = 0; i < k; i++) {
+            for (int j = 0; j < k; j++) {
+                double sum = 0;
+                for (int n = 0; n < signal.length; n++) {
+                    sum += basis[i][n] * basis[j][n];
+                }
+                a[i][j] = sum;
+            }
+            a[i][i] += 1e-9;
+            double sum = 0;
+            for (int n = 0; n < signal.length; n++) {
+                sum += basis[i][n] * signal[n];
+            }
+            a[i][k] = sum;
+        }
+        // Gauss-Jordan with partial pivoting
+        for (int col = 0; col < k; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < k; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            for (int row = 0; row < k; row++) {
+                if (row != col) {
+                    double f = a[row][col] / a[col][col];
+                    for (int j = col; j <= k; j++) {
+                        a[row][j] -= f * a[col][j];
+                    }
+                }
+            }
+        }
+        double[] x = new double[k];
+        for (int i = 0; i < k; i++) {
+            x[i] = a[i][k] / a[i][i];
+        }
+        return x;
+    }
+
+    private short[] readReference(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream("golden/" + name);
+        assertNotNull("no reference " + name + "; write it with gradlew :audio:test -PupdateGolden", in);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] chunk = new byte[4096];
+            for (int n; (n = in.read(chunk)) > 0; ) {
+                bytes.write(chunk, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        // the canonical 44 byte header PcmFileWriter writes
+        ByteBuffer wav = ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(name, 0x46464952, wav.getInt(0));  // "RIFF"
+        assertEquals(name, 0x61746164, wav.getInt(36)); // "data"
+        assertEquals(name, SAMPLE_RATE, wav.getInt(24));
+        short[] pcm = new short[wav.getInt(40) / 2];
+        wav.position(44);
+        wav.asShortBuffer().get(pcm);
+        return pcm;
+    }
+
+    private static void writeReference(File file, short[] pcm) throws IOException {
+        PcmFileWriter writer = new PcmFileWriter(file, SAMPLE_RATE, true, pcm.length);
+        try {
+            writer.write(pcm, 0, pcm.length);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bucket boundaries and percentiles against exact values, from single nanoseconds to seconds.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void everyValueFallsInABucketThatHoldsIt() {
+        long previousHighest = -1;
+        for (int index = 0; index < 1152; index++) {
+            long highest = LatencyHistogram.highestValueIn(index);
+            long lowest = previousHighest + 1;
+            assertEquals("index of " + lowest, index, LatencyHistogram.indexOf(lowest));
+            assertEquals("index of " + highest, index, LatencyHistogram.indexOf(highest));
+            // within 1/32 of the value, or exact below 64
+            assertTrue("bucket " + index + " width", highest - lowest <= Math.max(0, lowest / 32));
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void percentilesWithinThreePercent() {
+        Random random = new Random(3);
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // log-uniform from 1 us to 100 ms, like render times with the odd stall
+            values[i] = (long) Math.exp(Math.log(1000) + random.nextDouble() * Math.log(100000));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        double[] percentiles = {50, 90, 99, 99.9, 100};
+        for (double p : percentiles) {
+            long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long reported = histogram.getValueAtPercentile(p);
+            assertTrue("p" + p + " " + reported + " vs " + exact, reported >= exact && reported <= exact * 1.03);
+        }
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+
+        LatencyHistogram copy = new LatencyHistogram();
+        histogram.copyInto(copy);
+        assertEquals(histogram.getValueAtPercentile(99), copy.getValueAtPercentile(99));
+        assertEquals(histogram.getCountAbove(10000000), copy.getCountAbove(10000000));
+    }
+}
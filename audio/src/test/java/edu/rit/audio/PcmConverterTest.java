@@ -0,0 +1,121 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exact values at the edges of each mode, in both sample types and every output form
+ */
+public class PcmConverterTest {
+
+    @Test
+    public void hardClipStopsAtFullScale() {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SATURATE, false);
+        double[] in = {0, 1, -1, 1.0001, -1.0001, 2, -2, 1e9, -1e9,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        short[] expected = {0, 32767, -32767, 32767, -32768, 32767, -32768, 32767, -32768, 32767, -32768};
+        assertEveryForm(converter, in, expected);
+    }
+
+    @Test
+    public void softKneeReachesFullScaleAt1Point5() {
+        assertEquals(1.0, PcmConverter.softClip(1.5), 0);
+        assertEquals(-1.0, PcmConverter.softClip(-1.5), 0);
+        assertEquals(1.0f, PcmConverter.softClip(1.5f), 0);
+        // flat beyond the knee, and still rising just below it
+        assertEquals(1.0, PcmConverter.softClip(7), 0);
+        assertTrue(PcmConverter.softClip(1.4) < PcmConverter.softClip(1.45));
+        // unity slope at the origin
+        assertEquals(1e-4, PcmConverter.softClip(1e-4), 1e-12);
+
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        double[] in = {0, 1.5, -1.5, 3, -3, 1, 0.5};
+        short[] expected = {0, 32767, -32767, 32767, -32767,
+                (short) Math.round(32767 * (1 - 4.0 / 27)), (short) Math.round(32767 * (0.5 - 4.0 / 27 / 8))};
+        assertEveryForm(converter, in, expected);
+    }
+
+    @Test
+    public void tiesRoundUp() {
+        assertEquals(1, PcmConverter.quantize(0.5));
+        assertEquals(0, PcmConverter.quantize(-0.5));
+        assertEquals(2, PcmConverter.quantize(1.5));
+        assertEquals(-1, PcmConverter.quantize(-1.5));
+        assertEquals(0, PcmConverter.quantize(0.4999));
+        assertEquals(-1, PcmConverter.quantize(-0.5001));
+        assertEquals(32767, PcmConverter.quantize(32766.5));
+        assertEquals(-32768, PcmConverter.quantize(-32768.5));
+        assertEquals(1, PcmConverter.quantize(0.5f));
+        assertEquals(0, PcmConverter.quantize(-0.5f));
+        assertEquals(-1, PcmConverter.quantize(-1.5f));
+    }
+
+    @Test
+    public void ditherStaysWithinOneLsb() {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SATURATE, true);
+        int length = 100000;
+        double[] in = new double[length];
+        float[] floats = new float[length];
+        for (int i = 0; i < length; i++) {
+            // a slow ramp, so every fraction of an LSB is covered
+            in[i] = (i % 1000 - 500) * 0.37 / 32767;
+            floats[i] = (float) in[i];
+        }
+        short[] out = new short[length];
+        converter.toShorts(in, 0, out, 0, length);
+        double error = 0;
+        for (int i = 0; i < length; i++) {
+            int exact = PcmConverter.quantize(in[i] * 32767);
+            assertTrue("sample " + i + ": " + out[i] + " for " + exact, Math.abs(out[i] - exact) <= 1);
+            error += out[i] - in[i] * 32767;
+        }
+        // and adds no offset
+        assertEquals(0, error / length, 0.01);
+
+        converter.toShorts(floats, 0, out, 0, length);
+        for (int i = 0; i < length; i++) {
+            int exact = PcmConverter.quantize(floats[i] * 32767f);
+            assertTrue("sample " + i + ": " + out[i] + " for " + exact, Math.abs(out[i] - exact) <= 1);
+        }
+    }
+
+    /**
+     * Converts {@code in} through every method, as doubles and as floats
+     */
+    private static void assertEveryForm(PcmConverter converter, double[] in, short[] expected) {
+        int n = in.length;
+        float[] floats = new float[n];
+        for (int i = 0; i < n; i++) {
+            floats[i] = (float) in[i];
+        }
+        short[] shorts = new short[n];
+        converter.toShorts(in, 0, shorts, 0, n);
+        assertArrayEquals("double toShorts", expected, shorts);
+        converter.toShorts(floats, 0, shorts, 0, n);
+        assertArrayEquals("float toShorts", expected, shorts);
+
+        byte[] bytes = new byte[2 * n];
+        converter.toBytes(in, 0, bytes, 0, n);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(shorts);
+        assertArrayEquals("toBytes", expected, shorts);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * n).order(ByteOrder.nativeOrder());
+        converter.toBuffer(in, 0, buffer, n);
+        assertEquals(2 * n, buffer.position());
+        buffer.flip();
+        buffer.asShortBuffer().get(shorts);
+        assertArrayEquals("double toBuffer", expected, shorts);
+
+        buffer.clear();
+        converter.toBuffer(floats, 0, buffer, n);
+        buffer.flip();
+        buffer.asShortBuffer().get(shorts);
+        assertArrayEquals("float toBuffer", expected, shorts);
+    }
+}
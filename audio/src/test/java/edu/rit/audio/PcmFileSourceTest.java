@@ -0,0 +1,211 @@
+package edu.rit.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reads files back through windows far smaller than the file, so every block crosses window
+ * boundaries, and checks the samples come out exactly as written, whichever render path is used.
+ */
+public class PcmFileSourceTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+    // 500 frames per window, not a multiple of the block
+    private static final int WINDOW_BYTES = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pcmPathReturnsTheFileAndLoops() throws IOException {
+        short[] samples = samples(3001);
+        PcmFileSource source = PcmFileSource.openWav(wav(samples), BLOCK, WINDOW_BYTES);
+        try {
+            assertEquals(SAMPLE_RATE, source.getSampleRate());
+            assertEquals(samples.length, source.getLengthFrames());
+            short[] out = new short[BLOCK];
+            for (int block = 0; block < 40; block++) {
+                assertTrue(source.renderPcm(out, 0, BLOCK));
+                for (int i = 0; i < BLOCK; i++) {
+                    assertEquals("frame " + (block * BLOCK + i), samples[(block * BLOCK + i) % samples.length],
+                            out[i]);
+                }
+            }
+            assertEquals(40 * BLOCK % samples.length, source.getPosition());
+            assertFalse(source.isFinished());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void fileInOneWindowLoopsWithinIt() throws IOException {
+        // 300 frames, less than a window and not a multiple of the block
+        short[] samples = samples(300);
+        PcmFileSource source = PcmFileSource.openWav(wav(samples), BLOCK, WINDOW_BYTES);
+        try {
+            short[] out = new short[BLOCK];
+            for (int block = 0; block < 20; block++) {
+                assertTrue(source.renderPcm(out, 0, BLOCK));
+                for (int i = 0; i < BLOCK; i++) {
+                    assertEquals("frame " + (block * BLOCK + i), samples[(block * BLOCK + i) % samples.length],
+                            out[i]);
+                }
+            }
+            // every wrap stays in the mapped window, none maps it again on the render thread
+            assertEquals(0, source.getLateWindows());
+            assertEquals(20 * BLOCK % samples.length, source.getPosition());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void floatPathMatchesThePcm() throws IOException {
+        short[] samples = samples(2000);
+        PcmFileSource source = PcmFileSource.openWav(wav(samples), BLOCK, WINDOW_BYTES);
+        try {
+            float[] out = new float[BLOCK];
+            for (int block = 0; block < 10; block++) {
+                source.render(out, 0, BLOCK);
+                for (int i = 0; i < BLOCK; i++) {
+                    assertEquals(samples[(block * BLOCK + i) % samples.length] / 32768f, out[i], 0);
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void stereoIsMixedDown() throws IOException {
+        short[] frames = new short[2 * 1200];
+        for (int i = 0; i < 1200; i++) {
+            frames[2 * i] = (short) (i * 13);
+            frames[2 * i + 1] = (short) (-i * 5);
+        }
+        File file = folder.newFile("stereo.pcm");
+        writeRaw(file, frames);
+        PcmFileSource source = PcmFileSource.openRaw(file, SAMPLE_RATE, 2, BLOCK, WINDOW_BYTES);
+        try {
+            assertEquals(1200, source.getLengthFrames());
+            assertFalse(source.renderPcm(new short[BLOCK], 0, BLOCK));
+            float[] out = new float[BLOCK];
+            for (int block = 0; block < 4; block++) {
+                source.render(out, 0, BLOCK);
+                for (int i = 0; i < BLOCK; i++) {
+                    int f = block * BLOCK + i;
+                    assertEquals((f * 13 - f * 5) / 2 / 32768f, out[i], 1e-6);
+                }
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void endsWithSilenceWithoutLooping() throws IOException {
+        short[] samples = samples(700);
+        PcmFileSource source = PcmFileSource.openWav(wav(samples), BLOCK, WINDOW_BYTES);
+        try {
+            source.setLooping(false);
+            short[] out = new short[BLOCK];
+            for (int block = 0; block < 3; block++) {
+                source.renderPcm(out, 0, BLOCK);
+            }
+            assertTrue(source.isFinished());
+            assertEquals(0, out[700 - 2 * BLOCK]);
+            assertEquals(samples[699], out[699 - 2 * BLOCK]);
+            source.renderPcm(out, 0, BLOCK);
+            assertArrayEquals(new short[BLOCK], out);
+
+            source.seek(100);
+            assertFalse(source.isFinished());
+            source.renderPcm(out, 0, BLOCK);
+            assertEquals(samples[100], out[0]);
+            assertEquals(100 + BLOCK, source.getPosition());
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void delayedCopyIsMixedIn() throws IOException {
+        short[] samples = samples(4000);
+        PcmFileSource source = PcmFileSource.openWav(wav(samples), BLOCK, WINDOW_BYTES);
+        try {
+            source.setDelay(10);
+            source.setDelayGain(0.5);
+            float[] out = new float[BLOCK];
+            // past the level ramp
+            for (int block = 0; block < 2; block++) {
+                source.render(out, 0, BLOCK);
+            }
+            assertFalse(source.renderPcm(new short[BLOCK], 0, BLOCK));
+            source.render(out, 0, BLOCK);
+            for (int i = 0; i < BLOCK; i++) {
+                int f = 2 * BLOCK + i;
+                float expected = (samples[f] + 0.5f * samples[f - 10]) / 32768f;
+                assertEquals("frame " + f, expected, out[i], 1e-4);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File file = folder.newFile("noise.wav");
+        writeRaw(file, samples(100));
+        try {
+            PcmFileSource.openWav(file, BLOCK);
+            fail("opened a file without a header");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("not a WAV file"));
+        }
+    }
+
+    private File wav(short[] samples) throws IOException {
+        File file = folder.newFile("test.wav");
+        PcmFileWriter writer = new PcmFileWriter(file, SAMPLE_RATE, true, 1024);
+        writer.write(samples, 0, samples.length);
+        writer.close();
+        return file;
+    }
+
+    private static void writeRaw(File file, short[] samples) throws IOException {
+        byte[] bytes = new byte[2 * samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            bytes[2 * i] = (byte) samples[i];
+            bytes[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Distinct values, so a sample from the wrong place shows
+     */
+    private static short[] samples(int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (i * 7919);
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,117 @@
+package edu.rit.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes files through every write method, with a buffer small enough that writes cross flushes,
+ * and reads them back through {@link PcmFileSource}
+ */
+public class PcmFileWriterTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+    // 100 frames, not a multiple of any write below
+    private static final int BUFFER_FRAMES = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void wavRoundTrips() throws IOException {
+        File file = folder.newFile("round trip.wav");
+        short[] expected = writeAllWays(PcmFileWriter.open(file, SAMPLE_RATE, BUFFER_FRAMES));
+        assertEquals(44 + 2 * expected.length, file.length());
+
+        PcmFileSource source = PcmFileSource.open(file, 1, BLOCK);
+        try {
+            assertEquals(SAMPLE_RATE, source.getSampleRate());
+            assertEquals(1, source.getChannelCount());
+            assertArrayEquals(expected, readAll(source));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void rawRoundTrips() throws IOException {
+        File file = folder.newFile("round trip.pcm");
+        short[] expected = writeAllWays(PcmFileWriter.open(file, SAMPLE_RATE, BUFFER_FRAMES));
+        assertEquals(2 * expected.length, file.length());
+
+        PcmFileSource source = PcmFileSource.open(file, SAMPLE_RATE, BLOCK);
+        try {
+            assertEquals(SAMPLE_RATE, source.getSampleRate());
+            assertArrayEquals(expected, readAll(source));
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void emptyWavHasAValidHeader() throws IOException {
+        File file = folder.newFile("empty.wav");
+        PcmFileWriter writer = PcmFileWriter.open(file, 44100, BUFFER_FRAMES);
+        writer.close();
+        assertEquals(44, file.length());
+        PcmFileSource source = PcmFileSource.open(file, 1, BLOCK);
+        try {
+            assertEquals(44100, source.getSampleRate());
+            assertEquals(0, source.getLengthFrames());
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Writes a full scale sweep as doubles, floats and PCM, in uneven pieces, and closes the writer
+     *
+     * @return the samples the file should hold
+     */
+    private static short[] writeAllWays(PcmFileWriter writer) throws IOException {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SATURATE, false);
+        int length = 3 * 1234;
+        double[] doubles = new double[length];
+        float[] floats = new float[length];
+        short[] expected = new short[length];
+        for (int i = 0; i < length; i++) {
+            // up to 1.1, so the clipping shows too
+            doubles[i] = 1.1 * Math.sin(0.0123 * i * i / length);
+            floats[i] = (float) doubles[i];
+        }
+        int third = length / 3;
+        converter.toShorts(doubles, 0, expected, 0, third);
+        converter.toShorts(floats, third, expected, third, third);
+        converter.toShorts(doubles, 2 * third, expected, 2 * third, third);
+        try {
+            int[] pieces = {1, 37, 100, 513, 583};
+            for (int done = 0, p = 0; done < third; done += pieces[p++ % pieces.length]) {
+                writer.write(converter, doubles, done, Math.min(pieces[p % pieces.length], third - done));
+            }
+            for (int done = third, p = 0; done < 2 * third; done += pieces[p++ % pieces.length]) {
+                writer.write(converter, floats, done, Math.min(pieces[p % pieces.length], 2 * third - done));
+            }
+            writer.write(expected, 2 * third, third);
+            assertEquals(length, writer.getFramesWritten());
+        } finally {
+            writer.close();
+        }
+        return expected;
+    }
+
+    private static short[] readAll(PcmFileSource source) {
+        short[] all = new short[(int) source.getLengthFrames()];
+        short[] block = new short[BLOCK];
+        for (int done = 0; done < all.length; done += BLOCK) {
+            source.renderPcm(block, 0, BLOCK);
+            System.arraycopy(block, 0, all, done, Math.min(BLOCK, all.length - done));
+        }
+        return all;
+    }
+}
@@ -0,0 +1,213 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The ring under two threads running at mismatched rates, in random batch sizes: every sample must
+ * come out once and in order, and the side that outruns the other must see it in the counters.
+ * Each side parks when it cannot go on and is woken by the other through the watermarks.
+ */
+public class PcmRingBufferTest {
+    private static final int SAMPLES = 4000000;
+
+    @Test
+    public void fastProducerWaits() throws InterruptedException {
+        PcmRingBuffer ring = stress(0, 20000);
+        assertTrue("producer waits " + ring.getProducerWaits(), ring.getProducerWaits() > 0);
+    }
+
+    @Test
+    public void fastConsumerUnderruns() throws InterruptedException {
+        PcmRingBuffer ring = stress(20000, 0);
+        assertTrue("underruns " + ring.getUnderruns(), ring.getUnderruns() > 0);
+    }
+
+    @Test
+    public void watermarksFireOncePerCrossing() {
+        final int[] highs = new int[1];
+        final int[] lows = new int[1];
+        PcmRingBuffer ring = new PcmRingBuffer(100);
+        assertEquals(128, ring.getCapacity());
+        ring.setWatermarks(32, 96, new PcmRingBuffer.Listener() {
+            @Override
+            public void onHighWatermark(PcmRingBuffer ring) {
+                highs[0]++;
+            }
+
+            @Override
+            public void onLowWatermark(PcmRingBuffer ring) {
+                lows[0]++;
+            }
+        });
+        short[] block = new short[64];
+        ring.put(block, 0, 64);
+        assertEquals(0, highs[0]);
+        ring.put(block, 0, 32);
+        assertEquals(1, highs[0]);
+        assertEquals(32, ring.put(block, 0, 64));
+        assertEquals(1, highs[0]);
+        assertEquals(1, ring.getProducerWaits());
+
+        ring.get(block, 0, 64);
+        assertEquals(0, lows[0]);
+        ring.get(block, 0, 40);
+        assertEquals(1, lows[0]);
+        assertEquals(24, ring.get(block, 0, 64));
+        assertEquals(1, lows[0]);
+        assertEquals(1, ring.getUnderruns());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void bufferedSinkPlaysEverySampleInOrder() throws InterruptedException {
+        final int[] next = new int[1];
+        final String[] failure = new String[1];
+        PcmSource counter = new PcmSource() {
+            private short value;
+
+            @Override
+            public boolean renderPcm(short[] out, int offset, int frames) {
+                for (int i = 0; i < frames; i++) {
+                    out[offset + i] = value++;
+                }
+                return true;
+            }
+
+            @Override
+            public void render(double[] out, int offset, int frames) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        SimulatedSink out = new SimulatedSink(8000, 512, 2) {
+            @Override
+            protected void onWrite(short[] data, int offset, int length) {
+                for (int i = 0; i < length; i += 2) {
+                    short expected = (short) next[0]++;
+                    if (failure[0] == null && (data[offset + i] != expected || data[offset + i + 1] != expected)) {
+                        failure[0] = "frame " + (next[0] - 1) + " played as " + data[offset + i];
+                    }
+                }
+            }
+        };
+        BufferedSink sink = new BufferedSink(out, 256, 64);
+        RenderLoop loop = new RenderLoop(counter, sink, 64);
+        loop.start();
+        loop.play();
+        Thread.sleep(500);
+        loop.pause();
+        Thread.sleep(100);
+        loop.play();
+        Thread.sleep(500);
+        loop.quit();
+        sink.release();
+
+        assertNull(failure[0]);
+        // about a second at 8 kHz, less the time to fill the buffers twice
+        assertTrue("frames played " + next[0], next[0] > 6000);
+        assertTrue("render thread ran ahead " + loop.getMaxFramesAhead(),
+                loop.getMaxFramesAhead() <= 512 + sink.getRing().getCapacity() / 2 + 64);
+    }
+
+    /**
+     * Passes {@link #SAMPLES} counting samples through a ring, each side stalling for up to the given
+     * time after about one batch in fifty
+     */
+    private static PcmRingBuffer stress(final long producerStallNanos, final long consumerStallNanos)
+            throws InterruptedException {
+        final PcmRingBuffer ring = new PcmRingBuffer(1024);
+        final AtomicReference<Thread> waiting = new AtomicReference<Thread>();
+        ring.setWatermarks(256, 768, new PcmRingBuffer.Listener() {
+            @Override
+            public void onHighWatermark(PcmRingBuffer ring) {
+                LockSupport.unpark(waiting.get());
+            }
+
+            @Override
+            public void onLowWatermark(PcmRingBuffer ring) {
+                LockSupport.unpark(waiting.get());
+            }
+        });
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                short[] batch = new short[300];
+                int next = 0;
+                while (next < SAMPLES) {
+                    int n = Math.min(SAMPLES - next, 1 + random.nextInt(batch.length));
+                    for (int i = 0; i < n; i++) {
+                        batch[i] = (short) (next + i);
+                    }
+                    int done = 0;
+                    while (done < n) {
+                        int put = ring.put(batch, done, n - done);
+                        done += put;
+                        if (put == 0) {
+                            park(waiting, ring.size() > ring.getLowWatermark());
+                        }
+                    }
+                    next += n;
+                    stall(random, producerStallNanos);
+                }
+            }
+        });
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(2);
+                short[] batch = new short[300];
+                int next = 0;
+                while (next < SAMPLES && failure.get() == null) {
+                    int got = ring.get(batch, 0, 1 + random.nextInt(batch.length));
+                    for (int i = 0; i < got; i++) {
+                        if (batch[i] != (short) (next + i)) {
+                            failure.set("sample " + (next + i) + " read as " + batch[i]);
+                            return;
+                        }
+                    }
+                    next += got;
+                    if (got == 0) {
+                        park(waiting, ring.size() < ring.getHighWatermark() && next < SAMPLES);
+                    }
+                    stall(random, consumerStallNanos);
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(60000);
+        consumer.join(60000);
+        assertTrue("threads finished", !producer.isAlive() && !consumer.isAlive());
+        assertNull(failure.get());
+        assertEquals(0, ring.size());
+        return ring;
+    }
+
+    /**
+     * Parks until the other side crosses a watermark; the timeout covers a crossing that happened
+     * between the check and the park
+     */
+    private static void park(AtomicReference<Thread> waiting, boolean stillBlocked) {
+        waiting.set(Thread.currentThread());
+        if (stillBlocked) {
+            LockSupport.parkNanos(100000);
+        }
+        waiting.set(null);
+    }
+
+    private static void stall(Random random, long nanos) {
+        if (nanos > 0 && random.nextInt(50) == 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+}
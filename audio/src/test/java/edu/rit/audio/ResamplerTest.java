@@ -0,0 +1,95 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Converts a pure tone between rate pairs and measures how much of the output is not that tone
+ */
+public class ResamplerTest {
+    private static final int BLOCK_FRAMES = 256;
+
+    @Test
+    public void toneSurvivesConversion() {
+        int[][] rates = {{8000, 48000}, {8000, 44100}, {22050, 48000}, {44100, 48000}, {48000, 44100},
+                {48000, 8000}, {16000, 16000}};
+        for (int[] pair : rates) {
+            // well inside the pass band of the lower rate
+            double frequency = 0.3 * Math.min(pair[0], pair[1]);
+            double snr = snr(pair[0], pair[1], frequency);
+            assertTrue(pair[0] + " -> " + pair[1] + " Hz: " + snr + " dB", snr > 70);
+        }
+    }
+
+    @Test
+    public void tablesAreSharedPerRatio() {
+        float[] a = Resampler.table(6, 1);
+        float[] b = Resampler.table(6, 1);
+        assertSame(a, b);
+        // 8000 -> 48000 and 16000 -> 96000 reduce to the same ratio
+        new Resampler(new SineSource(8000, 500), 8000, 48000, BLOCK_FRAMES);
+        int tables = Resampler.cachedTables();
+        new Resampler(new SineSource(16000, 500), 16000, 96000, BLOCK_FRAMES);
+        assertTrue(Resampler.cachedTables() == tables);
+    }
+
+    /**
+     * @return ratio of the tone to everything else in the output, in dB, past the filter's start-up
+     */
+    private static double snr(int inputRate, int outputRate, double frequency) {
+        Resampler resampler = new Resampler(new SineSource(inputRate, frequency), inputRate, outputRate,
+                BLOCK_FRAMES);
+        float[] out = new float[outputRate / 2];
+        resampler.render(out, 0, out.length);
+
+        // least squares fit of a sine at the known frequency over the settled part
+        int from = out.length / 4;
+        double w = 2 * Math.PI * frequency / outputRate;
+        double ss = 0, cc = 0, sc = 0, ys = 0, yc = 0;
+        for (int n = from; n < out.length; n++) {
+            double s = Math.sin(w * n);
+            double c = Math.cos(w * n);
+            ss += s * s;
+            cc += c * c;
+            sc += s * c;
+            ys += out[n] * s;
+            yc += out[n] * c;
+        }
+        double det = ss * cc - sc * sc;
+        double a = (ys * cc - yc * sc) / det;
+        double b = (yc * ss - ys * sc) / det;
+        double signal = 0;
+        double noise = 0;
+        for (int n = from; n < out.length; n++) {
+            double fit = a * Math.sin(w * n) + b * Math.cos(w * n);
+            signal += fit * fit;
+            noise += (out[n] - fit) * (out[n] - fit);
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    private static class SineSource implements FloatSource {
+        private final double increment;
+        private long n;
+
+        SineSource(int sampleRate, double frequency) {
+            increment = 2 * Math.PI * frequency / sampleRate;
+        }
+
+        @Override
+        public void render(float[] out, int offset, int frames) {
+            for (int i = 0; i < frames; i++) {
+                out[offset + i] = (float) (0.5 * Math.sin(increment * n++));
+            }
+        }
+
+        @Override
+        public void render(double[] out, int offset, int frames) {
+            for (int i = 0; i < frames; i++) {
+                out[offset + i] = 0.5 * Math.sin(increment * n++);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The float pipeline against the double reference: after conversion to 16 bit, no sample may
+ * differ by more than one LSB, for steady tones and while frequency and delay are moving.
+ */
+public class SampleTypeTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int MAX_DELAY = 441;
+    private static final int BLOCK_FRAMES = 256;
+
+    @Test
+    public void toneGeneratorWithinOneLsb() {
+        double[] frequencies = {100, 440, 500, 1234.5, 4000};
+        double[] delays = {0, 0.5, 20.25, 441};
+        for (double frequency : frequencies) {
+            for (double delay : delays) {
+                ToneGenerator reference = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK_FRAMES, frequency,
+                        SampleType.DOUBLE);
+                ToneGenerator fast = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK_FRAMES, frequency,
+                        SampleType.FLOAT);
+                reference.setDelay(delay);
+                fast.setDelay(delay);
+                assertWithinOneLsb(frequency + " Hz, delay " + delay, reference, fast, 4 * SAMPLE_RATE);
+            }
+        }
+    }
+
+    @Test
+    public void toneGeneratorWithinOneLsbWhileGliding() {
+        ToneGenerator reference = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK_FRAMES, 500,
+                SampleType.DOUBLE);
+        ToneGenerator fast = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK_FRAMES, 500,
+                SampleType.FLOAT);
+        for (int step = 0; step < 40; step++) {
+            double frequency = 100 + step * 97.5;
+            double delay = (step * 37.3) % MAX_DELAY;
+            reference.setFrequency(frequency);
+            fast.setFrequency(frequency);
+            reference.setDelay(delay);
+            fast.setDelay(delay);
+            assertWithinOneLsb("step " + step, reference, fast, 3 * BLOCK_FRAMES);
+        }
+    }
+
+    @Test
+    public void delayLineWithinOneLsb() {
+        for (DelayLine.Interpolation interpolation : DelayLine.Interpolation.values()) {
+            DelayLine reference = new DelayLine(MAX_DELAY, interpolation);
+            DelayLine fast = new DelayLine(MAX_DELAY, interpolation);
+            reference.setRampLength(160);
+            fast.setRampLength(160);
+            double[] in = new double[BLOCK_FRAMES];
+            float[] floatIn = new float[BLOCK_FRAMES];
+            double[] out = new double[BLOCK_FRAMES];
+            float[] floatOut = new float[BLOCK_FRAMES];
+            PcmConverter converter = new PcmConverter();
+            short[] expected = new short[BLOCK_FRAMES];
+            short[] actual = new short[BLOCK_FRAMES];
+            int n = 0;
+            for (int block = 0; block < 200; block++) {
+                if (block % 20 == 0) {
+                    reference.setDelay(block * 1.7 + 0.3);
+                    fast.setDelay(block * 1.7 + 0.3);
+                }
+                for (int i = 0; i < BLOCK_FRAMES; i++, n++) {
+                    in[i] = 0.9 * Math.sin(2 * Math.PI * 1234.5 * n / SAMPLE_RATE);
+                    floatIn[i] = (float) in[i];
+                }
+                reference.process(in, 0, out, 0, BLOCK_FRAMES);
+                fast.process(floatIn, 0, floatOut, 0, BLOCK_FRAMES);
+                converter.toShorts(out, 0, expected, 0, BLOCK_FRAMES);
+                converter.toShorts(floatOut, 0, actual, 0, BLOCK_FRAMES);
+                assertMaxDifference(interpolation + " block " + block, expected, actual, 1);
+            }
+        }
+    }
+
+    private static void assertWithinOneLsb(String what, ToneGenerator reference, ToneGenerator fast,
+                                           int frames) {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        double[] out = new double[BLOCK_FRAMES];
+        float[] floatOut = new float[BLOCK_FRAMES];
+        short[] expected = new short[BLOCK_FRAMES];
+        short[] actual = new short[BLOCK_FRAMES];
+        for (int done = 0; done < frames; done += BLOCK_FRAMES) {
+            reference.render(out, 0, BLOCK_FRAMES);
+            fast.render(floatOut, 0, BLOCK_FRAMES);
+            converter.toShorts(out, 0, expected, 0, BLOCK_FRAMES);
+            converter.toShorts(floatOut, 0, actual, 0, BLOCK_FRAMES);
+            assertMaxDifference(what + " at frame " + done, expected, actual, 1);
+        }
+    }
+
+    private static void assertMaxDifference(String what, short[] expected, short[] actual, int lsb) {
+        for (int i = 0; i < expected.length; i++) {
+            int difference = Math.abs(expected[i] - actual[i]);
+            assertTrue(what + " + " + i + ": " + expected[i] + " vs " + actual[i], difference <= lsb);
+        }
+    }
+}
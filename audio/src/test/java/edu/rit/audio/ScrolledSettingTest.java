@@ -0,0 +1,122 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fine scrolls add up on the grid, and scrolled settings reach the cache the way the card drives
+ * the generator
+ */
+public class ScrolledSettingTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+
+    @Test
+    public void fineScrollsAddUp() {
+        ScrolledSetting delay = new ScrolledSetting(0, 441, 0);
+        delay.setSteps(WaveformCache.DELAY_STEPS);
+        for (int i = 1; i <= 100; i++) {
+            double value = delay.scroll(0.003);
+            assertEquals(WaveformCache.quantizeDelay(value), value, 0);
+            // never more than half a step from what was scrolled
+            assertEquals(i * 0.003, value, 0.05 + 1e-9);
+        }
+        assertEquals(0.3, delay.get(), 0);
+        // and back down the same way
+        for (int i = 0; i < 100; i++) {
+            delay.scroll(-0.003);
+        }
+        assertEquals(0, delay.get(), 0);
+    }
+
+    @Test
+    public void endsDropTheCarry() {
+        ScrolledSetting frequency = new ScrolledSetting(100, 4000, 500);
+        frequency.setSteps(WaveformCache.FREQUENCY_STEPS);
+        assertEquals(4000, frequency.scroll(10000), 0);
+        // straight back off the end, not after scrolling back the excess
+        assertEquals(3999, frequency.scroll(-1.2), 0);
+        assertEquals(100, frequency.scroll(-1e6), 0);
+        assertEquals(100, frequency.scroll(0.4), 0);
+        assertEquals(101, frequency.scroll(0.4), 0);
+    }
+
+    @Test
+    public void withoutAGridTheSettingIsContinuous() {
+        ScrolledSetting frequency = new ScrolledSetting(100, 4000, 500);
+        assertEquals(500.37, frequency.scroll(0.37), 1e-12);
+        // a grid snaps it at once, and carries what it rounded off
+        frequency.setSteps(WaveformCache.FREQUENCY_STEPS);
+        assertEquals(500, frequency.get(), 0);
+        assertEquals(501, frequency.scroll(0.2), 0);
+        frequency.setSteps(0);
+        assertEquals(500.57, frequency.get(), 1e-12);
+    }
+
+    @Test(timeout = 30000)
+    public void scrolledSettingsPlayFromTheCache() throws InterruptedException {
+        assertTrue(playedFromCache(WaveformCache.FREQUENCY_STEPS, WaveformCache.DELAY_STEPS) > 0);
+        // the same scrolls kept continuous land between loops, so the cache is never played
+        assertEquals(0, playedFromCache(0, 0));
+    }
+
+    /**
+     * Scrolls by the uneven fractional deltas a touchpad gives, handing each setting to the
+     * generator as the card does, and renders as the render loop does
+     *
+     * @return the cache's hits
+     */
+    private static long playedFromCache(int frequencySteps, int delaySteps) throws InterruptedException {
+        WaveformCache cache = new WaveformCache(SAMPLE_RATE, 1 << 20, new ToneGenerator.LoopRenderer(SAMPLE_RATE),
+                new PcmConverter(PcmConverter.Clip.SOFT, false));
+        try {
+            ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, 500);
+            generator.setCache(cache);
+            ScrolledSetting frequency = new ScrolledSetting(100, 4000, 500);
+            ScrolledSetting delay = new ScrolledSetting(0, 441, 0);
+            frequency.setSteps(frequencySteps);
+            delay.setSteps(delaySteps);
+            double[] frequencyDeltas = {0.37, 1.21, -0.44, 2.9, 0.013};
+            double[] delayDeltas = {0.173, 0.061, 1.337};
+            for (double delta : frequencyDeltas) {
+                generator.setFrequency(frequency.scroll(delta));
+                renderBlocks(generator, 2);
+            }
+            for (double delta : delayDeltas) {
+                generator.setDelay(delay.scroll(delta));
+                renderBlocks(generator, 2);
+            }
+            // then held, long enough for the loop to be rendered and switched to
+            long deadline = System.currentTimeMillis() + 3000;
+            long cached = 0;
+            while (cached < 8 && System.currentTimeMillis() < deadline) {
+                cached += renderBlocks(generator, 1);
+                Thread.sleep(1);
+            }
+            return cache.getHits();
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    /**
+     * @return blocks that came from the cache
+     */
+    private static int renderBlocks(ToneGenerator generator, int blocks) {
+        short[] pcm = new short[BLOCK];
+        double[] block = new double[BLOCK];
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        int cached = 0;
+        for (int b = 0; b < blocks; b++) {
+            if (generator.renderPcm(pcm, 0, BLOCK)) {
+                cached++;
+            } else {
+                generator.render(block, 0, BLOCK);
+                converter.toShorts(block, 0, pcm, 0, BLOCK);
+            }
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Events must land on their frame however the output is cut into blocks, so the same sequence
+ * renders to the same samples for any block size, and the player must hand the generator back
+ * when the sequence ends.
+ */
+public class SequencePlayerTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int MAX_DELAY = 441;
+
+    @Test
+    public void outputDoesNotDependOnBlockSize() {
+        ToneSequence sequence = new ToneSequence.Builder(SAMPLE_RATE)
+                .frequency(300).delay(10).hold(0.0137)
+                .frequency(1250.5).waveform(Waveform.SAW).hold(0.05)
+                .sweep(100, 4000, 0.3)
+                .delayRamp(MAX_DELAY, 0.2)
+                .waveform(Waveform.SINE).frequency(700).hold(0.01)
+                .build();
+        // after the end the generator glides back in its own block-relative steps, so stop there
+        int length = (int) sequence.getLengthFrames();
+        float[] reference = render(sequence, length, length);
+        int[] blockSizes = {1, 37, 64, 256, 1000};
+        for (int blockFrames : blockSizes) {
+            assertArrayEquals("block " + blockFrames, reference, render(sequence, length, blockFrames), 0);
+        }
+    }
+
+    @Test
+    public void sequenceEndsAndReleasesTheGenerator() {
+        ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, 256, 500);
+        SequencePlayer player = new SequencePlayer(generator);
+        ToneSequence ladder = ToneSequence.ladder(SAMPLE_RATE, 100, 4000, 4, 0, 0.01);
+        assertEquals(320, ladder.getLengthFrames());
+        player.play(ladder);
+        assertSame(ladder, player.getPlaying());
+
+        float[] block = new float[256];
+        player.render(block, 0, block.length);
+        assertEquals(256, player.getPosition());
+        assertSame(ladder, player.getPlaying());
+        player.render(block, 0, block.length);
+        assertEquals(320, player.getPosition());
+        assertNull(player.getPlaying());
+
+        // back on the generator's own 500 Hz, so equal to a fresh generator after its glide
+        ToneGenerator fresh = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, 256, 500);
+        float[] expected = new float[256];
+        for (int i = 0; i < 20; i++) {
+            player.render(block, 0, block.length);
+            fresh.render(expected, 0, expected.length);
+        }
+        assertEquals(rms(expected), rms(block), 0.01);
+    }
+
+    @Test(timeout = 30000)
+    public void playDuringTheEndOfAnotherIsKept() throws InterruptedException {
+        final SequencePlayer player = new SequencePlayer(new ToneGenerator(SAMPLE_RATE, MAX_DELAY, 16, 500));
+        // one frame, so nearly every block ends it
+        final ToneSequence blip = new ToneSequence.Builder(SAMPLE_RATE).frequency(700).hold(1.0 / SAMPLE_RATE).build();
+        ToneSequence[] longs = new ToneSequence[2];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = new ToneSequence.Builder(SAMPLE_RATE).frequency(300 + i).hold(3600).build();
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread render = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] block = new float[16];
+                while (running.get()) {
+                    player.render(block, 0, block.length);
+                }
+            }
+        });
+        render.start();
+        try {
+            long end = System.currentTimeMillis() + 1000;
+            for (int round = 0; System.currentTimeMillis() < end; round++) {
+                player.play(blip);
+                // lands on either side of the blip ending, and sometimes in the middle of it
+                for (int spin = round % 200; spin > 0; spin--) {
+                    Thread.yield();
+                }
+                ToneSequence hour = longs[round % 2];
+                player.play(hour);
+                for (int check = 0; check < 20; check++) {
+                    assertSame("round " + round, hour, player.getPlaying());
+                    Thread.yield();
+                }
+            }
+        } finally {
+            running.set(false);
+            render.join();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSequenceForAnotherRate() {
+        new SequencePlayer(new ToneGenerator(SAMPLE_RATE, MAX_DELAY, 256, 500))
+                .play(ToneSequence.logSweep(48000, 100, 4000, 0, 1));
+    }
+
+    private static float[] render(ToneSequence sequence, int length, int blockFrames) {
+        SequencePlayer player = new SequencePlayer(new ToneGenerator(SAMPLE_RATE, MAX_DELAY, 256, 500));
+        player.play(sequence);
+        float[] out = new float[length];
+        for (int done = 0; done < length; done += blockFrames) {
+            player.render(out, done, Math.min(blockFrames, length - done));
+        }
+        return out;
+    }
+
+    private static double rms(float[] x) {
+        double sum = 0;
+        for (float v : x) {
+            sum += v * v;
+        }
+        return Math.sqrt(sum / x.length);
+    }
+}
@@ -0,0 +1,198 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The mix must be the sum of its sessions whichever way they are split among threads, and gain,
+ * mute and close must take effect at the next block without a jump.
+ */
+public class SessionMixerTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int MAX_DELAY = 441;
+    private static final int BLOCK = 256;
+
+    @Test
+    public void singleSessionAtUnityIsTheSourceUnchanged() {
+        SessionMixer mixer = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+        mixer.setHeadroom(VoiceBank.Headroom.PEAK);
+        mixer.open(tone(700, 12));
+        ToneGenerator alone = tone(700, 12);
+        float[] mixed = new float[BLOCK];
+        float[] expected = new float[BLOCK];
+        for (int i = 0; i < 10; i++) {
+            mixer.render(mixed, 0, BLOCK);
+            alone.render(expected, 0, BLOCK);
+            assertArrayEquals("block " + i, expected, mixed, 0);
+        }
+    }
+
+    @Test
+    public void parallelMixMatchesSerialMix() {
+        WorkerGroup workers = new WorkerGroup("test", 3);
+        try {
+            SessionMixer serial = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+            SessionMixer parallel = new SessionMixer(SAMPLE_RATE, BLOCK, workers);
+            for (int s = 0; s < 37; s++) {
+                double gain = 1.0 / (s + 1);
+                serial.open(tone(100 + 97 * s, s * 11 % MAX_DELAY), gain);
+                parallel.open(tone(100 + 97 * s, s * 11 % MAX_DELAY), gain);
+            }
+            float[] a = new float[BLOCK];
+            float[] b = new float[BLOCK];
+            for (int i = 0; i < 20; i++) {
+                serial.render(a, 0, BLOCK);
+                parallel.render(b, 0, BLOCK);
+                // the parts are summed in another order, so only to within rounding
+                assertArrayEquals("block " + i, a, b, 1e-5f);
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    public void muteAndGainRampWithoutJumps() {
+        SessionMixer mixer = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+        SessionMixer.Session<ToneGenerator> session = mixer.open(tone(200, 0));
+        float[] block = new float[BLOCK];
+        mixer.render(block, 0, BLOCK);
+        float last = block[BLOCK - 1];
+
+        session.setMuted(true);
+        mixer.render(block, 0, BLOCK);
+        // a 200 Hz tone moves little per sample; a jump to silence would move a lot
+        assertTrue(maxStep(last, block) < 0.5);
+        assertEquals(0, block[BLOCK - 1], 1e-6);
+        mixer.render(block, 0, BLOCK);
+        assertArrayEquals(new float[BLOCK], block, 0);
+
+        session.setMuted(false);
+        session.setGain(0.5);
+        mixer.render(block, 0, BLOCK);
+        assertTrue(maxStep(0, block) < 0.5);
+        ToneGenerator reference = tone(200, 0);
+        float[] expected = new float[BLOCK];
+        for (int i = 0; i < 5; i++) {
+            reference.render(expected, 0, BLOCK);
+        }
+        mixer.render(block, 0, BLOCK);
+        for (int i = 0; i < BLOCK; i++) {
+            assertEquals(0.5f * expected[i], block[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void closedSessionsFadeAndAreDropped() {
+        SessionMixer mixer = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+        SessionMixer.Session<ToneGenerator> kept = mixer.open(tone(300, 0));
+        SessionMixer.Session<ToneGenerator> closed = mixer.open(tone(1100, 5));
+        assertEquals(2, mixer.getSessionCount());
+        assertEquals(1, closed.getId());
+        float[] block = new float[BLOCK];
+        mixer.render(block, 0, BLOCK);
+
+        mixer.close(closed);
+        assertTrue(closed.isClosed());
+        assertEquals(1, mixer.getSessionCount());
+        mixer.render(block, 0, BLOCK);
+        mixer.close(closed);
+        mixer.open(tone(400, 0)).setMuted(true);
+        assertEquals(2, mixer.getSessionCount());
+
+        // the closed generator is no longer rendered, so the mix follows the kept one alone
+        ToneGenerator reference = tone(300, 0);
+        float[] expected = new float[BLOCK];
+        for (int i = 0; i < 3; i++) {
+            reference.render(expected, 0, BLOCK);
+        }
+        mixer.render(block, 0, BLOCK);
+        mixer.render(block, 0, BLOCK);
+        reference.render(expected, 0, BLOCK);
+        assertArrayEquals(expected, block, 1e-6f);
+        assertFalse(kept.isClosed());
+    }
+
+    @Test
+    public void headroomScalesBySessionGains() {
+        SessionMixer mixer = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+        mixer.setHeadroom(VoiceBank.Headroom.PEAK);
+        for (int s = 0; s < 4; s++) {
+            mixer.open(tone(100 + 50 * s, 0));
+        }
+        SessionMixer single = new SessionMixer(SAMPLE_RATE, BLOCK, null);
+        for (int s = 0; s < 4; s++) {
+            single.open(tone(100 + 50 * s, 0));
+        }
+        float[] a = new float[BLOCK];
+        float[] b = new float[BLOCK];
+        for (int i = 0; i < 3; i++) {
+            mixer.render(a, 0, BLOCK);
+            single.render(b, 0, BLOCK);
+        }
+        for (int i = 0; i < BLOCK; i++) {
+            assertEquals(b[i] / 4, a[i], 1e-6);
+        }
+    }
+
+    @Test
+    public void sessionsOpenAndCloseWhileRendering() throws InterruptedException {
+        WorkerGroup workers = new WorkerGroup("test", 3);
+        final SessionMixer mixer = new SessionMixer(SAMPLE_RATE, BLOCK, workers);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread client = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SessionMixer.Session<?>[] open = new SessionMixer.Session<?>[32];
+                    for (int i = 0; i < 5000; i++) {
+                        int slot = i * 7 % open.length;
+                        if (open[slot] != null) {
+                            mixer.close(open[slot]);
+                            open[slot] = null;
+                        } else {
+                            open[slot] = mixer.open(tone(100 + i % 3000, i % MAX_DELAY), 0.1);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        client.start();
+        float[] block = new float[BLOCK];
+        try {
+            while (client.isAlive()) {
+                mixer.render(block, 0, BLOCK);
+                for (float v : block) {
+                    assertFalse(Float.isNaN(v));
+                }
+            }
+        } finally {
+            client.join();
+            workers.shutdown();
+        }
+        assertNull(failure.get());
+    }
+
+    private static ToneGenerator tone(double hz, double delay) {
+        ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, MAX_DELAY, BLOCK, hz);
+        generator.setDelay(delay);
+        return generator;
+    }
+
+    private static double maxStep(float previous, float[] block) {
+        double max = Math.abs(block[0] - previous);
+        for (int i = 1; i < block.length; i++) {
+            max = Math.max(max, Math.abs(block[i] - block[i - 1]));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,92 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The FFT against a direct DFT, and the analyzer's bands and meters for known tones fed in blocks
+ * as the render loop would.
+ */
+public class SpectrumAnalyzerTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int FFT_SIZE = 1024;
+    private static final int BANDS = 32;
+
+    @Test
+    public void fftMatchesDft() {
+        int n = 64;
+        java.util.Random random = new java.util.Random(1);
+        float[] re = new float[n];
+        float[] im = new float[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextFloat() * 2 - 1;
+            im[i] = random.nextFloat() * 2 - 1;
+        }
+        float[] inRe = re.clone();
+        float[] inIm = im.clone();
+        new Fft(n).transform(re, im);
+        for (int k = 0; k < n; k++) {
+            double sumRe = 0;
+            double sumIm = 0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2 * Math.PI * k * t / n;
+                sumRe += inRe[t] * Math.cos(angle) - inIm[t] * Math.sin(angle);
+                sumIm += inRe[t] * Math.sin(angle) + inIm[t] * Math.cos(angle);
+            }
+            assertEquals("re " + k, sumRe, re[k], 1e-4);
+            assertEquals("im " + k, sumIm, im[k], 1e-4);
+        }
+    }
+
+    @Test
+    public void sineLandsInItsBand() {
+        double[] frequencies = {100, 500, 1234.5, 3000};
+        for (double frequency : frequencies) {
+            SpectrumAnalyzer analyzer = new SpectrumAnalyzer(SAMPLE_RATE, FFT_SIZE, BANDS);
+            feed(analyzer, frequency, 0.5, 3 * FFT_SIZE);
+            assertTrue(analyzer.update());
+
+            float[] bands = analyzer.getBands();
+            int loudest = 0;
+            for (int b = 1; b < BANDS; b++) {
+                if (bands[b] > bands[loudest]) {
+                    loudest = b;
+                }
+            }
+            // within a bin of the band edges, as a tone between two bins shows in both
+            float bin = (float) SAMPLE_RATE / FFT_SIZE;
+            assertTrue(frequency + " Hz in band from " + analyzer.getBandFrequency(loudest),
+                    analyzer.getBandFrequency(loudest) < frequency + bin
+                            && (loudest + 1 == BANDS || analyzer.getBandFrequency(loudest + 1) > frequency - bin));
+            // half scale is -6 dB; the band may sit between two bins, which costs up to 1.5 dB with Hann
+            assertEquals(frequency + " Hz band level", -6, bands[loudest], 1.6);
+            assertEquals(frequency + " Hz RMS", -9, analyzer.getRmsDb(), 0.1);
+            assertEquals(frequency + " Hz peak", -6, analyzer.getPeakDb(), 0.1);
+        }
+    }
+
+    @Test
+    public void silenceReadsFloorAndUpdatesOnlyOnNewSamples() {
+        SpectrumAnalyzer analyzer = new SpectrumAnalyzer(SAMPLE_RATE, FFT_SIZE, BANDS);
+        feed(analyzer, 440, 0, FFT_SIZE);
+        assertTrue(analyzer.update());
+        assertTrue(!analyzer.update());
+        for (float band : analyzer.getBands()) {
+            assertEquals(SpectrumAnalyzer.FLOOR_DB, band, 0);
+        }
+        assertEquals(SpectrumAnalyzer.FLOOR_DB, analyzer.getRmsDb(), 0);
+    }
+
+    private static void feed(SpectrumAnalyzer analyzer, double frequency, double amplitude, int samples) {
+        short[] block = new short[256];
+        int n = 0;
+        while (n < samples) {
+            for (int i = 0; i < block.length; i++, n++) {
+                block[i] = (short) Math.round(32767 * amplitude * Math.sin(2 * Math.PI * frequency * n / SAMPLE_RATE));
+            }
+            analyzer.onBlock(block, 0, block.length);
+        }
+    }
+}
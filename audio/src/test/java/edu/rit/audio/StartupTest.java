@@ -0,0 +1,44 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The warm-up runs every stage for both output set-ups, and the render loop reports how long each
+ * play took to get its first block out and its first sample playing.
+ */
+public class StartupTest {
+
+    @Test
+    public void warmupRunsWithAndWithoutResampling() {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        assertTrue(Warmup.run(8000, 8000, 256, converter, 0.5) > 0);
+        assertTrue(Warmup.run(8000, 48000, 1536, converter, 0.5) > 0);
+    }
+
+    @Test
+    public void timeToFirstSampleIsMeasuredPerPlay() throws InterruptedException {
+        ToneGenerator generator = new ToneGenerator(8000, 441, 256, 500);
+        RenderLoop loop = new RenderLoop(generator, new SimulatedSink(8000, 1024), 256);
+        assertEquals(-1, loop.getFirstSampleNanos());
+        loop.start();
+        for (int play = 0; play < 2; play++) {
+            loop.play();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (loop.getFirstSampleNanos() < 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            long firstBlock = loop.getFirstBlockNanos();
+            long firstSample = loop.getFirstSampleNanos();
+            assertTrue("play " + play + " first block " + firstBlock, firstBlock > 0);
+            assertTrue("play " + play + " first sample " + firstSample, firstSample >= firstBlock);
+            // the sample plays within about a block of being written, checked once per block
+            assertTrue("play " + play + " first sample " + firstSample, firstSample < 500000000L);
+            loop.pause();
+            Thread.sleep(50);
+        }
+        loop.quit();
+    }
+}
@@ -0,0 +1,78 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The formatter must print what String.format would, without its allocations
+ */
+public class StatusFormatterTest {
+
+    @Test
+    public void fixedPointRoundsHalfAwayFromZero() {
+        assertEquals("440.3", format(440.25, 1));
+        assertEquals("-440.3", format(-440.25, 1));
+        assertEquals("3", format(2.5, 0));
+        assertEquals("-3", format(-2.5, 0));
+        assertEquals("0.1", format(0.05, 1));
+        assertEquals("1.05", format(1.05, 2));
+        assertEquals("1.000", format(0.9996, 3));
+        assertEquals("100.0", format(99.96, 1));
+        // 2.675 is stored a hair below, but scaling by 100 lands on 267.5 exactly
+        assertEquals("2.68", format(2.675, 2));
+        assertEquals("12", format(12, 0));
+        assertEquals("0.000000001", format(1e-9, 9));
+    }
+
+    @Test
+    public void negativesThatRoundToZeroHaveNoSign() {
+        assertEquals("0.0", format(-0.04, 1));
+        assertEquals("0.0", format(-0.0, 1));
+        assertEquals("-0.1", format(-0.05, 1));
+        assertEquals("-7", format(-7, 0));
+    }
+
+    @Test
+    public void nonFiniteValues() {
+        assertEquals("NaN", format(Double.NaN, 1));
+        assertEquals("inf", format(Double.POSITIVE_INFINITY, 1));
+        assertEquals("-inf", format(Double.NEGATIVE_INFINITY, 1));
+        // too large for a long once scaled
+        assertEquals("inf", format(1e300, 2));
+        assertEquals("-inf", format(-1e18, 3));
+    }
+
+    @Test
+    public void integers() {
+        StatusFormatter status = new StatusFormatter(4);
+        assertEquals("0", status.clear().append(0).toString());
+        assertEquals("-42", status.clear().append(-42).toString());
+        assertEquals(String.valueOf(Long.MIN_VALUE), status.clear().append(Long.MIN_VALUE).toString());
+        assertEquals(String.valueOf(Long.MAX_VALUE), status.clear().append(Long.MAX_VALUE).toString());
+    }
+
+    @Test
+    public void growsAndReadsAsACharSequence() {
+        StatusFormatter status = new StatusFormatter(16);
+        status.append("frequency: ").appendFixed(4000, 1).append(" Hz, delay: ").appendFixed(441, 1);
+        String expected = "frequency: 4000.0 Hz, delay: 441.0";
+        assertEquals(expected, status.toString());
+        assertEquals(expected.length(), status.length());
+        assertEquals('4', status.charAt(11));
+        assertEquals("4000.0", status.subSequence(11, 17).toString());
+        char[] copy = new char[status.length() + 2];
+        status.getChars(copy, 2);
+        assertEquals(expected, new String(copy, 2, status.length()));
+        assertEquals("", status.clear().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTenDecimals() {
+        new StatusFormatter(16).appendFixed(1, 10);
+    }
+
+    private static String format(double value, int decimals) {
+        return new StatusFormatter(16).appendFixed(value, decimals).toString();
+    }
+}
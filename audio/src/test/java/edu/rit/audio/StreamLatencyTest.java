@@ -0,0 +1,173 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures control-to-output latency: the time from posting a parameter change to the moment the
+ * simulated sink plays the first sample rendered with it. Every change posts a new marker value that
+ * the source writes as its output level, so the sink can tell which change a sample belongs to.
+ */
+public class StreamLatencyTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int SET_MARKER = 0;
+    private static final int MAX_MARKERS = 1000;
+
+    @Test
+    public void streamingBeatsWholeSecondBlocks() throws InterruptedException {
+        double[] wholeSecond = measure(StreamConfig.wholeSecond(SAMPLE_RATE), 4000);
+
+        double[] targets = {20, 40, 100};
+        for (double target : targets) {
+            StreamConfig config = StreamConfig.forLatency(SAMPLE_RATE, target, 0);
+            double[] streaming = measure(config, 1500);
+            double bound = config.getLatencyMillis() + config.getBlockFrames() * 1000.0 / SAMPLE_RATE;
+            assertTrue(config + " p90 " + streaming[1] + " ms", streaming[1] < bound + 50);
+            assertTrue(config + " p99 " + streaming[2] + " ms", streaming[2] < wholeSecond[0]);
+        }
+    }
+
+    @Test
+    public void renderAheadIsPartOfTheBudget() throws InterruptedException {
+        double[] targets = {40, 100};
+        for (double target : targets) {
+            StreamConfig config = StreamConfig.forLatency(SAMPLE_RATE, target, 0, 4);
+            assertEquals(4, config.getAheadBlocks());
+            // the ring shrinks the block and the sink buffer rather than adding to the target,
+            // short of the smallest blocks
+            double floor = (2 + 4) * StreamConfig.MIN_BLOCK_FRAMES * 1000.0 / SAMPLE_RATE;
+            assertTrue(config + " for " + target + " ms", config.getLatencyMillis() <= Math.max(target, floor) * 1.25);
+
+            double[] buffered = measure(config, 1500);
+            double block = config.getBlockFrames() * 1000.0 / SAMPLE_RATE;
+            // the ring is counted: changes wait in it, so playing them takes more than the sink
+            // buffer alone, but no more than the whole budget
+            double sinkOnly = config.getBufferFrames() * 1000.0 / SAMPLE_RATE;
+            assertTrue(config + " p50 " + buffered[0] + " ms", buffered[0] > sinkOnly);
+            assertTrue(config + " p90 " + buffered[1] + " ms", buffered[1] < config.getLatencyMillis() + block + 50);
+        }
+    }
+
+    @Test
+    public void budgetArithmetic() {
+        StreamConfig plain = StreamConfig.forLatency(48000, 40, 0);
+        StreamConfig ahead = StreamConfig.forLatency(48000, 40, 0, 4);
+        assertEquals(0, plain.getAheadFrames());
+        assertEquals(4 * ahead.getBlockFrames(), ahead.getAheadFrames());
+        assertEquals((ahead.getAheadFrames() + ahead.getBufferFrames()) * 1000.0 / 48000,
+                ahead.getLatencyMillis(), 1e-9);
+        assertTrue(ahead.getBlockFrames() < plain.getBlockFrames());
+        assertEquals(40, ahead.getLatencyMillis(), 40 * 0.25);
+        // the sink's own minimum raises the target, and still fills the buffer
+        StreamConfig large = StreamConfig.forLatency(48000, 40, 8192, 4);
+        assertTrue(large.getBufferFrames() >= 8192);
+        assertEquals("1024 x 8 + 4 ahead frames @ 48000 Hz", large.toString());
+    }
+
+    /**
+     * Runs the render loop for {@code millis}, posting changes every 10 to 40 ms
+     *
+     * @return p50, p90, p99 and maximum latency in milliseconds
+     */
+    private static double[] measure(StreamConfig config, long millis) throws InterruptedException {
+        final MarkerSource source = new MarkerSource();
+        MarkerSink sink = new MarkerSink(config);
+        AudioSink out = sink;
+        if (config.getAheadBlocks() > 0) {
+            out = new BufferedSink(sink, config.getAheadFrames(), config.getBlockFrames());
+        }
+        RenderLoop loop = new RenderLoop(source, out, config.getBlockFrames());
+        loop.setCommandHandler(source);
+        loop.start();
+        loop.play();
+
+        long[] postNanos = new long[MAX_MARKERS];
+        int posted = 0;
+        long end = System.currentTimeMillis() + millis;
+        Random random = new Random(42);
+        while (System.currentTimeMillis() < end && posted < MAX_MARKERS - 1) {
+            posted++;
+            postNanos[posted] = System.nanoTime();
+            loop.post(SET_MARKER, posted);
+            Thread.sleep(10 + random.nextInt(30));
+        }
+        // let the last changes reach the output
+        Thread.sleep((long) (config.getLatencyMillis() + 2 * config.getBlockFrames() * 1000.0 / SAMPLE_RATE) + 100);
+        loop.quit();
+        if (out != sink) {
+            // stops the output thread, so its writes are all seen below
+            out.release();
+        }
+
+        int heard = Math.min(posted, sink.lastMarker);
+        double[] latencies = new double[heard];
+        for (int k = 1; k <= heard; k++) {
+            latencies[k - 1] = (sink.playNanos[k] - postNanos[k]) / 1e6;
+        }
+        Arrays.sort(latencies);
+        double[] result = {
+                percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                latencies[latencies.length - 1]};
+        System.out.printf("%-28s target %7.1f ms  p50 %7.1f  p90 %7.1f  p99 %7.1f  max %7.1f ms (%d changes)%n",
+                config, config.getLatencyMillis(), result[0], result[1], result[2], result[3], heard);
+        return result;
+    }
+
+    private static double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    /**
+     * Outputs the latest marker as a constant level
+     */
+    private static class MarkerSource implements AudioSource, CommandQueue.Handler {
+        private double level;
+
+        @Override
+        public void onCommand(int code, double value) {
+            if (code == SET_MARKER) {
+                level = (value + 0.5) / 32767;
+            }
+        }
+
+        @Override
+        public void render(double[] out, int offset, int frames) {
+            Arrays.fill(out, offset, offset + frames, level);
+        }
+    }
+
+    /**
+     * Works out when the first sample of each marker will be played
+     */
+    private static class MarkerSink extends SimulatedSink {
+        final long[] playNanos = new long[MAX_MARKERS];
+        int lastMarker;
+
+        MarkerSink(StreamConfig config) {
+            super(config.getSampleRate(), config.getBufferFrames());
+        }
+
+        @Override
+        protected void onWrite(short[] data, int offset, int length) {
+            long now = System.nanoTime();
+            long queued = getFramesWritten() - getPlaybackPosition();
+            for (int i = 0; i < length; i++) {
+                int marker = data[offset + i];
+                if (marker > lastMarker) {
+                    long at = now + (queued + i) * 1000000000L / getSampleRate();
+                    // a block can carry several changes at once, they are all heard together
+                    for (int k = lastMarker + 1; k <= marker && k < MAX_MARKERS; k++) {
+                        playNanos[k] = at;
+                    }
+                    lastMarker = marker;
+                }
+            }
+        }
+    }
+}
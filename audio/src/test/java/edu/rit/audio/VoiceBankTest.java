@@ -0,0 +1,106 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parallel parts must add up to the serial render, and moving a voice's delay or frequency must
+ * glide its phase to the new lag rather than jump
+ */
+public class VoiceBankTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+
+    @Test
+    public void parallelMatchesSerial() {
+        WorkerGroup workers = new WorkerGroup("VoiceBankTest", 3);
+        try {
+            VoiceBank serial = new VoiceBank(256, SAMPLE_RATE, BLOCK, null);
+            VoiceBank parallel = new VoiceBank(256, SAMPLE_RATE, BLOCK, workers);
+            Random random = new Random(7);
+            for (int v = 0; v < 256; v++) {
+                double hz = 50 + 3000 * random.nextDouble();
+                double amplitude = random.nextDouble();
+                double phase = random.nextDouble();
+                double delay = 441 * random.nextDouble();
+                serial.addVoice(hz, amplitude, phase, delay);
+                parallel.addVoice(hz, amplitude, phase, delay);
+            }
+            double[] a = new double[BLOCK];
+            double[] b = new double[BLOCK];
+            for (int block = 0; block < 20; block++) {
+                if (block == 5) {
+                    serial.setDelay(17, 300);
+                    parallel.setDelay(17, 300);
+                    serial.setFrequency(200, 1234);
+                    parallel.setFrequency(200, 1234);
+                }
+                serial.render(a, 0, BLOCK);
+                parallel.render(b, 0, BLOCK);
+                for (int i = 0; i < BLOCK; i++) {
+                    // the parts are summed in another order, which rounds differently
+                    assertEquals("block " + block + " frame " + i, a[i], b[i], 1e-15);
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    public void delayChangeGlidesToTheNewLag() {
+        VoiceBank moved = new VoiceBank(1, SAMPLE_RATE, BLOCK, null);
+        moved.setHeadroom(VoiceBank.Headroom.NONE);
+        moved.addVoice(900, 1, 0, 0);
+        VoiceBank fresh = new VoiceBank(1, SAMPLE_RATE, BLOCK, null);
+        fresh.setHeadroom(VoiceBank.Headroom.NONE);
+        // almost half a cycle later at 900 Hz
+        fresh.addVoice(900, 1, 0, 4);
+
+        double[] out = new double[4 * BLOCK];
+        double[] reference = new double[BLOCK];
+        moved.render(out, 0, BLOCK);
+        moved.setDelay(0, 4);
+        for (int block = 1; block < 4; block++) {
+            moved.render(out, block * BLOCK, BLOCK);
+        }
+        for (int block = 0; block < 4; block++) {
+            fresh.render(reference, 0, BLOCK);
+        }
+        assertSmooth(out, 900);
+        // once the 160 sample ramp is over, the voice sits on the new lag
+        for (int i = 0; i < BLOCK; i++) {
+            assertEquals("frame " + i, reference[i], out[3 * BLOCK + i], 1e-6);
+        }
+        assertEquals(4, moved.getDelay(0), 0);
+    }
+
+    @Test
+    public void frequencyChangeWithDelayDoesNotJump() {
+        VoiceBank bank = new VoiceBank(1, SAMPLE_RATE, BLOCK, null);
+        bank.setHeadroom(VoiceBank.Headroom.NONE);
+        bank.addVoice(510, 1, 0, 441);
+        double[] out = new double[3 * BLOCK];
+        bank.render(out, 0, BLOCK);
+        // 441 samples at 3 Hz more moves the lag by a sixth of a cycle
+        bank.setFrequency(0, 513);
+        bank.render(out, BLOCK, BLOCK);
+        bank.render(out, 2 * BLOCK, BLOCK);
+        assertSmooth(out, 513);
+    }
+
+    /**
+     * No step between samples steeper than a sine at {@code hz} takes, plus a little for the ramp
+     */
+    private static void assertSmooth(double[] out, double hz) {
+        double limit = 2 * Math.PI * hz / SAMPLE_RATE * 1.1;
+        for (int i = 1; i < out.length; i++) {
+            double step = Math.abs(out[i] - out[i - 1]);
+            assertTrue("step of " + step + " at frame " + i, step <= limit);
+        }
+    }
+}
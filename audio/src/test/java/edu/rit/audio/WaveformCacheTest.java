@@ -0,0 +1,232 @@
+package edu.rit.audio;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loop positions against tone phase, eviction and the request queue, and cached playback against
+ * live rendering
+ */
+public class WaveformCacheTest {
+    private static final int SAMPLE_RATE = 8000;
+    private static final int BLOCK = 256;
+    private static final long TIMEOUT_MS = 10000;
+
+    @Test
+    public void positionsAndPhasesRoundTrip() {
+        int[] frequencies = {500, 441, 1000, 3, 4000, 7999};
+        for (int frequency : frequencies) {
+            WaveformCache.Entry entry = entry(frequency);
+            int length = entry.getLength();
+            for (int position = 0; position < length; position++) {
+                double phase = entry.phaseAt(position);
+                assertEquals(frequency + " Hz", (double) position * frequency / SAMPLE_RATE % 1, phase, 1e-9);
+                assertEquals(frequency + " Hz", position, entry.positionForPhase(phase));
+                assertEquals(0, entry.phaseToGrid(phase), 1e-9);
+                // anything within half a position goes to the nearest one, whichever way round
+                double off = phase + 0.4 / length;
+                assertEquals(position, entry.positionForPhase(off));
+                assertEquals(-0.4 / length, entry.phaseToGrid(off), 1e-9);
+                assertEquals(position, entry.positionForPhase(phase - 0.4 / length + 1));
+                assertEquals(0.4 / length, entry.phaseToGrid(phase - 0.4 / length + 1), 1e-9);
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void evictsTheLeastRecentlyUsed() throws InterruptedException {
+        // 1 kHz loops are 8 samples, 80 bytes counted, so three fit
+        WaveformCache cache = new WaveformCache(SAMPLE_RATE, 250, new ToneGenerator.LoopRenderer(SAMPLE_RATE),
+                new PcmConverter(PcmConverter.Clip.SOFT, false));
+        try {
+            WaveformCache.Entry first = await(cache, 1000, 1);
+            await(cache, 1000, 2);
+            await(cache, 1000, 3);
+            assertEquals(3, cache.size());
+            assertEquals(240, cache.getBytes());
+            // used again, so the second is now the eldest
+            Thread.sleep(1);
+            assertSame(first, cache.get(1000, 1));
+            await(cache, 1000, 4);
+            assertEquals(3, cache.size());
+            assertEquals(1, cache.getEvictions());
+            assertEquals(4, cache.getRenders());
+            assertSame(first, cache.get(1000, 1));
+            assertNotNull(cache.get(1000, 3));
+            assertNotNull(cache.get(1000, 4));
+            // last, as the miss queues it again
+            assertNull(cache.get(1000, 2));
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void keepsOnlyTheNewestRequests() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Double> rendered = Collections.synchronizedList(new ArrayList<Double>());
+        WaveformCache cache = new WaveformCache(SAMPLE_RATE, 1 << 20, new WaveformCache.Renderer() {
+            @Override
+            public void render(int frequency, double delay, double[] out, int length) {
+                rendered.add(delay);
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, new PcmConverter(PcmConverter.Clip.SOFT, false));
+        try {
+            cache.prefetch(500, 0);
+            started.await();
+            // the thread is busy, so these pile up
+            for (int i = 1; i <= 40; i++) {
+                cache.prefetch(500, i);
+            }
+            assertNull(cache.get(500, 100));
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (cache.getRenders() < 18 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(100);
+            // the miss first, then the newest 16 prefetches, newest first
+            List<Double> expected = new ArrayList<Double>();
+            expected.add(0.0);
+            expected.add(100.0);
+            for (int i = 40; i > 24; i--) {
+                expected.add((double) i);
+            }
+            assertEquals(expected, rendered);
+            assertEquals(18, cache.getRenders());
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    @Test
+    public void loopsMatchLiveRendering() {
+        int[] frequencies = {500, 441, 1000, 250, 3000, 100};
+        double[] delays = {0, 3.5, 10, 20.3, 7.2, 441};
+        ToneGenerator.LoopRenderer loops = new ToneGenerator.LoopRenderer(SAMPLE_RATE);
+        for (int k = 0; k < frequencies.length; k++) {
+            int frequency = frequencies[k];
+            double delay = delays[k];
+            double[] loop = new double[SAMPLE_RATE];
+            int length = entry(frequency).getLength();
+            loops.render(frequency, delay, loop, length);
+
+            ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, frequency, SampleType.DOUBLE);
+            generator.setDelay(delay);
+            double[] live = new double[20 * BLOCK];
+            for (int done = 0; done < live.length; done += BLOCK) {
+                generator.render(live, done, BLOCK);
+            }
+            // past the delay ramp and the delay itself; live started at phase 0 too, and both go
+            // through the same interpolation, so only the oscillators differ
+            double error = 0;
+            for (int n = 4 * BLOCK + 441; n < live.length; n++) {
+                error = Math.max(error, Math.abs(live[n] - loop[n % length]));
+            }
+            assertTrue(frequency + " Hz, delay " + delay + ": " + error, error < 1e-5);
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void switchesToTheCacheWithoutAStep() throws InterruptedException {
+        PcmConverter converter = new PcmConverter(PcmConverter.Clip.SOFT, false);
+        WaveformCache cache = new WaveformCache(SAMPLE_RATE, 1 << 20, new ToneGenerator.LoopRenderer(SAMPLE_RATE),
+                new PcmConverter(PcmConverter.Clip.SOFT, false));
+        try {
+            // 500.37 Hz leaves the phase off the 500 Hz loop's grid of 1/16 cycle, and 12.53 is off
+            // the delay grid
+            ToneGenerator generator = new ToneGenerator(SAMPLE_RATE, 441, BLOCK, 500.37);
+            generator.setCache(cache);
+            generator.setDelay(12.53);
+            short[] out = new short[60 * BLOCK];
+            double[] block = new double[BLOCK];
+            for (int b = 0; b < 20; b++) {
+                assertTrue("off the grid", !renderBlock(generator, converter, block, out, b));
+            }
+            assertNull(cache.get(500, 12.5));
+
+            generator.setFrequency(500);
+            generator.setDelay(12.5);
+            await(cache, 500, 12.5);
+            int first = -1;
+            for (int b = 20; b < 60; b++) {
+                if (renderBlock(generator, converter, block, out, b)) {
+                    if (first < 0) {
+                        first = b;
+                    }
+                } else {
+                    assertTrue("back to live at block " + b, first < 0);
+                }
+            }
+            assertTrue("first cached block " + first, first > 20 && first < 30);
+
+            // 500 Hz repeats every 16 samples, so once the phase has glided onto the grid, in the
+            // block before the switch, each sample must repeat the one a period earlier: the loop
+            // carries on at the phase the oscillators reached, not half a grid step off, and with
+            // the same delayed copy
+            int period = entry(500).getLength();
+            for (int n = first * BLOCK - 64; n < (first + 1) * BLOCK; n++) {
+                assertTrue("sample " + n + ": " + out[n] + " after " + out[n - period],
+                        Math.abs(out[n] - out[n - period]) <= 2);
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+
+    private static WaveformCache.Entry entry(int frequency) {
+        int g = gcd(frequency, SAMPLE_RATE);
+        return new WaveformCache.Entry(frequency, 0, new short[SAMPLE_RATE / g], frequency / g);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Waits for the cache to render a setting
+     */
+    private static WaveformCache.Entry await(WaveformCache cache, double frequency, double delay)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        WaveformCache.Entry entry;
+        while ((entry = cache.get(frequency, delay)) == null) {
+            assertTrue("no loop for " + frequency + " Hz, delay " + delay, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        return entry;
+    }
+
+    /**
+     * Renders one block as the render loop does, from the cache if it can
+     *
+     * @return true if the block came from the cache
+     */
+    private static boolean renderBlock(ToneGenerator generator, PcmConverter converter, double[] block,
+                                       short[] out, int index) {
+        if (generator.renderPcm(out, index * BLOCK, BLOCK)) {
+            return true;
+        }
+        generator.render(block, 0, BLOCK);
+        converter.toShorts(block, 0, out, index * BLOCK, BLOCK);
+        return false;
+    }
+}